@@ -1,17 +1,39 @@
 package org.nees.illinois.uisimcor.fem_executor;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveWriter;
+import org.nees.illinois.uisimcor.fem_executor.archiving.MatExporter;
 import org.nees.illinois.uisimcor.fem_executor.config.LoadSaveConfig;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ExecutionDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.ProgramDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.config.types.ExecutionMode;
 import org.nees.illinois.uisimcor.fem_executor.config.types.FemProgramType;
+import org.nees.illinois.uisimcor.fem_executor.execute.AsyncStepMonitor;
+import org.nees.illinois.uisimcor.fem_executor.execute.DispatchTaskI;
 import org.nees.illinois.uisimcor.fem_executor.execute.DynamicExecution;
+import org.nees.illinois.uisimcor.fem_executor.execute.FemStatus;
+import org.nees.illinois.uisimcor.fem_executor.execute.ProcessGroup;
+import org.nees.illinois.uisimcor.fem_executor.execute.ProcessSlots;
+import org.nees.illinois.uisimcor.fem_executor.execute.StaticExecution;
+import org.nees.illinois.uisimcor.fem_executor.execute.StepFuture;
+import org.nees.illinois.uisimcor.fem_executor.execute.StepFutureGroup;
+import org.nees.illinois.uisimcor.fem_executor.execute.StiffnessCache;
+import org.nees.illinois.uisimcor.fem_executor.execute.StiffnessExtraction;
+import org.nees.illinois.uisimcor.fem_executor.execute.SubstructureDispatcher;
 import org.nees.illinois.uisimcor.fem_executor.execute.SubstructureExecutorI;
+import org.nees.illinois.uisimcor.fem_executor.output.StepStatistics;
+import org.nees.illinois.uisimcor.fem_executor.process.ResponseSignal;
+import org.nees.illinois.uisimcor.fem_executor.publish.StepPublisher;
 import org.nees.illinois.uisimcor.fem_executor.utils.MtxUtils;
+import org.nees.illinois.uisimcor.fem_executor.utils.PathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +71,78 @@ public class FemExecutor {
 		}
 	}
 
+	/**
+	 * Substructure addresses in the index order used by the bulk
+	 * {@link #step(int, double[][], long) step} function.
+	 */
+	private String[] addresses = new String[0];
+
+	/**
+	 * Substructure executors in index order.
+	 */
+	private SubstructureExecutorI[] indexedExecutors = new SubstructureExecutorI[0];
+
+	/**
+	 * Interval in milliseconds at which a blocked step checks that the FEM
+	 * processes are still alive.
+	 */
+	private final int livenessInterval = 250;
+
+	/**
+	 * Publisher which pushes the responses of every completed substructure
+	 * step to live subscribers.
+	 */
+	private final StepPublisher publisher = new StepPublisher();
+
+	/**
+	 * Signal raised by the substructures whenever a response arrives.
+	 */
+	private final ResponseSignal signal = new ResponseSignal();
+
+	/**
+	 * Background writer for the archives. Null if the archives are written
+	 * synchronously.
+	 */
+	private ArchiveWriter archiveWriter = null;
+
+	/**
+	 * Maximum time in milliseconds to wait for the archive writer to drain
+	 * when the simulation finishes.
+	 */
+	private final int archiveDrainTimeout = 30000;
+
+	/**
+	 * Monitor which completes the futures returned by the asynchronous step
+	 * functions. Started on first use.
+	 */
+	private AsyncStepMonitor asyncMonitor = null;
+	/**
+	 * Process budget shared by the substructures when they execute statically.
+	 * Null until setup.
+	 */
+	private ProcessSlots processSlots = null;
+
+	/**
+	 * Runs the setup, start and polling of the substructures in parallel.
+	 * Null until first needed.
+	 */
+	private SubstructureDispatcher dispatcher = null;
+
+	/**
+	 * Thread running the {@link #asyncMonitor}.
+	 */
+	private Thread asyncThread = null;
+
+	/**
+	 * Completion flags used by the bulk step function.
+	 */
+	private boolean[] stepDone = new boolean[0];
+
+	/**
+	 * Preallocated responses returned by the bulk step function.
+	 */
+	private double[][] stepResponses = new double[0][];
+
 	/**
 	 * Instance containing all of the configuration parameters.
 	 */
@@ -62,7 +156,7 @@ public class FemExecutor {
 	/**
 	 * Map of displacement targets for each substructure.
 	 */
-	private final Map<String, List<Double>> displacementsMap = new HashMap<String, List<Double>>();
+	private final Map<String, double[]> displacementsMap = new HashMap<String, double[]>();
 
 	/**
 	 * Map of substructure FEM executors.
@@ -124,34 +218,27 @@ public class FemExecutor {
 		this.workDir = workDir;
 	}
 
-	/**
-	 * Converts array into list.
-	 * @param array
-	 *            double array
-	 * @return Double List
-	 */
-	private List<Double> double2List(final double[] array) {
-		List<Double> result = new ArrayList<Double>();
-		for (double n : array) {
-			result.add(new Double(n));
-		}
-		return result;
-	}
-
 	/**
 	 * Start execution of all of the substructures for the current step.
 	 */
 	public final void execute() {
 		log.debug("Execute was called");
-		for (String mdl : executors.keySet()) {
-			SubstructureExecutorI exe = executors.get(mdl);
-			exe.startStep(getStep(),
-					MtxUtils.list2DoubleArray(displacementsMap.get(mdl)));
-		}
+		final int step = getStep();
+		dispatcher().run(indexedExecutors.length, new DispatchTaskI() {
+			@Override
+			public boolean run(final int index) {
+				indexedExecutors[index].startStep(step,
+						displacementsMap.get(addresses[index]));
+				return true;
+			}
+		});
 	}
 
 	/**
-	 * Abort the execution.
+	 * Abort the execution. Archive records still queued for the background
+	 * writer are written before this function returns. The archives are then
+	 * exported to <em>logDir/Archives.mat</em> if the archive parameters ask
+	 * for it.
 	 * @return True if the abort has completed.
 	 */
 	public final boolean finish() {
@@ -161,10 +248,40 @@ public class FemExecutor {
 			SubstructureExecutorI exe = executors.get(mdl);
 			exe.abort();
 		}
+		stopAsyncMonitor();
+		if (dispatcher != null) {
+			dispatcher.shutdown();
+			dispatcher = null;
+		}
+		if (archiveWriter != null) {
+			result = archiveWriter.stop(archiveDrainTimeout);
+		}
+		if (config != null && config.getArchiveParameters().isMatExport()) {
+			File logDir = new File(PathUtils.append(workDir, "logDir"));
+			MatExporter exporter = new MatExporter();
+			result = exporter.export(logDir, new File(logDir, "Archives.mat"))
+					&& result;
+		}
 		setRunning(false);
 		return result;
 	}
 
+	/**
+	 * @return the substructure addresses in the index order used by the bulk
+	 *         {@link #step(int, double[][], long) step} function.
+	 */
+	public final String[] getAddresses() {
+		return addresses.clone();
+	}
+
+	/**
+	 * @return the background archive writer with its queue metrics. Null if
+	 *         the archives are written synchronously.
+	 */
+	public final ArchiveWriter getArchiveWriter() {
+		return archiveWriter;
+	}
+
 	/**
 	 * @return the config
 	 */
@@ -186,13 +303,15 @@ public class FemExecutor {
 	 * @return Displacement data.
 	 */
 	public final double[] getDisplacements(final String address) {
-		return executors.get(address).getDisplacements();
+		double[] result = new double[totalDofs(address)];
+		executors.get(address).readDisplacements(result);
+		return result;
 	}
 
 	/**
 	 * @return the displacementsMap
 	 */
-	public final Map<String, List<Double>> getDisplacementsMap() {
+	public final Map<String, double[]> getDisplacementsMap() {
 		return displacementsMap;
 	}
 
@@ -210,7 +329,37 @@ public class FemExecutor {
 	 * @return Force data.
 	 */
 	public final double[] getForces(final String address) {
-		return executors.get(address).getForces();
+		double[] result = new double[totalDofs(address)];
+		executors.get(address).readForces(result);
+		return result;
+	}
+
+	/**
+	 * @return the publisher for subscribing to the responses of every
+	 *         completed substructure step.
+	 */
+	public final StepPublisher getPublisher() {
+		return publisher;
+	}
+
+	/**
+	 * @return the process budget shared by the substructures in the static
+	 *         execution mode. Null in the dynamic mode.
+	 */
+	public final ProcessSlots getProcessSlots() {
+		return processSlots;
+	}
+
+	/**
+	 * Get the running response statistics for a substructure. The statistics
+	 * are updated as each step completes and are written to the
+	 * substructure's log directory when the simulation finishes.
+	 * @param address
+	 *            Substructure id.
+	 * @return Statistics for every effective DOF.
+	 */
+	public final StepStatistics getStatistics(final String address) {
+		return executors.get(address).getStatistics();
 	}
 
 	/**
@@ -233,9 +382,14 @@ public class FemExecutor {
 	 */
 	public final boolean isDone() {
 		boolean result = true;
-		for (String mdl : executors.keySet()) {
-			SubstructureExecutorI exe = executors.get(mdl);
-			result = result && exe.stepIsDone();
+		for (boolean done : dispatcher().run(indexedExecutors.length,
+				new DispatchTaskI() {
+					@Override
+					public boolean run(final int index) {
+						return indexedExecutors[index].stepIsDone();
+					}
+				})) {
+			result = result && done;
 		}
 		// final int matlabWait = 200;
 		// try {
@@ -254,6 +408,31 @@ public class FemExecutor {
 		return running;
 	}
 
+	/**
+	 * Copy the displacement response for a substructure into a caller supplied
+	 * array. This avoids allocating a new array every step.
+	 * @param address
+	 *            Substructure id.
+	 * @param out
+	 *            Array receiving the displacement data.
+	 */
+	public final void readDisplacements(final String address,
+			final double[] out) {
+		executors.get(address).readDisplacements(out);
+	}
+
+	/**
+	 * Copy the force response for a substructure into a caller supplied array.
+	 * This avoids allocating a new array every step.
+	 * @param address
+	 *            Substructure id.
+	 * @param out
+	 *            Array receiving the force data.
+	 */
+	public final void readForces(final String address, final double[] out) {
+		executors.get(address).readForces(out);
+	}
+
 	/**
 	 * Load the configuration parameters for executing the FEM substructures.
 	 * @param configFile
@@ -297,9 +476,16 @@ public class FemExecutor {
 	 */
 	public final void setDisplacements(final String address,
 			final double[] displacements) {
-		List<Double> data = double2List(displacements);
-		log.debug("Set disp for \"" + address + "\" to " + data);
-		displacementsMap.put(address, data);
+		double[] target = displacementsMap.get(address);
+		if (target == null || target.length != displacements.length) {
+			target = new double[displacements.length];
+			displacementsMap.put(address, target);
+		}
+		System.arraycopy(displacements, 0, target, 0, displacements.length);
+		if (log.isDebugEnabled()) {
+			log.debug("Set disp for \"" + address + "\" to "
+					+ MtxUtils.array2String(target));
+		}
 	}
 
 	/**
@@ -324,19 +510,500 @@ public class FemExecutor {
 	 * @return True if successful.
 	 */
 	public final boolean setup() {
-		ProgramDao progCfg = config.getFemProgramParameters().get(
+		final ProgramDao progCfg = config.getFemProgramParameters().get(
 				FemProgramType.OPENSEES);
 		boolean result = true;
-		for (String fsc : config.getSubstructCfgs().keySet()) {
+		final ArchiveDao archiveCfg = config.getArchiveParameters();
+		if (archiveCfg.getQueueCapacity() > 0) {
+			if (archiveWriter == null) {
+				archiveWriter = new ArchiveWriter(archiveCfg);
+			}
+			archiveWriter.start();
+		}
+		final boolean staticMode = config.getExecutionParameters().getMode()
+				.equals(ExecutionMode.Static);
+		if (staticMode) {
+			processSlots = new ProcessSlots(config.getExecutionParameters()
+					.getProcessBudget());
+		}
+		final Map<String, SubstructureExecutorI> grouped;
+		if (staticMode) {
+			grouped = new HashMap<String, SubstructureExecutorI>();
+		} else {
+			grouped = createProcessGroups(progCfg, archiveCfg);
+		}
+		final List<String> sorted = new ArrayList<String>(config
+				.getSubstructCfgs().keySet());
+		Collections.sort(sorted);
+		final SubstructureExecutorI[] created = new SubstructureExecutorI[sorted
+				.size()];
+		boolean[] setups = dispatcher().run(sorted.size(),
+				new DispatchTaskI() {
+					@Override
+					public boolean run(final int index) {
+						String fsc = sorted.get(index);
+						SubstructureDao scfg = config.getSubstructCfgs().get(
+								fsc);
+						SubstructureExecutorI exe;
+						if (staticMode) {
+							exe = new StaticExecution(progCfg, scfg,
+									configRootDir, workDir, processSlots);
+						} else if (grouped.containsKey(fsc)) {
+							exe = grouped.get(fsc);
+						} else {
+							exe = new DynamicExecution(progCfg, scfg,
+									configRootDir, workDir, archiveCfg,
+									archiveWriter);
+						}
+						exe.setResponseSignal(signal);
+						exe.setPublisher(publisher);
+						created[index] = exe;
+						return exe.setup();
+					}
+				});
+		for (int i = 0; i < created.length; i++) {
+			executors.put(sorted.get(i), created[i]);
+			result = result && setups[i];
+		}
+		indexSubstructures();
+		return result;
+	}
+
+	/**
+	 * @return the dispatcher which runs the setup, start and polling of the
+	 *         substructures in parallel.
+	 */
+	private SubstructureDispatcher dispatcher() {
+		if (dispatcher == null) {
+			int threads = 1;
+			if (config != null) {
+				threads = Math.min(config.getExecutionParameters()
+						.getDispatchBudget(), config.getSubstructCfgs()
+						.size());
+			}
+			dispatcher = new SubstructureDispatcher(threads);
+		}
+		return dispatcher;
+	}
+
+	/**
+	 * Create the process groups of the substructures which share an FEM
+	 * process. The members of each group are ordered by address.
+	 * @param progCfg
+	 *            FEM program configuration parameters.
+	 * @param archiveCfg
+	 *            Flush policy for the archives.
+	 * @return Map of the executors of the grouped substructures.
+	 */
+	private Map<String, SubstructureExecutorI> createProcessGroups(
+			final ProgramDao progCfg, final ArchiveDao archiveCfg) {
+		Map<String, List<SubstructureDao>> groups = new HashMap<String, List<SubstructureDao>>();
+		List<String> sorted = new ArrayList<String>(config.getSubstructCfgs()
+				.keySet());
+		Collections.sort(sorted);
+		for (String fsc : sorted) {
 			SubstructureDao scfg = config.getSubstructCfgs().get(fsc);
-			SubstructureExecutorI exe = new DynamicExecution(progCfg, scfg,
-					configRootDir, workDir);
-			result = result && exe.setup();
-			executors.put(fsc, exe);
+			String name = scfg.getProcessGroup();
+			if (name == null) {
+				continue;
+			}
+			if (groups.containsKey(name) == false) {
+				groups.put(name, new ArrayList<SubstructureDao>());
+			}
+			groups.get(name).add(scfg);
+		}
+		Map<String, SubstructureExecutorI> result = new HashMap<String, SubstructureExecutorI>();
+		for (String name : groups.keySet()) {
+			List<SubstructureDao> members = groups.get(name);
+			ProcessGroup group = new ProcessGroup(name, members, progCfg,
+					configRootDir, workDir, archiveCfg, archiveWriter);
+			log.info("Process group \"" + name + "\" runs " + members.size()
+					+ " substructures");
+			for (int i = 0; i < members.size(); i++) {
+				result.put(members.get(i).getAddress(), group.getMember(i));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Number of effective DOFs for a substructure.
+	 * @param address
+	 *            Substructure id.
+	 * @return Size of the displacement and force arrays.
+	 */
+	private int totalDofs(final String address) {
+		return config.getSubstructCfgs().get(address).getTotalDofs();
+	}
+
+	/**
+	 * Order the substructures by address and allocate the buffers for the bulk
+	 * step function.
+	 */
+	private void indexSubstructures() {
+		List<String> sorted = new ArrayList<String>(executors.keySet());
+		Collections.sort(sorted);
+		int n = sorted.size();
+		addresses = sorted.toArray(new String[n]);
+		indexedExecutors = new SubstructureExecutorI[n];
+		stepDone = new boolean[n];
+		stepResponses = new double[2 * n][];
+		for (int i = 0; i < n; i++) {
+			indexedExecutors[i] = executors.get(addresses[i]);
+			stepResponses[i] = new double[totalDofs(addresses[i])];
+			stepResponses[n + i] = new double[totalDofs(addresses[i])];
+		}
+	}
+
+	/**
+	 * Wait until all of the substructures have finished their step or batch.
+	 * When a single dynamic substructure is left its reader threads set the
+	 * response flags themselves so the wait blocks on its status until the
+	 * step is done. Otherwise the wait blocks on the response signal which
+	 * is raised whenever any substructure reports something.
+	 * @param what
+	 *            Description of the step or batch for log messages.
+	 * @param timeoutMs
+	 *            Maximum time in milliseconds to wait.
+	 * @param batch
+	 *            True if the substructures are executing a batch.
+	 * @return False if the wait timed out or a substructure has died.
+	 */
+	private boolean awaitAll(final String what, final long timeoutMs,
+			final boolean batch) {
+		int n = indexedExecutors.length;
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		boolean allDone = false;
+		while (allDone == false) {
+			long seen = signal.getGeneration();
+			allDone = true;
+			int pending = 0;
+			SubstructureExecutorI last = null;
+			for (int i = 0; i < n; i++) {
+				if (stepDone[i]) {
+					continue;
+				}
+				if (batch) {
+					stepDone[i] = indexedExecutors[i].batchIsDone();
+				} else {
+					stepDone[i] = indexedExecutors[i].stepIsDone();
+				}
+				if (indexedExecutors[i].iveGotProblems()) {
+					log.error(addresses[i] + " is no longer running");
+					return false;
+				}
+				allDone = allDone && stepDone[i];
+				if (stepDone[i] == false) {
+					pending++;
+					last = indexedExecutors[i];
+				}
+			}
+			if (allDone) {
+				break;
+			}
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				log.error(what + " timed out after " + timeoutMs + " ms");
+				return false;
+			}
+			long wait = Math.min(remaining, livenessInterval);
+			if (batch == false && pending == 1
+					&& last instanceof DynamicExecution) {
+				last.getStatuses().awaitState(FemStatus.RESPONSES, wait);
+			} else {
+				signal.awaitChange(seen, wait);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Execute a block of steps for all of the substructures with one script
+	 * per substructure. This is meant for quasi-static protocols and replays
+	 * where the whole displacement history is known in advance. The
+	 * displacements are written to a data file which the FEM program reads in
+	 * a loop, so there is no round trip per step. The responses of each step
+	 * are demultiplexed from the recorder stream and are archived, added to
+	 * the statistics and published as they arrive. When the function returns
+	 * the responses of the last step can be read as usual.
+	 * @param firstStep
+	 *            Number of the first step.
+	 * @param disps
+	 *            Displacement targets. Element [i][k] is for the substructure
+	 *            at index i of {@link #getAddresses()} and step firstStep + k.
+	 * @param timeoutMs
+	 *            Maximum time in milliseconds to wait for the whole block.
+	 * @return False if the batch could not be started, timed out or a
+	 *         substructure has died.
+	 */
+	public final boolean batch(final int firstStep, final double[][][] disps,
+			final long timeoutMs) {
+		int n = indexedExecutors.length;
+		int steps = (n == 0 ? 0 : disps[0].length);
+		setStep(firstStep);
+		for (int i = 0; i < n; i++) {
+			if (disps[i].length != steps) {
+				log.error(addresses[i] + " has " + disps[i].length
+						+ " batch steps instead of " + steps);
+				return false;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			stepDone[i] = false;
+			if (indexedExecutors[i].startBatch(firstStep, disps[i]) == false) {
+				log.error("Batch could not be started for " + addresses[i]);
+				return false;
+			}
 		}
+		boolean result = awaitAll("Batch of steps " + firstStep + " to "
+				+ (firstStep + steps - 1), timeoutMs, true);
+		setStep(firstStep + steps - 1);
 		return result;
 	}
 
+	/**
+	 * Execute a step for all of the substructures with one call. The
+	 * substructures are started, the function blocks until all of their
+	 * responses have arrived and then returns the responses. This replaces the
+	 * setDisplacements, execute, isDone, getDisplacements and getForces calls
+	 * for each substructure.
+	 * @param stepNumber
+	 *            Step number.
+	 * @param disps
+	 *            Displacement targets. Row i is for the substructure at index
+	 *            i of {@link #getAddresses()}.
+	 * @param timeoutMs
+	 *            Maximum time in milliseconds to wait for the responses.
+	 * @return Row i contains the displacements and row i + n the forces of
+	 *         substructure i where n is the number of substructures. The
+	 *         matrix is reused by the next call. Returns null if the step
+	 *         timed out or a substructure has died.
+	 */
+	public final double[][] step(final int stepNumber, final double[][] disps,
+			final long timeoutMs) {
+		return runStep(stepNumber, disps, timeoutMs, false);
+	}
+
+	/**
+	 * Determine the initial stiffness of a substructure condensed to its
+	 * effective DOFs. The DOFs are probed in parallel by fresh FEM processes
+	 * within the process budget of the execution parameters. If a stiffness
+	 * cache is configured, a matrix of an unchanged model is taken from the
+	 * cache without any probes. This can be called before or instead of
+	 * {@link #startSimulation()}.
+	 * @param address
+	 *            Substructure id.
+	 * @param perturbation
+	 *            Displacement applied to each effective DOF.
+	 * @param timeoutMs
+	 *            Maximum time in milliseconds to wait for all of the probes.
+	 * @return Matrix in the effective DOF order of the substructure or null if
+	 *         the stiffness could not be determined.
+	 */
+	public final double[][] extractStiffness(final String address,
+			final double perturbation, final long timeoutMs) {
+		SubstructureDao scfg = config.getSubstructCfgs().get(address);
+		if (scfg == null) {
+			log.error("Substructure \"" + address + "\" does not exist");
+			return null;
+		}
+		ProgramDao progCfg = config.getFemProgramParameters().get(
+				FemProgramType.OPENSEES);
+		ExecutionDao execCfg = config.getExecutionParameters();
+		StiffnessCache cache = null;
+		String key = null;
+		if (execCfg.getStiffnessCache() != null) {
+			cache = new StiffnessCache(new File(execCfg.getStiffnessCache()),
+					execCfg.getStiffnessCacheEntries());
+			key = StiffnessCache.key(scfg, configRootDir, progCfg,
+					perturbation);
+		}
+		if (key != null) {
+			double[][] cached = cache.get(key, scfg.getTotalDofs());
+			if (cached != null) {
+				log.info("Stiffness of " + address + " found in the cache");
+				return cached;
+			}
+		}
+		int budget = execCfg.getProcessBudget();
+		ProcessSlots slots = processSlots;
+		if (slots == null) {
+			slots = new ProcessSlots(budget);
+		}
+		StiffnessExtraction extraction = new StiffnessExtraction(progCfg,
+				scfg, configRootDir, workDir, slots, budget);
+		double[][] result = extraction.extract(perturbation, timeoutMs);
+		if (result != null && key != null) {
+			cache.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Execute a trial of a step for all of the substructures with one call.
+	 * This works like {@link #step(int, double[][], long)} except that the
+	 * responses are not archived or published. Each further trial of the step
+	 * starts from the last committed state, so an iterative coupling scheme
+	 * can repeat the trial until it converges and then call
+	 * {@link #commitTrial()}.
+	 * @param stepNumber
+	 *            Step number.
+	 * @param disps
+	 *            Trial displacement targets. Row i is for the substructure at
+	 *            index i of {@link #getAddresses()}.
+	 * @param timeoutMs
+	 *            Maximum time in milliseconds to wait for the responses.
+	 * @return Responses in the same layout as
+	 *         {@link #step(int, double[][], long)}. Returns null if the trial
+	 *         timed out or a substructure has died.
+	 */
+	public final double[][] trial(final int stepNumber, final double[][] disps,
+			final long timeoutMs) {
+		return runStep(stepNumber, disps, timeoutMs, true);
+	}
+
+	/**
+	 * Accept the last trial of all of the substructures as the result of the
+	 * step. The responses of the trial are archived and published.
+	 * @return False if a substructure had no completed trial.
+	 */
+	public final boolean commitTrial() {
+		boolean result = true;
+		for (SubstructureExecutorI exe : indexedExecutors) {
+			result = exe.commitTrial() && result;
+		}
+		return result;
+	}
+
+	/**
+	 * Return all of the substructures to the state of the last committed
+	 * step.
+	 * @return False if a substructure had no trial to revert.
+	 */
+	public final boolean revertTrial() {
+		boolean result = true;
+		for (SubstructureExecutorI exe : indexedExecutors) {
+			result = exe.revertTrial() && result;
+		}
+		return result;
+	}
+
+	/**
+	 * Execute a step or a trial for all of the substructures and wait for the
+	 * responses.
+	 * @param stepNumber
+	 *            Step number.
+	 * @param disps
+	 *            Displacement targets.
+	 * @param timeoutMs
+	 *            Maximum time in milliseconds to wait for the responses.
+	 * @param trial
+	 *            True if the step is a trial.
+	 * @return The responses or null if the step timed out or a substructure
+	 *         has died.
+	 */
+	private double[][] runStep(final int stepNumber, final double[][] disps,
+			final long timeoutMs, final boolean trial) {
+		setStep(stepNumber);
+		int n = indexedExecutors.length;
+		for (int i = 0; i < n; i++) {
+			stepDone[i] = false;
+			if (trial) {
+				indexedExecutors[i].startTrial(stepNumber, disps[i]);
+			} else {
+				indexedExecutors[i].startStep(stepNumber, disps[i]);
+			}
+		}
+		String what = (trial ? "Trial of step " : "Step ") + stepNumber;
+		if (awaitAll(what, timeoutMs, false) == false) {
+			return null;
+		}
+		for (int i = 0; i < n; i++) {
+			indexedExecutors[i].readDisplacements(stepResponses[i]);
+			indexedExecutors[i].readForces(stepResponses[n + i]);
+		}
+		return stepResponses;
+	}
+
+	/**
+	 * Start a step for one substructure without blocking. The returned future
+	 * completes when the displacements and forces have arrived and fails if
+	 * the FEM process dies or reports errors.
+	 * @param address
+	 *            Substructure id.
+	 * @param stepNumber
+	 *            Step number.
+	 * @param displacements
+	 *            Displacement target.
+	 * @return Future whose value has the displacements in row 0 and the forces
+	 *         in row 1.
+	 */
+	public final StepFuture startStepAsync(final String address,
+			final int stepNumber, final double[] displacements) {
+		SubstructureExecutorI exe = executors.get(address);
+		StepFuture result = new StepFuture(address, stepNumber);
+		if (exe == null) {
+			result.fail("substructure does not exist");
+			return result;
+		}
+		startAsyncMonitor();
+		asyncMonitor.start(exe, result, displacements);
+		return result;
+	}
+
+	/**
+	 * Start a step for all of the substructures without blocking.
+	 * @param stepNumber
+	 *            Step number.
+	 * @param disps
+	 *            Displacement targets. Row i is for the substructure at index
+	 *            i of {@link #getAddresses()}.
+	 * @return Future which completes when all of the substructures have
+	 *         responded and fails as soon as one of them fails. The value has
+	 *         the same layout as the {@link #step(int, double[][], long)
+	 *         step} function but is not reused.
+	 */
+	public final StepFutureGroup stepAsync(final int stepNumber,
+			final double[][] disps) {
+		setStep(stepNumber);
+		StepFuture[] members = new StepFuture[addresses.length];
+		for (int i = 0; i < addresses.length; i++) {
+			members[i] = startStepAsync(addresses[i], stepNumber, disps[i]);
+		}
+		return new StepFutureGroup(stepNumber, members);
+	}
+
+	/**
+	 * Start the thread which completes the asynchronous step futures.
+	 */
+	private synchronized void startAsyncMonitor() {
+		if (asyncMonitor != null) {
+			return;
+		}
+		asyncMonitor = new AsyncStepMonitor(signal, livenessInterval);
+		asyncThread = new Thread(asyncMonitor);
+		asyncThread.setDaemon(true);
+		asyncThread.start();
+	}
+
+	/**
+	 * Stop the thread which completes the asynchronous step futures. Any
+	 * pending futures are failed.
+	 */
+	private synchronized void stopAsyncMonitor() {
+		if (asyncMonitor == null) {
+			return;
+		}
+		asyncMonitor.setQuit(true);
+		try {
+			asyncThread.join(2 * livenessInterval);
+		} catch (InterruptedException e) {
+			log.debug("Interrupted while stopping the async step monitor");
+		}
+		asyncMonitor = null;
+		asyncThread = null;
+	}
+
 	/**
 	 * Check if all of the substructures are running.
 	 * @return True if one of them has died.
@@ -359,9 +1026,14 @@ public class FemExecutor {
 	 */
 	public final boolean startSimulation() {
 		boolean result = true;
-		for (String mdl : executors.keySet()) {
-			SubstructureExecutorI exe = executors.get(mdl);
-			result = result && exe.startSimulation();
+		for (boolean started : dispatcher().run(indexedExecutors.length,
+				new DispatchTaskI() {
+					@Override
+					public boolean run(final int index) {
+						return indexedExecutors[index].startSimulation();
+					}
+				})) {
+			result = result && started;
 		}
 		setRunning(true);
 		return result;
@@ -6,6 +6,8 @@ package org.nees.illinois.uisimcor.fem_executor;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ExecutionDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.ProgramDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
 import org.nees.illinois.uisimcor.fem_executor.config.types.FemProgramType;
@@ -15,6 +17,14 @@ import org.nees.illinois.uisimcor.fem_executor.config.types.FemProgramType;
  * @author Michael Bletzinger
  */
 public class FemExecutorConfig {
+	/**
+	 * Archive parameters.
+	 */
+	private ArchiveDao archiveParameters = new ArchiveDao();
+	/**
+	 * FEM process parameters.
+	 */
+	private ExecutionDao executionParameters = new ExecutionDao();
 	/**
 	 * Map of FEM program parameters.
 	 */
@@ -36,6 +46,37 @@ public class FemExecutorConfig {
 		this.configRoot = configRoot;
 	}
 
+	/**
+	 * @return the archiveParameters
+	 */
+	public final ArchiveDao getArchiveParameters() {
+		return archiveParameters;
+	}
+
+	/**
+	 * @param archiveParameters
+	 *            the archiveParameters to set
+	 */
+	public final void setArchiveParameters(final ArchiveDao archiveParameters) {
+		this.archiveParameters = archiveParameters;
+	}
+
+	/**
+	 * @return the executionParameters
+	 */
+	public final ExecutionDao getExecutionParameters() {
+		return executionParameters;
+	}
+
+	/**
+	 * @param executionParameters
+	 *            the executionParameters to set
+	 */
+	public final void setExecutionParameters(
+			final ExecutionDao executionParameters) {
+		this.executionParameters = executionParameters;
+	}
+
 	/**
 	 * @return the femProgramPaths
 	 */
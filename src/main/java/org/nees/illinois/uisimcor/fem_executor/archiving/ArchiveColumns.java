@@ -0,0 +1,111 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.config.types.DispDof;
+
+/**
+ * Labels and units of the data columns of a substructure archive.
+ * @author Michael Bletzinger
+ */
+public class ArchiveColumns {
+	/**
+	 * Column labels in node order.
+	 */
+	private final String[] labels;
+	/**
+	 * Column units in node order.
+	 */
+	private final String[] units;
+
+	/**
+	 * @param substructCfg
+	 *            Configuration of the substructure.
+	 * @param reactionHeader
+	 *            True if the columns are reaction forces.
+	 */
+	public ArchiveColumns(final SubstructureDao substructCfg,
+			final boolean reactionHeader) {
+		List<String> lbls = new ArrayList<String>();
+		List<String> unts = new ArrayList<String>();
+		for (Integer n : substructCfg.getNodeSequence()) {
+			for (DispDof d : substructCfg.getEffectiveDofs(n)) {
+				String dof = d.toString();
+				if (reactionHeader) {
+					dof = dof.replace("D", "F");
+					dof = dof.replace("R", "M");
+				}
+				lbls.add(n.toString() + "-" + dof);
+				unts.add(d.units(reactionHeader));
+			}
+		}
+		this.labels = lbls.toArray(new String[lbls.size()]);
+		this.units = unts.toArray(new String[unts.size()]);
+	}
+
+	/**
+	 * @param labels
+	 *            Column labels.
+	 * @param units
+	 *            Column units.
+	 */
+	public ArchiveColumns(final String[] labels, final String[] units) {
+		this.labels = labels.clone();
+		this.units = units.clone();
+	}
+
+	/**
+	 * Find a column by its label.
+	 * @param label
+	 *            Column label such as <em>3-DX</em>.
+	 * @return The column index or -1 if there is no such column.
+	 */
+	public final int indexOf(final String label) {
+		for (int i = 0; i < labels.length; i++) {
+			if (labels[i].equals(label)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the column labels.
+	 */
+	public final String[] getLabels() {
+		return labels.clone();
+	}
+
+	/**
+	 * @return the column units.
+	 */
+	public final String[] getUnits() {
+		return units.clone();
+	}
+
+	/**
+	 * @return the number of columns.
+	 */
+	public final int size() {
+		return labels.length;
+	}
+
+	/**
+	 * @return the two header lines of the text archive layout.
+	 */
+	public final String toTextHeader() {
+		StringBuilder header = new StringBuilder("Step");
+		StringBuilder unitLine = new StringBuilder("Number");
+		for (int i = 0; i < labels.length; i++) {
+			header.append('\t');
+			header.append(labels[i]);
+			unitLine.append('\t');
+			unitLine.append(units[i]);
+		}
+		header.append('\n');
+		unitLine.append('\n');
+		return header.toString() + unitLine.toString();
+	}
+}
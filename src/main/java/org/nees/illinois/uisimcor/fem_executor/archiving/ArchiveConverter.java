@@ -0,0 +1,160 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts binary and compressed archives into the text layout written by
+ * {@link DataArchive} and {@link HeaderArchive} so that existing tools can
+ * read them. The frames are streamed so the archive does not have to fit in
+ * memory.
+ * @author Michael Bletzinger
+ */
+public class ArchiveConverter {
+	/**
+	 * Number of text records written at once.
+	 */
+	private final int recordsPerWrite = 1000;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(ArchiveConverter.class);
+
+	/**
+	 * Convert the archives named on the command line. The text files are
+	 * written next to the binary files.
+	 * @param args
+	 *            Paths to <em>.bin</em> or <em>.cmp</em> files.
+	 */
+	public static void main(final String[] args) {
+		ArchiveConverter converter = new ArchiveConverter();
+		for (String a : args) {
+			converter.toText(new File(a));
+		}
+	}
+
+	/**
+	 * Stream the frames of a compressed archive into a text archive.
+	 * @param compressed
+	 *            Path to the <em>.cmp</em> file.
+	 * @param textPath
+	 *            Path of the text archive without extension.
+	 * @return True if successful.
+	 */
+	private boolean compressedToText(final File compressed,
+			final String textPath) {
+		CompressedArchiveReader reader;
+		try {
+			reader = new CompressedArchiveReader(compressed);
+		} catch (IOException e) {
+			log.error("Cannot read \"" + compressed + "\" because ", e);
+			return false;
+		}
+		DataArchive data = createText(reader.getColumns(), textPath);
+		if (data == null) {
+			reader.close();
+			return false;
+		}
+		double[] values = new double[reader.getColumns().size()];
+		boolean result = true;
+		try {
+			while (reader.next()) {
+				reader.read(values);
+				data.write(reader.getStep(), values);
+			}
+		} catch (IOException e) {
+			log.error("Cannot read \"" + compressed + "\" because ", e);
+			result = false;
+		} finally {
+			data.close();
+			reader.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Replace the text files and write the header.
+	 * @param columns
+	 *            Column labels and units.
+	 * @param textPath
+	 *            Path of the text archive without extension.
+	 * @return The text archive or null if the files cannot be replaced.
+	 */
+	private DataArchive createText(final ArchiveColumns columns,
+			final String textPath) {
+		File txt = new File(textPath + ".txt");
+		File hdr = new File(textPath + "_hdr.txt");
+		if ((txt.exists() && txt.delete() == false)
+				|| (hdr.exists() && hdr.delete() == false)) {
+			log.error("Cannot replace the text files at \"" + textPath + "\"");
+			return null;
+		}
+		HeaderArchive header = new HeaderArchive(textPath, columns);
+		header.write();
+		ArchiveDao policy = new ArchiveDao();
+		policy.setFlushRecords(recordsPerWrite);
+		return new DataArchive(textPath, policy);
+	}
+
+	/**
+	 * Convert a binary or compressed archive into text files next to it.
+	 * @param binary
+	 *            Path to the <em>.bin</em> or <em>.cmp</em> file.
+	 * @return True if successful.
+	 */
+	public final boolean toText(final File binary) {
+		String p = binary.getPath();
+		if (p.endsWith(".bin") || p.endsWith(".cmp")) {
+			p = p.substring(0, p.length() - ".bin".length());
+		}
+		return toText(binary, p);
+	}
+
+	/**
+	 * Convert a binary or compressed archive into a text archive and a header
+	 * file.
+	 * @param binary
+	 *            Path to the <em>.bin</em> or <em>.cmp</em> file.
+	 * @param textPath
+	 *            Path of the text archive without extension. The files
+	 *            <em>textPath.txt</em> and <em>textPath_hdr.txt</em> are
+	 *            created.
+	 * @return True if successful.
+	 */
+	public final boolean toText(final File binary, final String textPath) {
+		if (binary.getName().endsWith(".cmp")) {
+			return compressedToText(binary, textPath);
+		}
+		BinaryArchiveReader reader;
+		try {
+			reader = new BinaryArchiveReader(binary);
+		} catch (IOException e) {
+			log.error("Cannot read \"" + binary + "\" because ", e);
+			return false;
+		}
+		DataArchive data = createText(reader.getColumns(), textPath);
+		if (data == null) {
+			reader.close();
+			return false;
+		}
+		double[] values = new double[reader.getColumns().size()];
+		boolean result = true;
+		try {
+			for (long f = 0; f < reader.getFrameCount(); f++) {
+				int step = reader.readFrame(f, values);
+				data.write(step, values);
+			}
+		} catch (IOException e) {
+			log.error("Cannot read \"" + binary + "\" because ", e);
+			result = false;
+		} finally {
+			data.close();
+			reader.close();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,234 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Self-describing header shared by the binary archive formats. The header
+ * consists of an 8 byte magic, an int format version, an int number of
+ * columns, an int index or block interval and a label and units string for
+ * each column. Strings are stored as an int byte length followed by UTF-8
+ * bytes. All numbers are little-endian.
+ * @author Michael Bletzinger
+ */
+public class ArchiveHeader {
+	/**
+	 * Size of an int in bytes.
+	 */
+	private static final int INT_SIZE = 4;
+
+	/**
+	 * Decode UTF-8 bytes.
+	 * @param bytes
+	 *            The bytes.
+	 * @return The string.
+	 */
+	static String decodeString(final byte[] bytes) {
+		try {
+			return new String(bytes, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			return new String(bytes);
+		}
+	}
+
+	/**
+	 * Encode a header.
+	 * @param magic
+	 *            8 character format identifier.
+	 * @param version
+	 *            Format version.
+	 * @param columns
+	 *            Column labels and units.
+	 * @param interval
+	 *            Index or block interval of the format.
+	 * @return The header bytes ready for writing.
+	 */
+	static ByteBuffer encode(final String magic, final int version,
+			final ArchiveColumns columns, final int interval) {
+		String[] labels = columns.getLabels();
+		String[] units = columns.getUnits();
+		byte[][] encoded = new byte[2 * labels.length][];
+		int size = magic.length() + 3 * INT_SIZE;
+		for (int i = 0; i < labels.length; i++) {
+			encoded[2 * i] = encodeString(labels[i]);
+			encoded[2 * i + 1] = encodeString(units[i]);
+			size += 2 * INT_SIZE + encoded[2 * i].length
+					+ encoded[2 * i + 1].length;
+		}
+		ByteBuffer result = ByteBuffer.allocate(size).order(
+				ByteOrder.LITTLE_ENDIAN);
+		result.put(encodeString(magic));
+		result.putInt(version);
+		result.putInt(labels.length);
+		result.putInt(interval);
+		for (byte[] e : encoded) {
+			result.putInt(e.length);
+			result.put(e);
+		}
+		result.flip();
+		return result;
+	}
+
+	/**
+	 * Encode a string as UTF-8 bytes.
+	 * @param str
+	 *            The string.
+	 * @return The encoded bytes.
+	 */
+	static byte[] encodeString(final String str) {
+		try {
+			return str.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported.
+			return str.getBytes();
+		}
+	}
+
+	/**
+	 * Read a little-endian block of bytes from a channel.
+	 * @param channel
+	 *            The channel.
+	 * @param position
+	 *            File position.
+	 * @param size
+	 *            Number of bytes.
+	 * @return Buffer ready for reading.
+	 * @throws IOException
+	 *             if the bytes cannot be read.
+	 */
+	static ByteBuffer read(final FileChannel channel, final long position,
+			final int size) throws IOException {
+		ByteBuffer result = ByteBuffer.allocate(size).order(
+				ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, position, result);
+		return result;
+	}
+
+	/**
+	 * Read and check the header of an archive.
+	 * @param channel
+	 *            Open archive file.
+	 * @param path
+	 *            Path of the archive for messages.
+	 * @param magic
+	 *            Expected format identifier.
+	 * @param version
+	 *            Expected format version.
+	 * @return The header.
+	 * @throws IOException
+	 *             if the header cannot be read or does not match.
+	 */
+	static ArchiveHeader read(final FileChannel channel, final File path,
+			final String magic, final int version) throws IOException {
+		int fixedSize = magic.length() + 3 * INT_SIZE;
+		if (channel.size() < fixedSize) {
+			throw new IOException("\"" + path + "\" is too short");
+		}
+		ByteBuffer fixed = read(channel, 0, fixedSize);
+		byte[] m = new byte[magic.length()];
+		fixed.get(m);
+		if (magic.equals(decodeString(m)) == false) {
+			throw new IOException("\"" + path + "\" is not a " + magic
+					+ " archive");
+		}
+		int v = fixed.getInt();
+		if (v != version) {
+			throw new IOException("\"" + path + "\" has unsupported version "
+					+ v);
+		}
+		int size = fixed.getInt();
+		int interval = fixed.getInt();
+		String[] labels = new String[size];
+		String[] units = new String[size];
+		long pos = fixedSize;
+		for (int i = 0; i < size; i++) {
+			int len = read(channel, pos, INT_SIZE).getInt();
+			labels[i] = decodeString(read(channel, pos + INT_SIZE, len)
+					.array());
+			pos += INT_SIZE + len;
+			len = read(channel, pos, INT_SIZE).getInt();
+			units[i] = decodeString(read(channel, pos + INT_SIZE, len)
+					.array());
+			pos += INT_SIZE + len;
+		}
+		return new ArchiveHeader(new ArchiveColumns(labels, units), interval,
+				pos);
+	}
+
+	/**
+	 * Fill a buffer from a channel.
+	 * @param channel
+	 *            The channel.
+	 * @param position
+	 *            File position.
+	 * @param buf
+	 *            Buffer to fill. It is flipped for reading afterwards.
+	 * @throws IOException
+	 *             if the bytes cannot be read.
+	 */
+	static void readFully(final FileChannel channel, final long position,
+			final ByteBuffer buf) throws IOException {
+		long pos = position;
+		while (buf.hasRemaining()) {
+			int n = channel.read(buf, pos);
+			if (n < 0) {
+				throw new IOException("Unexpected end of file at " + pos);
+			}
+			pos += n;
+		}
+		buf.flip();
+	}
+
+	/**
+	 * Column labels and units.
+	 */
+	private final ArchiveColumns columns;
+	/**
+	 * Index or block interval of the format.
+	 */
+	private final int interval;
+	/**
+	 * Size of the header in bytes.
+	 */
+	private final long size;
+
+	/**
+	 * @param columns
+	 *            Column labels and units.
+	 * @param interval
+	 *            Index or block interval of the format.
+	 * @param size
+	 *            Size of the header in bytes.
+	 */
+	public ArchiveHeader(final ArchiveColumns columns, final int interval,
+			final long size) {
+		this.columns = columns;
+		this.interval = interval;
+		this.size = size;
+	}
+
+	/**
+	 * @return the column labels and units.
+	 */
+	public final ArchiveColumns getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return the index or block interval of the format.
+	 */
+	public final int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * @return the size of the header in bytes.
+	 */
+	public final long getSize() {
+		return size;
+	}
+}
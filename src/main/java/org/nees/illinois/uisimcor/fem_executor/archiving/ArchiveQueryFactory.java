@@ -0,0 +1,90 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens the query reader which matches the format of an archive file.
+ * @author Michael Bletzinger
+ */
+public class ArchiveQueryFactory {
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory
+			.getLogger(ArchiveQueryFactory.class);
+	/**
+	 * Number of threads used by each reader.
+	 */
+	private final int threads;
+
+	/**
+	 * Create a factory which uses one thread per processor.
+	 */
+	public ArchiveQueryFactory() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads
+	 *            Number of threads used by each reader.
+	 */
+	public ArchiveQueryFactory(final int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Find an archive in a log directory and open it for queries. Compressed
+	 * archives are converted to text first.
+	 * @param dir
+	 *            Substructure log directory.
+	 * @param name
+	 *            Archive name such as <em>Displacements</em>.
+	 * @return The reader or null if there is no readable archive.
+	 */
+	public final ArchiveQueryI open(final File dir, final String name) {
+		File bin = new File(dir, name + ".bin");
+		if (bin.exists()) {
+			return open(bin);
+		}
+		File cmp = new File(dir, name + ".cmp");
+		if (cmp.exists()) {
+			ArchiveConverter conv = new ArchiveConverter();
+			if (conv.toText(cmp) == false) {
+				return null;
+			}
+		}
+		File txt = new File(dir, name + ".txt");
+		if (txt.exists()) {
+			return open(txt);
+		}
+		return null;
+	}
+
+	/**
+	 * Open an archive for queries.
+	 * @param path
+	 *            Path to a <em>.bin</em> or <em>.txt</em> archive file.
+	 * @return The reader or null if the archive cannot be read or has a format
+	 *         which does not support queries.
+	 */
+	public final ArchiveQueryI open(final File path) {
+		String name = path.getName();
+		try {
+			if (name.endsWith(".bin")) {
+				return new BinaryArchiveReader(path, threads);
+			}
+			if (name.endsWith(".txt")) {
+				return new MappedTextArchiveReader(path, threads);
+			}
+		} catch (IOException e) {
+			log.error("Cannot read \"" + path + "\" because ", e);
+			return null;
+		}
+		log.error("\"" + path + "\" cannot be queried. Convert it to text first");
+		return null;
+	}
+}
@@ -0,0 +1,46 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.io.IOException;
+
+/**
+ * Interface for readers which answer step and column queries on a
+ * displacement or force archive without reading the whole file.
+ * @author Michael Bletzinger
+ */
+public interface ArchiveQueryI {
+	/**
+	 * Read all of the columns of a step.
+	 * @param step
+	 *            Step number.
+	 * @return One value per column or null if the step is not in the archive.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	double[] atStep(int step) throws IOException;
+
+	/**
+	 * Release the archive file.
+	 */
+	void close();
+
+	/**
+	 * @return the column labels and units.
+	 */
+	ArchiveColumns getColumns();
+
+	/**
+	 * Read the history of a column.
+	 * @param column
+	 *            Column index. See {@link ArchiveColumns#indexOf(String)}.
+	 * @param fromStep
+	 *            First step of the range.
+	 * @param toStep
+	 *            Last step of the range.
+	 * @return The steps in the range which are in the archive and the column
+	 *         value of each.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	ArchiveSeries history(int column, int fromStep, int toStep)
+			throws IOException;
+}
@@ -0,0 +1,117 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+/**
+ * Work item of the {@link ArchiveWriter}. Records are pooled and reused by the
+ * writer.
+ * @author Michael Bletzinger
+ */
+class ArchiveRecord {
+	/**
+	 * Flag indicating that the target is to be closed instead of written.
+	 */
+	private boolean close;
+	/**
+	 * Data archive target. Null for text records.
+	 */
+	private DataArchiveI dataTarget;
+	/**
+	 * Time in nanoseconds when the record was queued.
+	 */
+	private long queuedNanos;
+	/**
+	 * Step number of a data record.
+	 */
+	private int step;
+	/**
+	 * Text of a text record.
+	 */
+	private String text;
+	/**
+	 * Text archive target. Null for data records.
+	 */
+	private TextArchiveI textTarget;
+	/**
+	 * Values of a data record. Reused between records of the same size.
+	 */
+	private double[] values = new double[0];
+
+	/**
+	 * Clear the record so that it does not hold on to its targets.
+	 */
+	final void clear() {
+		dataTarget = null;
+		textTarget = null;
+		text = null;
+		close = false;
+	}
+
+	/**
+	 * @return the time in nanoseconds when the record was queued.
+	 */
+	final long getQueuedNanos() {
+		return queuedNanos;
+	}
+
+	/**
+	 * Perform the work of the record.
+	 */
+	final void perform() {
+		if (dataTarget != null) {
+			if (close) {
+				dataTarget.close();
+				return;
+			}
+			dataTarget.write(step, values);
+			return;
+		}
+		if (close) {
+			textTarget.close();
+			return;
+		}
+		textTarget.write(text);
+	}
+
+	/**
+	 * Set up a data record.
+	 * @param target
+	 *            Archive to write to.
+	 * @param stepNumber
+	 *            Step number.
+	 * @param data
+	 *            Values. They are copied.
+	 * @param closeTarget
+	 *            True if the archive is to be closed instead.
+	 */
+	final void setData(final DataArchiveI target, final int stepNumber,
+			final double[] data, final boolean closeTarget) {
+		clear();
+		dataTarget = target;
+		close = closeTarget;
+		step = stepNumber;
+		if (data != null) {
+			if (values.length != data.length) {
+				values = new double[data.length];
+			}
+			System.arraycopy(data, 0, values, 0, data.length);
+		}
+		queuedNanos = System.nanoTime();
+	}
+
+	/**
+	 * Set up a text record.
+	 * @param target
+	 *            Archive to write to.
+	 * @param record
+	 *            Text.
+	 * @param closeTarget
+	 *            True if the archive is to be closed instead.
+	 */
+	final void setText(final TextArchiveI target, final String record,
+			final boolean closeTarget) {
+		clear();
+		textTarget = target;
+		close = closeTarget;
+		text = record;
+		queuedNanos = System.nanoTime();
+	}
+}
@@ -0,0 +1,48 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+/**
+ * History of one archive column over a range of steps.
+ * @author Michael Bletzinger
+ */
+public class ArchiveSeries {
+	/**
+	 * Step number of each value.
+	 */
+	private final int[] steps;
+	/**
+	 * Column values.
+	 */
+	private final double[] values;
+
+	/**
+	 * @param steps
+	 *            Step number of each value.
+	 * @param values
+	 *            Column values.
+	 */
+	public ArchiveSeries(final int[] steps, final double[] values) {
+		this.steps = steps;
+		this.values = values;
+	}
+
+	/**
+	 * @return the step number of each value.
+	 */
+	public final int[] getSteps() {
+		return steps;
+	}
+
+	/**
+	 * @return the column values.
+	 */
+	public final double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * @return the number of values.
+	 */
+	public final int size() {
+		return steps.length;
+	}
+}
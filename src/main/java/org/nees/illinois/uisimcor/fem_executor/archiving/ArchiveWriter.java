@@ -0,0 +1,379 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.nees.illinois.uisimcor.fem_executor.config.types.ArchiveQueuePolicy;
+import org.nees.illinois.uisimcor.fem_executor.process.AbortableI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Service which writes archive records on a background thread so that disk
+ * latency does not add to the step latency. Records are queued in a bounded
+ * queue. When the queue is full the step loop waits. With the
+ * {@link ArchiveQueuePolicy#Grow Grow} policy the queue first grows up to its
+ * maximum capacity.
+ * @author Michael Bletzinger
+ */
+public class ArchiveWriter implements AbortableI {
+	/**
+	 * Capacity before the queue is considered to have grown.
+	 */
+	private final int capacity;
+	/**
+	 * Number of records written.
+	 */
+	private long completed = 0;
+	/**
+	 * Reusable records.
+	 */
+	private final ConcurrentLinkedQueue<ArchiveRecord> free = new ConcurrentLinkedQueue<ArchiveRecord>();
+	/**
+	 * Number of times a record was queued beyond the capacity.
+	 */
+	private long grownCount = 0;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(ArchiveWriter.class);
+	/**
+	 * Largest queue depth so far.
+	 */
+	private int maxDepth = 0;
+	/**
+	 * Largest time in nanoseconds from queuing to writing a record.
+	 */
+	private long maxLatencyNanos = 0;
+	/**
+	 * Number of times the step loop had to wait for room in the queue.
+	 */
+	private long blockedCount = 0;
+	/**
+	 * Time in milliseconds the writer waits for records before checking the
+	 * quit flag.
+	 */
+	private final int pollInterval = 100;
+	/**
+	 * Queued records.
+	 */
+	private final BlockingQueue<ArchiveRecord> queue;
+	/**
+	 * Flag to stop the thread.
+	 */
+	private boolean quit = false;
+	/**
+	 * Number of records queued.
+	 */
+	private long submitted = 0;
+	/**
+	 * Thread running the writer.
+	 */
+	private Thread thread = null;
+	/**
+	 * Sum of the times in nanoseconds from queuing to writing a record.
+	 */
+	private long totalLatencyNanos = 0;
+
+	/**
+	 * @param cfg
+	 *            Archive parameters with the queue capacities and policy.
+	 */
+	public ArchiveWriter(final ArchiveDao cfg) {
+		this.capacity = Math.max(1, cfg.getQueueCapacity());
+		int bound = capacity;
+		if (cfg.getQueuePolicy().equals(ArchiveQueuePolicy.Grow)) {
+			bound = Math.max(capacity, cfg.getQueueMaxCapacity());
+		}
+		this.queue = new LinkedBlockingQueue<ArchiveRecord>(bound);
+	}
+
+	/**
+	 * Wait until all of the queued records have been written.
+	 * @param waitInMillisecs
+	 *            Maximum time to wait.
+	 * @return True if the queue was drained.
+	 */
+	public final synchronized boolean drain(final long waitInMillisecs) {
+		long deadline = System.currentTimeMillis() + waitInMillisecs;
+		while (completed < submitted) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				log.error("Archive writer still has " + (submitted - completed)
+						+ " records queued");
+				return false;
+			}
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				log.debug("Interrupted while draining");
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of times the step loop had to wait for room in the
+	 *         queue.
+	 */
+	public final synchronized long getBlockedCount() {
+		return blockedCount;
+	}
+
+	/**
+	 * @return the number of times a record was queued beyond the capacity.
+	 */
+	public final synchronized long getGrownCount() {
+		return grownCount;
+	}
+
+	/**
+	 * @return the largest queue depth so far.
+	 */
+	public final synchronized int getMaxQueueDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return the largest time in nanoseconds from queuing to writing a
+	 *         record.
+	 */
+	public final synchronized long getMaxWriteLatencyNanos() {
+		return maxLatencyNanos;
+	}
+
+	/**
+	 * @return the mean time in nanoseconds from queuing to writing a record.
+	 */
+	public final synchronized long getMeanWriteLatencyNanos() {
+		if (completed == 0) {
+			return 0;
+		}
+		return totalLatencyNanos / completed;
+	}
+
+	/**
+	 * @return the number of records waiting to be written.
+	 */
+	public final int getQueueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * @return the number of records written.
+	 */
+	public final synchronized long getWrittenCount() {
+		return completed;
+	}
+
+	@Override
+	public final synchronized boolean isQuit() {
+		return quit;
+	}
+
+	/**
+	 * @return a record from the pool.
+	 */
+	private ArchiveRecord obtain() {
+		ArchiveRecord result = free.poll();
+		if (result == null) {
+			result = new ArchiveRecord();
+		}
+		return result;
+	}
+
+	/**
+	 * Queue a record. Waits if the queue is full. The record is written
+	 * directly if the writer thread is not running.
+	 * @param rec
+	 *            The record.
+	 */
+	private void queue(final ArchiveRecord rec) {
+		boolean direct;
+		synchronized (this) {
+			submitted++;
+			direct = thread == null;
+		}
+		if (direct) {
+			perform(rec);
+			return;
+		}
+		if (queue.offer(rec) == false) {
+			synchronized (this) {
+				blockedCount++;
+			}
+			putUninterruptibly(rec);
+		}
+		int depth = queue.size();
+		synchronized (this) {
+			if (depth > maxDepth) {
+				maxDepth = depth;
+			}
+			if (depth > capacity) {
+				grownCount++;
+			}
+		}
+	}
+
+	/**
+	 * Wait for room in the queue and queue a record. The record is never
+	 * written on the calling thread because that would race the writer thread
+	 * on the same archive and overtake records which are still queued. An
+	 * interrupt is remembered and restored once the record is queued.
+	 * @param rec
+	 *            The record.
+	 */
+	private void putUninterruptibly(final ArchiveRecord rec) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				queue.put(rec);
+				break;
+			} catch (InterruptedException e) {
+				log.debug("Interrupted while queuing an archive record");
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Perform a record and update the metrics.
+	 * @param rec
+	 *            The record.
+	 */
+	private void perform(final ArchiveRecord rec) {
+		try {
+			rec.perform();
+		} catch (RuntimeException e) {
+			log.error("Archive record failed because ", e);
+		}
+		long latency = System.nanoTime() - rec.getQueuedNanos();
+		rec.clear();
+		free.offer(rec);
+		synchronized (this) {
+			completed++;
+			totalLatencyNanos += latency;
+			if (latency > maxLatencyNanos) {
+				maxLatencyNanos = latency;
+			}
+			notifyAll();
+		}
+	}
+
+	@Override
+	public final void run() {
+		while (isQuit() == false || queue.isEmpty() == false) {
+			ArchiveRecord rec;
+			try {
+				rec = queue.poll(pollInterval, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				log.debug("Interrupted");
+				continue;
+			}
+			if (rec != null) {
+				perform(rec);
+			}
+		}
+		log.debug("Archive writer has stopped");
+	}
+
+	@Override
+	public final synchronized void setQuit(final boolean quit) {
+		this.quit = quit;
+	}
+
+	/**
+	 * Start the writer thread.
+	 */
+	public final synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		quit = false;
+		thread = new Thread(this);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Write the remaining records and stop the writer thread.
+	 * @param waitInMillisecs
+	 *            Maximum time to wait for the queue to drain.
+	 * @return True if the queue was drained.
+	 */
+	public final boolean stop(final long waitInMillisecs) {
+		boolean result = drain(waitInMillisecs);
+		setQuit(true);
+		Thread t;
+		synchronized (this) {
+			t = thread;
+			thread = null;
+		}
+		if (t != null) {
+			try {
+				t.join(pollInterval * 2);
+			} catch (InterruptedException e) {
+				log.debug("Interrupted while stopping");
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Queue closing a data archive. Records queued before are written first.
+	 * @param target
+	 *            The archive.
+	 */
+	public final void submitClose(final DataArchiveI target) {
+		ArchiveRecord rec = obtain();
+		rec.setData(target, 0, null, true);
+		queue(rec);
+	}
+
+	/**
+	 * Queue closing a text archive. Records queued before are written first.
+	 * @param target
+	 *            The archive.
+	 */
+	public final void submitClose(final TextArchiveI target) {
+		ArchiveRecord rec = obtain();
+		rec.setText(target, null, true);
+		queue(rec);
+	}
+
+	/**
+	 * Queue a data record.
+	 * @param target
+	 *            The archive.
+	 * @param step
+	 *            Step number.
+	 * @param data
+	 *            Values. They are copied before this function returns.
+	 */
+	public final void submit(final DataArchiveI target, final int step,
+			final double[] data) {
+		ArchiveRecord rec = obtain();
+		rec.setData(target, step, data, false);
+		queue(rec);
+	}
+
+	/**
+	 * Queue a text record.
+	 * @param target
+	 *            The archive.
+	 * @param record
+	 *            Text.
+	 */
+	public final void submit(final TextArchiveI target, final String record) {
+		ArchiveRecord rec = obtain();
+		rec.setText(target, record, false);
+		queue(rec);
+	}
+}
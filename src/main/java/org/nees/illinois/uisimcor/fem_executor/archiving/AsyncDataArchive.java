@@ -0,0 +1,38 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+/**
+ * Data archive which hands its records to an {@link ArchiveWriter}.
+ * @author Michael Bletzinger
+ */
+public class AsyncDataArchive implements DataArchiveI {
+	/**
+	 * Archive which does the writing.
+	 */
+	private final DataArchiveI archive;
+	/**
+	 * Writer service.
+	 */
+	private final ArchiveWriter writer;
+
+	/**
+	 * @param archive
+	 *            Archive which does the writing.
+	 * @param writer
+	 *            Writer service.
+	 */
+	public AsyncDataArchive(final DataArchiveI archive,
+			final ArchiveWriter writer) {
+		this.archive = archive;
+		this.writer = writer;
+	}
+
+	@Override
+	public final void close() {
+		writer.submitClose(archive);
+	}
+
+	@Override
+	public final void write(final int step, final double[] data) {
+		writer.submit(archive, step, data);
+	}
+}
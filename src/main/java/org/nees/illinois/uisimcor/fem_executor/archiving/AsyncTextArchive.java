@@ -0,0 +1,38 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+/**
+ * Text archive which hands its records to an {@link ArchiveWriter}.
+ * @author Michael Bletzinger
+ */
+public class AsyncTextArchive implements TextArchiveI {
+	/**
+	 * Archive which does the writing.
+	 */
+	private final TextArchiveI archive;
+	/**
+	 * Writer service.
+	 */
+	private final ArchiveWriter writer;
+
+	/**
+	 * @param archive
+	 *            Archive which does the writing.
+	 * @param writer
+	 *            Writer service.
+	 */
+	public AsyncTextArchive(final TextArchiveI archive,
+			final ArchiveWriter writer) {
+		this.archive = archive;
+		this.writer = writer;
+	}
+
+	@Override
+	public final void close() {
+		writer.submitClose(archive);
+	}
+
+	@Override
+	public final void write(final String record) {
+		writer.submit(archive, record);
+	}
+}
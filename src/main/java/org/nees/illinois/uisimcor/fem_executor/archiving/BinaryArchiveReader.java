@@ -0,0 +1,487 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads an archive written by {@link BinaryDataArchive} and answers queries
+ * on it. The frames are memory mapped once in large segments when the archive
+ * is opened. The reader sees the frames which were complete at that time.
+ * <p>
+ * The sparse index divides the frames into intervals whose steps ascend. A
+ * step is found by a binary search within the intervals which can hold it.
+ * If the intervals themselves ascend, which is how the executor writes the
+ * steps, those intervals are found with a binary search as well. Otherwise
+ * each interval is checked against its first and last step. A step which was
+ * written more than once, for example after a step was repeated, is in
+ * several intervals. The index is rebuilt from the frames if the
+ * <em>.idx</em> file is missing. Long histories are read in parallel chunks.
+ * </p>
+ * @author Michael Bletzinger
+ */
+public class BinaryArchiveReader implements ArchiveQueryI {
+	/**
+	 * Largest mapped segment in bytes.
+	 */
+	private static final int MAX_SEGMENT = 1 << 28;
+	/**
+	 * Open archive file.
+	 */
+	private final FileChannel channel;
+	/**
+	 * Column labels and units.
+	 */
+	private final ArchiveColumns columns;
+	/**
+	 * Number of complete frames.
+	 */
+	private final long frameCount;
+	/**
+	 * Size of a frame in bytes.
+	 */
+	private final int frameSize;
+	/**
+	 * First frame of each index interval.
+	 */
+	private long[] indexFrames;
+	/**
+	 * Last step of each index interval.
+	 */
+	private final int[] indexLastSteps;
+	/**
+	 * First step of each index interval.
+	 */
+	private int[] indexSteps;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory
+			.getLogger(BinaryArchiveReader.class);
+	/**
+	 * Smallest number of frames read by a separate thread.
+	 */
+	private int parallelThreshold = 1 << 16;
+	/**
+	 * Path to the archive file.
+	 */
+	private final File path;
+	/**
+	 * Splits long histories into chunks.
+	 */
+	private final ParallelScan scan;
+	/**
+	 * Number of frames in a segment.
+	 */
+	private final int segmentFrames;
+	/**
+	 * Mapped frames.
+	 */
+	private final ByteBuffer[] segments;
+	/**
+	 * True if the steps ascend across all of the index intervals.
+	 */
+	private final boolean sorted;
+
+	/**
+	 * Open an archive for reading on the calling thread.
+	 * @param path
+	 *            Path to the <em>.bin</em> file.
+	 * @throws IOException
+	 *             if the file cannot be read or is not a binary archive.
+	 */
+	public BinaryArchiveReader(final File path) throws IOException {
+		this(path, 1);
+	}
+
+	/**
+	 * Open an archive, map its frames and read its index.
+	 * @param path
+	 *            Path to the <em>.bin</em> file.
+	 * @param threads
+	 *            Number of threads used for long histories.
+	 * @throws IOException
+	 *             if the file cannot be read or is not a binary archive.
+	 */
+	public BinaryArchiveReader(final File path, final int threads)
+			throws IOException {
+		this.path = path;
+		this.channel = new RandomAccessFile(path, "r").getChannel();
+		ArchiveHeader header;
+		try {
+			header = ArchiveHeader.read(channel, path,
+					BinaryDataArchive.MAGIC, BinaryDataArchive.VERSION);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		this.columns = header.getColumns();
+		this.frameSize = BinaryDataArchive.frameSize(columns.size());
+		this.frameCount = (channel.size() - header.getSize()) / frameSize;
+		this.segmentFrames = Math.max(1, MAX_SEGMENT / frameSize);
+		int n = (int) ((frameCount + segmentFrames - 1) / segmentFrames);
+		this.segments = new ByteBuffer[n];
+		for (int s = 0; s < n; s++) {
+			long first = (long) s * segmentFrames;
+			long frames = Math.min(segmentFrames, frameCount - first);
+			segments[s] = channel.map(MapMode.READ_ONLY,
+					header.getSize() + first * frameSize, frames * frameSize)
+					.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		this.scan = new ParallelScan(threads);
+		readIndex();
+		if (indexFrames.length == 0 && frameCount > 0) {
+			log.info("Rebuilding the missing index of \"" + path + "\"");
+			rebuildIndex();
+		}
+		int entries = indexFrames.length;
+		this.indexLastSteps = new int[entries];
+		boolean ascending = true;
+		for (int i = 0; i < entries; i++) {
+			indexLastSteps[i] = step(intervalEnd(i) - 1);
+			if (i > 0 && indexSteps[i] <= indexLastSteps[i - 1]) {
+				ascending = false;
+			}
+		}
+		this.sorted = ascending;
+	}
+
+	@Override
+	public final double[] atStep(final int step) {
+		List<long[]> found = ranges(step, step);
+		if (found.isEmpty()) {
+			return null;
+		}
+		// The last frame of a repeated step is the one which counts.
+		long f = found.get(found.size() - 1)[1] - 1;
+		double[] result = new double[columns.size()];
+		for (int c = 0; c < result.length; c++) {
+			result[c] = value(f, c);
+		}
+		return result;
+	}
+
+	@Override
+	public final void close() {
+		scan.shutdown();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			log.debug("Who cares", e);
+		}
+	}
+
+	/**
+	 * Find the first frame of a step.
+	 * @param step
+	 *            Step number.
+	 * @return The frame number or -1 if the step is not in the archive.
+	 */
+	public final long findFrame(final int step) {
+		List<long[]> found = ranges(step, step);
+		if (found.isEmpty()) {
+			return -1;
+		}
+		return found.get(0)[0];
+	}
+
+	@Override
+	public final ArchiveColumns getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return the number of complete frames.
+	 */
+	public final long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return the smallest number of frames read by a separate thread.
+	 */
+	public final int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	/**
+	 * @return the path to the archive file.
+	 */
+	public final File getPath() {
+		return path;
+	}
+
+	/**
+	 * {@inheritDoc} The frames are returned in the order they were written.
+	 */
+	@Override
+	public final ArchiveSeries history(final int column, final int fromStep,
+			final int toStep) throws IOException {
+		if (column < 0 || column >= columns.size()) {
+			log.error("Column " + column + " is not in \"" + path + "\"");
+			return null;
+		}
+		List<long[]> found = ranges(fromStep, toStep);
+		final long[] firstFrames = new long[found.size()];
+		final long[] offsets = new long[found.size() + 1];
+		for (int r = 0; r < firstFrames.length; r++) {
+			long[] range = found.get(r);
+			firstFrames[r] = range[0];
+			offsets[r + 1] = offsets[r] + range[1] - range[0];
+		}
+		int n = (int) offsets[firstFrames.length];
+		final int[] steps = new int[n];
+		final double[] values = new double[n];
+		if (n == 0) {
+			return new ArchiveSeries(steps, values);
+		}
+		scan.run(n, parallelThreshold, Integer.MAX_VALUE, new ChunkScanI() {
+			@Override
+			public void scan(final int chunk, final long from, final long to) {
+				int r = 0;
+				while (offsets[r + 1] <= from) {
+					r++;
+				}
+				for (long i = from; i < to; i++) {
+					while (offsets[r + 1] <= i) {
+						r++;
+					}
+					long f = firstFrames[r] + i - offsets[r];
+					steps[(int) i] = step(f);
+					values[(int) i] = value(f, column);
+				}
+			}
+		});
+		return new ArchiveSeries(steps, values);
+	}
+
+	/**
+	 * @param interval
+	 *            Index interval.
+	 * @return the frame after the last frame of the interval.
+	 */
+	private long intervalEnd(final int interval) {
+		if (interval + 1 < indexFrames.length) {
+			return indexFrames[interval + 1];
+		}
+		return frameCount;
+	}
+
+	/**
+	 * Find the first frame of an index interval whose step is not less than a
+	 * step.
+	 * @param interval
+	 *            Index interval.
+	 * @param step
+	 *            Step number.
+	 * @return The frame number. The end of the interval if all steps are
+	 *         less.
+	 */
+	private long lowerBound(final int interval, final long step) {
+		long lo = indexFrames[interval];
+		long hi = intervalEnd(interval);
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			if (step(mid) < step) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Find the frames whose steps are in a range.
+	 * @param fromStep
+	 *            First step of the range.
+	 * @param toStep
+	 *            Last step of the range.
+	 * @return The first frame and the frame after the last frame of each
+	 *         group of matching frames in the order they were written.
+	 */
+	private List<long[]> ranges(final long fromStep, final long toStep) {
+		List<long[]> result = new ArrayList<long[]>();
+		int entries = indexFrames.length;
+		int i = 0;
+		if (sorted) {
+			int hi = entries;
+			while (i < hi) {
+				int mid = (i + hi) >>> 1;
+				if (indexLastSteps[mid] < fromStep) {
+					i = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+		}
+		while (i < entries) {
+			if (indexSteps[i] > toStep) {
+				if (sorted) {
+					break;
+				}
+				i++;
+				continue;
+			}
+			if (indexLastSteps[i] >= fromStep) {
+				long a = lowerBound(i, fromStep);
+				long b = lowerBound(i, toStep + 1);
+				if (a < b) {
+					long[] last = null;
+					if (result.isEmpty() == false) {
+						last = result.get(result.size() - 1);
+					}
+					if (last != null && last[1] == a) {
+						last[1] = b;
+					} else {
+						result.add(new long[] { a, b });
+					}
+				}
+			}
+			i++;
+		}
+		return result;
+	}
+
+	/**
+	 * Read a frame.
+	 * @param frame
+	 *            Frame number.
+	 * @param out
+	 *            Array receiving one value per column.
+	 * @return The step number of the frame.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	public final int readFrame(final long frame, final double[] out)
+			throws IOException {
+		if (frame < 0 || frame >= frameCount) {
+			throw new IOException("Frame " + frame + " is not in \"" + path
+					+ "\"");
+		}
+		for (int c = 0; c < out.length; c++) {
+			out[c] = value(frame, c);
+		}
+		return step(frame);
+	}
+
+	/**
+	 * Read the sparse index. Entries which point past the last complete frame
+	 * are dropped.
+	 * @throws IOException
+	 *             if the index cannot be read.
+	 */
+	private void readIndex() throws IOException {
+		String p = path.getPath();
+		File idx = null;
+		if (p.endsWith(".bin")) {
+			idx = new File(p.substring(0, p.length() - ".bin".length())
+					+ ".idx");
+		}
+		int entries = 0;
+		ByteBuffer ibuf = null;
+		if (idx != null && idx.canRead()) {
+			FileChannel ich = new RandomAccessFile(idx, "r").getChannel();
+			try {
+				entries = (int) (ich.size() / BinaryDataArchive.INDEX_ENTRY_SIZE);
+				ibuf = ArchiveHeader.read(ich, 0, entries
+						* BinaryDataArchive.INDEX_ENTRY_SIZE);
+			} finally {
+				ich.close();
+			}
+		}
+		int[] isteps = new int[entries];
+		long[] iframes = new long[entries];
+		int valid = 0;
+		for (int i = 0; i < entries; i++) {
+			isteps[valid] = ibuf.getInt();
+			iframes[valid] = ibuf.getLong();
+			// Entries can point past the last frame after a crash.
+			if (iframes[valid] < frameCount) {
+				valid++;
+			}
+		}
+		indexSteps = new int[valid];
+		indexFrames = new long[valid];
+		System.arraycopy(isteps, 0, indexSteps, 0, valid);
+		System.arraycopy(iframes, 0, indexFrames, 0, valid);
+	}
+
+	/**
+	 * Build the index from the frames the same way that
+	 * {@link BinaryDataArchive} writes it.
+	 */
+	private void rebuildIndex() {
+		final int minCapacity = 16;
+		int[] isteps = new int[minCapacity];
+		long[] iframes = new long[minCapacity];
+		int entries = 0;
+		int previous = 0;
+		for (long f = 0; f < frameCount; f++) {
+			int s = step(f);
+			if (f % BinaryDataArchive.INDEX_INTERVAL == 0 || s <= previous) {
+				if (entries == isteps.length) {
+					int[] ns = new int[entries * 2];
+					long[] nf = new long[entries * 2];
+					System.arraycopy(isteps, 0, ns, 0, entries);
+					System.arraycopy(iframes, 0, nf, 0, entries);
+					isteps = ns;
+					iframes = nf;
+				}
+				isteps[entries] = s;
+				iframes[entries] = f;
+				entries++;
+			}
+			previous = s;
+		}
+		indexSteps = new int[entries];
+		indexFrames = new long[entries];
+		System.arraycopy(isteps, 0, indexSteps, 0, entries);
+		System.arraycopy(iframes, 0, indexFrames, 0, entries);
+	}
+
+	/**
+	 * @param parallelThreshold
+	 *            the smallest number of frames read by a separate thread.
+	 */
+	public final void setParallelThreshold(final int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * Step number of a frame.
+	 * @param frame
+	 *            Frame number.
+	 * @return The step.
+	 */
+	private int step(final long frame) {
+		int s = (int) (frame / segmentFrames);
+		int off = (int) (frame % segmentFrames) * frameSize;
+		return segments[s].getInt(off);
+	}
+
+	/**
+	 * Column value of a frame.
+	 * @param frame
+	 *            Frame number.
+	 * @param column
+	 *            Column index.
+	 * @return The value.
+	 */
+	private double value(final long frame, final int column) {
+		final int intSize = 4;
+		final int doubleSize = 8;
+		int s = (int) (frame / segmentFrames);
+		int off = (int) (frame % segmentFrames) * frameSize;
+		return segments[s].getDouble(off + intSize + column * doubleSize);
+	}
+}
@@ -0,0 +1,296 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ScheduledFuture;
+
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class which writes a set of doubles per step as fixed width binary frames.
+ * <p>
+ * The file starts with an {@link ArchiveHeader} using the magic
+ * {@link #MAGIC}. Each step is then stored as an int step number followed by one double per
+ * column. All numbers are little-endian. Every {@link #INDEX_INTERVAL} frames
+ * the step number and frame number are added to a sparse index in a
+ * <em>.idx</em> file next to the archive. Index entries are buffered with the
+ * frames and written after them so that the index never points at frames
+ * which were lost in a crash. An entry is also added for a frame whose step
+ * is not greater than the step before it so that the steps ascend between
+ * two entries.
+ * </p>
+ * The file is recreated when the archive is first written.
+ * @author Michael Bletzinger
+ */
+public class BinaryDataArchive implements DataArchiveI {
+	/**
+	 * Number of frames between index entries.
+	 */
+	public static final int INDEX_INTERVAL = 64;
+	/**
+	 * First bytes of every binary archive.
+	 */
+	public static final String MAGIC = "UISCARCH";
+	/**
+	 * Current format version.
+	 */
+	public static final int VERSION = 1;
+	/**
+	 * Size of an index entry. An int step and a long frame number.
+	 */
+	public static final int INDEX_ENTRY_SIZE = 12;
+
+	/**
+	 * Size of a frame in bytes.
+	 * @param columns
+	 *            Number of columns.
+	 * @return Frame size.
+	 */
+	public static int frameSize(final int columns) {
+		final int intSize = 4;
+		final int doubleSize = 8;
+		return intSize + doubleSize * columns;
+	}
+
+	/**
+	 * Open data file. Null if the file is closed.
+	 */
+	private FileChannel channel = null;
+	/**
+	 * Column labels and units.
+	 */
+	private final ArchiveColumns columns;
+	/**
+	 * Buffer for frames waiting to be written.
+	 */
+	private final ByteBuffer frames;
+	/**
+	 * Number of frames waiting to be written.
+	 */
+	private int pendingFrames = 0;
+	/**
+	 * Buffer for index entries of the buffered frames. They are written after
+	 * the frames so that the index never points past the end of the data.
+	 */
+	private final ByteBuffer indexEntries;
+	/**
+	 * Open index file. Null if the file is closed.
+	 */
+	private FileChannel index = null;
+	/**
+	 * Path to the index file.
+	 */
+	private final File indexPath;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(BinaryDataArchive.class);
+	/**
+	 * Path to the data file.
+	 */
+	private final File path;
+	/**
+	 * Flush policy.
+	 */
+	private final ArchiveDao policy;
+	/**
+	 * Flag indicating that the files have been created.
+	 */
+	private boolean created = false;
+	/**
+	 * Number of frames written so far.
+	 */
+	private long frameCount = 0;
+	/**
+	 * Step of the last frame.
+	 */
+	private int lastStep = 0;
+	/**
+	 * Time in milliseconds of the last flush.
+	 */
+	private long lastFlush = System.currentTimeMillis();
+	/**
+	 * Flush scheduled on the {@link FlushTimer}. Null if none is scheduled.
+	 */
+	private ScheduledFuture<?> timedFlush = null;
+	/**
+	 * Task which the {@link FlushTimer} runs.
+	 */
+	private final Runnable timedFlushTask = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	/**
+	 * @param path
+	 *            Path to data archive without extension.
+	 * @param columns
+	 *            Column labels and units.
+	 * @param policy
+	 *            Flush policy of the archive file.
+	 */
+	public BinaryDataArchive(final String path, final ArchiveColumns columns,
+			final ArchiveDao policy) {
+		this.path = new File(path + ".bin");
+		this.indexPath = new File(path + ".idx");
+		this.columns = columns;
+		this.policy = policy;
+		int group = Math.max(1, policy.getFlushRecords());
+		this.frames = ByteBuffer.allocate(group * frameSize(columns.size()))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		// Every frame can start an index entry if the steps do not ascend.
+		this.indexEntries = ByteBuffer.allocate(group * INDEX_ENTRY_SIZE)
+				.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@Override
+	public final synchronized void close() {
+		flush();
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+			if (index != null) {
+				index.close();
+			}
+		} catch (IOException e) {
+			log.debug("Who cares", e);
+		}
+		channel = null;
+		index = null;
+	}
+
+	/**
+	 * Write the buffered frames to the file.
+	 */
+	public final synchronized void flush() {
+		lastFlush = System.currentTimeMillis();
+		if (timedFlush != null) {
+			timedFlush.cancel(false);
+			timedFlush = null;
+		}
+		if (pendingFrames == 0) {
+			return;
+		}
+		frames.flip();
+		indexEntries.flip();
+		pendingFrames = 0;
+		if (open() == false) {
+			frames.clear();
+			indexEntries.clear();
+			return;
+		}
+		try {
+			while (frames.hasRemaining()) {
+				channel.write(frames);
+			}
+			if (policy.isFsync()) {
+				channel.force(false);
+			}
+		} catch (IOException e) {
+			log.error("Cannot write to \"" + path + "\" because ", e);
+			frames.clear();
+			indexEntries.clear();
+			return;
+		}
+		frames.clear();
+		try {
+			while (indexEntries.hasRemaining()) {
+				index.write(indexEntries);
+			}
+			if (policy.isFsync()) {
+				index.force(false);
+			}
+		} catch (IOException e) {
+			log.error("Cannot write to \"" + indexPath + "\" because ", e);
+		}
+		indexEntries.clear();
+	}
+
+	/**
+	 * @return the path to the data file.
+	 */
+	public final File getPath() {
+		return path;
+	}
+
+	/**
+	 * Open the files. They are truncated and the header written the first
+	 * time.
+	 * @return True if the files are open.
+	 */
+	private boolean open() {
+		if (channel != null) {
+			return true;
+		}
+		try {
+			channel = new FileOutputStream(path, created).getChannel();
+			index = new FileOutputStream(indexPath, created).getChannel();
+			if (created == false) {
+				ByteBuffer hdr = ArchiveHeader.encode(MAGIC, VERSION, columns,
+						INDEX_INTERVAL);
+				while (hdr.hasRemaining()) {
+					channel.write(hdr);
+				}
+				created = true;
+			}
+		} catch (IOException e) {
+			log.error("Cannot write to \"" + path + "\" because ", e);
+			channel = null;
+			index = null;
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public final synchronized void write(final int step, final double[] data) {
+		if (data.length != columns.size()) {
+			log.error("Step " + step + " has " + data.length
+					+ " values instead of " + columns.size() + " for \""
+					+ path + "\"");
+			return;
+		}
+		if (frameCount % INDEX_INTERVAL == 0 || step <= lastStep) {
+			indexEntries.putInt(step);
+			indexEntries.putLong(frameCount);
+		}
+		lastStep = step;
+		frames.putInt(step);
+		for (double d : data) {
+			frames.putDouble(d);
+		}
+		frameCount++;
+		pendingFrames++;
+		if (frames.hasRemaining() == false) {
+			flush();
+			return;
+		}
+		if (policy.getFlushMillis() > 0
+				&& System.currentTimeMillis() - lastFlush >= policy
+						.getFlushMillis()) {
+			flush();
+			return;
+		}
+		scheduleFlush();
+	}
+
+	/**
+	 * Schedule a flush of the buffered frames after the flush interval unless
+	 * one is already scheduled.
+	 */
+	private void scheduleFlush() {
+		if (timedFlush == null && policy.getFlushMillis() > 0) {
+			timedFlush = FlushTimer.schedule(timedFlushTask,
+					policy.getFlushMillis());
+		}
+	}
+}
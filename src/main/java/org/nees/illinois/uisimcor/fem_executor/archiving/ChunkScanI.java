@@ -0,0 +1,22 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.io.IOException;
+
+/**
+ * Interface for one chunk of a {@link ParallelScan}.
+ * @author Michael Bletzinger
+ */
+interface ChunkScanI {
+	/**
+	 * Scan a chunk.
+	 * @param chunk
+	 *            Chunk number starting at zero.
+	 * @param from
+	 *            First item of the chunk.
+	 * @param to
+	 *            Item after the last item of the chunk.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	void scan(int chunk, long from, long to) throws IOException;
+}
@@ -0,0 +1,293 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the frames of an archive written by {@link CompressedDataArchive}.
+ * Blocks are decoded one at a time. A damaged or incomplete last block, for
+ * example after a crash, ends the stream and is reported by
+ * {@link #isTruncated()}.
+ * @author Michael Bletzinger
+ */
+public class CompressedArchiveReader {
+	/**
+	 * Open archive file.
+	 */
+	private final FileChannel channel;
+	/**
+	 * Column labels and units.
+	 */
+	private final ArchiveColumns columns;
+	/**
+	 * Buffer for the compressed block.
+	 */
+	private byte[] compressed = new byte[0];
+	/**
+	 * Index of the current frame in the block.
+	 */
+	private int current = -1;
+	/**
+	 * Checksum of the raw block.
+	 */
+	private final CRC32 crc = new CRC32();
+	/**
+	 * Number of frames in the current block.
+	 */
+	private int frames = 0;
+	/**
+	 * Decompressor reused for every block.
+	 */
+	private final Inflater inflater = new Inflater();
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory
+			.getLogger(CompressedArchiveReader.class);
+	/**
+	 * Path to the archive file.
+	 */
+	private final File path;
+	/**
+	 * File position of the next block.
+	 */
+	private long position;
+	/**
+	 * Buffer for the raw block.
+	 */
+	private byte[] raw = new byte[0];
+	/**
+	 * Steps of the current block.
+	 */
+	private int[] steps = new int[0];
+	/**
+	 * Flag indicating that the stream ended at a damaged block.
+	 */
+	private boolean truncated = false;
+	/**
+	 * Values of the current block in column-major order.
+	 */
+	private double[][] values;
+
+	/**
+	 * Open an archive and read its header.
+	 * @param path
+	 *            Path to the <em>.cmp</em> file.
+	 * @throws IOException
+	 *             if the file cannot be read or is not a compressed archive.
+	 */
+	public CompressedArchiveReader(final File path) throws IOException {
+		this.path = path;
+		this.channel = new RandomAccessFile(path, "r").getChannel();
+		ArchiveHeader header;
+		try {
+			header = ArchiveHeader.read(channel, path,
+					CompressedDataArchive.MAGIC, CompressedDataArchive.VERSION);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		this.columns = header.getColumns();
+		this.position = header.getSize();
+		this.values = new double[columns.size()][0];
+	}
+
+	/**
+	 * Close the archive file.
+	 */
+	public final void close() {
+		inflater.end();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			log.debug("Who cares", e);
+		}
+	}
+
+	/**
+	 * Decode the raw bytes of a block.
+	 * @param rawLength
+	 *            Number of raw bytes.
+	 */
+	private void decode(final int rawLength) {
+		final int bitsPerByte = 8;
+		final int byteMask = 0xff;
+		final int longSize = 8;
+		if (steps.length < frames) {
+			steps = new int[frames];
+			for (int c = 0; c < values.length; c++) {
+				values[c] = new double[frames];
+			}
+		}
+		int pos = 0;
+		int prevStep = 0;
+		for (int f = 0; f < frames; f++) {
+			int d = ((raw[pos] & byteMask) << (3 * bitsPerByte))
+					| ((raw[pos + 1] & byteMask) << (2 * bitsPerByte))
+					| ((raw[pos + 2] & byteMask) << bitsPerByte)
+					| (raw[pos + 3] & byteMask);
+			pos += 4;
+			prevStep += d;
+			steps[f] = prevStep;
+		}
+		long[] bits = new long[frames];
+		for (int c = 0; c < values.length; c++) {
+			for (int f = 0; f < frames; f++) {
+				bits[f] = 0;
+			}
+			for (int b = longSize - 1; b >= 0; b--) {
+				int shift = b * bitsPerByte;
+				for (int f = 0; f < frames; f++) {
+					bits[f] |= ((long) (raw[pos++] & byteMask)) << shift;
+				}
+			}
+			long prev = 0;
+			long prev2 = 0;
+			for (int f = 0; f < frames; f++) {
+				long predicted = prev;
+				if (f > 1) {
+					predicted = 2 * prev - prev2;
+				}
+				long diff = (bits[f] >>> 1) ^ -(bits[f] & 1);
+				prev2 = prev;
+				prev = predicted + diff;
+				values[c][f] = Double.longBitsToDouble(prev);
+			}
+		}
+		if (pos != rawLength) {
+			log.error("Block in \"" + path + "\" has " + rawLength
+					+ " bytes but " + pos + " were decoded");
+		}
+	}
+
+	/**
+	 * @return the column labels and units.
+	 */
+	public final ArchiveColumns getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return the step number of the current frame.
+	 */
+	public final int getStep() {
+		return steps[current];
+	}
+
+	/**
+	 * @return True if the stream ended at a damaged or incomplete block.
+	 */
+	public final boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Move to the next frame.
+	 * @return False if there are no more frames.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	public final boolean next() throws IOException {
+		current++;
+		if (current < frames) {
+			return true;
+		}
+		if (readBlock() == false) {
+			frames = 0;
+			current = -1;
+			return false;
+		}
+		current = 0;
+		return true;
+	}
+
+	/**
+	 * Copy the values of the current frame.
+	 * @param out
+	 *            Array receiving one value per column.
+	 */
+	public final void read(final double[] out) {
+		for (int c = 0; c < values.length; c++) {
+			out[c] = values[c][current];
+		}
+	}
+
+	/**
+	 * Read and decode the next block.
+	 * @return False at the end of the file or at a damaged block.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	private boolean readBlock() throws IOException {
+		long size = channel.size();
+		if (position >= size) {
+			return false;
+		}
+		if (size - position < CompressedDataArchive.BLOCK_HEADER_SIZE) {
+			return damaged("incomplete block header");
+		}
+		ByteBuffer hdr = ArchiveHeader.read(channel, position,
+				CompressedDataArchive.BLOCK_HEADER_SIZE);
+		int count = hdr.getInt();
+		int rawLength = hdr.getInt();
+		int clen = hdr.getInt();
+		int checksum = hdr.getInt();
+		if (count <= 0
+				|| clen < 0
+				|| rawLength != CompressedDataArchive.rawSize(count,
+						columns.size())) {
+			return damaged("corrupt block header");
+		}
+		long start = position + CompressedDataArchive.BLOCK_HEADER_SIZE;
+		if (size - start < clen) {
+			return damaged("incomplete block");
+		}
+		if (compressed.length < clen) {
+			compressed = new byte[clen];
+		}
+		ByteBuffer body = ByteBuffer.wrap(compressed, 0, clen);
+		ArchiveHeader.readFully(channel, start, body);
+		if (raw.length < rawLength) {
+			raw = new byte[rawLength];
+		}
+		inflater.reset();
+		inflater.setInput(compressed, 0, clen);
+		int n;
+		try {
+			n = inflater.inflate(raw, 0, rawLength);
+		} catch (DataFormatException e) {
+			return damaged("block cannot be inflated");
+		}
+		crc.reset();
+		crc.update(raw, 0, n);
+		if (n != rawLength || (int) crc.getValue() != checksum) {
+			return damaged("block checksum does not match");
+		}
+		frames = count;
+		decode(rawLength);
+		position = start + clen;
+		return true;
+	}
+
+	/**
+	 * Record a damaged block.
+	 * @param reason
+	 *            Description of the damage.
+	 * @return Always false.
+	 */
+	private boolean damaged(final String reason) {
+		log.warn("\"" + path + "\" ends at byte " + position + " with a "
+				+ reason);
+		truncated = true;
+		return false;
+	}
+}
@@ -0,0 +1,354 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.concurrent.ScheduledFuture;
+
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class which writes a set of doubles per step as independently compressed
+ * blocks of frames.
+ * <p>
+ * The file starts with an {@link ArchiveHeader} using the magic
+ * {@link #MAGIC} where the interval is the number of frames per block. Each
+ * block is stored as an int frame count, an int raw length, an int compressed
+ * length, an int CRC-32 of the raw bytes and the deflated raw bytes. The raw
+ * bytes contain the step numbers as differences from the previous step
+ * followed by the columns. The bits of each value in a column are predicted
+ * by a straight line through the bits of the two previous values of the
+ * block. The difference to the prediction is zigzag encoded so that small
+ * negative differences become small numbers and stored one byte plane at a
+ * time starting with the most significant byte. Smooth histories produce long
+ * runs of zero bytes which deflate very well.
+ * </p>
+ * Every block can be decoded on its own so a crash loses at most the block
+ * that was being written. The file is recreated when the archive is first
+ * written.
+ * @author Michael Bletzinger
+ */
+public class CompressedDataArchive implements DataArchiveI {
+	/**
+	 * Size of a block header in bytes.
+	 */
+	public static final int BLOCK_HEADER_SIZE = 16;
+	/**
+	 * First bytes of every compressed archive.
+	 */
+	public static final String MAGIC = "UISCCMPR";
+	/**
+	 * Current format version.
+	 */
+	public static final int VERSION = 2;
+
+	/**
+	 * Number of raw bytes of a block.
+	 * @param frames
+	 *            Number of frames in the block.
+	 * @param columns
+	 *            Number of columns.
+	 * @return Raw block size.
+	 */
+	public static int rawSize(final int frames, final int columns) {
+		final int intSize = 4;
+		final int longSize = 8;
+		return frames * (intSize + longSize * columns);
+	}
+
+	/**
+	 * Number of frames per block.
+	 */
+	private final int blockFrames;
+	/**
+	 * Buffer for the compressed block.
+	 */
+	private byte[] compressed;
+	/**
+	 * Block header buffer.
+	 */
+	private final ByteBuffer blockHeader = ByteBuffer.allocate(
+			BLOCK_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	/**
+	 * Open file. Null if the file is closed.
+	 */
+	private FileChannel channel = null;
+	/**
+	 * Column labels and units.
+	 */
+	private final ArchiveColumns columns;
+	/**
+	 * Checksum of the raw block.
+	 */
+	private final CRC32 crc = new CRC32();
+	/**
+	 * Flag indicating that the file has been created.
+	 */
+	private boolean created = false;
+	/**
+	 * Compressor reused for every block. Created on the first flush and ended
+	 * by {@link #close()} to free its native buffers.
+	 */
+	private Deflater deflater = null;
+	/**
+	 * Number of frames in the current block.
+	 */
+	private int frames = 0;
+	/**
+	 * Time in milliseconds of the last flush.
+	 */
+	private long lastFlush = System.currentTimeMillis();
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory
+			.getLogger(CompressedDataArchive.class);
+	/**
+	 * Path to the data file.
+	 */
+	private final File path;
+	/**
+	 * Flush policy.
+	 */
+	private final ArchiveDao policy;
+	/**
+	 * Buffer for the raw block.
+	 */
+	private final byte[] raw;
+	/**
+	 * Steps of the current block.
+	 */
+	private final int[] steps;
+	/**
+	 * Values of the current block as bits in column-major order.
+	 */
+	private final long[][] values;
+	/**
+	 * Flush scheduled on the {@link FlushTimer}. Null if none is scheduled.
+	 */
+	private ScheduledFuture<?> timedFlush = null;
+	/**
+	 * Task which the {@link FlushTimer} runs.
+	 */
+	private final Runnable timedFlushTask = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	/**
+	 * @param path
+	 *            Path to data archive without extension.
+	 * @param columns
+	 *            Column labels and units.
+	 * @param policy
+	 *            Block size and flush policy of the archive file.
+	 */
+	public CompressedDataArchive(final String path,
+			final ArchiveColumns columns, final ArchiveDao policy) {
+		this.path = new File(path + ".cmp");
+		this.columns = columns;
+		this.policy = policy;
+		this.blockFrames = Math.max(1, policy.getBlockFrames());
+		this.steps = new int[blockFrames];
+		this.values = new long[columns.size()][blockFrames];
+		this.raw = new byte[rawSize(blockFrames, columns.size())];
+		this.compressed = new byte[raw.length + raw.length / 2];
+	}
+
+	@Override
+	public final synchronized void close() {
+		flush();
+		if (deflater != null) {
+			deflater.end();
+			deflater = null;
+		}
+		if (channel == null) {
+			return;
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			log.debug("Who cares", e);
+		}
+		channel = null;
+	}
+
+	/**
+	 * Encode the frames of the current block into the raw buffer.
+	 * @return Number of raw bytes.
+	 */
+	private int encode() {
+		final int bitsPerByte = 8;
+		final int byteMask = 0xff;
+		final int longSize = 8;
+		int pos = 0;
+		int prevStep = 0;
+		for (int f = 0; f < frames; f++) {
+			int d = steps[f] - prevStep;
+			prevStep = steps[f];
+			raw[pos++] = (byte) (d >>> (3 * bitsPerByte));
+			raw[pos++] = (byte) (d >>> (2 * bitsPerByte));
+			raw[pos++] = (byte) (d >>> bitsPerByte);
+			raw[pos++] = (byte) d;
+		}
+		final int signShift = 63;
+		for (long[] col : values) {
+			long prev = 0;
+			long prev2 = 0;
+			for (int f = 0; f < frames; f++) {
+				long predicted = prev;
+				if (f > 1) {
+					predicted = 2 * prev - prev2;
+				}
+				long diff = col[f] - predicted;
+				prev2 = prev;
+				prev = col[f];
+				col[f] = (diff << 1) ^ (diff >> signShift);
+			}
+			for (int b = longSize - 1; b >= 0; b--) {
+				int shift = b * bitsPerByte;
+				for (int f = 0; f < frames; f++) {
+					raw[pos++] = (byte) ((col[f] >>> shift) & byteMask);
+				}
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Compress and write the current block.
+	 */
+	public final synchronized void flush() {
+		lastFlush = System.currentTimeMillis();
+		if (timedFlush != null) {
+			timedFlush.cancel(false);
+			timedFlush = null;
+		}
+		if (frames == 0) {
+			return;
+		}
+		int rawLength = encode();
+		int count = frames;
+		frames = 0;
+		crc.reset();
+		crc.update(raw, 0, rawLength);
+		if (deflater == null) {
+			deflater = new Deflater(Deflater.BEST_SPEED);
+		}
+		deflater.reset();
+		deflater.setInput(raw, 0, rawLength);
+		deflater.finish();
+		int clen = 0;
+		while (deflater.finished() == false) {
+			if (clen == compressed.length) {
+				byte[] bigger = new byte[compressed.length * 2];
+				System.arraycopy(compressed, 0, bigger, 0, clen);
+				compressed = bigger;
+			}
+			clen += deflater.deflate(compressed, clen, compressed.length
+					- clen);
+		}
+		if (open() == false) {
+			return;
+		}
+		blockHeader.clear();
+		blockHeader.putInt(count);
+		blockHeader.putInt(rawLength);
+		blockHeader.putInt(clen);
+		blockHeader.putInt((int) crc.getValue());
+		blockHeader.flip();
+		ByteBuffer body = ByteBuffer.wrap(compressed, 0, clen);
+		try {
+			while (blockHeader.hasRemaining()) {
+				channel.write(blockHeader);
+			}
+			while (body.hasRemaining()) {
+				channel.write(body);
+			}
+			if (policy.isFsync()) {
+				channel.force(false);
+			}
+		} catch (IOException e) {
+			log.error("Cannot write to \"" + path + "\" because ", e);
+		}
+	}
+
+	/**
+	 * @return the path to the data file.
+	 */
+	public final File getPath() {
+		return path;
+	}
+
+	/**
+	 * Open the file. It is truncated and the header written the first time.
+	 * @return True if the file is open.
+	 */
+	private boolean open() {
+		if (channel != null) {
+			return true;
+		}
+		try {
+			channel = new FileOutputStream(path, created).getChannel();
+			if (created == false) {
+				ByteBuffer hdr = ArchiveHeader.encode(MAGIC, VERSION, columns,
+						blockFrames);
+				while (hdr.hasRemaining()) {
+					channel.write(hdr);
+				}
+				created = true;
+			}
+		} catch (IOException e) {
+			log.error("Cannot write to \"" + path + "\" because ", e);
+			channel = null;
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public final synchronized void write(final int step, final double[] data) {
+		if (data.length != columns.size()) {
+			log.error("Step " + step + " has " + data.length
+					+ " values instead of " + columns.size() + " for \""
+					+ path + "\"");
+			return;
+		}
+		steps[frames] = step;
+		for (int c = 0; c < data.length; c++) {
+			values[c][frames] = Double.doubleToLongBits(data[c]);
+		}
+		frames++;
+		if (frames == blockFrames) {
+			flush();
+			return;
+		}
+		if (policy.getFlushMillis() > 0
+				&& System.currentTimeMillis() - lastFlush >= policy
+						.getFlushMillis()) {
+			flush();
+			return;
+		}
+		scheduleFlush();
+	}
+
+	/**
+	 * Schedule a flush of the buffered frames after the flush interval unless
+	 * one is already scheduled.
+	 */
+	private void scheduleFlush() {
+		if (timedFlush == null && policy.getFlushMillis() > 0) {
+			timedFlush = FlushTimer.schedule(timedFlushTask,
+					policy.getFlushMillis());
+		}
+	}
+}
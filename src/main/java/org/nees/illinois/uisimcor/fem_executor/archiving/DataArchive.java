@@ -1,8 +1,9 @@
 package org.nees.illinois.uisimcor.fem_executor.archiving;
 
 import java.io.File;
-import java.text.DecimalFormat;
 
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.nees.illinois.uisimcor.fem_executor.utils.DoubleFormatter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,35 +11,42 @@ import org.slf4j.LoggerFactory;
  * Class which writes a set of doubles as text to a file.
  * @author Michael Bletzinger
  */
-public class DataArchive {
+public class DataArchive implements DataArchiveI {
 	/**
 	 * Text archiver.
 	 */
 	private final TextArchive archive;
 	/**
-	 * Format for displacement commands.
+	 * Buffer for building a record.
 	 */
-	private DecimalFormat format = new DecimalFormat(
-			"###.00000000000000000000E000");
+	private char[] buffer = new char[0];
 	/**
 	 * Logger.
 	 **/
 	private final Logger log = LoggerFactory.getLogger(DataArchive.class);
 
-	/**
-	 * Write a data record.
-	 * @param step
-	 *            Step number of record.
-	 * @param data
-	 *            to record.
-	 */
+	@Override
 	public final void write(final int step, final double[] data) {
-		String record = Integer.toString(step);
+		final int stepChars = 12;
+		int size = stepChars + (DoubleFormatter.MAX_CHARS + 1) * data.length
+				+ 1;
+		if (buffer.length < size) {
+			buffer = new char[size];
+		}
+		String stepStr = Integer.toString(step);
+		stepStr.getChars(0, stepStr.length(), buffer, 0);
+		int pos = stepStr.length();
 		for (double d : data) {
-			record += "\t" + format.format(d);
+			buffer[pos++] = '\t';
+			pos = DoubleFormatter.format(d, buffer, pos);
 		}
-		record += "\n";
-		archive.write(record);
+		buffer[pos++] = '\n';
+		archive.write(new String(buffer, 0, pos));
+	}
+
+	@Override
+	public final void close() {
+		archive.close();
 	}
 
 	/**
@@ -46,7 +54,17 @@ public class DataArchive {
 	 *            Path to data archive.
 	 */
 	public DataArchive(final String path) {
+		this(path, new ArchiveDao());
+	}
+
+	/**
+	 * @param path
+	 *            Path to data archive.
+	 * @param policy
+	 *            Flush policy of the archive file.
+	 */
+	public DataArchive(final String path, final ArchiveDao policy) {
 		File pathF = new File(path + ".txt");
-		this.archive = new TextArchive(pathF);
+		this.archive = new TextArchive(pathF, policy);
 	}
 }
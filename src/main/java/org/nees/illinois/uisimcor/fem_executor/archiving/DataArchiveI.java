@@ -0,0 +1,21 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+/**
+ * Interface for archives which store one record of doubles per step.
+ * @author Michael Bletzinger
+ */
+public interface DataArchiveI {
+	/**
+	 * Write any buffered records and close the archive file.
+	 */
+	void close();
+
+	/**
+	 * Write a data record.
+	 * @param step
+	 *            Step number of record.
+	 * @param data
+	 *            to record.
+	 */
+	void write(int step, double[] data);
+}
@@ -0,0 +1,50 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer shared by the archives which flushes buffered records after the flush
+ * interval of the {@link org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao
+ * flush policy} has passed. Without it a record buffered just before a quiet
+ * period would only be written by the next write or the close. The timer runs
+ * on a single daemon thread.
+ * @author Michael Bletzinger
+ */
+public final class FlushTimer {
+	/**
+	 * The timer thread.
+	 */
+	private static final ScheduledExecutorService TIMER = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread result = new Thread(r, "ArchiveFlush");
+					result.setDaemon(true);
+					return result;
+				}
+			});
+
+	/**
+	 * Schedule a flush.
+	 * @param flush
+	 *            Task which flushes the archive.
+	 * @param delayInMillisecs
+	 *            Time to wait before flushing.
+	 * @return The scheduled flush which can be cancelled if the archive is
+	 *         flushed earlier.
+	 */
+	public static ScheduledFuture<?> schedule(final Runnable flush,
+			final long delayInMillisecs) {
+		return TIMER.schedule(flush, delayInMillisecs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Utility class.
+	 */
+	private FlushTimer() {
+	}
+}
@@ -3,7 +3,6 @@ package org.nees.illinois.uisimcor.fem_executor.archiving;
 import java.io.File;
 
 import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
-import org.nees.illinois.uisimcor.fem_executor.config.types.DispDof;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,13 +20,9 @@ public class HeaderArchive {
 	 **/
 	private final Logger log = LoggerFactory.getLogger(HeaderArchive.class);
 	/**
-	 * True if the columns are forces.
+	 * Column labels and units.
 	 */
-	private final boolean reactionHeader;
-	/**
-	 * Substructure configuration.
-	 */
-	private final SubstructureDao substructCfg;
+	private final ArchiveColumns columns;
 
 	/**
 	 * @param path
@@ -39,32 +34,26 @@ public class HeaderArchive {
 	 */
 	public HeaderArchive(final String path, final SubstructureDao substructCfg,
 			final boolean reactionHeader) {
+		this(path, new ArchiveColumns(substructCfg, reactionHeader));
+	}
+
+	/**
+	 * @param path
+	 *            Path to data archive.
+	 * @param columns
+	 *            Column labels and units.
+	 */
+	public HeaderArchive(final String path, final ArchiveColumns columns) {
 		File pathF = new File(path + "_hdr.txt");
 		this.archive = new TextArchive(pathF);
-		this.substructCfg = substructCfg;
-		this.reactionHeader = reactionHeader;
+		this.columns = columns;
 	}
 
 	/**
 	 * Write the header.
 	 */
 	public final void write() {
-		String header = "Step";
-		String units = "Number";
-		for (Integer n : substructCfg.getNodeSequence()) {
-			for (DispDof d : substructCfg.getEffectiveDofs(n)) {
-				String dof = d.toString();
-				if (reactionHeader) {
-					dof = dof.replace("D", "F");
-					dof = dof.replace("R", "M");
-				}
-				header += "\t" + n.toString() + "-" + dof;
-				units += "\t" + d.units(reactionHeader);
-			}
-		}
-		header += "\n";
-		units += "\n";
-		archive.write(header);
-		archive.write(units);
+		archive.write(columns.toTextHeader());
+		archive.close();
 	}
 }
@@ -0,0 +1,285 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers queries on a text archive written by {@link DataArchive}. A
+ * {@link TextArchiveIndex} locates the lines of the requested steps which are
+ * then parsed straight from the memory mapped file. Long histories are parsed
+ * in parallel chunks. The column labels are read from the header file written
+ * by {@link HeaderArchive} if there is one. The reader sees the lines which
+ * were complete when it was opened.
+ * @author Michael Bletzinger
+ */
+public class MappedTextArchiveReader implements ArchiveQueryI {
+	/**
+	 * Largest mapped window in bytes.
+	 */
+	private static final int MAX_WINDOW = 1 << 28;
+	/**
+	 * Open archive file.
+	 */
+	private final FileChannel channel;
+	/**
+	 * Column labels and units.
+	 */
+	private final ArchiveColumns columns;
+	/**
+	 * Step index of the archive.
+	 */
+	private final TextArchiveIndex index;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory
+			.getLogger(MappedTextArchiveReader.class);
+	/**
+	 * Smallest number of lines parsed by a separate thread.
+	 */
+	private int parallelThreshold = 1 << 14;
+	/**
+	 * Path to the archive file.
+	 */
+	private final File path;
+	/**
+	 * Splits long histories and index scans into chunks.
+	 */
+	private final ParallelScan scan;
+
+	/**
+	 * Open an archive and load its index.
+	 * @param path
+	 *            Path to the <em>.txt</em> file.
+	 * @param threads
+	 *            Number of threads used for long histories and index scans.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	public MappedTextArchiveReader(final File path, final int threads)
+			throws IOException {
+		this.path = path;
+		this.channel = new RandomAccessFile(path, "r").getChannel();
+		this.scan = new ParallelScan(threads);
+		final int minChunk = 1 << 22;
+		try {
+			this.index = TextArchiveIndex.load(path, channel, scan, minChunk);
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+		this.columns = readColumns();
+	}
+
+	@Override
+	public final double[] atStep(final int step) throws IOException {
+		int line = index.firstLine(step);
+		if (line == index.getCount() || index.getStep(line) != step) {
+			return null;
+		}
+		long start = index.getOffset(line);
+		ByteBuffer buf = channel.map(MapMode.READ_ONLY, start,
+				index.getLineEnd(line) - start);
+		double[] result = new double[columns.size()];
+		StringBuilder field = new StringBuilder();
+		int pos = skipField(buf, 0);
+		for (int c = 0; c < result.length; c++) {
+			result[c] = parseField(buf, pos, field);
+			pos = skipField(buf, pos);
+		}
+		return result;
+	}
+
+	@Override
+	public final void close() {
+		scan.shutdown();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			log.debug("Who cares", e);
+		}
+	}
+
+	@Override
+	public final ArchiveColumns getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return the step index of the archive.
+	 */
+	public final TextArchiveIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the smallest number of lines parsed by a separate thread.
+	 */
+	public final int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	@Override
+	public final ArchiveSeries history(final int column, final int fromStep,
+			final int toStep) throws IOException {
+		if (column < 0 || column >= columns.size()) {
+			log.error("Column " + column + " is not in \"" + path + "\"");
+			return null;
+		}
+		final int first = index.firstLine(fromStep);
+		int last = index.firstLine(toStep + 1L);
+		int n = Math.max(0, last - first);
+		final int[] steps = new int[n];
+		final double[] values = new double[n];
+		scan.run(n, parallelThreshold, Integer.MAX_VALUE, new ChunkScanI() {
+			@Override
+			public void scan(final int chunk, final long from, final long to)
+					throws IOException {
+				StringBuilder field = new StringBuilder();
+				int i = first + (int) from;
+				int end = first + (int) to;
+				while (i < end) {
+					long start = index.getOffset(i);
+					int j = i + 1;
+					while (j < end && index.getLineEnd(j) - start <= MAX_WINDOW) {
+						j++;
+					}
+					ByteBuffer buf = channel.map(MapMode.READ_ONLY, start,
+							index.getLineEnd(j - 1) - start);
+					for (int k = i; k < j; k++) {
+						int pos = (int) (index.getOffset(k) - start);
+						for (int c = 0; c <= column; c++) {
+							pos = skipField(buf, pos);
+						}
+						steps[k - first] = index.getStep(k);
+						values[k - first] = parseField(buf, pos, field);
+					}
+					i = j;
+				}
+			}
+		});
+		return new ArchiveSeries(steps, values);
+	}
+
+	/**
+	 * Parse the field at a position.
+	 * @param buf
+	 *            Mapped lines.
+	 * @param pos
+	 *            Position of the field.
+	 * @param field
+	 *            Scratch space for the characters of the field.
+	 * @return The value or NaN if the field is missing or not a number.
+	 */
+	private double parseField(final ByteBuffer buf, final int pos,
+			final StringBuilder field) {
+		field.setLength(0);
+		int p = pos;
+		while (p < buf.limit()) {
+			byte b = buf.get(p);
+			if (b == '\t' || b == '\n' || b == '\r') {
+				break;
+			}
+			field.append((char) b);
+			p++;
+		}
+		try {
+			return Double.parseDouble(field.toString());
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Read the column labels and units from the header file. If there is no
+	 * header file the columns are numbered.
+	 * @return The columns.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	private ArchiveColumns readColumns() throws IOException {
+		String p = path.getPath();
+		if (p.endsWith(".txt")) {
+			p = p.substring(0, p.length() - ".txt".length());
+		}
+		File hdr = new File(p + "_hdr.txt");
+		if (hdr.canRead()) {
+			BufferedReader reader = new BufferedReader(new FileReader(hdr));
+			try {
+				String labels = reader.readLine();
+				String units = reader.readLine();
+				if (labels != null && units != null) {
+					String[] l = labels.split("\t");
+					String[] u = units.split("\t", -1);
+					String[] rl = new String[l.length - 1];
+					String[] ru = new String[l.length - 1];
+					for (int i = 0; i < rl.length; i++) {
+						rl[i] = l[i + 1];
+						ru[i] = (i + 1 < u.length ? u[i + 1] : "");
+					}
+					return new ArchiveColumns(rl, ru);
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		int size = 0;
+		if (index.getCount() > 0) {
+			long start = index.getOffset(0);
+			ByteBuffer buf = channel.map(MapMode.READ_ONLY, start,
+					index.getLineEnd(0) - start);
+			for (int i = 0; i < buf.limit(); i++) {
+				if (buf.get(i) == '\t') {
+					size++;
+				}
+			}
+		}
+		String[] l = new String[size];
+		String[] u = new String[size];
+		for (int i = 0; i < size; i++) {
+			l[i] = "Column " + (i + 1);
+			u[i] = "";
+		}
+		return new ArchiveColumns(l, u);
+	}
+
+	/**
+	 * @param parallelThreshold
+	 *            the smallest number of lines parsed by a separate thread.
+	 */
+	public final void setParallelThreshold(final int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * Move past a field and its separator.
+	 * @param buf
+	 *            Mapped lines.
+	 * @param pos
+	 *            Position of the field.
+	 * @return The position of the next field.
+	 */
+	private int skipField(final ByteBuffer buf, final int pos) {
+		int p = pos;
+		while (p < buf.limit()) {
+			byte b = buf.get(p);
+			p++;
+			if (b == '\t') {
+				break;
+			}
+			if (b == '\n') {
+				return p - 1;
+			}
+		}
+		return p;
+	}
+}
@@ -0,0 +1,166 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports the displacement and force archives of a run into one MATLAB MAT
+ * file. Each archive becomes a matrix with the step number in the first
+ * column followed by the DOF values, the same layout <em>dlmread</em>
+ * produces from the text archive. The column labels and units are stored as
+ * cell arrays. For a substructure <em>MDL-01</em> the variables are
+ * <em>MDL_01_Displacements</em>, <em>MDL_01_DisplacementsLabels</em>,
+ * <em>MDL_01_DisplacementsUnits</em> and the same for <em>Forces</em>.
+ * @author Michael Bletzinger
+ */
+public class MatExporter {
+	/**
+	 * Names of the exported archives.
+	 */
+	private static final String[] ARCHIVES = { "Displacements", "Forces" };
+
+	/**
+	 * Export the log directory named on the command line.
+	 * @param args
+	 *            Path to the log directory and optionally the MAT file.
+	 */
+	public static void main(final String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: MatExporter <logDir> [<file.mat>]");
+			return;
+		}
+		File logDir = new File(args[0]);
+		File mat = new File(logDir, "Archives.mat");
+		if (args.length > 1) {
+			mat = new File(args[1]);
+		}
+		new MatExporter().export(logDir, mat);
+	}
+
+	/**
+	 * Make a valid MATLAB variable name.
+	 * @param name
+	 *            Candidate name.
+	 * @return The name with invalid characters replaced.
+	 */
+	public static String variableName(final String name) {
+		final int maxLength = 63;
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+					|| (c >= '0' && c <= '9') || c == '_') {
+				result.append(c);
+			} else {
+				result.append('_');
+			}
+		}
+		if (result.length() == 0 || Character.isLetter(result.charAt(0)) == false) {
+			result.insert(0, 'x');
+		}
+		if (result.length() > maxLength) {
+			result.setLength(maxLength);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(MatExporter.class);
+	/**
+	 * Opens the archives for reading.
+	 */
+	private final ArchiveQueryFactory queries = new ArchiveQueryFactory(1);
+
+	/**
+	 * Export one archive.
+	 * @param writer
+	 *            The MAT file.
+	 * @param archive
+	 *            The archive.
+	 * @param name
+	 *            Variable name of the matrix.
+	 * @return False if the archive cannot be exported.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	private boolean export(final MatFileWriter writer,
+			final ArchiveQueryI archive, final String name) throws IOException {
+		ArchiveColumns cols = archive.getColumns();
+		if (cols.size() == 0) {
+			log.error("Archive for \"" + name + "\" has no columns");
+			return false;
+		}
+		ArchiveSeries first = archive.history(0, Integer.MIN_VALUE,
+				Integer.MAX_VALUE);
+		int rows = first.size();
+		if (writer.beginMatrix(name, rows, cols.size() + 1) == false) {
+			return false;
+		}
+		double[] column = new double[rows];
+		for (int r = 0; r < rows; r++) {
+			column[r] = first.getSteps()[r];
+		}
+		boolean result = writer.writeColumn(column);
+		result = result && writer.writeColumn(first.getValues());
+		for (int c = 1; c < cols.size() && result; c++) {
+			result = writer.writeColumn(archive.history(c, Integer.MIN_VALUE,
+					Integer.MAX_VALUE).getValues());
+		}
+		String[] labels = new String[cols.size() + 1];
+		String[] units = new String[cols.size() + 1];
+		labels[0] = "Step";
+		units[0] = "Number";
+		System.arraycopy(cols.getLabels(), 0, labels, 1, cols.size());
+		System.arraycopy(cols.getUnits(), 0, units, 1, cols.size());
+		result = result && writer.writeCellRow(name + "Labels", labels);
+		result = result && writer.writeCellRow(name + "Units", units);
+		return result;
+	}
+
+	/**
+	 * Export all of the substructure directories in a log directory.
+	 * @param logDir
+	 *            Log directory with one directory per substructure.
+	 * @param mat
+	 *            Path of the MAT file.
+	 * @return False if any archive cannot be exported.
+	 */
+	public final boolean export(final File logDir, final File mat) {
+		File[] dirs = logDir.listFiles();
+		if (dirs == null) {
+			log.error("\"" + logDir + "\" is not a directory");
+			return false;
+		}
+		Arrays.sort(dirs);
+		MatFileWriter writer = new MatFileWriter(mat);
+		boolean result = true;
+		for (File d : dirs) {
+			if (d.isDirectory() == false) {
+				continue;
+			}
+			for (String a : ARCHIVES) {
+				ArchiveQueryI q = queries.open(d, a);
+				if (q == null) {
+					continue;
+				}
+				try {
+					result = export(writer, q, variableName(d.getName() + "_"
+							+ a))
+							&& result;
+				} catch (IOException e) {
+					log.error("Cannot read \"" + d + "/" + a + "\" because ", e);
+					result = false;
+				} finally {
+					q.close();
+				}
+			}
+		}
+		return writer.close() && result;
+	}
+}
@@ -0,0 +1,387 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes MATLAB level 5 MAT files. Supports double matrices which are
+ * streamed one column at a time, and cell rows of strings. Each variable is
+ * limited to 2 GB which is the limit of the format.
+ * @author Michael Bletzinger
+ */
+public class MatFileWriter {
+	/**
+	 * Size of the file header.
+	 */
+	private static final int HEADER_SIZE = 128;
+	/**
+	 * Size of a data element tag.
+	 */
+	private static final int TAG_SIZE = 8;
+	/**
+	 * Array class of cell arrays.
+	 */
+	private static final int MX_CELL_CLASS = 1;
+	/**
+	 * Array class of character arrays.
+	 */
+	private static final int MX_CHAR_CLASS = 4;
+	/**
+	 * Array class of double arrays.
+	 */
+	private static final int MX_DOUBLE_CLASS = 6;
+	/**
+	 * Data type of doubles.
+	 */
+	private static final int MI_DOUBLE = 9;
+	/**
+	 * Data type of bytes.
+	 */
+	private static final int MI_INT8 = 1;
+	/**
+	 * Data type of ints.
+	 */
+	private static final int MI_INT32 = 5;
+	/**
+	 * Data type of nested arrays.
+	 */
+	private static final int MI_MATRIX = 14;
+	/**
+	 * Data type of UTF-16 characters.
+	 */
+	private static final int MI_UINT16 = 4;
+	/**
+	 * Data type of unsigned ints.
+	 */
+	private static final int MI_UINT32 = 6;
+
+	/**
+	 * Size of an element including its tag and padding.
+	 * @param nbytes
+	 *            Number of data bytes.
+	 * @return The size.
+	 */
+	private static long elementSize(final long nbytes) {
+		return TAG_SIZE + pad(nbytes);
+	}
+
+	/**
+	 * Round up to a multiple of 8.
+	 * @param nbytes
+	 *            Number of bytes.
+	 * @return The padded number.
+	 */
+	private static long pad(final long nbytes) {
+		final int align = 8;
+		return (nbytes + align - 1) / align * align;
+	}
+
+	/**
+	 * Buffer for the elements.
+	 */
+	private final ByteBuffer buf = ByteBuffer.allocate(1 << 16).order(
+			ByteOrder.LITTLE_ENDIAN);
+	/**
+	 * Open file.
+	 */
+	private FileChannel channel = null;
+	/**
+	 * Number of columns still expected for the current matrix.
+	 */
+	private int columnsLeft = 0;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(MatFileWriter.class);
+	/**
+	 * Path to the MAT file.
+	 */
+	private final File path;
+	/**
+	 * Number of rows of the current matrix.
+	 */
+	private int rows = 0;
+
+	/**
+	 * @param path
+	 *            Path to the MAT file.
+	 */
+	public MatFileWriter(final File path) {
+		this.path = path;
+	}
+
+	/**
+	 * Start a double matrix. The columns are written with
+	 * {@link #writeColumn(double[])}.
+	 * @param name
+	 *            Variable name.
+	 * @param nrows
+	 *            Number of rows.
+	 * @param ncolumns
+	 *            Number of columns.
+	 * @return False if the matrix cannot be written.
+	 */
+	public final boolean beginMatrix(final String name, final int nrows,
+			final int ncolumns) {
+		if (columnsLeft > 0) {
+			log.error("Matrix before \"" + name + "\" is missing "
+					+ columnsLeft + " columns");
+			return false;
+		}
+		byte[] nm = ArchiveHeader.encodeString(name);
+		final int doubleSize = 8;
+		long data = (long) nrows * ncolumns * doubleSize;
+		long size = arrayPrefixSize(nm.length) + elementSize(data);
+		if (size > Integer.MAX_VALUE) {
+			log.error("\"" + name + "\" is too large for a MAT file");
+			return false;
+		}
+		if (open() == false) {
+			return false;
+		}
+		tag(MI_MATRIX, (int) size);
+		arrayPrefix(MX_DOUBLE_CLASS, nrows, ncolumns, nm);
+		tag(MI_DOUBLE, (int) data);
+		rows = nrows;
+		columnsLeft = ncolumns;
+		return flush();
+	}
+
+	/**
+	 * Write the array flags, dimensions and name of an array.
+	 * @param mxClass
+	 *            Array class.
+	 * @param nrows
+	 *            Number of rows.
+	 * @param ncolumns
+	 *            Number of columns.
+	 * @param name
+	 *            Encoded name.
+	 */
+	private void arrayPrefix(final int mxClass, final int nrows,
+			final int ncolumns, final byte[] name) {
+		final int flagsSize = 8;
+		tag(MI_UINT32, flagsSize);
+		buf.putInt(mxClass);
+		buf.putInt(0);
+		final int dimsSize = 8;
+		tag(MI_INT32, dimsSize);
+		buf.putInt(nrows);
+		buf.putInt(ncolumns);
+		tag(MI_INT8, name.length);
+		buf.put(name);
+		padding(name.length);
+	}
+
+	/**
+	 * Size of the array flags, dimensions and name of an array.
+	 * @param nameLength
+	 *            Number of bytes in the name.
+	 * @return The size.
+	 */
+	private long arrayPrefixSize(final int nameLength) {
+		final int flagsSize = 8;
+		final int dimsSize = 8;
+		return elementSize(flagsSize) + elementSize(dimsSize)
+				+ elementSize(nameLength);
+	}
+
+	/**
+	 * Size of a character row without its tag.
+	 * @param str
+	 *            The characters.
+	 * @return The size.
+	 */
+	private long charSize(final String str) {
+		return arrayPrefixSize(0) + elementSize(2L * str.length());
+	}
+
+	/**
+	 * Close the file.
+	 * @return False if a matrix is incomplete or the file cannot be written.
+	 */
+	public final boolean close() {
+		boolean result = flush();
+		if (columnsLeft > 0) {
+			log.error("Last matrix in \"" + path + "\" is missing "
+					+ columnsLeft + " columns");
+			result = false;
+		}
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.debug("Who cares", e);
+			}
+			channel = null;
+		}
+		return result;
+	}
+
+	/**
+	 * Write the buffered bytes.
+	 * @return False if the file cannot be written.
+	 */
+	private boolean flush() {
+		if (channel == null) {
+			buf.clear();
+			return true;
+		}
+		buf.flip();
+		try {
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+		} catch (IOException e) {
+			log.error("Cannot write to \"" + path + "\" because ", e);
+			return false;
+		} finally {
+			buf.clear();
+		}
+		return true;
+	}
+
+	/**
+	 * @return the path to the MAT file.
+	 */
+	public final File getPath() {
+		return path;
+	}
+
+	/**
+	 * Create the file and write the header.
+	 * @return False if the file cannot be created.
+	 */
+	private boolean open() {
+		if (channel != null) {
+			return true;
+		}
+		try {
+			channel = new FileOutputStream(path).getChannel();
+		} catch (IOException e) {
+			log.error("Cannot write to \"" + path + "\" because ", e);
+			return false;
+		}
+		final int textSize = 116;
+		final int subsysSize = 8;
+		final short version = 0x0100;
+		byte[] text = ArchiveHeader
+				.encodeString("MATLAB 5.0 MAT-file, Platform: Java, Created by: UI-SimCor FEM executor");
+		for (int i = 0; i < textSize; i++) {
+			buf.put(i < text.length ? text[i] : (byte) ' ');
+		}
+		for (int i = 0; i < subsysSize; i++) {
+			buf.put((byte) 0);
+		}
+		buf.putShort(version);
+		buf.put((byte) 'I');
+		buf.put((byte) 'M');
+		return buf.position() == HEADER_SIZE && flush();
+	}
+
+	/**
+	 * Pad an element to a multiple of 8 bytes.
+	 * @param nbytes
+	 *            Number of data bytes of the element.
+	 */
+	private void padding(final long nbytes) {
+		for (long i = nbytes; i < pad(nbytes); i++) {
+			buf.put((byte) 0);
+		}
+	}
+
+	/**
+	 * Write a data element tag.
+	 * @param type
+	 *            Data type.
+	 * @param nbytes
+	 *            Number of data bytes.
+	 */
+	private void tag(final int type, final int nbytes) {
+		buf.putInt(type);
+		buf.putInt(nbytes);
+	}
+
+	/**
+	 * Write a row cell array of strings.
+	 * @param name
+	 *            Variable name.
+	 * @param strings
+	 *            The strings.
+	 * @return False if the cell array cannot be written.
+	 */
+	public final boolean writeCellRow(final String name, final String[] strings) {
+		if (columnsLeft > 0) {
+			log.error("Matrix before \"" + name + "\" is missing "
+					+ columnsLeft + " columns");
+			return false;
+		}
+		byte[] nm = ArchiveHeader.encodeString(name);
+		long size = arrayPrefixSize(nm.length);
+		for (String s : strings) {
+			size += TAG_SIZE + charSize(s);
+		}
+		if (size > Integer.MAX_VALUE) {
+			log.error("\"" + name + "\" is too large for a MAT file");
+			return false;
+		}
+		if (open() == false) {
+			return false;
+		}
+		tag(MI_MATRIX, (int) size);
+		arrayPrefix(MX_CELL_CLASS, 1, strings.length, nm);
+		for (String s : strings) {
+			if (buf.remaining() < TAG_SIZE + charSize(s) && flush() == false) {
+				return false;
+			}
+			if (buf.remaining() < TAG_SIZE + charSize(s)) {
+				log.error("\"" + s + "\" is too long for \"" + name + "\"");
+				return false;
+			}
+			tag(MI_MATRIX, (int) charSize(s));
+			arrayPrefix(MX_CHAR_CLASS, 1, s.length(), new byte[0]);
+			tag(MI_UINT16, 2 * s.length());
+			for (int i = 0; i < s.length(); i++) {
+				buf.putChar(s.charAt(i));
+			}
+			padding(2L * s.length());
+		}
+		return flush();
+	}
+
+	/**
+	 * Write the next column of the current matrix.
+	 * @param column
+	 *            Column values. Must have as many values as the matrix has
+	 *            rows.
+	 * @return False if the column cannot be written.
+	 */
+	public final boolean writeColumn(final double[] column) {
+		if (columnsLeft == 0) {
+			log.error("No matrix is expecting a column in \"" + path + "\"");
+			return false;
+		}
+		if (column.length != rows) {
+			log.error("Column has " + column.length + " values instead of "
+					+ rows + " in \"" + path + "\"");
+			return false;
+		}
+		final int doubleSize = 8;
+		for (double d : column) {
+			if (buf.remaining() < doubleSize && flush() == false) {
+				return false;
+			}
+			buf.putDouble(d);
+		}
+		columnsLeft--;
+		// Doubles never need padding.
+		return flush();
+	}
+}
@@ -0,0 +1,133 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Splits a range of items into chunks which are scanned on a pool of daemon
+ * threads. Small ranges are scanned on the calling thread.
+ * @author Michael Bletzinger
+ */
+class ParallelScan {
+	/**
+	 * Thread pool. Created on the first parallel scan.
+	 */
+	private ExecutorService pool = null;
+	/**
+	 * Number of threads.
+	 */
+	private final int threads;
+
+	/**
+	 * @param threads
+	 *            Number of threads. One means that every scan runs on the
+	 *            calling thread.
+	 */
+	public ParallelScan(final int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Number of chunks a range is split into.
+	 * @param count
+	 *            Number of items.
+	 * @param minChunk
+	 *            Smallest number of items worth a separate chunk.
+	 * @param maxChunk
+	 *            Largest number of items in a chunk.
+	 * @return The number of chunks.
+	 */
+	public final int chunks(final long count, final long minChunk,
+			final long maxChunk) {
+		long n = Math.min(threads, count / Math.max(1, minChunk));
+		n = Math.max(n, (count + maxChunk - 1) / maxChunk);
+		return (int) Math.max(1, n);
+	}
+
+	/**
+	 * @return the thread pool.
+	 */
+	private synchronized ExecutorService pool() {
+		if (pool == null) {
+			pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread t = new Thread(r, "ArchiveScan");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return pool;
+	}
+
+	/**
+	 * Scan a range and wait for all of the chunks.
+	 * @param count
+	 *            Number of items.
+	 * @param minChunk
+	 *            Smallest number of items worth a separate chunk.
+	 * @param maxChunk
+	 *            Largest number of items in a chunk.
+	 * @param task
+	 *            Scans one chunk.
+	 * @throws IOException
+	 *             if any chunk cannot be read.
+	 */
+	public final void run(final long count, final long minChunk,
+			final long maxChunk, final ChunkScanI task) throws IOException {
+		int n = chunks(count, minChunk, maxChunk);
+		if (n == 1) {
+			task.scan(0, 0, count);
+			return;
+		}
+		ExecutorService p = pool();
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		long per = count / n;
+		for (int c = 0; c < n; c++) {
+			final int chunk = c;
+			final long from = c * per;
+			final long to = (c == n - 1 ? count : from + per);
+			futures.add(p.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws IOException {
+					task.scan(chunk, from, to);
+					return null;
+				}
+			}));
+		}
+		IOException failure = null;
+		for (Future<Object> f : futures) {
+			try {
+				f.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				failure = new IOException("Archive scan failed", e.getCause());
+			} catch (InterruptedException e) {
+				failure = new IOException("Archive scan was interrupted", e);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Stop the thread pool.
+	 */
+	public final synchronized void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+}
@@ -1,60 +1,195 @@
 package org.nees.illinois.uisimcor.fem_executor.archiving;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ScheduledFuture;
 
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Class which writes text records into the same file.
+ * Class which writes text records into the same file. The file is opened on
+ * the first write and kept open until {@link #close()} is called. Records are
+ * buffered and written in groups according to the {@link ArchiveDao flush
+ * policy}. The {@link FlushTimer} writes buffered records once the flush
+ * interval has passed even if no more records arrive.
  * @author Michael Bletzinger
  */
-public class TextArchive {
+public class TextArchive implements TextArchiveI {
 	/**
-	 * Path to the text file.
+	 * Open file. Null if the file is closed.
 	 */
-	private final File path;
+	private FileChannel channel = null;
+	/**
+	 * Character set used to encode the records.
+	 */
+	private final Charset charset = Charset.defaultCharset();
+	/**
+	 * Time in milliseconds of the last flush.
+	 */
+	private long lastFlush = System.currentTimeMillis();
 	/**
 	 * Logger.
 	 **/
 	private final Logger log = LoggerFactory.getLogger(TextArchive.class);
+	/**
+	 * Path to the text file.
+	 */
+	private final File path;
+	/**
+	 * Records which have not been written yet.
+	 */
+	private final StringBuilder pending = new StringBuilder();
+	/**
+	 * Number of records which have not been written yet.
+	 */
+	private int pendingRecords = 0;
+	/**
+	 * Flush policy.
+	 */
+	private final ArchiveDao policy;
+	/**
+	 * Flush scheduled on the {@link FlushTimer}. Null if none is scheduled.
+	 */
+	private ScheduledFuture<?> timedFlush = null;
+	/**
+	 * Task which the {@link FlushTimer} runs.
+	 */
+	private final Runnable timedFlushTask = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
 
 	/**
+	 * Create an archive which writes every record immediately.
 	 * @param path
 	 *            Path to the text file.
 	 */
 	public TextArchive(final File path) {
+		this(path, new ArchiveDao());
+	}
+
+	/**
+	 * @param path
+	 *            Path to the text file.
+	 * @param policy
+	 *            Flush policy.
+	 */
+	public TextArchive(final File path, final ArchiveDao policy) {
 		this.path = path;
+		this.policy = policy;
 	}
 
 	/**
-	 * Write the record to the text file.
-	 * @param record
-	 *            text to write.
+	 * Write any buffered records and close the file. The archive is reopened
+	 * if more records are written afterwards.
 	 */
-	public final void write(final String record) {
-		Writer writing = null;
+	@Override
+	public final synchronized void close() {
+		flush();
+		if (channel == null) {
+			return;
+		}
 		try {
-			writing = new OutputStreamWriter(new FileOutputStream(path,true));
-		} catch (FileNotFoundException e) {
-			log.error("Cannot write to \"" + path + "\" because ", e);
+			channel.close();
+		} catch (IOException e) {
+			log.debug("Who cares", e);
+		}
+		channel = null;
+	}
+
+	/**
+	 * Write the buffered records to the file.
+	 */
+	public final synchronized void flush() {
+		lastFlush = System.currentTimeMillis();
+		if (timedFlush != null) {
+			timedFlush.cancel(false);
+			timedFlush = null;
+		}
+		if (pendingRecords == 0) {
+			return;
+		}
+		ByteBuffer bytes = charset.encode(pending.toString());
+		pending.setLength(0);
+		pendingRecords = 0;
+		if (open() == false) {
 			return;
 		}
 		try {
-			writing.write(record);
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			if (policy.isFsync()) {
+				channel.force(false);
+			}
 		} catch (IOException e) {
 			log.error("Cannot write to \"" + path + "\" because ", e);
-		} finally {
-			try {
-				writing.close();
-			} catch (IOException e) {
-				log.debug("Who cares", e);
-			}
+		}
+	}
+
+	/**
+	 * @return the path to the text file.
+	 */
+	public final File getPath() {
+		return path;
+	}
+
+	/**
+	 * Open the file in append mode if it is not already open.
+	 * @return True if the file is open.
+	 */
+	private boolean open() {
+		if (channel != null) {
+			return true;
+		}
+		try {
+			channel = new FileOutputStream(path, true).getChannel();
+		} catch (IOException e) {
+			log.error("Cannot write to \"" + path + "\" because ", e);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Write the record to the text file. The record is buffered until the
+	 * flush policy says otherwise.
+	 * @param record
+	 *            text to write.
+	 */
+	@Override
+	public final synchronized void write(final String record) {
+		pending.append(record);
+		pendingRecords++;
+		if (pendingRecords >= policy.getFlushRecords()) {
+			flush();
+			return;
+		}
+		if (policy.getFlushMillis() > 0
+				&& System.currentTimeMillis() - lastFlush >= policy
+						.getFlushMillis()) {
+			flush();
+			return;
+		}
+		scheduleFlush();
+	}
+
+	/**
+	 * Schedule a flush of the buffered records after the flush interval unless
+	 * one is already scheduled.
+	 */
+	private void scheduleFlush() {
+		if (timedFlush == null && policy.getFlushMillis() > 0) {
+			timedFlush = FlushTimer.schedule(timedFlushTask,
+					policy.getFlushMillis());
 		}
 	}
 }
@@ -0,0 +1,19 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+/**
+ * Interface for archives which store text records.
+ * @author Michael Bletzinger
+ */
+public interface TextArchiveI {
+	/**
+	 * Write any buffered records and close the archive file.
+	 */
+	void close();
+
+	/**
+	 * Write the record to the archive.
+	 * @param record
+	 *            text to write.
+	 */
+	void write(String record);
+}
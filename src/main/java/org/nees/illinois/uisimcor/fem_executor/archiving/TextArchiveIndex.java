@@ -0,0 +1,497 @@
+package org.nees.illinois.uisimcor.fem_executor.archiving;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Step index of a text archive written by {@link DataArchive}. The index
+ * holds the step and file offset of every complete line. It is built once
+ * by scanning the archive in parallel chunks and saved in a <em>.tidx</em>
+ * file next to the archive. Later loads reuse the saved index and only scan
+ * lines which were appended since.
+ * <p>
+ * The index file consists of an 8 byte magic, an int version, a long number
+ * of indexed bytes, an int number of entries and an int step and long offset
+ * per entry. All numbers are little-endian.
+ * </p>
+ * @author Michael Bletzinger
+ */
+public class TextArchiveIndex {
+	/**
+	 * Size of an index entry. An int step and a long offset.
+	 */
+	private static final int ENTRY_SIZE = 12;
+	/**
+	 * First bytes of every index file.
+	 */
+	public static final String MAGIC = "UISCTIDX";
+	/**
+	 * Largest mapped chunk in bytes.
+	 */
+	private static final int MAX_CHUNK = 1 << 28;
+	/**
+	 * Bytes mapped past the end of a chunk to read the step of its last line.
+	 */
+	private static final int STEP_SLACK = 32;
+	/**
+	 * Current format version.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Load the index of a text archive. The index is built or extended if
+	 * necessary.
+	 * @param text
+	 *            Path to the <em>.txt</em> file.
+	 * @param threads
+	 *            Number of threads used to scan the archive.
+	 * @param minChunk
+	 *            Smallest number of bytes scanned by a separate thread.
+	 * @return The index.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	public static TextArchiveIndex load(final File text, final int threads,
+			final int minChunk) throws IOException {
+		ParallelScan scan = new ParallelScan(threads);
+		FileChannel channel = new RandomAccessFile(text, "r").getChannel();
+		try {
+			return load(text, channel, scan, minChunk);
+		} finally {
+			scan.shutdown();
+			channel.close();
+		}
+	}
+
+	/**
+	 * Load the index of an open text archive.
+	 * @param text
+	 *            Path to the <em>.txt</em> file.
+	 * @param channel
+	 *            Open archive file.
+	 * @param scan
+	 *            Splits the archive into chunks.
+	 * @param minChunk
+	 *            Smallest number of bytes scanned by a separate thread.
+	 * @return The index.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	static TextArchiveIndex load(final File text, final FileChannel channel,
+			final ParallelScan scan, final int minChunk) throws IOException {
+		TextArchiveIndex result = new TextArchiveIndex(text);
+		long size = channel.size();
+		boolean saved = result.read();
+		if (saved && result.isValid(channel) == false) {
+			result.clear();
+			saved = false;
+		}
+		if (saved && result.indexedLength == size) {
+			return result;
+		}
+		int before = result.count;
+		result.scan(channel, result.indexedLength, size, scan, minChunk);
+		if (saved == false || result.count > before) {
+			result.write();
+		}
+		return result;
+	}
+
+	/**
+	 * Number of entries.
+	 */
+	private int count = 0;
+	/**
+	 * Path to the index file.
+	 */
+	private final File indexPath;
+	/**
+	 * Number of archive bytes covered by the index. Always the end of a
+	 * complete line.
+	 */
+	private long indexedLength = 0;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(TextArchiveIndex.class);
+	/**
+	 * Offset of each line.
+	 */
+	private long[] offsets = new long[0];
+	/**
+	 * Step of each line.
+	 */
+	private int[] steps = new int[0];
+
+	/**
+	 * @param text
+	 *            Path to the <em>.txt</em> file.
+	 */
+	private TextArchiveIndex(final File text) {
+		String p = text.getPath();
+		if (p.endsWith(".txt")) {
+			p = p.substring(0, p.length() - ".txt".length());
+		}
+		this.indexPath = new File(p + ".tidx");
+	}
+
+	/**
+	 * Add entries to the end of the index.
+	 * @param nsteps
+	 *            Steps of the lines.
+	 * @param noffsets
+	 *            Offsets of the lines.
+	 * @param n
+	 *            Number of lines.
+	 */
+	private void append(final int[] nsteps, final long[] noffsets, final int n) {
+		ensure(count + n);
+		System.arraycopy(nsteps, 0, steps, count, n);
+		System.arraycopy(noffsets, 0, offsets, count, n);
+		count += n;
+	}
+
+	/**
+	 * Forget all of the entries.
+	 */
+	private void clear() {
+		count = 0;
+		indexedLength = 0;
+	}
+
+	/**
+	 * Make room for entries.
+	 * @param capacity
+	 *            Number of entries.
+	 */
+	private void ensure(final int capacity) {
+		if (steps.length >= capacity) {
+			return;
+		}
+		int c = Math.max(capacity, steps.length * 2);
+		int[] nsteps = new int[c];
+		long[] noffsets = new long[c];
+		System.arraycopy(steps, 0, nsteps, 0, count);
+		System.arraycopy(offsets, 0, noffsets, 0, count);
+		steps = nsteps;
+		offsets = noffsets;
+	}
+
+	/**
+	 * Find the first line whose step is not less than a step.
+	 * @param step
+	 *            Step number.
+	 * @return The line number. The number of lines if all steps are less.
+	 */
+	public final int firstLine(final long step) {
+		int lo = 0;
+		int hi = count;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (steps[mid] < step) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return the number of indexed lines.
+	 */
+	public final int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the number of archive bytes covered by the index.
+	 */
+	public final long getIndexedLength() {
+		return indexedLength;
+	}
+
+	/**
+	 * @return the path to the index file.
+	 */
+	public final File getIndexPath() {
+		return indexPath;
+	}
+
+	/**
+	 * Offset of the end of a line.
+	 * @param line
+	 *            Line number.
+	 * @return The offset after the line.
+	 */
+	public final long getLineEnd(final int line) {
+		if (line + 1 < count) {
+			return offsets[line + 1];
+		}
+		return indexedLength;
+	}
+
+	/**
+	 * @param line
+	 *            Line number.
+	 * @return the offset of the line.
+	 */
+	public final long getOffset(final int line) {
+		return offsets[line];
+	}
+
+	/**
+	 * @param line
+	 *            Line number.
+	 * @return the step of the line.
+	 */
+	public final int getStep(final int line) {
+		return steps[line];
+	}
+
+	/**
+	 * Check that a saved index still matches the archive. The archive must
+	 * be at least as long as the index and the last indexed line must still
+	 * be where the index says it is.
+	 * @param channel
+	 *            Open archive file.
+	 * @return True if the index matches.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	private boolean isValid(final FileChannel channel) throws IOException {
+		if (channel.size() < indexedLength) {
+			return false;
+		}
+		if (count == 0) {
+			return true;
+		}
+		long start = offsets[count - 1];
+		ByteBuffer line = ByteBuffer.allocate((int) (indexedLength - start));
+		ArchiveHeader.readFully(channel, start, line);
+		return parseStep(line, 0, line.limit()) == steps[count - 1]
+				&& line.get(line.limit() - 1) == '\n';
+	}
+
+	/**
+	 * Parse the step at the start of a line.
+	 * @param buf
+	 *            Bytes of the archive.
+	 * @param pos
+	 *            Position of the line.
+	 * @param limit
+	 *            Position after the last readable byte.
+	 * @return The step or {@link Integer#MIN_VALUE} if the line does not
+	 *         start with a step.
+	 */
+	static int parseStep(final ByteBuffer buf, final int pos, final int limit) {
+		final int radix = 10;
+		int p = pos;
+		boolean negative = false;
+		if (p < limit && buf.get(p) == '-') {
+			negative = true;
+			p++;
+		}
+		int start = p;
+		int result = 0;
+		while (p < limit) {
+			int d = buf.get(p) - '0';
+			if (d < 0 || d > radix - 1) {
+				break;
+			}
+			result = result * radix + d;
+			p++;
+		}
+		if (p == start) {
+			return Integer.MIN_VALUE;
+		}
+		return negative ? -result : result;
+	}
+
+	/**
+	 * Read the saved index.
+	 * @return False if there is no usable index file.
+	 */
+	private boolean read() {
+		if (indexPath.canRead() == false) {
+			return false;
+		}
+		final int fixedSize = MAGIC.length() + 4 + 8 + 4;
+		try {
+			FileChannel ich = new RandomAccessFile(indexPath, "r").getChannel();
+			try {
+				if (ich.size() < fixedSize) {
+					return false;
+				}
+				ByteBuffer fixed = ArchiveHeader.read(ich, 0, fixedSize);
+				byte[] m = new byte[MAGIC.length()];
+				fixed.get(m);
+				if (MAGIC.equals(ArchiveHeader.decodeString(m)) == false
+						|| fixed.getInt() != VERSION) {
+					return false;
+				}
+				long length = fixed.getLong();
+				int n = fixed.getInt();
+				if (ich.size() != fixedSize + (long) n * ENTRY_SIZE) {
+					return false;
+				}
+				ByteBuffer entries = ArchiveHeader.read(ich, fixedSize, n
+						* ENTRY_SIZE);
+				ensure(n);
+				for (int i = 0; i < n; i++) {
+					steps[i] = entries.getInt();
+					offsets[i] = entries.getLong();
+				}
+				count = n;
+				indexedLength = length;
+			} finally {
+				ich.close();
+			}
+		} catch (IOException e) {
+			log.error("Cannot read \"" + indexPath + "\" because ", e);
+			clear();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Index the complete lines of part of the archive.
+	 * @param channel
+	 *            Open archive file.
+	 * @param start
+	 *            Offset of the first line.
+	 * @param end
+	 *            Size of the archive.
+	 * @param scan
+	 *            Splits the part into chunks.
+	 * @param minChunk
+	 *            Smallest number of bytes scanned by a separate thread.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	private void scan(final FileChannel channel, final long start,
+			final long end, final ParallelScan scan, final int minChunk)
+			throws IOException {
+		long length = end - start;
+		if (length <= 0) {
+			return;
+		}
+		int n = scan.chunks(length, minChunk, MAX_CHUNK);
+		final int[][] csteps = new int[n][];
+		final long[][] coffsets = new long[n][];
+		final int[] ccounts = new int[n];
+		final long[] clast = new long[n];
+		scan.run(length, minChunk, MAX_CHUNK, new ChunkScanI() {
+			@Override
+			public void scan(final int chunk, final long from, final long to)
+					throws IOException {
+				long a = start + from;
+				long b = start + to;
+				long mapEnd = Math.min(end, b + STEP_SLACK);
+				ByteBuffer buf = channel.map(MapMode.READ_ONLY, a, mapEnd - a);
+				int limit = buf.limit();
+				int chunkLength = (int) (b - a);
+				final int minLineGuess = 128;
+				int[] s = new int[Math.max(1, chunkLength / minLineGuess)];
+				long[] o = new long[s.length];
+				int c = 0;
+				long last = -1;
+				if (chunk == 0) {
+					s[c] = parseStep(buf, 0, limit);
+					o[c] = a;
+					c++;
+				}
+				for (int p = 0; p < chunkLength; p++) {
+					if (buf.get(p) != '\n') {
+						continue;
+					}
+					last = a + p;
+					if (p + 1 >= limit || a + p + 1 >= end) {
+						continue;
+					}
+					if (c == s.length) {
+						int[] ns = new int[s.length * 2];
+						long[] no = new long[s.length * 2];
+						System.arraycopy(s, 0, ns, 0, c);
+						System.arraycopy(o, 0, no, 0, c);
+						s = ns;
+						o = no;
+					}
+					s[c] = parseStep(buf, p + 1, limit);
+					o[c] = a + p + 1;
+					c++;
+				}
+				csteps[chunk] = s;
+				coffsets[chunk] = o;
+				ccounts[chunk] = c;
+				clast[chunk] = last;
+			}
+		});
+		long lastNewline = -1;
+		for (int c = 0; c < n; c++) {
+			if (clast[c] >= 0) {
+				lastNewline = clast[c];
+			}
+		}
+		if (lastNewline < 0) {
+			return;
+		}
+		long newLength = lastNewline + 1;
+		for (int c = 0; c < n; c++) {
+			int k = 0;
+			int[] s = csteps[c];
+			long[] o = coffsets[c];
+			for (int i = 0; i < ccounts[c]; i++) {
+				// Skip the incomplete last line and lines without a step.
+				if (o[i] >= newLength || s[i] == Integer.MIN_VALUE) {
+					continue;
+				}
+				s[k] = s[i];
+				o[k] = o[i];
+				k++;
+			}
+			append(s, o, k);
+		}
+		indexedLength = newLength;
+	}
+
+	/**
+	 * Save the index.
+	 */
+	private void write() {
+		final int fixedSize = MAGIC.length() + 4 + 8 + 4;
+		ByteBuffer buf = ByteBuffer.allocate(fixedSize + count * ENTRY_SIZE)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		buf.put(ArchiveHeader.encodeString(MAGIC));
+		buf.putInt(VERSION);
+		buf.putLong(indexedLength);
+		buf.putInt(count);
+		for (int i = 0; i < count; i++) {
+			buf.putInt(steps[i]);
+			buf.putLong(offsets[i]);
+		}
+		buf.flip();
+		try {
+			FileChannel ich = new FileOutputStream(indexPath).getChannel();
+			try {
+				while (buf.hasRemaining()) {
+					ich.write(buf);
+				}
+			} finally {
+				ich.close();
+			}
+		} catch (IOException e) {
+			log.error("Cannot write \"" + indexPath + "\" because ", e);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package org.nees.illinois.uisimcor.fem_executor.config;
+
+import org.nees.illinois.uisimcor.fem_executor.config.types.ArchiveFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class to turn strings into archive format enumerators.
+ * @author Michael Bletzinger
+ */
+public class ArchiveFormatDecoder extends ParseElement<ArchiveFormat> {
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory
+			.getLogger(ArchiveFormatDecoder.class);
+
+	@Override
+	public final ArchiveFormat parse(final String raw, final String label) {
+		if (raw == null) {
+			log.debug("ArchiveFormat for " + label + " is missing.");
+			return null;
+		}
+		ArchiveFormat result = null;
+		try {
+			result = ArchiveFormat.valueOf(raw.trim());
+		} catch (Exception e) {
+			log.error("\"" + raw + "\" in " + label
+					+ " is not an archive format");
+			return null;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,34 @@
+package org.nees.illinois.uisimcor.fem_executor.config;
+
+import org.nees.illinois.uisimcor.fem_executor.config.types.ArchiveQueuePolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class to turn strings into archive queue policy enumerators.
+ * @author Michael Bletzinger
+ */
+public class ArchiveQueuePolicyDecoder extends ParseElement<ArchiveQueuePolicy> {
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory
+			.getLogger(ArchiveQueuePolicyDecoder.class);
+
+	@Override
+	public final ArchiveQueuePolicy parse(final String raw, final String label) {
+		if (raw == null) {
+			log.debug("ArchiveQueuePolicy for " + label + " is missing.");
+			return null;
+		}
+		ArchiveQueuePolicy result = null;
+		try {
+			result = ArchiveQueuePolicy.valueOf(raw.trim());
+		} catch (Exception e) {
+			log.error("\"" + raw + "\" in " + label
+					+ " is not an archive queue policy");
+			return null;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,32 @@
+package org.nees.illinois.uisimcor.fem_executor.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class to turn strings into booleans.
+ * @author Michael Bletzinger
+ */
+public class BooleanDecoder extends ParseElement<Boolean> {
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(BooleanDecoder.class);
+
+	@Override
+	public final Boolean parse(final String str, final String label) {
+		if (str == null) {
+			log.error("Boolean missing for " + label);
+			return null;
+		}
+		String value = str.trim();
+		if (value.equalsIgnoreCase("true")) {
+			return Boolean.TRUE;
+		}
+		if (value.equalsIgnoreCase("false")) {
+			return Boolean.FALSE;
+		}
+		log.error("\"" + str + "\" at " + label + " is not a Boolean");
+		return null;
+	}
+}
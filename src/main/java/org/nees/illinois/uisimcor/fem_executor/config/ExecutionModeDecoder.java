@@ -0,0 +1,34 @@
+package org.nees.illinois.uisimcor.fem_executor.config;
+
+import org.nees.illinois.uisimcor.fem_executor.config.types.ExecutionMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class to turn strings into execution mode enumerators.
+ * @author Michael Bletzinger
+ */
+public class ExecutionModeDecoder extends ParseElement<ExecutionMode> {
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory
+			.getLogger(ExecutionModeDecoder.class);
+
+	@Override
+	public final ExecutionMode parse(final String raw, final String label) {
+		if (raw == null) {
+			log.debug("ExecutionMode for " + label + " is missing.");
+			return null;
+		}
+		ExecutionMode result = null;
+		try {
+			result = ExecutionMode.valueOf(raw.trim());
+		} catch (Exception e) {
+			log.error("\"" + raw + "\" in " + label
+					+ " is not an execution mode");
+			return null;
+		}
+		return result;
+	}
+}
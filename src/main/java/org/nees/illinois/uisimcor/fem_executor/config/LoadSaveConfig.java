@@ -12,11 +12,17 @@ import java.util.List;
 import java.util.Properties;
 
 import org.nees.illinois.uisimcor.fem_executor.FemExecutorConfig;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ExecutionDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.LauncherDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.ProgramDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.TemplateDao;
+import org.nees.illinois.uisimcor.fem_executor.config.types.ArchiveFormat;
+import org.nees.illinois.uisimcor.fem_executor.config.types.ArchiveQueuePolicy;
 import org.nees.illinois.uisimcor.fem_executor.config.types.DimensionType;
 import org.nees.illinois.uisimcor.fem_executor.config.types.DispDof;
+import org.nees.illinois.uisimcor.fem_executor.config.types.ExecutionMode;
 import org.nees.illinois.uisimcor.fem_executor.config.types.FemProgramType;
 import org.nees.illinois.uisimcor.fem_executor.utils.IllegalParameterException;
 import org.nees.illinois.uisimcor.fem_executor.utils.PathUtils;
@@ -104,6 +110,8 @@ public class LoadSaveConfig {
 			return;
 		}
 		femConfig = new FemExecutorConfig(workDir);
+		loadArchive(femConfig.getArchiveParameters());
+		loadExecution(femConfig.getExecutionParameters());
 		for (FemProgramType p : FemProgramType.values()) {
 			ProgramDao fProgCfg = loadFemProgram(p);
 			if (fProgCfg == null) {
@@ -126,6 +134,136 @@ public class LoadSaveConfig {
 		}
 	}
 
+	/**
+	 * Extract the optional archive parameters from the properties file.
+	 * Parameters which are missing keep their default values.
+	 * @param archive
+	 *            Archive parameters to update.
+	 */
+	private void loadArchive(final ArchiveDao archive) {
+		IntegerDecoder decodeI = new IntegerDecoder();
+		BooleanDecoder decodeB = new BooleanDecoder();
+		String label = "archive.flush.records";
+		if (props.getProperty(label) != null) {
+			Integer records = decodeI.parse(props.getProperty(label), label);
+			if (records != null) {
+				archive.setFlushRecords(records);
+			}
+		}
+		label = "archive.flush.millis";
+		if (props.getProperty(label) != null) {
+			Integer millis = decodeI.parse(props.getProperty(label), label);
+			if (millis != null) {
+				archive.setFlushMillis(millis);
+			}
+		}
+		label = "archive.fsync";
+		if (props.getProperty(label) != null) {
+			Boolean fsync = decodeB.parse(props.getProperty(label), label);
+			if (fsync != null) {
+				archive.setFsync(fsync);
+			}
+		}
+		label = "archive.format";
+		if (props.getProperty(label) != null) {
+			ArchiveFormatDecoder decodeA = new ArchiveFormatDecoder();
+			ArchiveFormat format = decodeA.parse(props.getProperty(label),
+					label);
+			if (format != null) {
+				archive.setFormat(format);
+			}
+		}
+		label = "archive.block.frames";
+		if (props.getProperty(label) != null) {
+			Integer frames = decodeI.parse(props.getProperty(label), label);
+			if (frames != null) {
+				archive.setBlockFrames(frames);
+			}
+		}
+		label = "archive.inputs.compact";
+		if (props.getProperty(label) != null) {
+			Boolean compact = decodeB.parse(props.getProperty(label), label);
+			if (compact != null) {
+				archive.setCompactInputs(compact);
+			}
+		}
+		label = "archive.mat.export";
+		if (props.getProperty(label) != null) {
+			Boolean export = decodeB.parse(props.getProperty(label), label);
+			if (export != null) {
+				archive.setMatExport(export);
+			}
+		}
+		label = "archive.queue.capacity";
+		if (props.getProperty(label) != null) {
+			Integer capacity = decodeI.parse(props.getProperty(label), label);
+			if (capacity != null) {
+				archive.setQueueCapacity(capacity);
+			}
+		}
+		label = "archive.queue.max";
+		if (props.getProperty(label) != null) {
+			Integer max = decodeI.parse(props.getProperty(label), label);
+			if (max != null) {
+				archive.setQueueMaxCapacity(max);
+			}
+		}
+		label = "archive.queue.policy";
+		if (props.getProperty(label) != null) {
+			ArchiveQueuePolicyDecoder decodeQ = new ArchiveQueuePolicyDecoder();
+			ArchiveQueuePolicy policy = decodeQ.parse(props.getProperty(label),
+					label);
+			if (policy != null) {
+				archive.setQueuePolicy(policy);
+			}
+		}
+	}
+
+	/**
+	 * Extract the optional FEM process parameters from the properties file.
+	 * Parameters which are missing keep their default values.
+	 * @param execution
+	 *            FEM process parameters to update.
+	 */
+	private void loadExecution(final ExecutionDao execution) {
+		String label = "execution.mode";
+		if (props.getProperty(label) != null) {
+			ExecutionModeDecoder decodeE = new ExecutionModeDecoder();
+			ExecutionMode mode = decodeE.parse(props.getProperty(label), label);
+			if (mode != null) {
+				execution.setMode(mode);
+			}
+		}
+		label = "execution.processes";
+		if (props.getProperty(label) != null) {
+			IntegerDecoder decodeI = new IntegerDecoder();
+			Integer processes = decodeI.parse(props.getProperty(label), label);
+			if (processes != null) {
+				execution.setProcesses(processes);
+			}
+		}
+		label = "execution.dispatch.threads";
+		if (props.getProperty(label) != null) {
+			IntegerDecoder decodeI = new IntegerDecoder();
+			Integer threads = decodeI.parse(props.getProperty(label), label);
+			if (threads != null) {
+				execution.setDispatchThreads(threads);
+			}
+		}
+		label = "execution.stiffness.cache";
+		if (props.getProperty(label) != null) {
+			execution.setStiffnessCache(props.getProperty(label));
+		}
+		label = "execution.stiffness.cache.entries";
+		if (props.getProperty(label) != null) {
+			IntegerDecoder decodeI = new IntegerDecoder();
+			Integer entries = decodeI.parse(props.getProperty(label), label);
+			if (entries != null) {
+				execution.setStiffnessCacheEntries(entries);
+			}
+		}
+	}
+
 	/**
 	 * Extracting FEM program parameters from the properties file.
 	 * @param ptype
@@ -159,6 +297,81 @@ public class LoadSaveConfig {
 		label = ptype + ".step.record.index";
 		int index = decodeI.parse(props.getProperty(label), label);
 		ProgramDao result = new ProgramDao(executable, ptype, tdao, index);
+		label = ptype + ".launcher.path";
+		if (props.getProperty(label) != null) {
+			result.setLauncher(loadLauncher(ptype));
+		}
+		return result;
+	}
+
+	/**
+	 * Extracting the parallel launcher profile of an FEM program from the
+	 * properties file.
+	 * @param ptype
+	 *            FEM program type.
+	 * @return Launcher profile or null if the launcher path is not valid.
+	 */
+	private LauncherDao loadLauncher(final FemProgramType ptype) {
+		StringDecoder decodeS = new StringDecoder();
+		IntegerDecoder decodeI = new IntegerDecoder();
+		BooleanDecoder decodeB = new BooleanDecoder();
+		String label = ptype + ".launcher.path";
+		String path = decodeS.parse(props.getProperty(label), label);
+		if (path == null) {
+			return null;
+		}
+		LauncherDao result = new LauncherDao(path);
+		label = ptype + ".launcher.ranks";
+		if (props.getProperty(label) != null) {
+			Integer ranks = decodeI.parse(props.getProperty(label), label);
+			if (ranks != null && ranks < 1) {
+				log.error(label + " has to be at least 1 instead of " + ranks);
+			} else if (ranks != null) {
+				result.setRanks(ranks);
+			}
+		}
+		label = ptype + ".launcher.ranks.option";
+		if (props.getProperty(label) != null) {
+			result.setRanksOption(props.getProperty(label).trim());
+		}
+		label = ptype + ".launcher.args";
+		if (props.getProperty(label) != null) {
+			try {
+				result.getArgs().addAll(
+						eoStringList.parse(props.getProperty(label), label));
+			} catch (Exception e) {
+				log.error("Launcher arguments not recognized for " + ptype, e);
+			}
+		}
+		label = ptype + ".launcher.env";
+		if (props.getProperty(label) != null) {
+			List<String> vars = null;
+			try {
+				vars = eoStringList.parse(props.getProperty(label), label);
+			} catch (Exception e) {
+				log.error("Launcher environment not recognized for " + ptype,
+						e);
+			}
+			if (vars != null) {
+				for (String v : vars) {
+					int eq = v.indexOf('=');
+					if (eq < 1) {
+						log.error("\"" + v + "\" at " + label
+								+ " is not NAME=VALUE");
+						continue;
+					}
+					result.getEnv().put(v.substring(0, eq).trim(),
+							v.substring(eq + 1).trim());
+				}
+			}
+		}
+		label = ptype + ".launcher.forward.stdin";
+		if (props.getProperty(label) != null) {
+			Boolean forward = decodeB.parse(props.getProperty(label), label);
+			if (forward != null) {
+				result.setForwardStdin(forward);
+			}
+		}
 		return result;
 	}
 
@@ -204,6 +417,22 @@ public class LoadSaveConfig {
 
 		SubstructureDao result = new SubstructureDao(name, dim, fem, sfiles,
 				nodes, wfiles, dport, fport);
+		label = name + ".substeps";
+		if (props.getProperty(label) != null) {
+			Integer substeps = id.parse(props.getProperty(label), label);
+			if (substeps != null && substeps < 1) {
+				log.error(label + " has to be at least 1 instead of "
+						+ substeps);
+			} else if (substeps != null) {
+				result.setSubsteps(substeps);
+			}
+		}
+		label = name + ".process.group";
+		if (props.getProperty(label) != null) {
+			StringDecoder decodeS = new StringDecoder();
+			result.setProcessGroup(decodeS.parse(props.getProperty(label),
+					label));
+		}
 		for (Integer node : nodes) {
 			label = name + ".effective.dofs." + node;
 			List<DispDof> edofs = null;
@@ -235,6 +464,8 @@ public class LoadSaveConfig {
 			first = false;
 		}
 		props.setProperty("substructures", str);
+		saveArchive(femConfig.getArchiveParameters());
+		saveExecution(femConfig.getExecutionParameters());
 		for (ProgramDao fpCfg : femConfig.getFemProgramParameters().values()) {
 			saveFemProgram(fpCfg);
 		}
@@ -249,6 +480,51 @@ public class LoadSaveConfig {
 		}
 	}
 
+	/**
+	 * Save the archive parameters.
+	 * @param archive
+	 *            Archive parameters.
+	 */
+	private void saveArchive(final ArchiveDao archive) {
+		props.setProperty("archive.flush.records",
+				Integer.toString(archive.getFlushRecords()));
+		props.setProperty("archive.flush.millis",
+				Integer.toString(archive.getFlushMillis()));
+		props.setProperty("archive.fsync", Boolean.toString(archive.isFsync()));
+		props.setProperty("archive.format", archive.getFormat().name());
+		props.setProperty("archive.block.frames",
+				Integer.toString(archive.getBlockFrames()));
+		props.setProperty("archive.inputs.compact",
+				Boolean.toString(archive.isCompactInputs()));
+		props.setProperty("archive.mat.export",
+				Boolean.toString(archive.isMatExport()));
+		props.setProperty("archive.queue.capacity",
+				Integer.toString(archive.getQueueCapacity()));
+		props.setProperty("archive.queue.max",
+				Integer.toString(archive.getQueueMaxCapacity()));
+		props.setProperty("archive.queue.policy", archive.getQueuePolicy()
+				.name());
+	}
+
+	/**
+	 * Save the FEM process parameters.
+	 * @param execution
+	 *            FEM process parameters.
+	 */
+	private void saveExecution(final ExecutionDao execution) {
+		props.setProperty("execution.mode", execution.getMode().name());
+		props.setProperty("execution.processes",
+				Integer.toString(execution.getProcesses()));
+		props.setProperty("execution.dispatch.threads",
+				Integer.toString(execution.getDispatchThreads()));
+		if (execution.getStiffnessCache() != null) {
+			props.setProperty("execution.stiffness.cache",
+					execution.getStiffnessCache());
+		}
+		props.setProperty("execution.stiffness.cache.entries",
+				Integer.toString(execution.getStiffnessCacheEntries()));
+	}
+
 	/**
 	 * Save a set of FEM program parameters.
 	 * @param progCfg
@@ -264,6 +540,28 @@ public class LoadSaveConfig {
 		props.put(ptype + ".file.template.run", progCfg.getTemplateDao()
 				.getRunTemplateFile());
 		props.put(ptype + ".step.record.index", Integer.toString(progCfg.getStepRecordIndex()));
+		LauncherDao launcher = progCfg.getLauncher();
+		if (launcher == null) {
+			return;
+		}
+		props.put(ptype + ".launcher.path", launcher.getPath());
+		props.put(ptype + ".launcher.ranks",
+				Integer.toString(launcher.getRanks()));
+		props.put(ptype + ".launcher.ranks.option", launcher.getRanksOption());
+		if (launcher.getArgs().isEmpty() == false) {
+			props.put(ptype + ".launcher.args",
+					eoStringList.encode(launcher.getArgs()));
+		}
+		if (launcher.getEnv().isEmpty() == false) {
+			List<String> vars = new ArrayList<String>();
+			for (String name : launcher.getEnv().keySet()) {
+				vars.add(name + "=" + launcher.getEnv().get(name));
+			}
+			Collections.sort(vars);
+			props.put(ptype + ".launcher.env", eoStringList.encode(vars));
+		}
+		props.put(ptype + ".launcher.forward.stdin",
+				Boolean.toString(launcher.isForwardStdin()));
 	}
 
 	/**
@@ -294,6 +592,12 @@ public class LoadSaveConfig {
 				Integer.toString(config.getDispPort()));
 		props.setProperty(name + ".tcp.port.forc",
 				Integer.toString(config.getForcePort()));
+		props.setProperty(name + ".substeps",
+				Integer.toString(config.getSubsteps()));
+		if (config.getProcessGroup() != null) {
+			props.setProperty(name + ".process.group",
+					config.getProcessGroup());
+		}
 	}
 
 	/**
@@ -0,0 +1,216 @@
+package org.nees.illinois.uisimcor.fem_executor.config.dao;
+
+import org.nees.illinois.uisimcor.fem_executor.config.types.ArchiveFormat;
+import org.nees.illinois.uisimcor.fem_executor.config.types.ArchiveQueuePolicy;
+
+/**
+ * Configuration parameters for the archives written to the log directories.
+ * @author Michael Bletzinger
+ */
+public class ArchiveDao {
+	/**
+	 * Number of frames compressed together in a
+	 * {@link ArchiveFormat#Compressed Compressed} archive.
+	 */
+	private int blockFrames = 256;
+	/**
+	 * Format of the displacement and force archives.
+	 */
+	private ArchiveFormat format = ArchiveFormat.Text;
+	/**
+	 * Flag indicating that the Inputs archive stores the step script pattern
+	 * once and the displacements of the plain steps in a binary Commands
+	 * archive instead of the full script of every step. Trial, revert and
+	 * batch scripts are kept as they are.
+	 */
+	private boolean compactInputs = false;
+	/**
+	 * Flag indicating that the displacement and force archives are exported
+	 * to a MAT file when the simulation finishes.
+	 */
+	private boolean matExport = false;
+	/**
+	 * Number of records the archive writer queue holds before the
+	 * {@link #queuePolicy} applies. Zero means that the archives are written
+	 * on the step loop thread.
+	 */
+	private int queueCapacity = 0;
+	/**
+	 * Capacity the queue may grow to with the
+	 * {@link ArchiveQueuePolicy#Grow Grow} policy.
+	 */
+	private int queueMaxCapacity = 0;
+	/**
+	 * What the archive writer does when its queue is full.
+	 */
+	private ArchiveQueuePolicy queuePolicy = ArchiveQueuePolicy.Block;
+	/**
+	 * Maximum number of records buffered before they are written to disk.
+	 */
+	private int flushRecords = 1;
+	/**
+	 * Maximum time in milliseconds a record is buffered before it is written
+	 * to disk. Zero means that only {@link #flushRecords} is used.
+	 */
+	private int flushMillis = 0;
+	/**
+	 * Flag indicating that each flush is forced onto the storage device.
+	 */
+	private boolean fsync = false;
+
+	/**
+	 * @return the number of frames compressed together.
+	 */
+	public final int getBlockFrames() {
+		return blockFrames;
+	}
+
+	/**
+	 * @param blockFrames
+	 *            the number of frames compressed together.
+	 */
+	public final void setBlockFrames(final int blockFrames) {
+		this.blockFrames = blockFrames;
+	}
+
+	/**
+	 * @return the format of the displacement and force archives.
+	 */
+	public final ArchiveFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @param format
+	 *            the format of the displacement and force archives.
+	 */
+	public final void setFormat(final ArchiveFormat format) {
+		this.format = format;
+	}
+
+	/**
+	 * @return True if the Inputs archive stores the step script pattern once
+	 *         and the step displacements in the Commands archive.
+	 */
+	public final boolean isCompactInputs() {
+		return compactInputs;
+	}
+
+	/**
+	 * @param compactInputs
+	 *            True if the Inputs archive stores the step script pattern
+	 *            once and the step displacements in the Commands archive.
+	 */
+	public final void setCompactInputs(final boolean compactInputs) {
+		this.compactInputs = compactInputs;
+	}
+
+	/**
+	 * @return True if the archives are exported to a MAT file when the
+	 *         simulation finishes.
+	 */
+	public final boolean isMatExport() {
+		return matExport;
+	}
+
+	/**
+	 * @param matExport
+	 *            True if the archives are exported to a MAT file when the
+	 *            simulation finishes.
+	 */
+	public final void setMatExport(final boolean matExport) {
+		this.matExport = matExport;
+	}
+
+	/**
+	 * @return the capacity of the archive writer queue. Zero if the archives
+	 *         are written synchronously.
+	 */
+	public final int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * @return the capacity the queue may grow to. Never less than the
+	 *         {@link #getQueueCapacity() capacity}.
+	 */
+	public final int getQueueMaxCapacity() {
+		return Math.max(queueCapacity, queueMaxCapacity);
+	}
+
+	/**
+	 * @return what the archive writer does when its queue is full.
+	 */
+	public final ArchiveQueuePolicy getQueuePolicy() {
+		return queuePolicy;
+	}
+
+	/**
+	 * @param queueCapacity
+	 *            the capacity of the archive writer queue.
+	 */
+	public final void setQueueCapacity(final int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * @param queueMaxCapacity
+	 *            the capacity the queue may grow to.
+	 */
+	public final void setQueueMaxCapacity(final int queueMaxCapacity) {
+		this.queueMaxCapacity = queueMaxCapacity;
+	}
+
+	/**
+	 * @param queuePolicy
+	 *            what the archive writer does when its queue is full.
+	 */
+	public final void setQueuePolicy(final ArchiveQueuePolicy queuePolicy) {
+		this.queuePolicy = queuePolicy;
+	}
+
+	/**
+	 * @return the maximum time in milliseconds a record is buffered.
+	 */
+	public final int getFlushMillis() {
+		return flushMillis;
+	}
+
+	/**
+	 * @return the maximum number of records buffered.
+	 */
+	public final int getFlushRecords() {
+		return flushRecords;
+	}
+
+	/**
+	 * @return True if each flush is forced onto the storage device.
+	 */
+	public final boolean isFsync() {
+		return fsync;
+	}
+
+	/**
+	 * @param flushMillis
+	 *            the maximum time in milliseconds a record is buffered.
+	 */
+	public final void setFlushMillis(final int flushMillis) {
+		this.flushMillis = flushMillis;
+	}
+
+	/**
+	 * @param flushRecords
+	 *            the maximum number of records buffered.
+	 */
+	public final void setFlushRecords(final int flushRecords) {
+		this.flushRecords = flushRecords;
+	}
+
+	/**
+	 * @param fsync
+	 *            True if each flush is forced onto the storage device.
+	 */
+	public final void setFsync(final boolean fsync) {
+		this.fsync = fsync;
+	}
+}
@@ -0,0 +1,141 @@
+package org.nees.illinois.uisimcor.fem_executor.config.dao;
+
+import org.nees.illinois.uisimcor.fem_executor.config.types.ExecutionMode;
+
+/**
+ * Configuration parameters for running the FEM processes.
+ * @author Michael Bletzinger
+ */
+public class ExecutionDao {
+	/**
+	 * Maximum number of threads which set up, start and poll the
+	 * substructures at the same time. Zero means one per available processor.
+	 */
+	private int dispatchThreads = 0;
+	/**
+	 * How the FEM programs are run.
+	 */
+	private ExecutionMode mode = ExecutionMode.Dynamic;
+	/**
+	 * Maximum number of {@link ExecutionMode#Static Static} FEM processes and
+	 * stiffness probes running at the same time. Zero means one per available
+	 * processor.
+	 */
+	private int processes = 0;
+	/**
+	 * Directory of the stiffness cache. Null if stiffness matrices are not
+	 * cached.
+	 */
+	private String stiffnessCache = null;
+	/**
+	 * Maximum number of stiffness matrices which are kept in the cache.
+	 */
+	private int stiffnessCacheEntries = 64;
+
+	/**
+	 * @return the maximum number of threads which set up, start and poll the
+	 *         substructures at the same time with the default applied.
+	 */
+	public final int getDispatchBudget() {
+		if (dispatchThreads > 0) {
+			return dispatchThreads;
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * @return the configured maximum number of threads which set up, start
+	 *         and poll the substructures at the same time. Zero means one per
+	 *         available processor.
+	 */
+	public final int getDispatchThreads() {
+		return dispatchThreads;
+	}
+
+	/**
+	 * @return how the FEM programs are run.
+	 */
+	public final ExecutionMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return the configured maximum number of FEM processes running at the
+	 *         same time. Zero means one per available processor.
+	 */
+	public final int getProcesses() {
+		return processes;
+	}
+
+	/**
+	 * @return the maximum number of FEM processes running at the same time
+	 *         with the default applied.
+	 */
+	public final int getProcessBudget() {
+		if (processes > 0) {
+			return processes;
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * @return the directory of the stiffness cache. Null if stiffness
+	 *         matrices are not cached.
+	 */
+	public final String getStiffnessCache() {
+		return stiffnessCache;
+	}
+
+	/**
+	 * @return the maximum number of stiffness matrices which are kept in the
+	 *         cache.
+	 */
+	public final int getStiffnessCacheEntries() {
+		return stiffnessCacheEntries;
+	}
+
+	/**
+	 * @param dispatchThreads
+	 *            the maximum number of threads which set up, start and poll
+	 *            the substructures at the same time. Zero means one per
+	 *            available processor.
+	 */
+	public final void setDispatchThreads(final int dispatchThreads) {
+		this.dispatchThreads = dispatchThreads;
+	}
+
+	/**
+	 * @param mode
+	 *            how the FEM programs are run.
+	 */
+	public final void setMode(final ExecutionMode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * @param processes
+	 *            the maximum number of FEM processes running at the same
+	 *            time. Zero means one per available processor.
+	 */
+	public final void setProcesses(final int processes) {
+		this.processes = processes;
+	}
+
+	/**
+	 * @param stiffnessCache
+	 *            the directory of the stiffness cache. Null if stiffness
+	 *            matrices are not cached.
+	 */
+	public final void setStiffnessCache(final String stiffnessCache) {
+		this.stiffnessCache = stiffnessCache;
+	}
+
+	/**
+	 * @param stiffnessCacheEntries
+	 *            the maximum number of stiffness matrices which are kept in
+	 *            the cache.
+	 */
+	public final void setStiffnessCacheEntries(final int stiffnessCacheEntries) {
+		this.stiffnessCacheEntries = stiffnessCacheEntries;
+	}
+}
@@ -0,0 +1,136 @@
+package org.nees.illinois.uisimcor.fem_executor.config.dao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Launcher profile which wraps the FEM executable in a parallel launcher such
+ * as mpiexec. Only rank 0 talks to the executor. Reports and recorders of the
+ * scripts are restricted to rank 0 and the commands read from STDIN can be
+ * forwarded to the other ranks.
+ * @author Michael Bletzinger
+ */
+public class LauncherDao {
+	/**
+	 * Launcher arguments placed between the rank count and the executable.
+	 * Used for process binding options.
+	 */
+	private final List<String> args = new ArrayList<String>();
+	/**
+	 * Environment variables of the launched processes.
+	 */
+	private final Map<String, String> env = new HashMap<String, String>();
+	/**
+	 * Flag indicating that rank 0 forwards every command it reads from STDIN
+	 * to the other ranks. Needed by programs like OpenSeesMP where every rank
+	 * runs its own interpreter.
+	 */
+	private boolean forwardStdin = false;
+	/**
+	 * Path to the launcher.
+	 */
+	private final String path;
+	/**
+	 * Number of ranks.
+	 */
+	private int ranks = 1;
+	/**
+	 * Launcher option which sets the number of ranks.
+	 */
+	private String ranksOption = "-n";
+
+	/**
+	 * @param path
+	 *            Path to the launcher.
+	 */
+	public LauncherDao(final String path) {
+		this.path = path;
+	}
+
+	/**
+	 * @return the launcher arguments placed between the rank count and the
+	 *         executable.
+	 */
+	public final List<String> getArgs() {
+		return args;
+	}
+
+	/**
+	 * @return the command line which is placed in front of the executable.
+	 */
+	public final List<String> getCommandLine() {
+		List<String> result = new ArrayList<String>();
+		result.add(path);
+		if (ranksOption.length() > 0) {
+			result.add(ranksOption);
+			result.add(Integer.toString(ranks));
+		}
+		result.addAll(args);
+		return result;
+	}
+
+	/**
+	 * @return the environment variables of the launched processes.
+	 */
+	public final Map<String, String> getEnv() {
+		return env;
+	}
+
+	/**
+	 * @return the path to the launcher.
+	 */
+	public final String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the number of ranks.
+	 */
+	public final int getRanks() {
+		return ranks;
+	}
+
+	/**
+	 * @return the launcher option which sets the number of ranks. Empty if the
+	 *         launcher does not take one.
+	 */
+	public final String getRanksOption() {
+		return ranksOption;
+	}
+
+	/**
+	 * @return True if rank 0 forwards the commands read from STDIN to the
+	 *         other ranks.
+	 */
+	public final boolean isForwardStdin() {
+		return forwardStdin;
+	}
+
+	/**
+	 * @param forwardStdin
+	 *            True if rank 0 forwards the commands read from STDIN to the
+	 *            other ranks.
+	 */
+	public final void setForwardStdin(final boolean forwardStdin) {
+		this.forwardStdin = forwardStdin;
+	}
+
+	/**
+	 * @param ranks
+	 *            the number of ranks.
+	 */
+	public final void setRanks(final int ranks) {
+		this.ranks = ranks;
+	}
+
+	/**
+	 * @param ranksOption
+	 *            the launcher option which sets the number of ranks. Empty if
+	 *            the launcher does not take one.
+	 */
+	public final void setRanksOption(final String ranksOption) {
+		this.ranksOption = ranksOption;
+	}
+}
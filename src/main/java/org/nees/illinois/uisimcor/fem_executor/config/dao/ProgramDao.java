@@ -34,6 +34,11 @@ public class ProgramDao {
 	 * Record index to use for the response.
 	 */
 	private final int stepRecordIndex;
+	/**
+	 * Parallel launcher which wraps the executable. Null if the executable is
+	 * run directly.
+	 */
+	private LauncherDao launcher = null;
 
 	/**
 	 * @param executablePath
@@ -75,4 +80,21 @@ public class ProgramDao {
 		return templateDao;
 	}
 
+	/**
+	 * @return the parallel launcher which wraps the executable. Null if the
+	 *         executable is run directly.
+	 */
+	public final LauncherDao getLauncher() {
+		return launcher;
+	}
+
+	/**
+	 * @param launcher
+	 *            the parallel launcher which wraps the executable. Null if the
+	 *            executable is run directly.
+	 */
+	public final void setLauncher(final LauncherDao launcher) {
+		this.launcher = launcher;
+	}
+
 }
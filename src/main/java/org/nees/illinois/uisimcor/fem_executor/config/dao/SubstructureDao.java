@@ -77,6 +77,16 @@ public class SubstructureDao {
 	 * Force TCP port.
 	 */
 	private final int forcePort;
+	/**
+	 * Number of interpolated sub-increments each step is split into inside the
+	 * FEM program. Only the response of the last one is returned.
+	 */
+	private int substeps = 1;
+	/**
+	 * Name of the process group whose FEM process also analyzes this
+	 * substructure. Null if the substructure has a process of its own.
+	 */
+	private String processGroup = null;
 
 	/**
 	 * @param address
@@ -228,6 +238,39 @@ public class SubstructureDao {
 		return result;
 	}
 
+	/**
+	 * @return the number of interpolated sub-increments of each step.
+	 */
+	public final int getSubsteps() {
+		return substeps;
+	}
+
+	/**
+	 * @param substeps
+	 *            the number of interpolated sub-increments of each step. Must
+	 *            be at least 1.
+	 */
+	public final void setSubsteps(final int substeps) {
+		this.substeps = substeps;
+	}
+
+	/**
+	 * @return the name of the process group which shares one FEM process or
+	 *         null if the substructure has a process of its own.
+	 */
+	public final String getProcessGroup() {
+		return processGroup;
+	}
+
+	/**
+	 * @param processGroup
+	 *            the name of the process group which shares one FEM process.
+	 *            Null if the substructure has a process of its own.
+	 */
+	public final void setProcessGroup(final String processGroup) {
+		this.processGroup = processGroup;
+	}
+
 	/**
 	 * @return the workFiles
 	 */
@@ -0,0 +1,22 @@
+package org.nees.illinois.uisimcor.fem_executor.config.types;
+
+/**
+ * Enumeration specifying how the displacement and force archives are stored.
+ * @author Michael Bletzinger
+ */
+public enum ArchiveFormat {
+	/**
+	 * Binary frames with a self-describing header. Can be converted to the
+	 * text layout with the archive converter.
+	 */
+	Binary,
+	/**
+	 * Blocks of frames which are delta encoded and deflated. Can be converted
+	 * to the text layout with the archive converter.
+	 */
+	Compressed,
+	/**
+	 * Tab separated text with a separate header file.
+	 */
+	Text
+}
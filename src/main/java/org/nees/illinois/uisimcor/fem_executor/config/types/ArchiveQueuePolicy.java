@@ -0,0 +1,16 @@
+package org.nees.illinois.uisimcor.fem_executor.config.types;
+
+/**
+ * Enumeration specifying what the archive writer does when its queue is full.
+ * @author Michael Bletzinger
+ */
+public enum ArchiveQueuePolicy {
+	/**
+	 * The step loop waits until the writer has made room.
+	 */
+	Block,
+	/**
+	 * The queue grows up to its maximum capacity before the step loop waits.
+	 */
+	Grow
+}
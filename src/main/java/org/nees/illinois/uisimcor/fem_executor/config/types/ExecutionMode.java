@@ -0,0 +1,19 @@
+package org.nees.illinois.uisimcor.fem_executor.config.types;
+
+/**
+ * Enumeration specifying how the FEM programs are run.
+ * @author Michael Bletzinger
+ */
+public enum ExecutionMode {
+	/**
+	 * One FEM process per substructure is started with the simulation and
+	 * receives each step over STDIN.
+	 */
+	Dynamic,
+	/**
+	 * A fresh FEM process is started for every step with a complete run
+	 * script. The responses are read from the recorder files when the process
+	 * has exited.
+	 */
+	Static
+}
@@ -0,0 +1,178 @@
+package org.nees.illinois.uisimcor.fem_executor.execute;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nees.illinois.uisimcor.fem_executor.process.AbortableI;
+import org.nees.illinois.uisimcor.fem_executor.process.ResponseSignal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread which completes pending {@link StepFuture step futures}. The thread
+ * sleeps on the {@link ResponseSignal} and only advances the substructure
+ * states when the FEM processes have reported something or when the liveness
+ * interval has passed.
+ * @author Michael Bletzinger
+ */
+public class AsyncStepMonitor implements AbortableI {
+	/**
+	 * Maximum time in milliseconds between liveness checks.
+	 */
+	private final int livenessInterval;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(AsyncStepMonitor.class);
+	/**
+	 * Pending futures for each substructure.
+	 */
+	private final Map<SubstructureExecutorI, StepFuture> pending = new LinkedHashMap<SubstructureExecutorI, StepFuture>();
+	/**
+	 * Flag to stop the thread.
+	 */
+	private boolean quit = false;
+	/**
+	 * Signal raised by the substructures whenever a response arrives.
+	 */
+	private final ResponseSignal signal;
+
+	/**
+	 * @param signal
+	 *            Signal raised by the substructures whenever a response
+	 *            arrives.
+	 * @param livenessInterval
+	 *            Maximum time in milliseconds between liveness checks.
+	 */
+	public AsyncStepMonitor(final ResponseSignal signal,
+			final int livenessInterval) {
+		this.signal = signal;
+		this.livenessInterval = livenessInterval;
+	}
+
+	/**
+	 * Check a substructure and finish its future if the step is over.
+	 * @param exe
+	 *            The substructure.
+	 * @param future
+	 *            The pending future.
+	 * @return True if the future has finished.
+	 */
+	private boolean check(final SubstructureExecutorI exe,
+			final StepFuture future) {
+		if (future.isDone()) {
+			return true;
+		}
+		boolean done = exe.stepIsDone();
+		FemStatus statuses = exe.getStatuses();
+		// Errors on STDERR are often warnings and stay set for the rest of
+		// the run so only the problems which fail the blocking step fail the
+		// future.
+		if (statuses.isFemProcessHasDied()) {
+			return future.fail("FEM process is no longer running");
+		}
+		if (exe.iveGotProblems()) {
+			return future.fail("FEM execution has failed");
+		}
+		if (done == false) {
+			return false;
+		}
+		int size = exe.getScfg().getTotalDofs();
+		double[][] result = new double[2][size];
+		exe.readDisplacements(result[0]);
+		exe.readForces(result[1]);
+		return future.complete(result);
+	}
+
+	/**
+	 * @return the number of futures that have not finished yet.
+	 */
+	public final synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	@Override
+	public final synchronized boolean isQuit() {
+		return quit;
+	}
+
+	@Override
+	public final void run() {
+		List<SubstructureExecutorI> exes = new ArrayList<SubstructureExecutorI>();
+		List<StepFuture> futures = new ArrayList<StepFuture>();
+		while (isQuit() == false) {
+			long seen = signal.getGeneration();
+			exes.clear();
+			futures.clear();
+			synchronized (this) {
+				for (Map.Entry<SubstructureExecutorI, StepFuture> e : pending
+						.entrySet()) {
+					exes.add(e.getKey());
+					futures.add(e.getValue());
+				}
+			}
+			for (int i = 0; i < exes.size(); i++) {
+				boolean finished;
+				try {
+					finished = check(exes.get(i), futures.get(i));
+				} catch (RuntimeException e) {
+					log.error("Checking step " + futures.get(i).getStep()
+							+ " of " + futures.get(i).getLabel()
+							+ " failed because ", e);
+					finished = futures.get(i).fail(e.getMessage());
+				}
+				if (finished) {
+					synchronized (this) {
+						if (pending.get(exes.get(i)) == futures.get(i)) {
+							pending.remove(exes.get(i));
+						}
+					}
+				}
+			}
+			signal.awaitChange(seen, livenessInterval);
+		}
+		List<StepFuture> left;
+		synchronized (this) {
+			left = new ArrayList<StepFuture>(pending.values());
+			pending.clear();
+		}
+		for (StepFuture f : left) {
+			f.fail("simulation was stopped");
+		}
+		log.debug("Async step monitor has stopped");
+	}
+
+	@Override
+	public final synchronized void setQuit(final boolean quit) {
+		this.quit = quit;
+		signal.signal();
+	}
+
+	/**
+	 * Start the step of a substructure and watch it until the step has
+	 * finished. Any future still pending for the substructure is failed
+	 * before the step is started so that the responses of the new step can
+	 * never complete it. The lock is held across both so that the step is
+	 * only started once the old future is out of the way.
+	 * @param exe
+	 *            The substructure.
+	 * @param future
+	 *            Future to finish.
+	 * @param displacements
+	 *            Displacement target.
+	 */
+	public final void start(final SubstructureExecutorI exe,
+			final StepFuture future, final double[] displacements) {
+		synchronized (this) {
+			StepFuture old = pending.remove(exe);
+			if (old != null) {
+				old.fail("superseded by step " + future.getStep());
+			}
+			exe.startStep(future.getStep(), displacements);
+			pending.put(exe, future);
+		}
+		signal.signal();
+	}
+}
@@ -0,0 +1,16 @@
+package org.nees.illinois.uisimcor.fem_executor.execute;
+
+/**
+ * Work done for one substructure by a {@link SubstructureDispatcher}.
+ * @author Michael Bletzinger
+ */
+public interface DispatchTaskI {
+	/**
+	 * Do the work for one substructure. Calls for different substructures can
+	 * run at the same time.
+	 * @param index
+	 *            Index of the substructure.
+	 * @return True if successful.
+	 */
+	boolean run(int index);
+}
@@ -1,19 +1,39 @@
 package org.nees.illinois.uisimcor.fem_executor.execute;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.concurrent.BlockingQueue;
 
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveColumns;
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveWriter;
+import org.nees.illinois.uisimcor.fem_executor.archiving.AsyncDataArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.AsyncTextArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.BinaryDataArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.CompressedDataArchive;
 import org.nees.illinois.uisimcor.fem_executor.archiving.DataArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.DataArchiveI;
 import org.nees.illinois.uisimcor.fem_executor.archiving.HeaderArchive;
 import org.nees.illinois.uisimcor.fem_executor.archiving.TextArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.TextArchiveI;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.ProgramDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.config.types.ArchiveFormat;
+import org.nees.illinois.uisimcor.fem_executor.input.BatchData;
+import org.nees.illinois.uisimcor.fem_executor.input.CompactInputs;
 import org.nees.illinois.uisimcor.fem_executor.input.OpenSeesSG;
 import org.nees.illinois.uisimcor.fem_executor.input.ScriptGeneratorI;
+import org.nees.illinois.uisimcor.fem_executor.input.ScriptRecordType;
+import org.nees.illinois.uisimcor.fem_executor.input.StepScriptPattern;
 import org.nees.illinois.uisimcor.fem_executor.output.RecordCollector;
+import org.nees.illinois.uisimcor.fem_executor.output.StepStatistics;
 import org.nees.illinois.uisimcor.fem_executor.process.ProcessManagementWithStdin;
 import org.nees.illinois.uisimcor.fem_executor.process.QMessageT;
 import org.nees.illinois.uisimcor.fem_executor.process.QMessageType;
+import org.nees.illinois.uisimcor.fem_executor.process.ResponseSignal;
+import org.nees.illinois.uisimcor.fem_executor.publish.StepPublisher;
 import org.nees.illinois.uisimcor.fem_executor.utils.LogMessageWithCounter;
 import org.nees.illinois.uisimcor.fem_executor.utils.PathUtils;
 import org.slf4j.Logger;
@@ -54,29 +74,107 @@ public class DynamicExecution implements SubstructureExecutorI {
 	/**
 	 * Forces archive.
 	 */
-	private final DataArchive farch;
+	private final DataArchiveI farch;
 	/**
 	 * Displacements archive.
 	 */
-	private final DataArchive darch;
+	private final DataArchiveI darch;
 	/**
 	 * Commands archive.
 	 */
-	private final DataArchive carch;
+	private final DataArchiveI carch;
+	/**
+	 * Writer of the compact Inputs archive. Null if the scripts are written
+	 * to the Inputs archive as they are.
+	 */
+	private final CompactInputs compactInputs;
 	/**
 	 * Input string archive.
 	 */
-	private final TextArchive iarch;
+	private final TextArchiveI iarch;
+	/**
+	 * Statistics archive.
+	 */
+	private final TextArchiveI sarch;
 	/**
 	 * Current step.
 	 */
 	private int currentStep;
+	/**
+	 * Flag indicating that the responses of the current step have been
+	 * collected and archived.
+	 */
+	private boolean currentStepFinished = false;
+	/**
+	 * Time in nanoseconds when the current step was started.
+	 */
+	private long currentStepStarted;
+	/**
+	 * Publisher of completed steps. Can be null.
+	 */
+	private StepPublisher publisher = null;
+	/**
+	 * Running statistics of the responses.
+	 */
+	private final StepStatistics statistics;
+	/**
+	 * Displacements of the last completed step at the effective DOFs.
+	 */
+	private final double[] dispBuf;
+	/**
+	 * Forces of the last completed step at the effective DOFs.
+	 */
+	private final double[] forceBuf;
+
+	/**
+	 * Displacements of the last committed step at the effective DOFs.
+	 */
+	private final double[] committedDisp;
+	/**
+	 * Forces of the last committed step at the effective DOFs.
+	 */
+	private final double[] committedForce;
+	/**
+	 * Flag indicating that the current step is a trial.
+	 */
+	private boolean inTrial = false;
+	/**
+	 * Flag indicating that the responses of the current trial have arrived
+	 * and the trial can be committed.
+	 */
+	private boolean trialDone = false;
 
 	/**
 	 * Collects the responses for an iteration step.
 	 */
 	private final RecordCollector responses;
 
+	/**
+	 * Directory of the batch data files.
+	 */
+	private final String batchDir;
+	/**
+	 * Flag indicating that the responses of the current step do not match
+	 * the substructure.
+	 */
+	private volatile boolean mismatched = false;
+	/**
+	 * Number of batches sent so far. Used to name the batch data files.
+	 */
+	private int batchCount = 0;
+	/**
+	 * Number of the first step of the current batch.
+	 */
+	private int batchFirst = 0;
+	/**
+	 * Number of steps in the current batch.
+	 */
+	private int batchSteps = 0;
+	/**
+	 * Number of steps of the current batch which have been archived.
+	 */
+	private int batchArchived = 0;
+
 	/**
 	 * @param progCfg
 	 *            FEM program configuration parameters.
@@ -90,14 +188,59 @@ public class DynamicExecution implements SubstructureExecutorI {
 	public DynamicExecution(final ProgramDao progCfg,
 			final SubstructureDao scfg, final String configDir,
 			final String workDir) {
+		this(progCfg, scfg, configDir, workDir, new ArchiveDao());
+	}
+
+	/**
+	 * @param progCfg
+	 *            FEM program configuration parameters.
+	 * @param scfg
+	 *            Configuration for the substructure.
+	 * @param configDir
+	 *            Directory containing templates and configuration files..
+	 * @param workDir
+	 *            Directory to store temporary files.
+	 * @param archiveCfg
+	 *            Flush policy for the archives.
+	 */
+	public DynamicExecution(final ProgramDao progCfg,
+			final SubstructureDao scfg, final String configDir,
+			final String workDir, final ArchiveDao archiveCfg) {
+		this(progCfg, scfg, configDir, workDir, archiveCfg, null);
+	}
+
+	/**
+	 * @param progCfg
+	 *            FEM program configuration parameters.
+	 * @param scfg
+	 *            Configuration for the substructure.
+	 * @param configDir
+	 *            Directory containing templates and configuration files..
+	 * @param workDir
+	 *            Directory to store temporary files.
+	 * @param archiveCfg
+	 *            Flush policy for the archives.
+	 * @param writer
+	 *            Background writer for the archives. If null the archives are
+	 *            written on the thread which polls the step.
+	 */
+	public DynamicExecution(final ProgramDao progCfg,
+			final SubstructureDao scfg, final String configDir,
+			final String workDir, final ArchiveDao archiveCfg,
+			final ArchiveWriter writer) {
 		final int quarterSecond = 250;
 		WorkingDir wd = new WorkingDir(workDir, scfg, configDir);
 		wd.createWorkDir();
 		this.exec = new ProcessExecution(progCfg, wd.getWorkDir(),
 				quarterSecond, true);
+		this.batchDir = wd.getWorkDir();
 		this.scriptGen = new OpenSeesSG(configDir, scfg,
-				progCfg.getTemplateDao());
+				progCfg.getTemplateDao(), progCfg.getLauncher() != null);
 		this.scfg = scfg;
+		if (progCfg.getLauncher() != null
+				&& progCfg.getLauncher().isForwardStdin()) {
+			writeForwarder(wd.getWorkDir());
+		}
 		SubstructureDir logDir = new SubstructureDir(workDir, scfg, "logDir");
 		logDir.createSubstructDir();
 		String darchPath = PathUtils.append(logDir.getSubstructDir(),
@@ -105,16 +248,74 @@ public class DynamicExecution implements SubstructureExecutorI {
 		String carchPath = PathUtils.append(logDir.getSubstructDir(),
 				"Commands");
 		String farchPath = PathUtils.append(logDir.getSubstructDir(), "Forces");
-		HeaderArchive hd = new HeaderArchive(darchPath, scfg, false);
-		hd.write();
-		hd = new HeaderArchive(farchPath, scfg, true);
-		hd.write();
-		this.darch = new DataArchive(darchPath);
-		this.carch = new DataArchive(carchPath);
-		this.farch = new DataArchive(farchPath);
+		ArchiveColumns dcols = new ArchiveColumns(scfg, false);
+		ArchiveColumns fcols = new ArchiveColumns(scfg, true);
+		DataArchiveI d;
+		DataArchiveI c;
+		DataArchiveI f;
+		if (archiveCfg.getFormat().equals(ArchiveFormat.Binary)) {
+			d = new BinaryDataArchive(darchPath, dcols, archiveCfg);
+			c = new BinaryDataArchive(carchPath, dcols, archiveCfg);
+			f = new BinaryDataArchive(farchPath, fcols, archiveCfg);
+		} else if (archiveCfg.getFormat().equals(ArchiveFormat.Compressed)) {
+			d = new CompressedDataArchive(darchPath, dcols, archiveCfg);
+			c = new CompressedDataArchive(carchPath, dcols, archiveCfg);
+			f = new CompressedDataArchive(farchPath, fcols, archiveCfg);
+		} else {
+			HeaderArchive hd = new HeaderArchive(darchPath, dcols);
+			hd.write();
+			hd = new HeaderArchive(farchPath, fcols);
+			hd.write();
+			d = new DataArchive(darchPath, archiveCfg);
+			if (archiveCfg.isCompactInputs()) {
+				c = new BinaryDataArchive(carchPath, dcols, archiveCfg);
+			} else {
+				c = new DataArchive(carchPath, archiveCfg);
+			}
+			f = new DataArchive(farchPath, archiveCfg);
+		}
 		String ipath = PathUtils.append(logDir.getSubstructDir(), "Inputs");
-		this.iarch = new TextArchive(new File(ipath));
+		TextArchiveI i;
+		StepScriptPattern sp = null;
+		if (archiveCfg.isCompactInputs()) {
+			i = new TextArchive(new File(ipath + "_scripts.txt"), archiveCfg);
+			sp = scriptGen.getStepPattern();
+			if (sp != null) {
+				TextArchive pattern = new TextArchive(new File(ipath
+						+ "_pattern.txt"));
+				pattern.write(sp.toText());
+				pattern.close();
+			}
+		} else {
+			i = new TextArchive(new File(ipath), archiveCfg);
+		}
+		String spath = PathUtils.append(logDir.getSubstructDir(),
+				"Statistics.txt");
+		TextArchiveI st = new TextArchive(new File(spath));
+		if (writer != null) {
+			d = new AsyncDataArchive(d, writer);
+			c = new AsyncDataArchive(c, writer);
+			f = new AsyncDataArchive(f, writer);
+			i = new AsyncTextArchive(i, writer);
+			st = new AsyncTextArchive(st, writer);
+		}
+		this.darch = d;
+		this.carch = c;
+		this.farch = f;
+		this.iarch = i;
+		this.sarch = st;
+		if (archiveCfg.isCompactInputs()) {
+			this.compactInputs = new CompactInputs(sp, i, c);
+		} else {
+			this.compactInputs = null;
+		}
 		this.responses = new RecordCollector(scfg, progCfg);
+		responses.setStatuses(exec.getStatuses());
+		this.statistics = new StepStatistics(scfg);
+		this.dispBuf = new double[scfg.getTotalDofs()];
+		this.forceBuf = new double[scfg.getTotalDofs()];
+		this.committedDisp = new double[scfg.getTotalDofs()];
+		this.committedForce = new double[scfg.getTotalDofs()];
 	}
 
 	/**
@@ -124,13 +325,87 @@ public class DynamicExecution implements SubstructureExecutorI {
 	public final void abort() {
 		exec.abort();
 		responses.abort();
+		if (statistics.getCount() > 0) {
+			sarch.write(statistics.toText());
+		}
+		sarch.close();
+		iarch.close();
+		darch.close();
+		farch.close();
+		carch.close();
 	}
 
 	/**
-	 * Check the displacements queue and set the status.
+	 * Archive the responses of one completed step and publish them.
+	 * @param step
+	 *            Step number.
+	 */
+	private void archiveStep(final int step) {
+		System.arraycopy(dispBuf, 0, committedDisp, 0, dispBuf.length);
+		System.arraycopy(forceBuf, 0, committedForce, 0, forceBuf.length);
+		darch.write(step, dispBuf);
+		farch.write(step, forceBuf);
+		statistics.update(step, dispBuf, forceBuf);
+		if (publisher != null && publisher.hasSubscribers()) {
+			publisher.publish(step, scfg.getAddress(), dispBuf, forceBuf,
+					currentStepStarted, System.nanoTime());
+		}
+	}
+
+	@Override
+	public final synchronized boolean batchIsDone() {
+		FemStatus statuses = exec.getStatuses();
+		checkResponses();
+		exec.checkIfProcessIsAlive(statuses);
+		exec.checkForErrors(statuses);
+		if (statuses.isFemProcessHasDied()) {
+			return false;
+		}
+		int complete = Math.min(responses.completeSteps(), batchSteps);
+		while (batchArchived < complete) {
+			currentStep = batchFirst + batchArchived;
+			if (responses.readStep(batchArchived, dispBuf, forceBuf) == false) {
+				log.error(scfg.getAddress() + " batch step " + currentStep
+						+ " has responses which do not match the configuration");
+				mismatched = true;
+				return false;
+			}
+			archiveStep(currentStep);
+			batchArchived++;
+		}
+		if (batchArchived < batchSteps) {
+			logC.log(scfg.getAddress() + " finished " + batchArchived + " of "
+					+ batchSteps + " batch steps");
+			return false;
+		}
+		if (currentStepFinished == false) {
+			log.info(scfg.getAddress() + " finished batch of " + batchSteps
+					+ " steps ending with step " + currentStep);
+			currentStepFinished = true;
+		}
+		return true;
+	}
+
+	@Override
+	public final synchronized boolean commitTrial() {
+		if (trialDone == false) {
+			log.error(scfg.getAddress() + " has no completed trial to commit");
+			return false;
+		}
+		scriptGen.commitTrial();
+		archiveStep(currentStep);
+		inTrial = false;
+		trialDone = false;
+		log.debug(scfg.getAddress() + " committed trial of step "
+				+ currentStep);
+		return true;
+	}
+
+	/**
+	 * Collect the records which the readers have queued.
 	 */
 	private void checkResponses() {
-		responses.checkResponses(getStatuses());
+		responses.checkResponses();
 	}
 
 	/**
@@ -138,18 +413,62 @@ public class DynamicExecution implements SubstructureExecutorI {
 	 */
 	private void init() {
 		String init = scriptGen.generateInit();
-		iarch.write(init);
+		if (compactInputs == null) {
+			iarch.write(init);
+		} else {
+			compactInputs.writeScript(ScriptRecordType.Init, init);
+		}
+		getStatuses().newStep();
 		ProcessManagementWithStdin execWStdin = (ProcessManagementWithStdin) exec
 				.getProcess();
 		BlockingQueue<QMessageT<String>> stdinQ = execWStdin.getStdinQ();
 		stdinQ.add(new QMessageT<String>(QMessageType.Command, init));
-		getStatuses().newStep();
 	}
 
 	@Override
 	public final boolean iveGotProblems() {
 		FemStatus statuses = getStatuses();
-		return statuses.isFemProcessHasDied();
+		return statuses.isFemProcessHasDied() || mismatched;
+	}
+
+	@Override
+	public final synchronized boolean revertTrial() {
+		if (inTrial && trialDone == false) {
+			log.error(scfg.getAddress() + " trial of step " + currentStep
+					+ " is still running");
+			return false;
+		}
+		inTrial = false;
+		trialDone = false;
+		String revertCmnd = scriptGen.generateRevert();
+		if (revertCmnd == null) {
+			log.error(scfg.getAddress() + " has no trial to revert");
+			return false;
+		}
+		if (compactInputs == null) {
+			iarch.write(revertCmnd);
+		} else {
+			compactInputs.writeScript(ScriptRecordType.Revert, revertCmnd);
+		}
+		ProcessManagementWithStdin execWStdin = (ProcessManagementWithStdin) exec
+				.getProcess();
+		BlockingQueue<QMessageT<String>> stdinQ = execWStdin.getStdinQ();
+		stdinQ.add(new QMessageT<String>(QMessageType.Command, revertCmnd));
+		System.arraycopy(committedDisp, 0, dispBuf, 0, dispBuf.length);
+		System.arraycopy(committedForce, 0, forceBuf, 0, forceBuf.length);
+		log.debug(scfg.getAddress() + " reverted trial of step " + currentStep);
+		return true;
+	}
+
+	@Override
+	public final void setPublisher(final StepPublisher publisher) {
+		this.publisher = publisher;
+	}
+
+	@Override
+	public final void setResponseSignal(final ResponseSignal signal) {
+		exec.setSignal(signal);
+		responses.setSignal(signal);
 	}
 
 	@Override
@@ -168,6 +487,51 @@ public class DynamicExecution implements SubstructureExecutorI {
 		return responses.connect();
 	}
 
+	@Override
+	public final synchronized boolean startBatch(final int firstStep,
+			final double[][] displacements) {
+		if (displacements.length == 0) {
+			log.error("Batch for " + scfg.getAddress() + " has no steps");
+			return false;
+		}
+		BatchData batchData = new BatchData(new File(PathUtils.append(
+				batchDir, BatchData.fileName(batchCount))));
+		if (batchData.write(displacements) == false) {
+			return false;
+		}
+		String script = scriptGen.generateBatch(firstStep,
+				displacements.length, batchData.getFile().getAbsolutePath()
+						.replace('\\', '/'));
+		if (script == null) {
+			return false;
+		}
+		batchFirst = firstStep;
+		batchSteps = displacements.length;
+		batchArchived = 0;
+		inTrial = false;
+		trialDone = false;
+		currentStep = firstStep;
+		currentStepFinished = false;
+		currentStepStarted = System.nanoTime();
+		if (compactInputs == null) {
+			iarch.write(script);
+			for (int k = 0; k < displacements.length; k++) {
+				carch.write(firstStep + k, displacements[k]);
+			}
+		} else {
+			compactInputs.writeBatch(firstStep, displacements, script);
+		}
+		batchCount++;
+		responses.start();
+		mismatched = false;
+		getStatuses().newStep();
+		ProcessManagementWithStdin execWStdin = (ProcessManagementWithStdin) exec
+				.getProcess();
+		BlockingQueue<QMessageT<String>> stdinQ = execWStdin.getStdinQ();
+		stdinQ.add(new QMessageT<String>(QMessageType.Command, script));
+		return true;
+	}
+
 	/**
 	 * Send the next step command to the FEM program.
 	 * @param step
@@ -175,16 +539,49 @@ public class DynamicExecution implements SubstructureExecutorI {
 	 * @param displacements
 	 *            Current displacement target.
 	 */
-	public final void startStep(final int step, final double[] displacements) {
+	public final synchronized void startStep(final int step,
+			final double[] displacements) {
 		currentStep = step;
+		currentStepFinished = false;
+		currentStepStarted = System.nanoTime();
+		inTrial = false;
+		trialDone = false;
 		String stepCmnd = scriptGen.generateStep(step, displacements);
-		iarch.write(stepCmnd);
+		if (compactInputs == null) {
+			iarch.write(stepCmnd);
+		} else {
+			compactInputs.writeStep(step, displacements, stepCmnd);
+		}
 		responses.start();
+		mismatched = false;
+		getStatuses().newStep();
 		ProcessManagementWithStdin execWStdin = (ProcessManagementWithStdin) exec
 				.getProcess();
 		BlockingQueue<QMessageT<String>> stdinQ = execWStdin.getStdinQ();
 		stdinQ.add(new QMessageT<String>(QMessageType.Command, stepCmnd));
+	}
+
+	@Override
+	public final synchronized void startTrial(final int step,
+			final double[] displacements) {
+		currentStep = step;
+		currentStepFinished = false;
+		currentStepStarted = System.nanoTime();
+		inTrial = true;
+		trialDone = false;
+		String trialCmnd = scriptGen.generateTrial(step, displacements);
+		if (compactInputs == null) {
+			iarch.write(trialCmnd);
+		} else {
+			compactInputs.writeScript(ScriptRecordType.Trial, trialCmnd);
+		}
+		responses.start();
+		mismatched = false;
 		getStatuses().newStep();
+		ProcessManagementWithStdin execWStdin = (ProcessManagementWithStdin) exec
+				.getProcess();
+		BlockingQueue<QMessageT<String>> stdinQ = execWStdin.getStdinQ();
+		stdinQ.add(new QMessageT<String>(QMessageType.Command, trialCmnd));
 	}
 
 	/*
@@ -194,35 +591,79 @@ public class DynamicExecution implements SubstructureExecutorI {
 	 * #stepIsDone()
 	 */
 	@Override
-	public final boolean stepIsDone() {
+	public final synchronized boolean stepIsDone() {
 		FemStatus statuses = exec.getStatuses();
+		// The readers queue the records before they set the flags so every
+		// record of the step is drained once the flags have been seen.
+		boolean result = statuses.responsesHaveArrived();
 		checkResponses();
 		exec.checkIfProcessIsAlive(statuses);
-		exec.checkStepCompletion(statuses);
 		exec.checkForErrors(statuses);
 		if (statuses.isChanged()) {
 			log.info(scfg.getAddress() + " Is " + statuses.getStatus());
 			logC.reset();
 		}
 		logC.log(scfg.getAddress() + " Is " + statuses.getStatus());
-		boolean result = statuses.responsesHaveArrived();
-		if (result && (statuses.isFemProcessHasDied() == false)) {
+		if (result && (statuses.isFemProcessHasDied() == false)
+				&& currentStepFinished == false) {
 			responses.finish();
-			darch.write(currentStep, responses.getResponseVals()
-					.getDisplacements());
-			farch.write(currentStep, responses.getResponseVals().getForces());
+			if (responses.getResponseVals().readDisplacements(dispBuf) == false
+					|| responses.getResponseVals().readForces(forceBuf) == false) {
+				log.error(scfg.getAddress() + " step " + currentStep
+						+ " has responses which do not match the configuration");
+				mismatched = true;
+				return false;
+			}
+			if (inTrial) {
+				trialDone = true;
+			} else {
+				archiveStep(currentStep);
+			}
+			currentStepFinished = true;
 		}
 		return result;
 	}
 
+	/**
+	 * Write the script which forwards the commands from rank 0 to the other
+	 * ranks and pass it to the FEM program.
+	 * @param dir
+	 *            Working directory of the FEM program.
+	 */
+	private void writeForwarder(final String dir) {
+		File file = new File(PathUtils.append(dir, "uisimcor_ranks.tcl"));
+		try {
+			Writer writer = new FileWriter(file);
+			try {
+				writer.write(OpenSeesSG.rankForwarder());
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			log.error("Cannot write \"" + file + "\" because ", e);
+			return;
+		}
+		exec.getProcess().addArg(file.getName());
+	}
+
+	@Override
+	public final synchronized void readDisplacements(final double[] out) {
+		System.arraycopy(dispBuf, 0, out, 0, dispBuf.length);
+	}
+
+	@Override
+	public final synchronized void readForces(final double[] out) {
+		System.arraycopy(forceBuf, 0, out, 0, forceBuf.length);
+	}
+
 	@Override
-	public final double[] getDisplacements() {
-		return responses.getResponseVals().getDisplacements();
+	public final SubstructureDao getScfg() {
+		return scfg;
 	}
 
 	@Override
-	public final double[] getForces() {
-		return responses.getResponseVals().getForces();
+	public final StepStatistics getStatistics() {
+		return statistics;
 	}
 
 	@Override
@@ -1,46 +1,159 @@
 package org.nees.illinois.uisimcor.fem_executor.execute;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Collection of status flags for an FEM process.
+ * Collection of status flags for an FEM process. The flags are bits of a
+ * single atomic state word which is updated with compare and set. The threads
+ * reading the process output set their flags directly: the TCP readers set
+ * {@link #DISPLACEMENTS} and {@link #FORCES} once all records of a step have
+ * arrived, the STDOUT reader sets {@link #EXECUTED} for each step marker and
+ * the STDERR reader sets {@link #ERRORS}. The coordinator only observes the
+ * flags and sets {@link #DIED} when it finds that the process has exited.
+ * Reading the state does not lock or allocate. Threads can block in
+ * {@link #awaitState(int, long)} until a set of flags is reached and are woken
+ * up whenever a flag changes.
  * @author Michael Bletzinger
  */
 public class FemStatus {
 	/**
-	 * True if any statuses have changed since the last query.
+	 * Flag set when the process has finished executing a step. The process is
+	 * most likely still sending responses via TCP at this point.
+	 */
+	public static final int EXECUTED = 0x1;
+	/**
+	 * Flag set when the displacements have been received from the process.
+	 */
+	public static final int DISPLACEMENTS = 0x2;
+	/**
+	 * Flag set when the forces have been received from the process.
+	 */
+	public static final int FORCES = 0x4;
+	/**
+	 * Flag set when the FEM process is no longer running.
+	 */
+	public static final int DIED = 0x8;
+	/**
+	 * Flag set when the FEM process has output errors in STDERR.
+	 */
+	public static final int ERRORS = 0x10;
+	/**
+	 * Flags which are set when all of the responses of a step have arrived.
+	 */
+	public static final int RESPONSES = DISPLACEMENTS | FORCES;
+	/**
+	 * Flags which are set when a step is completely finished.
+	 */
+	public static final int STEP_DONE = EXECUTED | RESPONSES;
+	/**
+	 * Flags which report a problem with the process.
+	 */
+	public static final int FAILED = DIED | ERRORS;
+	/**
+	 * Bit set when any flag has changed since the last
+	 * {@link #isChanged()} query. Not part of {@link #getState()}.
+	 */
+	private static final int CHANGED = 0x20;
+	/**
+	 * Mask of the status flags.
 	 */
-	private boolean changed;
+	private static final int FLAGS = STEP_DONE | FAILED;
+
 	/**
-	 * Flag indicating that the process has finished executing a step. The
-	 * process is most likely still sending responses via TCP at this point.
+	 * Status string of a dead process.
 	 */
-	private boolean currentStepHasExecuted = false;
+	private static final String DIED_STATUS = "No Longer Running.";
 	/**
-	 * Flag indicating that displacements have been received from the process.
+	 * Status string of a process with errors.
 	 */
-	private boolean displacementsAreHere = false;
+	private static final String ERRORS_STATUS = "Has Errors";
 	/**
-	 * Flag indicating that the FEM process is no longer running.
+	 * Status string of a process which is executing a step.
 	 */
-	private boolean femProcessHasDied = false;
+	private static final String EXECUTING_STATUS = "Still Executing";
 	/**
-	 * Flag indicating the the FEM process has output errors in STDERR.
+	 * Status string of a process which has not sent any responses.
 	 */
-	private boolean femProcessHasErrors = false;
+	private static final String WAITING_BOTH_STATUS =
+			"Waiting for Displacements and Forces";
 	/**
-	 * Flag indicating that forces have been received from the process.
+	 * Status string of a process which has not sent the displacements.
 	 */
-	private boolean forcesAreHere = false;
+	private static final String WAITING_DISP_STATUS =
+			"Waiting for Displacements";
+	/**
+	 * Status string of a process which has not sent the forces.
+	 */
+	private static final String WAITING_FORCE_STATUS =
+			"Waiting for Forces";
+	/**
+	 * Status string of a finished step. Reported when nothing is missing.
+	 */
+	private static final String CONFUSED_STATUS = "I'm Confused";
+
 	/**
 	 * The last step that has been executed by the FEM process so far.
 	 */
-	private String lastExecutedStep;
+	private volatile String lastExecutedStep;
 	/**
 	 * Logger.
 	 **/
 	private final Logger log = LoggerFactory.getLogger(FemStatus.class);
+	/**
+	 * Monitor which waiting threads wait on.
+	 */
+	private final Object monitor = new Object();
+	/**
+	 * The state word.
+	 */
+	private final AtomicInteger state = new AtomicInteger(0);
+	/**
+	 * Number of threads waiting in {@link #awaitState(int, long)}. Transitions
+	 * only take the monitor when somebody is waiting.
+	 */
+	private final AtomicInteger waiters = new AtomicInteger(0);
+
+	/**
+	 * Wait until all of the flags in the mask are set or the process has died.
+	 * Errors do not end the wait because OpenSees reports warnings on STDERR
+	 * and keeps running.
+	 * @param mask
+	 *            Flags to wait for.
+	 * @param waitInMillisecs
+	 *            Maximum time to wait.
+	 * @return The state when the wait ended. Check it against the mask to
+	 *         distinguish a time out or failure from success.
+	 */
+	public final int awaitState(final int mask, final long waitInMillisecs) {
+		int current = getState();
+		if (reached(current, mask)) {
+			return current;
+		}
+		long deadline = System.currentTimeMillis() + waitInMillisecs;
+		waiters.incrementAndGet();
+		try {
+			synchronized (monitor) {
+				current = getState();
+				while (reached(current, mask) == false) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						break;
+					}
+					monitor.wait(remaining);
+					current = getState();
+				}
+			}
+		} catch (InterruptedException e) {
+			log.debug("Interrupted while waiting for the status");
+			Thread.currentThread().interrupt();
+		} finally {
+			waiters.decrementAndGet();
+		}
+		return getState();
+	}
 
 	/**
 	 * @return the lastExecutedStep
@@ -49,84 +162,100 @@ public class FemStatus {
 		return lastExecutedStep;
 	}
 
+	/**
+	 * @return the status flags as a bit set of {@link #EXECUTED},
+	 *         {@link #DISPLACEMENTS}, {@link #FORCES}, {@link #DIED} and
+	 *         {@link #ERRORS}.
+	 */
+	public final int getState() {
+		return state.get() & FLAGS;
+	}
+
 	/**
 	 * @return a String describing the current status.
 	 */
 	public final String getStatus() {
-		if (femProcessHasDied) {
-			return "No Longer Running.";
+		int current = getState();
+		if ((current & DIED) != 0) {
+			return DIED_STATUS;
 		}
-		if (femProcessHasErrors) {
-			return "Has Errors";
+		if ((current & ERRORS) != 0) {
+			return ERRORS_STATUS;
 		}
-		if (currentStepHasExecuted == false) {
-			return "Still Executing";
+		if ((current & EXECUTED) == 0) {
+			return EXECUTING_STATUS;
 		}
-		if (displacementsAreHere == false && forcesAreHere == false) {
-			return "Waiting for Displacements and Forces";
+		if ((current & RESPONSES) == 0) {
+			return WAITING_BOTH_STATUS;
 		}
-		if (displacementsAreHere == false) {
-			return "Waiting for Displacements";
+		if ((current & DISPLACEMENTS) == 0) {
+			return WAITING_DISP_STATUS;
 		}
-		if (forcesAreHere == false) {
-			return "Waiting for Forces";
+		if ((current & FORCES) == 0) {
+			return WAITING_FORCE_STATUS;
 		}
-		log.debug("Status: " + dump());
-		return "I'm Confused";
+		if (log.isDebugEnabled()) {
+			log.debug("Status: " + dump());
+		}
+		return CONFUSED_STATUS;
 	}
 
 	/**
 	 * @return the changed. Also resets the flag to false;
 	 */
 	public final boolean isChanged() {
-		boolean result = changed;
-		changed = false;
-		return result;
+		int current = state.get();
+		while ((current & CHANGED) != 0) {
+			if (state.compareAndSet(current, current & ~CHANGED)) {
+				return true;
+			}
+			current = state.get();
+		}
+		return false;
 	}
 
 	/**
 	 * @return the stepHasExecuted
 	 */
 	public final boolean isCurrentStepHasExecuted() {
-		return currentStepHasExecuted;
+		return (state.get() & EXECUTED) != 0;
 	}
 
 	/**
 	 * @return the displacementsAreHere
 	 */
 	public final boolean isDisplacementsAreHere() {
-		return displacementsAreHere;
+		return (state.get() & DISPLACEMENTS) != 0;
 	}
 
 	/**
 	 * @return the femProcessHasDied
 	 */
 	public final boolean isFemProcessHasDied() {
-		return femProcessHasDied;
+		return (state.get() & DIED) != 0;
 	}
 
 	/**
 	 * @return the femProcessHasErrors
 	 */
 	public final boolean isFemProcessHasErrors() {
-		return femProcessHasErrors;
+		return (state.get() & ERRORS) != 0;
 	}
 
 	/**
 	 * @return the forcesAreHere
 	 */
 	public final boolean isForcesAreHere() {
-		return forcesAreHere;
+		return (state.get() & FORCES) != 0;
 	}
 
 	/**
-	 * Reset flags for a new step.
+	 * Reset flags for a new step. Needs to be called before the step is sent
+	 * to the process so that flags set by the reading threads for the new step
+	 * are not cleared.
 	 */
 	public final void newStep() {
-		displacementsAreHere = false;
-		forcesAreHere = false;
-		currentStepHasExecuted = false;
-		changed = true;
+		update(0, STEP_DONE);
 	}
 
 	/**
@@ -134,7 +263,23 @@ public class FemStatus {
 	 *         received for the current step.
 	 */
 	public final boolean responsesHaveArrived() {
-		return displacementsAreHere && forcesAreHere;
+		return (state.get() & RESPONSES) == RESPONSES;
+	}
+
+	/**
+	 * Clear all of the flags including the failures for a new FEM process.
+	 */
+	public final void newProcess() {
+		update(0, FLAGS);
+	}
+
+	/**
+	 * Set flags. Used by the reader threads which report a fixed flag.
+	 * @param flags
+	 *            Flags to set.
+	 */
+	public final void setFlags(final int flags) {
+		update(flags & FLAGS, 0);
 	}
 
 	/**
@@ -142,8 +287,7 @@ public class FemStatus {
 	 *            the stepHasExecuted to set
 	 */
 	public final void setCurrentStepHasExecuted(final boolean stepHasExecuted) {
-		this.currentStepHasExecuted = stepHasExecuted;
-		changed = true;
+		set(EXECUTED, stepHasExecuted);
 	}
 
 	/**
@@ -151,8 +295,7 @@ public class FemStatus {
 	 *            the displacementsAreHere to set
 	 */
 	public final void setDisplacementsAreHere(final boolean displacementsAreHere) {
-		this.displacementsAreHere = displacementsAreHere;
-		changed = true;
+		set(DISPLACEMENTS, displacementsAreHere);
 	}
 
 	/**
@@ -160,8 +303,7 @@ public class FemStatus {
 	 *            the femProcessHasDied to set
 	 */
 	public final void setFemProcessHasDied(final boolean femProcessHasDied) {
-		this.femProcessHasDied = femProcessHasDied;
-		changed = true;
+		set(DIED, femProcessHasDied);
 	}
 
 	/**
@@ -169,8 +311,7 @@ public class FemStatus {
 	 *            the femProcessHasErrors to set
 	 */
 	public final void setFemProcessHasErrors(final boolean femProcessHasErrors) {
-		this.femProcessHasErrors = femProcessHasErrors;
-		changed = true;
+		set(ERRORS, femProcessHasErrors);
 	}
 
 	/**
@@ -178,8 +319,7 @@ public class FemStatus {
 	 *            the forcesAreHere to set
 	 */
 	public final void setForcesAreHere(final boolean forcesAreHere) {
-		this.forcesAreHere = forcesAreHere;
-		changed = true;
+		set(FORCES, forcesAreHere);
 	}
 
 	/**
@@ -188,20 +328,87 @@ public class FemStatus {
 	 */
 	public final void setLastExecutedStep(final String lastExecutedStep) {
 		this.lastExecutedStep = lastExecutedStep;
-		changed = true;
+		int current = state.get();
+		while ((current & CHANGED) == 0
+				&& state.compareAndSet(current, current | CHANGED) == false) {
+			current = state.get();
+		}
+	}
+
+	/**
+	 * Mark the step as executed with all of its responses in one transition.
+	 */
+	public final void setStepFinished() {
+		update(STEP_DONE, 0);
 	}
 
 	/**
 	 * @return A string representation of the statuses.
 	 */
 	public final String dump() {
-		String result = (currentStepHasExecuted ? "[StepDone]"
+		int current = getState();
+		String result = ((current & EXECUTED) != 0 ? "[StepDone]"
 				: "[StepStillExecuting]");
-		result += (displacementsAreHere ? "[DisplacementsHere]"
+		result += ((current & DISPLACEMENTS) != 0 ? "[DisplacementsHere]"
 				: "[DisplacementsMissing]");
-		result += (forcesAreHere ? "[ForcesHere]" : "[ForcesMissing]");
-		result += (femProcessHasDied ? "[Dead]" : "[Running]");
-		result += (femProcessHasErrors ? "[Errors]" : "[Clean]");
+		result += ((current & FORCES) != 0 ? "[ForcesHere]" : "[ForcesMissing]");
+		result += ((current & DIED) != 0 ? "[Dead]" : "[Running]");
+		result += ((current & ERRORS) != 0 ? "[Errors]" : "[Clean]");
 		return result;
 	}
+
+	/**
+	 * Determine if a wait is over.
+	 * @param current
+	 *            Status flags.
+	 * @param mask
+	 *            Flags which are waited for.
+	 * @return True if all flags of the mask are set or the process died.
+	 */
+	private static boolean reached(final int current, final int mask) {
+		return (current & mask) == mask || (current & DIED) != 0;
+	}
+
+	/**
+	 * Set or clear one flag.
+	 * @param flag
+	 *            The flag.
+	 * @param value
+	 *            True to set the flag.
+	 */
+	private void set(final int flag, final boolean value) {
+		if (value) {
+			update(flag, 0);
+		} else {
+			update(0, flag);
+		}
+	}
+
+	/**
+	 * Change flags of the state word and wake up the waiting threads if the
+	 * flags have actually changed.
+	 * @param setMask
+	 *            Flags to set.
+	 * @param clearMask
+	 *            Flags to clear.
+	 * @return True if the flags have changed.
+	 */
+	private boolean update(final int setMask, final int clearMask) {
+		while (true) {
+			int current = state.get();
+			int next = (current & ~clearMask) | setMask;
+			if ((next & FLAGS) == (current & FLAGS)) {
+				return false;
+			}
+			if (state.compareAndSet(current, next | CHANGED)) {
+				break;
+			}
+		}
+		if (waiters.get() > 0) {
+			synchronized (monitor) {
+				monitor.notifyAll();
+			}
+		}
+		return true;
+	}
 }
@@ -0,0 +1,259 @@
+package org.nees.illinois.uisimcor.fem_executor.execute;
+
+import java.io.File;
+
+import org.nees.illinois.uisimcor.fem_executor.archiving.TextArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.TextArchiveI;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.output.StepStatistics;
+import org.nees.illinois.uisimcor.fem_executor.process.ResponseSignal;
+import org.nees.illinois.uisimcor.fem_executor.publish.StepPublisher;
+import org.nees.illinois.uisimcor.fem_executor.utils.PathUtils;
+
+/**
+ * Executes a substructure which shares its FEM process with the other members
+ * of a {@link ProcessGroup}. The commands are passed on to the group which
+ * sends them once every member has been given its displacements. The
+ * responses are the effective DOFs of this member taken from the responses of
+ * the whole group.
+ * @author Michael Bletzinger
+ */
+public class GroupMemberExecution implements SubstructureExecutorI {
+	/**
+	 * Flag indicating that the current step or batch has finished.
+	 */
+	private boolean commandDone = false;
+	/**
+	 * Displacements of the last completed step at the effective DOFs.
+	 */
+	private final double[] dispBuf;
+	/**
+	 * Forces of the last completed step at the effective DOFs.
+	 */
+	private final double[] forceBuf;
+	/**
+	 * Group which owns the FEM process.
+	 */
+	private final ProcessGroup group;
+	/**
+	 * Index of this member in the group.
+	 */
+	private final int index;
+	/**
+	 * Publisher of completed steps. Can be null.
+	 */
+	private StepPublisher publisher = null;
+	/**
+	 * Statistics archive.
+	 */
+	private final TextArchiveI sarch;
+	/**
+	 * Configuration of the substructure.
+	 */
+	private final SubstructureDao scfg;
+	/**
+	 * Running statistics of the responses.
+	 */
+	private final StepStatistics statistics;
+
+	/**
+	 * @param group
+	 *            Group which owns the FEM process.
+	 * @param index
+	 *            Index of this member in the group.
+	 * @param scfg
+	 *            Configuration for the substructure.
+	 * @param workDir
+	 *            Directory to store temporary files.
+	 */
+	public GroupMemberExecution(final ProcessGroup group, final int index,
+			final SubstructureDao scfg, final String workDir) {
+		this.group = group;
+		this.index = index;
+		this.scfg = scfg;
+		SubstructureDir logDir = new SubstructureDir(workDir, scfg, "logDir");
+		logDir.createSubstructDir();
+		this.sarch = new TextArchive(new File(PathUtils.append(
+				logDir.getSubstructDir(), "Statistics.txt")));
+		this.statistics = new StepStatistics(scfg);
+		this.dispBuf = new double[scfg.getTotalDofs()];
+		this.forceBuf = new double[scfg.getTotalDofs()];
+	}
+
+	@Override
+	public final void abort() {
+		group.abort();
+		if (statistics.getCount() > 0) {
+			sarch.write(statistics.toText());
+		}
+		sarch.close();
+	}
+
+	@Override
+	public final boolean batchIsDone() {
+		if (isCommandDone() == false) {
+			group.checkBatch();
+		}
+		return isCommandDone();
+	}
+
+	/**
+	 * Take the responses of this member from a completed step of the group.
+	 * @param step
+	 *            Step number.
+	 * @param disp
+	 *            Displacements of the group.
+	 * @param force
+	 *            Forces of the group.
+	 * @param offset
+	 *            Index of the first effective DOF of this member in the group
+	 *            responses.
+	 * @param started
+	 *            Time in nanoseconds when the step was started.
+	 * @param completed
+	 *            Time in nanoseconds when the responses were complete.
+	 */
+	final synchronized void complete(final int step, final double[] disp,
+			final double[] force, final int offset, final long started,
+			final long completed) {
+		System.arraycopy(disp, offset, dispBuf, 0, dispBuf.length);
+		System.arraycopy(force, offset, forceBuf, 0, forceBuf.length);
+		statistics.update(step, dispBuf, forceBuf);
+		if (publisher != null && publisher.hasSubscribers()) {
+			publisher.publish(step, scfg.getAddress(), dispBuf, forceBuf,
+					started, completed);
+		}
+	}
+
+	@Override
+	public final boolean commitTrial() {
+		return group.commitTrial(index);
+	}
+
+	/**
+	 * @return the configuration of the substructure.
+	 */
+	public final SubstructureDao getConfig() {
+		return scfg;
+	}
+
+	@Override
+	public final SubstructureDao getScfg() {
+		return scfg;
+	}
+
+	@Override
+	public final StepStatistics getStatistics() {
+		return statistics;
+	}
+
+	@Override
+	public final FemStatus getStatuses() {
+		return group.getStatuses();
+	}
+
+	/**
+	 * @return True if the current step or batch has finished.
+	 */
+	private synchronized boolean isCommandDone() {
+		return commandDone;
+	}
+
+	@Override
+	public final boolean iveGotProblems() {
+		return group.iveGotProblems();
+	}
+
+	@Override
+	public final synchronized void readDisplacements(final double[] out) {
+		System.arraycopy(dispBuf, 0, out, 0, dispBuf.length);
+	}
+
+	@Override
+	public final synchronized void readForces(final double[] out) {
+		System.arraycopy(forceBuf, 0, out, 0, forceBuf.length);
+	}
+
+	@Override
+	public final boolean revertTrial() {
+		return group.revertTrial(index);
+	}
+
+	/**
+	 * Mark the current step or batch as finished.
+	 */
+	final synchronized void setCommandDone() {
+		commandDone = true;
+	}
+
+	@Override
+	public final void setPublisher(final StepPublisher publisher) {
+		this.publisher = publisher;
+	}
+
+	@Override
+	public final void setResponseSignal(final ResponseSignal signal) {
+		group.setResponseSignal(signal);
+	}
+
+	@Override
+	public final boolean setup() {
+		return group.setup();
+	}
+
+	@Override
+	public final boolean startBatch(final int firstStep,
+			final double[][] displacements) {
+		synchronized (this) {
+			commandDone = false;
+		}
+		return group.submitBatch(index, firstStep, displacements);
+	}
+
+	@Override
+	public final boolean startSimulation() {
+		return group.startSimulation();
+	}
+
+	@Override
+	public final void startStep(final int step, final double[] displacements) {
+		synchronized (this) {
+			commandDone = false;
+		}
+		group.submitStep(index, step, displacements);
+	}
+
+	@Override
+	public final void startTrial(final int step, final double[] displacements) {
+		synchronized (this) {
+			commandDone = false;
+		}
+		group.submitTrial(index, step, displacements);
+	}
+
+	@Override
+	public final boolean stepIsDone() {
+		if (isCommandDone() == false) {
+			group.checkStep();
+		}
+		return isCommandDone();
+	}
+
+	/**
+	 * Take the responses of this member from a trial of the group or from
+	 * the committed step after a trial has been reverted. The responses are
+	 * not added to the statistics or published.
+	 * @param disp
+	 *            Displacements of the group.
+	 * @param force
+	 *            Forces of the group.
+	 * @param offset
+	 *            Index of the first effective DOF of this member in the group
+	 *            responses.
+	 */
+	final synchronized void take(final double[] disp, final double[] force,
+			final int offset) {
+		System.arraycopy(disp, offset, dispBuf, 0, dispBuf.length);
+		System.arraycopy(force, offset, forceBuf, 0, forceBuf.length);
+	}
+}
@@ -1,11 +1,15 @@
 package org.nees.illinois.uisimcor.fem_executor.execute;
 
 import java.io.IOException;
+import java.util.Observable;
+import java.util.Observer;
 
+import org.nees.illinois.uisimcor.fem_executor.config.dao.LauncherDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.ProgramDao;
 import org.nees.illinois.uisimcor.fem_executor.process.ProcessManagement;
 import org.nees.illinois.uisimcor.fem_executor.process.ProcessManagementWithStdin;
 import org.nees.illinois.uisimcor.fem_executor.process.ProcessManagmentI;
+import org.nees.illinois.uisimcor.fem_executor.process.ResponseSignal;
 import org.nees.illinois.uisimcor.fem_executor.response.ResponseMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,7 +17,9 @@ import org.slf4j.LoggerFactory;
 /**
  * Manages and monitors the execution of an FEM program. Basically this adds
  * observers to the {@link ResponseMonitor} owned by ({@link ProcessManagement}
- * which detect state changes to the FEM process.
+ * which detect state changes to the FEM process. The observers run on the
+ * threads reading STDOUT and STDERR and set the step executed and error flags
+ * of the {@link FemStatus} themselves.
  * @author Michael Bletzinger
  */
 public class ProcessExecution {
@@ -44,13 +50,14 @@ public class ProcessExecution {
 	private final ProcessManagmentI process;
 
 	/**
-	 * Monitors STDOUT stream for step is done messages.
+	 * Signal raised when the process reports something. Can be null.
 	 */
-	private ResponseMonitor responseMonitor;
+	private ResponseSignal signal;
 
 	/**
 	 * @param command
-	 *            Command to run in the process.
+	 *            Command to run in the process. The command is wrapped in the
+	 *            launcher of the command if it has one.
 	 * @param workDir
 	 *            Directory to run the process in.
 	 * @param waitInMillisecs
@@ -70,6 +77,13 @@ public class ProcessExecution {
 					command.getProgram().toString(), waitInMillisecs);
 		}
 		process.setWorkDir(workDir);
+		LauncherDao launcher = command.getLauncher();
+		if (launcher != null) {
+			process.setLauncher(launcher.getCommandLine());
+			for (String name : launcher.getEnv().keySet()) {
+				process.addEnv(name, launcher.getEnv().get(name));
+			}
+		}
 	}
 
 	/**
@@ -80,7 +94,8 @@ public class ProcessExecution {
 	}
 
 	/**
-	 * Determine if the process has sent any errors via SDTERR.
+	 * Determine if the process has sent any errors via SDTERR. The error flag
+	 * is already set by the thread reading STDERR. This logs the error.
 	 * @param statuses
 	 *            Status object to be updated
 	 */
@@ -108,24 +123,6 @@ public class ProcessExecution {
 		statuses.setFemProcessHasDied(result);
 	}
 
-	/**
-	 * Determine if the process has responded via STDOUT that the current step
-	 * is finished.
-	 * @param statuses
-	 *            Status object to be updated
-	 */
-	public final void checkStepCompletion(final FemStatus statuses) {
-		if (statuses.isCurrentStepHasExecuted()) {
-			return;
-		}
-		String step = responseMonitor.getExtracted().poll();
-		if (step == null) {
-			return;
-		}
-		statuses.setCurrentStepHasExecuted(true);
-		statuses.setLastExecutedStep(step);
-	}
-
 	/**
 	 * @return the command
 	 */
@@ -140,6 +137,15 @@ public class ProcessExecution {
 		return process;
 	}
 
+	/**
+	 * @param signal
+	 *            Signal raised when the process reports a finished step or an
+	 *            error. Needs to be set before the process is started.
+	 */
+	public final void setSignal(final ResponseSignal signal) {
+		this.signal = signal;
+	}
+
 	/**
 	 * Start the process.
 	 * @return True if successful.
@@ -151,10 +157,27 @@ public class ProcessExecution {
 			log.error(process.getCmd() + " failed to start", e);
 			return false;
 		}
-		responseMonitor = new ResponseMonitor();
-		process.getStoutPr().addObserver(responseMonitor);
-		errorMonitor = new ResponseMonitor();
+		process.getStoutPr().addObserver(new Observer() {
+			@Override
+			public void update(final Observable o, final Object arg) {
+				if (arg == null) {
+					return;
+				}
+				statuses.setLastExecutedStep((String) arg);
+				statuses.setCurrentStepHasExecuted(true);
+				if (signal != null) {
+					signal.signal();
+				}
+			}
+		});
+		errorMonitor = new ResponseMonitor(signal);
 		process.getErrPr().addObserver(errorMonitor);
+		process.getErrPr().addObserver(new Observer() {
+			@Override
+			public void update(final Observable o, final Object arg) {
+				statuses.setFemProcessHasErrors(true);
+			}
+		});
 		return true;
 	}
 
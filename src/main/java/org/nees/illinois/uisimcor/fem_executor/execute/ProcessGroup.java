@@ -0,0 +1,647 @@
+package org.nees.illinois.uisimcor.fem_executor.execute;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveWriter;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ProgramDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.input.ModelTags;
+import org.nees.illinois.uisimcor.fem_executor.process.ResponseSignal;
+import org.nees.illinois.uisimcor.fem_executor.publish.OverflowPolicy;
+import org.nees.illinois.uisimcor.fem_executor.publish.StepPublisher;
+import org.nees.illinois.uisimcor.fem_executor.publish.StepSnapshot;
+import org.nees.illinois.uisimcor.fem_executor.publish.StepSubscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs several small substructures in one FEM process. The models of the
+ * members are sourced into the same interpreter and share one domain. Their
+ * tags are not namespaced, so the members have to use distinct node, element,
+ * material, section, transformation, pattern and time series tags and must
+ * not wipe the domain. The literal tags of the member models are checked when
+ * the group is created (see {@link ModelTags}). Tags computed from variables
+ * cannot be checked and remain the responsibility of the model author. A
+ * model file sourced by several members is sourced once. The members are
+ * combined into one substructure whose control nodes are the control nodes
+ * of all members in member order. Each step sends one script which moves the
+ * control nodes of every member and runs a single analysis. The recorder
+ * frames of the combined substructure are split into the effective DOFs of
+ * each member.
+ * <p>
+ * Each member is presented to the coordinator as a
+ * {@link GroupMemberExecution}. A step or batch is sent when every member has
+ * been given its displacements. The archives are written for the combined
+ * substructure under the name of the group while the statistics and published
+ * steps belong to the members.
+ * </p>
+ * <p>
+ * Trials are sent like steps. Their responses are handed to the members
+ * without being archived or published. A trial is committed or reverted once
+ * every member has asked for it.
+ * </p>
+ * @author Michael Bletzinger
+ */
+public class ProcessGroup {
+	/**
+	 * Displacements of the current batch for each member.
+	 */
+	private final double[][][] batchDisps;
+	/**
+	 * Configuration of the combined substructure. Null if the members cannot
+	 * be combined.
+	 */
+	private final SubstructureDao combined;
+	/**
+	 * Displacements of the current step of the combined substructure.
+	 */
+	private final double[] combinedDisp;
+	/**
+	 * Execution of the combined substructure. Null if the members cannot be
+	 * combined.
+	 */
+	private final DynamicExecution exec;
+	/**
+	 * True if the current command is a batch.
+	 */
+	private boolean inBatch = false;
+	/**
+	 * True if the current command is a trial.
+	 */
+	private boolean inTrial = false;
+	/**
+	 * True if the current step or batch has been sent to the FEM process.
+	 */
+	private boolean launched = false;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(ProcessGroup.class);
+	/**
+	 * Executors presented to the coordinator in member order.
+	 */
+	private final GroupMemberExecution[] members;
+	/**
+	 * Name of the group.
+	 */
+	private final String name;
+	/**
+	 * Index of the first effective DOF of each member in the combined
+	 * displacements.
+	 */
+	private final int[] offsets;
+	/**
+	 * Publisher for the steps of the combined substructure.
+	 */
+	private final StepPublisher publisher = new StepPublisher();
+	/**
+	 * Result of the simulation start. Null until started.
+	 */
+	private Boolean started = null;
+	/**
+	 * Result of the setup. Null until set up.
+	 */
+	private Boolean setupResult = null;
+	/**
+	 * True if the FEM process has been stopped.
+	 */
+	private boolean stopped = false;
+	/**
+	 * Subscription which receives the steps of the combined substructure. Null
+	 * until the first step.
+	 */
+	private StepSubscription subscription = null;
+	/**
+	 * Number of snapshots the subscription can hold.
+	 */
+	private int subscriptionCapacity = 0;
+	/**
+	 * Flags indicating which members have been given displacements for the
+	 * current command.
+	 */
+	private final boolean[] submissions;
+	/**
+	 * Number of members which have been given displacements for the current
+	 * command.
+	 */
+	private int submitted = 0;
+	/**
+	 * Flags indicating which members have asked for the pending commit or
+	 * revert of a trial.
+	 */
+	private final boolean[] votes;
+	/**
+	 * Number of members which have asked for the pending commit or revert of
+	 * a trial.
+	 */
+	private int voted = 0;
+
+	/**
+	 * @param name
+	 *            Name of the group.
+	 * @param memberCfgs
+	 *            Configurations of the member substructures.
+	 * @param progCfg
+	 *            FEM program configuration parameters.
+	 * @param configDir
+	 *            Directory containing templates and configuration files.
+	 * @param workDir
+	 *            Directory to store temporary files.
+	 * @param archiveCfg
+	 *            Flush policy for the archives.
+	 * @param writer
+	 *            Background writer for the archives. Can be null.
+	 */
+	public ProcessGroup(final String name,
+			final List<SubstructureDao> memberCfgs, final ProgramDao progCfg,
+			final String configDir, final String workDir,
+			final ArchiveDao archiveCfg, final ArchiveWriter writer) {
+		this.name = name;
+		int n = memberCfgs.size();
+		this.members = new GroupMemberExecution[n];
+		this.offsets = new int[n];
+		this.batchDisps = new double[n][][];
+		this.submissions = new boolean[n];
+		this.votes = new boolean[n];
+		int total = 0;
+		for (int i = 0; i < n; i++) {
+			offsets[i] = total;
+			total += memberCfgs.get(i).getTotalDofs();
+			members[i] = new GroupMemberExecution(this, i, memberCfgs.get(i),
+					workDir);
+		}
+		this.combinedDisp = new double[total];
+		this.combined = combine(memberCfgs, configDir);
+		if (combined == null) {
+			this.exec = null;
+			return;
+		}
+		this.exec = new DynamicExecution(progCfg, combined, configDir,
+				workDir, archiveCfg, writer);
+		exec.setPublisher(publisher);
+	}
+
+	/**
+	 * Abort the FEM process. Only the first call has an effect.
+	 */
+	final synchronized void abort() {
+		if (stopped) {
+			return;
+		}
+		stopped = true;
+		if (exec != null) {
+			exec.abort();
+		}
+	}
+
+	/**
+	 * Poll the current batch.
+	 */
+	final synchronized void checkBatch() {
+		if (launched == false || inBatch == false) {
+			return;
+		}
+		boolean done = exec.batchIsDone();
+		distribute();
+		if (done) {
+			launched = false;
+			for (GroupMemberExecution m : members) {
+				m.setCommandDone();
+			}
+		}
+	}
+
+	/**
+	 * Poll the current step.
+	 */
+	final synchronized void checkStep() {
+		if (launched == false || inBatch) {
+			return;
+		}
+		if (exec.stepIsDone() == false) {
+			return;
+		}
+		if (exec.iveGotProblems()) {
+			return;
+		}
+		if (inTrial) {
+			handOut();
+		} else {
+			distribute();
+		}
+		launched = false;
+		for (GroupMemberExecution m : members) {
+			m.setCommandDone();
+		}
+	}
+
+	/**
+	 * Commit the current trial once every member has asked for it.
+	 * @param index
+	 *            Index of the member.
+	 * @return False if the trial could not be committed.
+	 */
+	final synchronized boolean commitTrial(final int index) {
+		if (vote(index) == false) {
+			return true;
+		}
+		if (exec.commitTrial() == false) {
+			return false;
+		}
+		distribute();
+		return true;
+	}
+
+	/**
+	 * Create the configuration of the combined substructure.
+	 * @param memberCfgs
+	 *            Configurations of the members.
+	 * @param configDir
+	 *            Directory containing the model files.
+	 * @return The configuration or null if the members cannot share a process.
+	 */
+	private SubstructureDao combine(final List<SubstructureDao> memberCfgs,
+			final String configDir) {
+		if (memberCfgs.isEmpty()) {
+			log.error("Process group \"" + name + "\" has no members");
+			return null;
+		}
+		SubstructureDao first = memberCfgs.get(0);
+		List<Integer> nodes = new ArrayList<Integer>();
+		List<String> sourced = new ArrayList<String>();
+		List<String> work = new ArrayList<String>();
+		Map<String, String> tagOwners = new HashMap<String, String>();
+		for (SubstructureDao m : memberCfgs) {
+			if (m.getDimension().equals(first.getDimension()) == false
+					|| m.getSubsteps() != first.getSubsteps()) {
+				log.error("Process group \"" + name + "\" member "
+						+ m.getAddress() + " has a different dimension or"
+						+ " number of substeps than " + first.getAddress());
+				return null;
+			}
+			for (Integer node : m.getNodeSequence()) {
+				if (nodes.contains(node)) {
+					log.error("Process group \"" + name + "\" member "
+							+ m.getAddress() + " control node " + node
+							+ " is already used by another member");
+					return null;
+				}
+				nodes.add(node);
+			}
+			ModelTags model = new ModelTags(configDir);
+			for (String f : m.getSourcedFilenames()) {
+				if (sourced.contains(f) == false) {
+					sourced.add(f);
+					if (model.scan(f) == false) {
+						return null;
+					}
+				}
+			}
+			if (model.getWipes().isEmpty() == false) {
+				log.error("Process group \"" + name + "\" member "
+						+ m.getAddress() + " wipes the shared domain in "
+						+ model.getWipes());
+				return null;
+			}
+			for (String tag : model.getTags()) {
+				String owner = tagOwners.get(tag);
+				if (owner != null && owner.equals(m.getAddress()) == false) {
+					log.error("Process group \"" + name + "\" member "
+							+ m.getAddress() + " " + tag
+							+ " is already used by member " + owner);
+					return null;
+				}
+				tagOwners.put(tag, m.getAddress());
+			}
+			for (String f : m.getWorkFiles()) {
+				if (work.contains(f) == false) {
+					work.add(f);
+				}
+			}
+		}
+		SubstructureDao result = new SubstructureDao(name,
+				first.getDimension(), first.getFemProgram(), sourced, nodes,
+				work, first.getDispPort(), first.getForcePort());
+		result.setSubsteps(first.getSubsteps());
+		for (SubstructureDao m : memberCfgs) {
+			for (Integer node : m.getNodeSequence()) {
+				result.addEffectiveDofs(node, m.getEffectiveDofs(node));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Split the steps which have been published for the combined substructure
+	 * into the members.
+	 */
+	private void distribute() {
+		StepSnapshot snap;
+		try {
+			snap = subscription.poll(0, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			log.debug("Interrupted for some reason");
+			return;
+		}
+		double[] disp = new double[combinedDisp.length];
+		double[] force = new double[combinedDisp.length];
+		while (snap != null) {
+			snap.readDisplacements(disp);
+			snap.readForces(force);
+			long startedNanos = snap.getStartedNanos();
+			long completed = snap.getCompletedNanos();
+			int step = snap.getStep();
+			subscription.release(snap);
+			for (int i = 0; i < members.length; i++) {
+				members[i].complete(step, disp, force, offsets[i],
+						startedNanos, completed);
+			}
+			try {
+				snap = subscription.poll(0, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				log.debug("Interrupted for some reason");
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Hand the current responses of the combined substructure to the members
+	 * without archiving or publishing them.
+	 */
+	private void handOut() {
+		double[] disp = new double[combinedDisp.length];
+		double[] force = new double[combinedDisp.length];
+		exec.readDisplacements(disp);
+		exec.readForces(force);
+		for (int i = 0; i < members.length; i++) {
+			members[i].take(disp, force, offsets[i]);
+		}
+	}
+
+	/**
+	 * @return the configuration of the combined substructure. Null if the
+	 *         members cannot share a process.
+	 */
+	public final SubstructureDao getCombined() {
+		return combined;
+	}
+
+	/**
+	 * @param index
+	 *            Index of the member.
+	 * @return the executor presented to the coordinator for the member.
+	 */
+	public final GroupMemberExecution getMember(final int index) {
+		return members[index];
+	}
+
+	/**
+	 * @return the name of the group.
+	 */
+	public final String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the statuses of the shared FEM process.
+	 */
+	final FemStatus getStatuses() {
+		if (exec == null) {
+			FemStatus result = new FemStatus();
+			result.setFemProcessHasDied(true);
+			return result;
+		}
+		return exec.getStatuses();
+	}
+
+	/**
+	 * @return True if the shared FEM process is broken in some way.
+	 */
+	final boolean iveGotProblems() {
+		return exec == null || exec.iveGotProblems();
+	}
+
+	/**
+	 * Make sure that the subscription can hold every step of the next
+	 * command.
+	 * @param steps
+	 *            Number of steps of the command.
+	 */
+	private void reserve(final int steps) {
+		if (steps <= subscriptionCapacity) {
+			return;
+		}
+		if (subscription != null) {
+			publisher.unsubscribe(subscription);
+		}
+		subscriptionCapacity = steps;
+		subscription = publisher.subscribe(subscriptionCapacity,
+				OverflowPolicy.DropOldest);
+	}
+
+	/**
+	 * Revert the current trial once every member has asked for it.
+	 * @param index
+	 *            Index of the member.
+	 * @return False if the trial could not be reverted.
+	 */
+	final synchronized boolean revertTrial(final int index) {
+		if (vote(index) == false) {
+			return true;
+		}
+		if (exec.revertTrial() == false) {
+			return false;
+		}
+		handOut();
+		return true;
+	}
+
+	/**
+	 * @param signal
+	 *            Signal raised whenever the shared FEM process reports
+	 *            anything.
+	 */
+	final void setResponseSignal(final ResponseSignal signal) {
+		if (exec != null) {
+			exec.setResponseSignal(signal);
+		}
+	}
+
+	/**
+	 * Set up the links of the shared FEM process once.
+	 * @return True if successful.
+	 */
+	final synchronized boolean setup() {
+		if (setupResult == null) {
+			setupResult = exec != null && exec.setup();
+		}
+		return setupResult;
+	}
+
+	/**
+	 * Start the shared FEM process once.
+	 * @return True if the simulation has started.
+	 */
+	final synchronized boolean startSimulation() {
+		if (started == null) {
+			started = exec != null && exec.startSimulation();
+		}
+		return started;
+	}
+
+	/**
+	 * Give a member the displacements of a batch. The batch is sent once
+	 * every member has been given its displacements.
+	 * @param index
+	 *            Index of the member.
+	 * @param firstStep
+	 *            Number of the first step.
+	 * @param displacements
+	 *            Displacement targets of the member.
+	 * @return False if the batch could not be started.
+	 */
+	final synchronized boolean submitBatch(final int index,
+			final int firstStep, final double[][] displacements) {
+		if (launched) {
+			log.error("Process group \"" + name + "\" is still busy");
+			return false;
+		}
+		if (submissions[index] == false) {
+			submissions[index] = true;
+			submitted++;
+		}
+		batchDisps[index] = displacements;
+		if (submitted < members.length) {
+			return true;
+		}
+		int steps = displacements.length;
+		for (double[][] d : batchDisps) {
+			if (d.length != steps) {
+				log.error("Process group \"" + name
+						+ "\" members have batches of different lengths");
+				clearSubmissions();
+				return false;
+			}
+		}
+		double[][] rows = new double[steps][combinedDisp.length];
+		for (int i = 0; i < members.length; i++) {
+			for (int s = 0; s < steps; s++) {
+				System.arraycopy(batchDisps[i][s], 0, rows[s], offsets[i],
+						batchDisps[i][s].length);
+			}
+		}
+		clearSubmissions();
+		reserve(steps);
+		inBatch = true;
+		inTrial = false;
+		launched = exec.startBatch(firstStep, rows);
+		return launched;
+	}
+
+	/**
+	 * Give a member the displacements of a step. The step is sent once every
+	 * member has been given its displacements.
+	 * @param index
+	 *            Index of the member.
+	 * @param step
+	 *            Step number.
+	 * @param displacements
+	 *            Displacement target of the member.
+	 */
+	final synchronized void submitStep(final int index, final int step,
+			final double[] displacements) {
+		submit(index, step, displacements, false);
+	}
+
+	/**
+	 * Give a member the displacements of a trial. The trial is sent once every
+	 * member has been given its displacements.
+	 * @param index
+	 *            Index of the member.
+	 * @param step
+	 *            Step number.
+	 * @param displacements
+	 *            Trial displacement target of the member.
+	 */
+	final synchronized void submitTrial(final int index, final int step,
+			final double[] displacements) {
+		submit(index, step, displacements, true);
+	}
+
+	/**
+	 * Give a member the displacements of a step or trial.
+	 * @param index
+	 *            Index of the member.
+	 * @param step
+	 *            Step number.
+	 * @param displacements
+	 *            Displacement target of the member.
+	 * @param trial
+	 *            True if the step is a trial.
+	 */
+	private void submit(final int index, final int step,
+			final double[] displacements, final boolean trial) {
+		if (launched) {
+			log.error("Process group \"" + name + "\" is still busy");
+			return;
+		}
+		System.arraycopy(displacements, 0, combinedDisp, offsets[index],
+				displacements.length);
+		if (submissions[index] == false) {
+			submissions[index] = true;
+			submitted++;
+		}
+		if (submitted < members.length) {
+			return;
+		}
+		clearSubmissions();
+		reserve(1);
+		inBatch = false;
+		inTrial = trial;
+		launched = true;
+		if (trial) {
+			exec.startTrial(step, combinedDisp.clone());
+		} else {
+			exec.startStep(step, combinedDisp.clone());
+		}
+	}
+
+	/**
+	 * Record that a member has asked for the commit or revert of the current
+	 * trial.
+	 * @param index
+	 *            Index of the member.
+	 * @return True if every member has asked and the votes have been cleared.
+	 */
+	private boolean vote(final int index) {
+		if (votes[index] == false) {
+			votes[index] = true;
+			voted++;
+		}
+		if (voted < members.length) {
+			return false;
+		}
+		voted = 0;
+		for (int i = 0; i < votes.length; i++) {
+			votes[i] = false;
+		}
+		return true;
+	}
+
+	/**
+	 * Forget which members have been given displacements.
+	 */
+	private void clearSubmissions() {
+		submitted = 0;
+		for (int i = 0; i < batchDisps.length; i++) {
+			batchDisps[i] = null;
+			submissions[i] = false;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package org.nees.illinois.uisimcor.fem_executor.execute;
+
+/**
+ * Budget of FEM processes which may run at the same time. Executors take a
+ * slot before they start a process and give it back when the process has
+ * exited. The slots are shared by all of the substructures of a simulation.
+ * @author Michael Bletzinger
+ */
+public class ProcessSlots {
+	/**
+	 * Number of slots.
+	 */
+	private final int capacity;
+	/**
+	 * Number of slots which have been taken.
+	 */
+	private int inUse = 0;
+	/**
+	 * Largest number of slots which have been taken at the same time.
+	 */
+	private int peak = 0;
+
+	/**
+	 * @param capacity
+	 *            Number of processes which may run at the same time.
+	 */
+	public ProcessSlots(final int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Take a slot if one is free.
+	 * @return True if a slot was taken.
+	 */
+	public final synchronized boolean acquire() {
+		if (inUse >= capacity) {
+			return false;
+		}
+		inUse++;
+		peak = Math.max(peak, inUse);
+		return true;
+	}
+
+	/**
+	 * @return the number of processes which may run at the same time.
+	 */
+	public final int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the number of slots which have been taken.
+	 */
+	public final synchronized int getInUse() {
+		return inUse;
+	}
+
+	/**
+	 * @return the largest number of slots which have been taken at the same
+	 *         time.
+	 */
+	public final synchronized int getPeak() {
+		return peak;
+	}
+
+	/**
+	 * Give a slot back.
+	 */
+	public final synchronized void release() {
+		if (inUse > 0) {
+			inUse--;
+		}
+	}
+}
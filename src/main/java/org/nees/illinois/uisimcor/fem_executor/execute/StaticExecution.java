@@ -0,0 +1,516 @@
+package org.nees.illinois.uisimcor.fem_executor.execute;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.nees.illinois.uisimcor.fem_executor.archiving.TextArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.TextArchiveI;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ProgramDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.input.OpenSeesSG;
+import org.nees.illinois.uisimcor.fem_executor.input.ScriptGeneratorI;
+import org.nees.illinois.uisimcor.fem_executor.output.DataFormatter;
+import org.nees.illinois.uisimcor.fem_executor.output.ResponseValues;
+import org.nees.illinois.uisimcor.fem_executor.output.StepStatistics;
+import org.nees.illinois.uisimcor.fem_executor.process.ResponseSignal;
+import org.nees.illinois.uisimcor.fem_executor.publish.StepPublisher;
+import org.nees.illinois.uisimcor.fem_executor.utils.PathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class to execute an FEM program to statically analyze a substructure at one
+ * step. Each step writes a complete run script with
+ * {@link ScriptGeneratorI#generateRun(int, double[]) generateRun} and starts a
+ * fresh FEM process which executes the script and exits. The responses are
+ * read from the file recorders of the run template when the process has
+ * exited. A process is only started when a slot of the shared
+ * {@link ProcessSlots process budget} is free, so that the substructures run
+ * in parallel without oversubscribing the processors.
+ * <p>
+ * Since every run starts from the model files, a trial is a normal run whose
+ * responses are only added to the statistics and published when the trial is
+ * committed. Reverting a trial does not need the FEM program at all.
+ * </p>
+ * @author Michael Bletzinger
+ */
+public class StaticExecution implements SubstructureExecutorI {
+	/**
+	 * Displacements of the last committed step at the effective DOFs.
+	 */
+	private final double[] committedDisp;
+	/**
+	 * Forces of the last committed step at the effective DOFs.
+	 */
+	private final double[] committedForce;
+	/**
+	 * Displacements of the last completed step at the effective DOFs.
+	 */
+	private final double[] dispBuf;
+	/**
+	 * Recorder file with the displacements.
+	 */
+	private final File dispFile;
+	/**
+	 * Step record of the displacement recorder. Reused between steps.
+	 */
+	private double[] dispRecord = null;
+	/**
+	 * FEM execution management of the current run. Null before the first run.
+	 */
+	private ProcessExecution exec = null;
+	/**
+	 * Flag indicating that the current run has failed.
+	 */
+	private boolean failed = false;
+	/**
+	 * Forces of the last completed step at the effective DOFs.
+	 */
+	private final double[] forceBuf;
+	/**
+	 * Recorder file with the forces.
+	 */
+	private final File forceFile;
+	/**
+	 * Step record of the force recorder. Reused between steps.
+	 */
+	private double[] forceRecord = null;
+	/**
+	 * Tokenizer for the recorder records.
+	 */
+	private final DataFormatter formatter;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(StaticExecution.class);
+	/**
+	 * Flag indicating that the current step is a trial.
+	 */
+	private boolean inTrial = false;
+	/**
+	 * Flag indicating that the run script has been written but the process is
+	 * waiting for a free slot.
+	 */
+	private boolean pending = false;
+	/**
+	 * FEM program configuration.
+	 */
+	private final ProgramDao progCfg;
+	/**
+	 * Publisher of completed steps. Can be null.
+	 */
+	private StepPublisher publisher = null;
+	/**
+	 * Response values of the last completed step.
+	 */
+	private final ResponseValues responseVals;
+	/**
+	 * Run script file.
+	 */
+	private final File runFile;
+	/**
+	 * Flag indicating that the process of the current run is running.
+	 */
+	private boolean running = false;
+	/**
+	 * Statistics archive.
+	 */
+	private final TextArchiveI sarch;
+	/**
+	 * Configuration of the substructure.
+	 */
+	private final SubstructureDao scfg;
+	/**
+	 * FEM execution script generator.
+	 */
+	private final ScriptGeneratorI scriptGen;
+	/**
+	 * Signal raised when a run has finished. Can be null.
+	 */
+	private ResponseSignal signal = null;
+	/**
+	 * Process budget shared by all of the substructures.
+	 */
+	private final ProcessSlots slots;
+	/**
+	 * Running statistics of the responses.
+	 */
+	private final StepStatistics statistics;
+	/**
+	 * Statuses of the current step.
+	 */
+	private final FemStatus statuses = new FemStatus();
+	/**
+	 * Current step.
+	 */
+	private int currentStep;
+	/**
+	 * Flag indicating that the responses of the current step have been read.
+	 */
+	private boolean currentStepFinished = false;
+	/**
+	 * Time in nanoseconds when the current step was started.
+	 */
+	private long currentStepStarted;
+	/**
+	 * Working directory of the FEM process.
+	 */
+	private final String workDir;
+
+	/**
+	 * @param progCfg
+	 *            FEM program configuration parameters.
+	 * @param scfg
+	 *            Configuration for the substructure.
+	 * @param configDir
+	 *            Directory containing templates and configuration files.
+	 * @param workDir
+	 *            Directory to store temporary files.
+	 * @param slots
+	 *            Process budget shared by all of the substructures.
+	 */
+	public StaticExecution(final ProgramDao progCfg,
+			final SubstructureDao scfg, final String configDir,
+			final String workDir, final ProcessSlots slots) {
+		WorkingDir wd = new WorkingDir(workDir, scfg, configDir);
+		wd.createWorkDir();
+		this.workDir = wd.getWorkDir();
+		this.progCfg = progCfg;
+		this.scfg = scfg;
+		this.slots = slots;
+		this.scriptGen = new OpenSeesSG(configDir, scfg,
+				progCfg.getTemplateDao(), progCfg.getLauncher() != null);
+		this.runFile = new File(PathUtils.append(this.workDir, "run.tcl"));
+		this.dispFile = new File(PathUtils.append(this.workDir, "tmp_disp.out"));
+		this.forceFile = new File(
+				PathUtils.append(this.workDir, "tmp_forc.out"));
+		SubstructureDir logDir = new SubstructureDir(workDir, scfg, "logDir");
+		logDir.createSubstructDir();
+		this.sarch = new TextArchive(new File(PathUtils.append(
+				logDir.getSubstructDir(), "Statistics.txt")));
+		this.formatter = new DataFormatter(scfg);
+		this.responseVals = new ResponseValues(scfg);
+		this.statistics = new StepStatistics(scfg);
+		this.dispBuf = new double[scfg.getTotalDofs()];
+		this.forceBuf = new double[scfg.getTotalDofs()];
+		this.committedDisp = new double[scfg.getTotalDofs()];
+		this.committedForce = new double[scfg.getTotalDofs()];
+	}
+
+	@Override
+	public final synchronized void abort() {
+		abortRun();
+		if (statistics.getCount() > 0) {
+			sarch.write(statistics.toText());
+		}
+		sarch.close();
+	}
+
+	@Override
+	public final boolean batchIsDone() {
+		return false;
+	}
+
+	/**
+	 * Kill the process of the current run and release its slot.
+	 */
+	private void abortRun() {
+		if (running) {
+			exec.abort();
+			slots.release();
+			running = false;
+		}
+		pending = false;
+	}
+
+	/**
+	 * Mark the current run as failed.
+	 * @param why
+	 *            Reason for the log.
+	 */
+	private void fail(final String why) {
+		log.error(scfg.getAddress() + " step " + currentStep + " failed: "
+				+ why);
+		failed = true;
+		statuses.setFemProcessHasDied(true);
+	}
+
+	/**
+	 * Finish a run whose process has exited.
+	 */
+	private void finishRun() {
+		running = false;
+		exec.checkForErrors(exec.getStatuses());
+		exec.abort();
+		slots.release();
+		if (signal != null) {
+			signal.signal();
+		}
+		dispRecord = readRecord(dispFile, dispRecord);
+		forceRecord = readRecord(forceFile, forceRecord);
+		if (dispRecord == null || forceRecord == null) {
+			fail("recorder files have no step record");
+			return;
+		}
+		responseVals.setRawDisp(dispRecord);
+		responseVals.setRawForce(forceRecord);
+		if (responseVals.readDisplacements(dispBuf) == false
+				|| responseVals.readForces(forceBuf) == false) {
+			fail("recorder records do not match the substructure");
+			return;
+		}
+		if (inTrial == false) {
+			commit();
+		}
+		statuses.setStepFinished();
+		currentStepFinished = true;
+		log.debug(scfg.getAddress() + " finished step " + currentStep);
+	}
+
+	/**
+	 * Add the responses of the current step to the statistics and publish
+	 * them.
+	 */
+	private void commit() {
+		System.arraycopy(dispBuf, 0, committedDisp, 0, dispBuf.length);
+		System.arraycopy(forceBuf, 0, committedForce, 0, forceBuf.length);
+		statistics.update(currentStep, dispBuf, forceBuf);
+		if (publisher != null && publisher.hasSubscribers()) {
+			publisher.publish(currentStep, scfg.getAddress(), dispBuf,
+					forceBuf, currentStepStarted, System.nanoTime());
+		}
+	}
+
+	@Override
+	public final synchronized boolean commitTrial() {
+		if (inTrial == false || currentStepFinished == false) {
+			log.error(scfg.getAddress() + " has no completed trial to commit");
+			return false;
+		}
+		commit();
+		inTrial = false;
+		return true;
+	}
+
+	@Override
+	public final SubstructureDao getScfg() {
+		return scfg;
+	}
+
+	@Override
+	public final StepStatistics getStatistics() {
+		return statistics;
+	}
+
+	@Override
+	public final FemStatus getStatuses() {
+		return statuses;
+	}
+
+	@Override
+	public final synchronized boolean iveGotProblems() {
+		return failed;
+	}
+
+	/**
+	 * Start the FEM process if a slot is free.
+	 */
+	private void launch() {
+		if (slots.acquire() == false) {
+			return;
+		}
+		final int quarterSecond = 250;
+		pending = false;
+		exec = new ProcessExecution(progCfg, workDir, quarterSecond, false);
+		exec.getProcess().addArg(runFile.getName());
+		exec.setSignal(signal);
+		if (exec.start() == false) {
+			slots.release();
+			fail("FEM process could not be started");
+			return;
+		}
+		running = true;
+		log.debug(scfg.getAddress() + " started step " + currentStep);
+	}
+
+	@Override
+	public final synchronized void readDisplacements(final double[] out) {
+		System.arraycopy(dispBuf, 0, out, 0, dispBuf.length);
+	}
+
+	@Override
+	public final synchronized void readForces(final double[] out) {
+		System.arraycopy(forceBuf, 0, out, 0, forceBuf.length);
+	}
+
+	/**
+	 * Read the step record from a recorder file. The record is selected the
+	 * same way as for the records which arrive over TCP.
+	 * Only the last records which can be selected are kept.
+	 * @param file
+	 *            Recorder file.
+	 * @param record
+	 *            Array to reuse for the record. Can be null.
+	 * @return The record or null if the file does not have enough records.
+	 */
+	private double[] readRecord(final File file, final double[] record) {
+		int keep = progCfg.getStepRecordIndex() + 1;
+		String[] last = new String[keep];
+		int count = 0;
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(file));
+			try {
+				String line = reader.readLine();
+				while (line != null) {
+					if (line.trim().length() > 0) {
+						last[count % keep] = line;
+						count++;
+					}
+					line = reader.readLine();
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			log.error("Cannot read \"" + file + "\" because ", e);
+			return null;
+		}
+		if (count < keep) {
+			log.error("\"" + file + "\" has " + count + " records");
+			return null;
+		}
+		return formatter.tokenString2Double(last[count % keep], record);
+	}
+
+	@Override
+	public final synchronized boolean revertTrial() {
+		if (inTrial == false) {
+			log.error(scfg.getAddress() + " has no trial to revert");
+			return false;
+		}
+		if (currentStepFinished == false && failed == false) {
+			log.error(scfg.getAddress() + " trial of step " + currentStep
+					+ " is still running");
+			return false;
+		}
+		inTrial = false;
+		System.arraycopy(committedDisp, 0, dispBuf, 0, dispBuf.length);
+		System.arraycopy(committedForce, 0, forceBuf, 0, forceBuf.length);
+		return true;
+	}
+
+	@Override
+	public final void setPublisher(final StepPublisher publisher) {
+		this.publisher = publisher;
+	}
+
+	@Override
+	public final void setResponseSignal(final ResponseSignal signal) {
+		this.signal = signal;
+	}
+
+	@Override
+	public final boolean setup() {
+		return true;
+	}
+
+	@Override
+	public final boolean startBatch(final int firstStep,
+			final double[][] displacements) {
+		log.error("Batches are not supported by the static execution of "
+				+ scfg.getAddress());
+		return false;
+	}
+
+	/**
+	 * Nothing is started until the first step since every step runs in its
+	 * own process.
+	 * @return True.
+	 */
+	@Override
+	public final boolean startSimulation() {
+		return true;
+	}
+
+	@Override
+	public final synchronized void startStep(final int step,
+			final double[] displacements) {
+		run(step, displacements, false);
+	}
+
+	@Override
+	public final synchronized void startTrial(final int step,
+			final double[] displacements) {
+		run(step, displacements, true);
+	}
+
+	/**
+	 * Write the run script of a step and start the FEM process when a slot is
+	 * free.
+	 * @param step
+	 *            Step number.
+	 * @param displacements
+	 *            Displacement target.
+	 * @param trial
+	 *            True if the step is a trial.
+	 */
+	private void run(final int step, final double[] displacements,
+			final boolean trial) {
+		inTrial = trial;
+		currentStep = step;
+		currentStepFinished = false;
+		currentStepStarted = System.nanoTime();
+		boolean busy = running;
+		abortRun();
+		// Every run is a new process so a failure of the last run is over.
+		failed = false;
+		statuses.newProcess();
+		if (busy) {
+			fail("previous step was still running and has been aborted");
+			return;
+		}
+		String script = scriptGen.generateRun(step, displacements);
+		if (script == null) {
+			fail("run script could not be generated");
+			return;
+		}
+		dispFile.delete();
+		forceFile.delete();
+		try {
+			Writer writer = new FileWriter(runFile);
+			try {
+				writer.write(script);
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			log.error("Cannot write \"" + runFile + "\" because ", e);
+			fail("run script could not be written");
+			return;
+		}
+		pending = true;
+		launch();
+	}
+
+	@Override
+	public final synchronized boolean stepIsDone() {
+		if (failed) {
+			return false;
+		}
+		if (currentStepFinished) {
+			return true;
+		}
+		if (pending) {
+			launch();
+			return false;
+		}
+		if (running && exec.getProcess().hasExited()) {
+			finishRun();
+		}
+		return currentStepFinished;
+	}
+}
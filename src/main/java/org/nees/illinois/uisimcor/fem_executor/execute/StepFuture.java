@@ -0,0 +1,222 @@
+package org.nees.illinois.uisimcor.fem_executor.execute;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.nees.illinois.uisimcor.fem_executor.utils.StepFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Result of an asynchronous substructure step. The value is a two row matrix
+ * with the displacements in the first row and the forces in the second row.
+ * The future fails if the FEM process dies or reports errors before the
+ * responses arrive.
+ * @author Michael Bletzinger
+ */
+public class StepFuture implements Future<double[][]> {
+	/**
+	 * Label used in messages.
+	 */
+	private final String label;
+	/**
+	 * Listeners to call when the future finishes.
+	 */
+	private final List<StepListenerI> listeners = new ArrayList<StepListenerI>();
+	/**
+	 * Released when the future finishes.
+	 */
+	private final CountDownLatch latch = new CountDownLatch(1);
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(StepFuture.class);
+	/**
+	 * Step value once completed.
+	 */
+	private double[][] value;
+	/**
+	 * Failure once failed.
+	 */
+	private StepFailedException failure;
+	/**
+	 * Flag indicating that the future was cancelled.
+	 */
+	private boolean cancelled = false;
+	/**
+	 * Flag indicating that the future has finished.
+	 */
+	private boolean finished = false;
+	/**
+	 * Step number.
+	 */
+	private final int step;
+
+	/**
+	 * @param label
+	 *            Label used in messages. Usually the substructure address.
+	 * @param step
+	 *            Step number.
+	 */
+	public StepFuture(final String label, final int step) {
+		this.label = label;
+		this.step = step;
+	}
+
+	/**
+	 * Add a listener which is called when the future finishes. If the future
+	 * has already finished the listener is called immediately.
+	 * @param listener
+	 *            The listener.
+	 */
+	public final void addListener(final StepListenerI listener) {
+		synchronized (this) {
+			if (finished == false) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		listener.stepFinished(this);
+	}
+
+	@Override
+	public final boolean cancel(final boolean mayInterruptIfRunning) {
+		return finish(null, null, true);
+	}
+
+	/**
+	 * Complete the future.
+	 * @param result
+	 *            Step value.
+	 * @return True if this call finished the future.
+	 */
+	public final boolean complete(final double[][] result) {
+		return finish(result, null, false);
+	}
+
+	/**
+	 * Fail the future.
+	 * @param reason
+	 *            Description of the failure.
+	 * @return True if this call finished the future.
+	 */
+	public final boolean fail(final String reason) {
+		return finish(null, new StepFailedException(label + " step " + step
+				+ " failed: " + reason), false);
+	}
+
+	/**
+	 * Fail the future.
+	 * @param cause
+	 *            Failure of a dependent future.
+	 * @return True if this call finished the future.
+	 */
+	protected final boolean fail(final StepFailedException cause) {
+		return finish(null, cause, false);
+	}
+
+	/**
+	 * Move the future into a finished state and notify waiters and listeners.
+	 * @param result
+	 *            Step value.
+	 * @param error
+	 *            Failure.
+	 * @param cancel
+	 *            True if the future is cancelled.
+	 * @return True if this call finished the future.
+	 */
+	private boolean finish(final double[][] result,
+			final StepFailedException error, final boolean cancel) {
+		List<StepListenerI> toCall;
+		synchronized (this) {
+			if (finished) {
+				return false;
+			}
+			value = result;
+			failure = error;
+			cancelled = cancel;
+			finished = true;
+			toCall = new ArrayList<StepListenerI>(listeners);
+			listeners.clear();
+		}
+		latch.countDown();
+		for (StepListenerI l : toCall) {
+			try {
+				l.stepFinished(this);
+			} catch (RuntimeException e) {
+				log.error("Listener for " + label + " step " + step
+						+ " failed because ", e);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public final double[][] get() throws InterruptedException,
+			ExecutionException {
+		latch.await();
+		return result();
+	}
+
+	@Override
+	public final double[][] get(final long timeout, final TimeUnit unit)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		if (latch.await(timeout, unit) == false) {
+			throw new TimeoutException(label + " step " + step
+					+ " has not finished");
+		}
+		return result();
+	}
+
+	/**
+	 * @return the failure or null if the future has not failed.
+	 */
+	public final synchronized StepFailedException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * @return the label
+	 */
+	public final String getLabel() {
+		return label;
+	}
+
+	/**
+	 * @return the step
+	 */
+	public final int getStep() {
+		return step;
+	}
+
+	@Override
+	public final synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public final synchronized boolean isDone() {
+		return finished;
+	}
+
+	/**
+	 * @return the value of a finished future.
+	 * @throws ExecutionException
+	 *             if the step failed or was cancelled.
+	 */
+	private synchronized double[][] result() throws ExecutionException {
+		if (cancelled) {
+			throw new ExecutionException(new StepFailedException(label
+					+ " step " + step + " was cancelled"));
+		}
+		if (failure != null) {
+			throw new ExecutionException(failure);
+		}
+		return value;
+	}
+}
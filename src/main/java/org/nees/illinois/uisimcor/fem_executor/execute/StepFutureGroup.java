@@ -0,0 +1,86 @@
+package org.nees.illinois.uisimcor.fem_executor.execute;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.nees.illinois.uisimcor.fem_executor.utils.StepFailedException;
+
+/**
+ * Future which completes when all of the substructure step futures of a step
+ * have completed and fails as soon as one of them fails. The value has the
+ * same layout as {@link org.nees.illinois.uisimcor.fem_executor.FemExecutor#step(int, double[][], long) FemExecutor.step}:
+ * row i contains the displacements and row i + n the forces of member i.
+ * @author Michael Bletzinger
+ */
+public class StepFutureGroup extends StepFuture implements StepListenerI {
+	/**
+	 * The member futures.
+	 */
+	private final StepFuture[] members;
+	/**
+	 * Number of members that have not completed yet.
+	 */
+	private int remaining;
+
+	/**
+	 * @param step
+	 *            Step number.
+	 * @param members
+	 *            The member futures. Their values are collected in this order.
+	 */
+	public StepFutureGroup(final int step, final StepFuture[] members) {
+		super("All substructures", step);
+		this.members = members.clone();
+		this.remaining = members.length;
+		if (remaining == 0) {
+			complete(new double[0][]);
+			return;
+		}
+		for (StepFuture m : this.members) {
+			m.addListener(this);
+		}
+	}
+
+	/**
+	 * @return the member futures.
+	 */
+	public final StepFuture[] getMembers() {
+		return members.clone();
+	}
+
+	@Override
+	public final void stepFinished(final Future<double[][]> future) {
+		StepFuture member = (StepFuture) future;
+		if (member.isCancelled()) {
+			fail("member " + member.getLabel() + " was cancelled");
+			return;
+		}
+		if (member.getFailure() != null) {
+			fail(member.getFailure());
+			return;
+		}
+		synchronized (this) {
+			remaining--;
+			if (remaining > 0) {
+				return;
+			}
+		}
+		int n = members.length;
+		double[][] result = new double[2 * n][];
+		for (int i = 0; i < n; i++) {
+			double[][] mv;
+			try {
+				mv = members[i].get();
+			} catch (InterruptedException e) {
+				fail(new StepFailedException(e));
+				return;
+			} catch (ExecutionException e) {
+				fail(new StepFailedException(e.getCause()));
+				return;
+			}
+			result[i] = mv[0];
+			result[n + i] = mv[1];
+		}
+		complete(result);
+	}
+}
@@ -0,0 +1,18 @@
+package org.nees.illinois.uisimcor.fem_executor.execute;
+
+import java.util.concurrent.Future;
+
+/**
+ * Callback for the completion of an asynchronous step.
+ * @author Michael Bletzinger
+ */
+public interface StepListenerI {
+	/**
+	 * Called once when the step has completed, failed or was cancelled. The
+	 * call is made from the thread that completed the step so the listener
+	 * should return quickly.
+	 * @param future
+	 *            The future that has finished.
+	 */
+	void stepFinished(Future<double[][]> future);
+}
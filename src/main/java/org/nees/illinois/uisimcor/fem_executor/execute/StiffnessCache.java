@@ -0,0 +1,461 @@
+package org.nees.illinois.uisimcor.fem_executor.execute;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ProgramDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.TemplateDao;
+import org.nees.illinois.uisimcor.fem_executor.config.types.DispDof;
+import org.nees.illinois.uisimcor.fem_executor.input.ModelTags;
+import org.nees.illinois.uisimcor.fem_executor.utils.PathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Disk cache of condensed stiffness matrices. A matrix is stored under a key
+ * which is a hash of everything which determines it: the contents of the
+ * model files which are sourced or copied into the working directory, the
+ * files they source in turn (see {@link ModelTags}), the templates, the
+ * content of the FEM program executable and its step record index, the
+ * control nodes, the effective DOFs and the perturbation. The hash of the
+ * executable is remembered for its size and modification time so that it is
+ * only read once per run.
+ * A model which has not changed is therefore found again in later runs and
+ * under other substructure names while any change to it misses the cache.
+ * <p>
+ * Each entry is a text file named after the key. The key is repeated in the
+ * first line and checked together with the matrix size when the entry is
+ * read. Entries which fail the check are deleted. Reading an entry marks it as
+ * recently used and only the most recently used entries are kept.
+ * </p>
+ * @author Michael Bletzinger
+ */
+public class StiffnessCache {
+	/**
+	 * Hashes of the executables by path, size and modification time.
+	 */
+	private static final Map<String, String> EXE_HASHES = new HashMap<String, String>();
+	/**
+	 * Extension of the cache entries.
+	 */
+	private static final String EXTENSION = ".stiffness";
+	/**
+	 * First word of the key line of an entry.
+	 */
+	private static final String KEY_LABEL = "key";
+
+	/**
+	 * Directory holding the entries.
+	 */
+	private final File dir;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(StiffnessCache.class);
+	/**
+	 * Maximum number of entries which are kept.
+	 */
+	private final int maxEntries;
+
+	/**
+	 * @param dir
+	 *            Directory holding the entries. Created if needed.
+	 * @param maxEntries
+	 *            Maximum number of entries which are kept.
+	 */
+	public StiffnessCache(final File dir, final int maxEntries) {
+		this.dir = dir;
+		this.maxEntries = maxEntries;
+		if (dir.exists() == false && dir.mkdirs() == false) {
+			log.error("Cannot create stiffness cache directory \"" + dir
+					+ "\"");
+		}
+	}
+
+	/**
+	 * Delete the least recently used entries which exceed the maximum number
+	 * of entries.
+	 * @return Number of entries which were deleted.
+	 */
+	public final synchronized int cleanup() {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return 0;
+		}
+		List<File> entries = new ArrayList<File>();
+		for (File f : files) {
+			if (f.getName().endsWith(EXTENSION)) {
+				entries.add(f);
+			}
+		}
+		if (entries.size() <= maxEntries) {
+			return 0;
+		}
+		Collections.sort(entries, new Comparator<File>() {
+			@Override
+			public int compare(final File a, final File b) {
+				long diff = b.lastModified() - a.lastModified();
+				if (diff == 0) {
+					return 0;
+				}
+				return diff > 0 ? 1 : -1;
+			}
+		});
+		int result = 0;
+		for (File f : entries.subList(maxEntries, entries.size())) {
+			if (f.delete()) {
+				result++;
+			}
+		}
+		log.debug("Removed " + result + " entries from the stiffness cache");
+		return result;
+	}
+
+	/**
+	 * Find a stiffness matrix.
+	 * @param key
+	 *            Key created with
+	 *            {@link #key(SubstructureDao, String, ProgramDao, double)}.
+	 * @param dofs
+	 *            Number of effective DOFs of the substructure.
+	 * @return The matrix or null if there is no valid entry for the key.
+	 */
+	public final synchronized double[][] get(final String key, final int dofs) {
+		File file = entry(key);
+		if (file.exists() == false) {
+			return null;
+		}
+		double[][] result = new double[dofs][];
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(file));
+			try {
+				String line = reader.readLine();
+				if (line == null
+						|| line.equals(KEY_LABEL + " " + key) == false) {
+					return invalid(file, "has the wrong key");
+				}
+				for (int i = 0; i < dofs; i++) {
+					line = reader.readLine();
+					if (line == null) {
+						return invalid(file, "has too few rows");
+					}
+					String[] tokens = line.trim().split("\\s+");
+					if (tokens.length != dofs) {
+						return invalid(file, "row " + i + " has "
+								+ tokens.length + " columns");
+					}
+					result[i] = new double[dofs];
+					for (int j = 0; j < dofs; j++) {
+						result[i][j] = Double.parseDouble(tokens[j]);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			log.error("Cannot read \"" + file + "\" because ", e);
+			return null;
+		} catch (NumberFormatException e) {
+			return invalid(file, "has a bad number");
+		}
+		if (file.setLastModified(System.currentTimeMillis()) == false) {
+			log.debug("Cannot mark \"" + file + "\" as used");
+		}
+		return result;
+	}
+
+	/**
+	 * @return the directory holding the entries.
+	 */
+	public final File getDir() {
+		return dir;
+	}
+
+	/**
+	 * Create the key of a substructure stiffness.
+	 * @param scfg
+	 *            Configuration of the substructure.
+	 * @param configDir
+	 *            Directory containing the model files and templates.
+	 * @param progCfg
+	 *            FEM program which the probes are run with.
+	 * @param perturbation
+	 *            Displacement applied to each effective DOF.
+	 * @return The key or null if a model file or template cannot be read.
+	 */
+	public static String key(final SubstructureDao scfg,
+			final String configDir, final ProgramDao progCfg,
+			final double perturbation) {
+		Logger slog = LoggerFactory.getLogger(StiffnessCache.class);
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			slog.error("Cannot hash the stiffness key because ", e);
+			return null;
+		}
+		// The sourced files and templates are walked for literal source
+		// commands so that the files they source are hashed too.
+		ModelTags model = new ModelTags(configDir);
+		for (String f : scfg.getSourcedFilenames()) {
+			if (model.scan(f) == false) {
+				return null;
+			}
+		}
+		TemplateDao templates = progCfg.getTemplateDao();
+		String[] tfiles = { templates.getInitTemplateFile(),
+				templates.getStepTemplateFile(),
+				templates.getRunTemplateFile() };
+		for (String f : tfiles) {
+			if (f != null && model.scan(f) == false) {
+				return null;
+			}
+		}
+		List<String> files = model.getFiles();
+		for (String f : scfg.getWorkFiles()) {
+			if (files.contains(f) == false) {
+				files.add(f);
+			}
+		}
+		update(digest, scfg.getDimension().name());
+		update(digest, progCfg.getProgram().name());
+		update(digest, progCfg.getExecutablePath());
+		String exeHash = exeHash(progCfg.getExecutablePath());
+		if (exeHash == null) {
+			return null;
+		}
+		update(digest, exeHash);
+		update(digest, "record " + progCfg.getStepRecordIndex());
+		for (String f : tfiles) {
+			update(digest, f == null ? "none" : f);
+		}
+		for (String f : files) {
+			update(digest, f);
+			if (update(digest, new File(PathUtils.append(configDir, f)),
+					slog) == false) {
+				return null;
+			}
+		}
+		for (Integer n : scfg.getNodeSequence()) {
+			update(digest, "node " + n);
+			for (DispDof d : scfg.getEffectiveDofs(n)) {
+				update(digest, d.name());
+			}
+		}
+		update(digest,
+				Long.toHexString(Double.doubleToLongBits(perturbation)));
+		return hex(digest.digest());
+	}
+
+	/**
+	 * Hash the content of the FEM program executable. The hash is remembered
+	 * for the size and modification time of the file. A program which is
+	 * found on the search path instead of a file is identified by its name.
+	 * @param path
+	 *            Path of the executable.
+	 * @return The hash or null if the executable cannot be read.
+	 */
+	private static String exeHash(final String path) {
+		File exe = new File(path);
+		if (exe.isFile() == false) {
+			return "not a file";
+		}
+		String id = path + " " + exe.length() + " " + exe.lastModified();
+		synchronized (EXE_HASHES) {
+			String result = EXE_HASHES.get(id);
+			if (result != null) {
+				return result;
+			}
+		}
+		Logger slog = LoggerFactory.getLogger(StiffnessCache.class);
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			slog.error("Cannot hash the executable because ", e);
+			return null;
+		}
+		if (update(digest, exe, slog) == false) {
+			return null;
+		}
+		String result = hex(digest.digest());
+		synchronized (EXE_HASHES) {
+			EXE_HASHES.put(id, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Convert a hash into hexadecimal digits.
+	 * @param hash
+	 *            The hash.
+	 * @return The digits.
+	 */
+	private static String hex(final byte[] hash) {
+		StringBuilder result = new StringBuilder();
+		final int byteMask = 0xff;
+		final int twoDigits = 0x100;
+		for (byte b : hash) {
+			result.append(Integer.toHexString((b & byteMask) + twoDigits)
+					.substring(1));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Store a stiffness matrix. The entry is written to a temporary file
+	 * first so that an interrupted write does not leave a partial entry.
+	 * @param key
+	 *            Key created with
+	 *            {@link #key(SubstructureDao, String, ProgramDao, double)}.
+	 * @param stiffness
+	 *            The matrix.
+	 * @return False if the entry could not be written.
+	 */
+	public final synchronized boolean put(final String key,
+			final double[][] stiffness) {
+		File file = entry(key);
+		File tmp = new File(dir, key + ".tmp");
+		try {
+			Writer writer = new FileWriter(tmp);
+			try {
+				writer.write(KEY_LABEL + " " + key + "\n");
+				for (double[] row : stiffness) {
+					boolean first = true;
+					for (double v : row) {
+						writer.write((first ? "" : " ") + Double.toString(v));
+						first = false;
+					}
+					writer.write("\n");
+				}
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			log.error("Cannot write \"" + tmp + "\" because ", e);
+			return false;
+		}
+		if (file.exists() && file.delete() == false) {
+			log.error("Cannot replace \"" + file + "\"");
+			return false;
+		}
+		if (tmp.renameTo(file) == false) {
+			log.error("Cannot rename \"" + tmp + "\" to \"" + file + "\"");
+			return false;
+		}
+		cleanup();
+		return true;
+	}
+
+	/**
+	 * @param key
+	 *            Key of the entry.
+	 * @return the file of the entry.
+	 */
+	private File entry(final String key) {
+		return new File(dir, key + EXTENSION);
+	}
+
+	/**
+	 * Delete an entry which failed the check.
+	 * @param file
+	 *            File of the entry.
+	 * @param why
+	 *            Reason for the log.
+	 * @return Null.
+	 */
+	private double[][] invalid(final File file, final String why) {
+		log.error("Stiffness cache entry \"" + file + "\" " + why
+				+ " and is removed");
+		if (file.delete() == false) {
+			log.error("Cannot delete \"" + file + "\"");
+		}
+		return null;
+	}
+
+	/**
+	 * Add the content of a file to a hash followed by its length.
+	 * @param digest
+	 *            The hash.
+	 * @param file
+	 *            The file.
+	 * @param slog
+	 *            Logger for read errors.
+	 * @return False if the file cannot be read.
+	 */
+	private static boolean update(final MessageDigest digest, final File file,
+			final Logger slog) {
+		try {
+			InputStream is = new FileInputStream(file);
+			long length = 0;
+			try {
+				final int bufferSize = 8192;
+				byte[] buffer = new byte[bufferSize];
+				int n = is.read(buffer);
+				while (n > 0) {
+					digest.update(buffer, 0, n);
+					length += n;
+					n = is.read(buffer);
+				}
+			} finally {
+				is.close();
+			}
+			update(digest, Long.toString(length));
+		} catch (IOException e) {
+			slog.error("Cannot hash \"" + file + "\" because ", e);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Add a text to a hash followed by a separator.
+	 * @param digest
+	 *            The hash.
+	 * @param text
+	 *            The text.
+	 */
+	private static void update(final MessageDigest digest, final String text) {
+		try {
+			digest.update(text.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			digest.update(text.getBytes());
+		}
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * @return the file names of the entries in name order.
+	 */
+	public final synchronized List<String> listEntries() {
+		String[] names = dir.list();
+		List<String> result = new ArrayList<String>();
+		if (names == null) {
+			return result;
+		}
+		Arrays.sort(names);
+		for (String n : names) {
+			if (n.endsWith(EXTENSION)) {
+				result.add(n);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,182 @@
+package org.nees.illinois.uisimcor.fem_executor.execute;
+
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ProgramDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.process.ResponseSignal;
+import org.nees.illinois.uisimcor.fem_executor.utils.PathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Determines the initial stiffness of a substructure condensed to its
+ * effective DOFs. Each column of the matrix is probed with one analysis which
+ * moves a single effective DOF by a small perturbation while the other
+ * effective DOFs are held at zero. The restoring forces divided by the
+ * perturbation are the column.
+ * <p>
+ * The probes are run by several workers at once. Each worker has its own
+ * working directory with a copy of the model files and runs its probes as
+ * {@link StaticExecution} trials. Every probe is a fresh FEM process which
+ * starts from the initialized model, so no reset is needed between probes and
+ * the probes are independent of each other. The number of processes running
+ * at the same time is limited by the shared {@link ProcessSlots process
+ * budget}.
+ * </p>
+ * @author Michael Bletzinger
+ */
+public class StiffnessExtraction {
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory
+			.getLogger(StiffnessExtraction.class);
+	/**
+	 * Configuration of the substructure.
+	 */
+	private final SubstructureDao scfg;
+	/**
+	 * Signal raised whenever a probe has finished.
+	 */
+	private final ResponseSignal signal = new ResponseSignal();
+	/**
+	 * Probe executions of the workers.
+	 */
+	private final StaticExecution[] workers;
+
+	/**
+	 * @param progCfg
+	 *            FEM program configuration parameters.
+	 * @param scfg
+	 *            Configuration for the substructure.
+	 * @param configDir
+	 *            Directory containing templates and configuration files.
+	 * @param workDir
+	 *            Directory to store temporary files.
+	 * @param slots
+	 *            Process budget shared with the other substructures.
+	 * @param workers
+	 *            Number of workers. Limited to the number of effective DOFs.
+	 */
+	public StiffnessExtraction(final ProgramDao progCfg,
+			final SubstructureDao scfg, final String configDir,
+			final String workDir, final ProcessSlots slots, final int workers) {
+		this.scfg = scfg;
+		int n = Math.max(1, Math.min(workers, scfg.getTotalDofs()));
+		this.workers = new StaticExecution[n];
+		String root = PathUtils.append(workDir, "Stiffness");
+		for (int w = 0; w < n; w++) {
+			this.workers[w] = new StaticExecution(progCfg, scfg, configDir,
+					PathUtils.append(root, "Worker" + w), slots);
+			this.workers[w].setResponseSignal(signal);
+		}
+	}
+
+	/**
+	 * Probe every effective DOF and assemble the condensed stiffness matrix.
+	 * @param perturbation
+	 *            Displacement applied to each effective DOF.
+	 * @param timeoutMs
+	 *            Maximum time in milliseconds to wait for all of the probes.
+	 * @return Matrix in the effective DOF order of the substructure. Element
+	 *         [i][j] is the force at DOF i caused by a unit displacement at
+	 *         DOF j. Returns null if a probe failed or the probes timed out.
+	 */
+	public final double[][] extract(final double perturbation,
+			final long timeoutMs) {
+		if (perturbation == 0.0) {
+			log.error("Stiffness of " + scfg.getAddress()
+					+ " cannot be probed with a zero perturbation");
+			return null;
+		}
+		final long livenessInterval = 250;
+		int dofs = scfg.getTotalDofs();
+		double[][] result = new double[dofs][dofs];
+		if (dofs == 0) {
+			return result;
+		}
+		double[] force = new double[dofs];
+		int[] probing = new int[workers.length];
+		int next = 0;
+		int finished = 0;
+		for (int w = 0; w < workers.length; w++) {
+			probing[w] = next;
+			startProbe(workers[w], next, perturbation);
+			next++;
+		}
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		try {
+			while (finished < dofs) {
+				long seen = signal.getGeneration();
+				for (int w = 0; w < workers.length; w++) {
+					int dof = probing[w];
+					if (dof < 0) {
+						continue;
+					}
+					if (workers[w].iveGotProblems()) {
+						log.error("Stiffness probe of DOF " + dof + " of "
+								+ scfg.getAddress() + " failed");
+						return null;
+					}
+					if (workers[w].stepIsDone() == false) {
+						continue;
+					}
+					workers[w].readForces(force);
+					workers[w].revertTrial();
+					for (int i = 0; i < dofs; i++) {
+						result[i][dof] = force[i] / perturbation;
+					}
+					finished++;
+					if (next < dofs) {
+						probing[w] = next;
+						startProbe(workers[w], next, perturbation);
+						next++;
+					} else {
+						probing[w] = -1;
+					}
+				}
+				if (finished == dofs) {
+					break;
+				}
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					log.error("Stiffness of " + scfg.getAddress()
+							+ " timed out after " + timeoutMs + " ms with "
+							+ finished + " of " + dofs + " DOFs probed");
+					return null;
+				}
+				signal.awaitChange(seen,
+						Math.min(remaining, livenessInterval));
+			}
+		} finally {
+			for (StaticExecution w : workers) {
+				w.abort();
+			}
+		}
+		log.info("Stiffness of " + scfg.getAddress() + " probed with "
+				+ workers.length + " workers");
+		return result;
+	}
+
+	/**
+	 * @return the number of workers.
+	 */
+	public final int getWorkerCount() {
+		return workers.length;
+	}
+
+	/**
+	 * Start the probe of one effective DOF.
+	 * @param worker
+	 *            Worker which runs the probe.
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @param perturbation
+	 *            Displacement applied to the DOF.
+	 */
+	private void startProbe(final StaticExecution worker, final int dof,
+			final double perturbation) {
+		double[] disp = new double[scfg.getTotalDofs()];
+		disp[dof] = perturbation;
+		worker.startTrial(dof + 1, disp);
+	}
+}
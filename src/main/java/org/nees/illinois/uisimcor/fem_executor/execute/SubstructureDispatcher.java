@@ -0,0 +1,136 @@
+package org.nees.illinois.uisimcor.fem_executor.execute;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the same work for every substructure on a bounded pool of daemon
+ * threads so that the time of a phase is set by the slowest substructure
+ * instead of the sum of all of them. The results are returned in substructure
+ * index order no matter in which order the work finishes. With one thread or
+ * one substructure the work runs on the calling thread.
+ * @author Michael Bletzinger
+ */
+public class SubstructureDispatcher {
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory
+			.getLogger(SubstructureDispatcher.class);
+	/**
+	 * Thread pool. Created on the first parallel dispatch.
+	 */
+	private ExecutorService pool = null;
+	/**
+	 * Number of threads.
+	 */
+	private final int threads;
+
+	/**
+	 * @param threads
+	 *            Number of threads. One means that all of the work runs on
+	 *            the calling thread.
+	 */
+	public SubstructureDispatcher(final int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * @return the number of threads.
+	 */
+	public final int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return the thread pool.
+	 */
+	private synchronized ExecutorService pool() {
+		if (pool == null) {
+			pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread t = new Thread(r, "SubstructureDispatch");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return pool;
+	}
+
+	/**
+	 * Run the work for every substructure and wait until all of it has
+	 * finished. Runtime exceptions of the work are thrown again after all of
+	 * the work has finished.
+	 * @param count
+	 *            Number of substructures.
+	 * @param task
+	 *            Work for one substructure.
+	 * @return The result of each substructure in index order. False for
+	 *         substructures whose work was interrupted.
+	 */
+	public final boolean[] run(final int count, final DispatchTaskI task) {
+		boolean[] result = new boolean[count];
+		if (threads == 1 || count <= 1) {
+			for (int i = 0; i < count; i++) {
+				result[i] = task.run(i);
+			}
+			return result;
+		}
+		ExecutorService p = pool();
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < count; i++) {
+			final int index = i;
+			futures.add(p.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return task.run(index);
+				}
+			}));
+		}
+		RuntimeException failure = null;
+		boolean interrupted = false;
+		for (int i = 0; i < count; i++) {
+			try {
+				result[i] = futures.get(i).get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					failure = (RuntimeException) e.getCause();
+				} else {
+					log.error("Substructure " + i + " failed because ",
+							e.getCause());
+				}
+			} catch (InterruptedException e) {
+				log.error("Interrupted while waiting for substructure " + i);
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return result;
+	}
+
+	/**
+	 * Stop the thread pool.
+	 */
+	public final synchronized void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+}
@@ -1,5 +1,9 @@
 package org.nees.illinois.uisimcor.fem_executor.execute;
 
+import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.output.StepStatistics;
+import org.nees.illinois.uisimcor.fem_executor.process.ResponseSignal;
+import org.nees.illinois.uisimcor.fem_executor.publish.StepPublisher;
 
 /**
  * Interface to get a step executed from an FEM program.
@@ -13,14 +17,28 @@ public interface SubstructureExecutorI {
 	void abort();
 
 	/**
-	 * @return double array in node order of displacements at effective DOFs
+	 * Batch polling function. Archives and publishes the responses of the
+	 * batch steps which have arrived since the last call.
+	 * @return True if the responses of all of the batch steps have arrived.
 	 */
-	double[] getDisplacements();
+	boolean batchIsDone();
 
 	/**
-	 * @return double array in node order of reaction forces at effective DOFs
+	 * Accept the last completed trial as the result of its step. The responses
+	 * of the trial are archived, added to the statistics and published.
+	 * @return False if there is no completed trial to commit.
 	 */
-	double[] getForces();
+	boolean commitTrial();
+
+	/**
+	 * @return the configuration of the substructure.
+	 */
+	SubstructureDao getScfg();
+
+	/**
+	 * @return running statistics of the responses of all completed steps.
+	 */
+	StepStatistics getStatistics();
 
 	/**
 	 * @return the statuses
@@ -33,6 +51,46 @@ public interface SubstructureExecutorI {
 	 */
 	boolean iveGotProblems();
 
+	/**
+	 * Copy the displacements of the last completed step into a caller supplied
+	 * array.
+	 * @param out
+	 *            double array in node order of displacements at effective
+	 *            DOFs.
+	 */
+	void readDisplacements(double[] out);
+
+	/**
+	 * Copy the reaction forces of the last completed step into a caller
+	 * supplied array.
+	 * @param out
+	 *            double array in node order of reaction forces at effective
+	 *            DOFs.
+	 */
+	void readForces(double[] out);
+
+	/**
+	 * Drop the open trial and return the FEM program to the state of the last
+	 * committed step. The responses read afterwards are those of that step.
+	 * @return False if there is no trial to revert.
+	 */
+	boolean revertTrial();
+
+	/**
+	 * Set the publisher which receives the responses of every completed step.
+	 * @param publisher
+	 *            Publisher shared by all substructures.
+	 */
+	void setPublisher(StepPublisher publisher);
+
+	/**
+	 * Set the signal which is raised whenever the FEM program reports
+	 * anything. Needs to be called before the simulation is started.
+	 * @param signal
+	 *            Signal shared with the coordinator.
+	 */
+	void setResponseSignal(ResponseSignal signal);
+
 	/**
 	 * Setup links for the FEM program.
 	 * @return True if successful.
@@ -45,6 +103,17 @@ public interface SubstructureExecutorI {
 	 */
 	boolean startSimulation();
 
+	/**
+	 * Send one script which executes a block of steps to the FEM program. The
+	 * responses are collected with {@link #batchIsDone()}.
+	 * @param firstStep
+	 *            Number of the first step.
+	 * @param displacements
+	 *            Displacement targets. Row i is for step firstStep + i.
+	 * @return False if the batch could not be started.
+	 */
+	boolean startBatch(int firstStep, double[][] displacements);
+
 	/**
 	 * Send the next step command to the FEM program.
 	 * @param step
@@ -54,6 +123,19 @@ public interface SubstructureExecutorI {
 	 */
 	void startStep(int step, double[] displacements);
 
+	/**
+	 * Send a trial of a step to the FEM program. The responses are collected
+	 * with {@link #stepIsDone()} and can be read as usual but they are not
+	 * archived or published until the trial is committed with
+	 * {@link #commitTrial()}. Another trial of the same step starts from the
+	 * committed state again.
+	 * @param step
+	 *            Current step.
+	 * @param displacements
+	 *            Trial displacement target.
+	 */
+	void startTrial(int step, double[] displacements);
+
 	/**
 	 * Execution Polling function. Use this repeatedly inside a polling loop to
 	 * transition the process to new execution states.
@@ -0,0 +1,87 @@
+package org.nees.illinois.uisimcor.fem_executor.input;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.nees.illinois.uisimcor.fem_executor.utils.DoubleFormatter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Data file with the displacements of a block of steps which is read by a
+ * {@link ScriptGeneratorI#generateBatch(int, int, String) batch script}.
+ * Each line has the displacements of one step separated by spaces. Every
+ * batch of a run gets its own file named by {@link #fileName(int)} so that
+ * the scripts in the Inputs archive keep pointing at their data.
+ * @author Michael Bletzinger
+ */
+public class BatchData {
+	/**
+	 * Name of the data file of a batch.
+	 * @param batch
+	 *            Sequence number of the batch in the run starting with 0.
+	 * @return The file name.
+	 */
+	public static String fileName(final int batch) {
+		return "BatchDisplacements_" + batch + ".txt";
+	}
+
+	/**
+	 * Path to the data file.
+	 */
+	private final File file;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(BatchData.class);
+
+	/**
+	 * @param file
+	 *            Path to the data file.
+	 */
+	public BatchData(final File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return the path to the data file.
+	 */
+	public final File getFile() {
+		return file;
+	}
+
+	/**
+	 * Write the data file. An existing file is replaced.
+	 * @param displacements
+	 *            Displacements of each step. Row i is the step i of the block.
+	 * @return True if successful.
+	 */
+	public final boolean write(final double[][] displacements) {
+		char[] buf = new char[DoubleFormatter.MAX_CHARS + 1];
+		try {
+			Writer out = new BufferedWriter(new FileWriter(file));
+			try {
+				for (double[] row : displacements) {
+					for (int i = 0; i < row.length; i++) {
+						int end = 0;
+						if (i > 0) {
+							buf[end++] = ' ';
+						}
+						end = DoubleFormatter.format(row[i], buf, end);
+						out.write(buf, 0, end);
+					}
+					out.write('\n');
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			log.error("Cannot write batch data \"" + file + "\" because ", e);
+			return false;
+		}
+		return true;
+	}
+}
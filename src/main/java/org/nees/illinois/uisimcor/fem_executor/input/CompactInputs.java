@@ -0,0 +1,146 @@
+package org.nees.illinois.uisimcor.fem_executor.input;
+
+import org.nees.illinois.uisimcor.fem_executor.archiving.DataArchiveI;
+import org.nees.illinois.uisimcor.fem_executor.archiving.TextArchiveI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the commands sent to the FEM program to a compact Inputs archive. A
+ * step script which is given by the {@link StepScriptPattern} is stored as a
+ * row of displacements in the Commands archive. Every other command, such as
+ * the initialization, trial, revert and batch scripts, is stored verbatim as
+ * a {@link ScriptRecordType typed} record of the scripts archive together
+ * with the number of Commands rows written before it. The displacements of a
+ * batch are stored as Commands rows right after its record. The
+ * {@link InputReconstructor} merges both archives back into the scripts in
+ * the order they were sent.
+ * <p>
+ * A record starts with the line <em>#@ row type length</em> followed by the
+ * script of <em>length</em> characters. The header of a batch record has the
+ * number of its Commands rows as a fourth field.
+ * </p>
+ * @author Michael Bletzinger
+ */
+public class CompactInputs {
+	/**
+	 * Start of the header line of a script record.
+	 */
+	public static final String RECORD_MARK = "#@ ";
+	/**
+	 * Commands archive with the displacements of the steps.
+	 */
+	private final DataArchiveI commands;
+	/**
+	 * Step of the last Commands row or {@link StepScriptPattern#NO_STEP}.
+	 */
+	private int lastStep = StepScriptPattern.NO_STEP;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(CompactInputs.class);
+	/**
+	 * Step script pattern. Null if the steps are stored verbatim.
+	 */
+	private final StepScriptPattern pattern;
+	/**
+	 * Number of Commands rows written so far.
+	 */
+	private int rows = 0;
+	/**
+	 * Archive of the script records.
+	 */
+	private final TextArchiveI scripts;
+
+	/**
+	 * @param pattern
+	 *            Step script pattern. Null if the steps are stored verbatim.
+	 * @param scripts
+	 *            Archive of the script records.
+	 * @param commands
+	 *            Commands archive with the displacements of the steps.
+	 */
+	public CompactInputs(final StepScriptPattern pattern,
+			final TextArchiveI scripts, final DataArchiveI commands) {
+		this.pattern = pattern;
+		this.scripts = scripts;
+		this.commands = commands;
+	}
+
+	/**
+	 * Store a command which is not a step.
+	 * @param type
+	 *            Type of the command.
+	 * @param script
+	 *            The script which was sent.
+	 */
+	public final void writeScript(final ScriptRecordType type,
+			final String script) {
+		if (script == null || script.length() == 0) {
+			return;
+		}
+		scripts.write(RECORD_MARK + rows + " " + type.name() + " "
+				+ script.length() + "\n" + script);
+	}
+
+	/**
+	 * Store a batch command. The script is stored as a
+	 * {@link ScriptRecordType#Batch Batch} record and the displacements of
+	 * its steps as Commands rows.
+	 * @param firstStep
+	 *            Number of the first step of the batch.
+	 * @param displacements
+	 *            Displacements of each step. Row i is the step i of the block.
+	 * @param script
+	 *            The script which was sent.
+	 */
+	public final void writeBatch(final int firstStep,
+			final double[][] displacements, final String script) {
+		if (script == null || displacements.length == 0) {
+			return;
+		}
+		scripts.write(RECORD_MARK + rows + " " + ScriptRecordType.Batch.name()
+				+ " " + script.length() + " " + displacements.length + "\n"
+				+ script);
+		for (int k = 0; k < displacements.length; k++) {
+			commands.write(firstStep + k, displacements[k]);
+		}
+		lastStep = firstStep + displacements.length - 1;
+		rows += displacements.length;
+	}
+
+	/**
+	 * Store a step command. The displacements go to the Commands archive if
+	 * filling the pattern with them gives the end of the script. The rest of
+	 * the script is stored as a {@link ScriptRecordType#Prefix Prefix}
+	 * record. Otherwise the whole script is stored as a
+	 * {@link ScriptRecordType#Step Step} record.
+	 * @param step
+	 *            Step number.
+	 * @param displacements
+	 *            Displacements of the step.
+	 * @param script
+	 *            The script which was sent.
+	 */
+	public final void writeStep(final int step, final double[] displacements,
+			final String script) {
+		if (script == null) {
+			return;
+		}
+		String filled = null;
+		if (pattern != null
+				&& (lastStep == StepScriptPattern.NO_STEP || step > lastStep)) {
+			filled = pattern.fill(lastStep, step, displacements);
+		}
+		if (filled == null || script.endsWith(filled) == false) {
+			log.debug("Step " + step + " is stored verbatim");
+			writeScript(ScriptRecordType.Step, script);
+			return;
+		}
+		writeScript(ScriptRecordType.Prefix,
+				script.substring(0, script.length() - filled.length()));
+		commands.write(step, displacements);
+		lastStep = step;
+		rows++;
+	}
+}
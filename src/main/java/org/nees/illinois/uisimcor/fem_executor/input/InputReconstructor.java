@@ -0,0 +1,469 @@
+package org.nees.illinois.uisimcor.fem_executor.input;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveQueryFactory;
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveQueryI;
+import org.nees.illinois.uisimcor.fem_executor.utils.IllegalParameterException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Regenerates the scripts of a compact Inputs archive written by
+ * {@link CompactInputs}. The compact archive consists of
+ * <em>Inputs_pattern.txt</em> with the {@link StepScriptPattern},
+ * <em>Inputs_scripts.txt</em> with the script records and the Commands archive
+ * with the displacements of the steps which were given by the pattern and of
+ * the batches. The script records are merged with the filled pattern in the
+ * order in which the commands were sent to the FEM program. The data files of
+ * the batches can be regenerated with {@link #batch(int)}.
+ * @author Michael Bletzinger
+ */
+public class InputReconstructor {
+	/**
+	 * Regenerate the Inputs file of the substructure log directory named on
+	 * the command line.
+	 * @param args
+	 *            Path to the substructure log directory and optionally the
+	 *            output file. The default output is <em>Inputs</em> in the log
+	 *            directory. The batch data files are written next to the
+	 *            output.
+	 */
+	public static void main(final String[] args) {
+		if (args.length < 1) {
+			System.err
+					.println("Usage: InputReconstructor <substructureLogDir> [<output>]");
+			return;
+		}
+		File dir = new File(args[0]);
+		File out = new File(dir, "Inputs");
+		if (args.length > 1) {
+			out = new File(args[1]);
+		}
+		InputReconstructor rec;
+		try {
+			rec = new InputReconstructor(dir);
+		} catch (IOException e) {
+			System.err.println("Cannot read \"" + dir + "\" because " + e);
+			return;
+		}
+		rec.writeAll(out);
+		File outDir = out.getAbsoluteFile().getParentFile();
+		for (int b = 0; b < rec.getBatchCount(); b++) {
+			try {
+				new BatchData(new File(outDir, BatchData.fileName(b)))
+						.write(rec.batch(b));
+			} catch (IOException e) {
+				System.err.println("Cannot read batch " + b + " because " + e);
+			}
+		}
+		rec.close();
+	}
+
+	/**
+	 * Step displacements.
+	 */
+	private final ArchiveQueryI commands;
+	/**
+	 * Number of Commands rows which belong to each script record. Only
+	 * batches have rows.
+	 */
+	private final List<Integer> recordSteps = new ArrayList<Integer>();
+	/**
+	 * Number of Commands rows written before each script record.
+	 */
+	private final List<Integer> recordRows = new ArrayList<Integer>();
+	/**
+	 * Script of each record.
+	 */
+	private final List<String> recordScripts = new ArrayList<String>();
+	/**
+	 * Type of each record.
+	 */
+	private final List<ScriptRecordType> recordTypes =
+			new ArrayList<ScriptRecordType>();
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory
+			.getLogger(InputReconstructor.class);
+	/**
+	 * Step script pattern. Null if every step is a script record.
+	 */
+	private final StepScriptPattern pattern;
+	/**
+	 * Number of steps read at once.
+	 */
+	private final int window = 4096;
+
+	/**
+	 * Open a compact Inputs archive.
+	 * @param dir
+	 *            Substructure log directory.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	public InputReconstructor(final File dir) throws IOException {
+		File patternF = new File(dir, "Inputs_pattern.txt");
+		StepScriptPattern p = null;
+		if (patternF.exists()) {
+			try {
+				p = StepScriptPattern.parse(read(patternF));
+			} catch (IllegalParameterException e) {
+				throw new IOException("Step script pattern in \"" + dir
+						+ "\" is malformed", e);
+			}
+		}
+		this.pattern = p;
+		File scriptsF = new File(dir, "Inputs_scripts.txt");
+		if (scriptsF.exists()) {
+			parseRecords(read(scriptsF));
+		}
+		ArchiveQueryFactory factory = new ArchiveQueryFactory(1);
+		this.commands = factory.open(dir, "Commands");
+		if (commands == null) {
+			throw new IOException("\"" + dir + "\" has no Commands archive");
+		}
+		int batchRows = 0;
+		for (int steps : recordSteps) {
+			batchRows += steps;
+		}
+		if (pattern == null
+				&& commands.history(0, Integer.MIN_VALUE, Integer.MAX_VALUE)
+						.getSteps().length > batchRows) {
+			commands.close();
+			throw new IOException("\"" + dir
+					+ "\" has steps but no step script pattern");
+		}
+	}
+
+	/**
+	 * Write the script records which were sent before a Commands row. The
+	 * records are stored in the order in which they were sent.
+	 * @param row
+	 *            Index of the Commands row.
+	 * @param next
+	 *            Index of the first record which has not been written.
+	 * @param out
+	 *            Destination of the scripts.
+	 * @return Index of the first record which has not been written.
+	 * @throws IOException
+	 *             if the scripts cannot be written.
+	 */
+	private int writeRecords(final int row, final int next, final Writer out)
+			throws IOException {
+		int r = next;
+		while (r < recordRows.size() && recordRows.get(r) <= row) {
+			out.write(recordScripts.get(r));
+			r++;
+		}
+		return r;
+	}
+
+	/**
+	 * Displacements of a batch.
+	 * @param index
+	 *            Index of the batch in the order in which the batches were
+	 *            sent. Must be less than {@link #getBatchCount()}.
+	 * @return The displacements. Row i is the step i of the block.
+	 * @throws IOException
+	 *             if the Commands archive cannot be read.
+	 */
+	public final double[][] batch(final int index) throws IOException {
+		int r = batchRecord(index);
+		int first = recordRows.get(r);
+		int count = recordSteps.get(r);
+		int[] steps = commands.history(0, Integer.MIN_VALUE, Integer.MAX_VALUE)
+				.getSteps();
+		if (first + count > steps.length) {
+			throw new IOException("Commands archive is missing rows of batch "
+					+ index);
+		}
+		int columns = commands.getColumns().size();
+		double[][] result = new double[count][columns];
+		for (int c = 0; c < columns; c++) {
+			double[] values = commands.history(c, steps[first],
+					steps[first + count - 1]).getValues();
+			if (values.length != count) {
+				throw new IOException("Steps of batch " + index
+						+ " are not in ascending order");
+			}
+			for (int k = 0; k < count; k++) {
+				result[k][c] = values[k];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find the record of a batch.
+	 * @param index
+	 *            Index of the batch.
+	 * @return Index of the record.
+	 */
+	private int batchRecord(final int index) {
+		int b = 0;
+		for (int r = 0; r < recordSteps.size(); r++) {
+			if (recordSteps.get(r) == 0) {
+				continue;
+			}
+			if (b == index) {
+				return r;
+			}
+			b++;
+		}
+		throw new IndexOutOfBoundsException("There is no batch " + index);
+	}
+
+	/**
+	 * @return the number of batches whose displacements are stored as
+	 *         Commands rows.
+	 */
+	public final int getBatchCount() {
+		int result = 0;
+		for (int steps : recordSteps) {
+			if (steps > 0) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Determine if a Commands row belongs to a batch.
+	 * @param row
+	 *            Index of the Commands row.
+	 * @return True if the row holds the displacements of a batch step.
+	 */
+	private boolean isBatchRow(final int row) {
+		for (int r = 0; r < recordRows.size(); r++) {
+			int first = recordRows.get(r);
+			if (first > row) {
+				return false;
+			}
+			if (row < first + recordSteps.get(r)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Close the Commands archive.
+	 */
+	public final void close() {
+		commands.close();
+	}
+
+	/**
+	 * @return the initialization script.
+	 */
+	public final String getInit() {
+		StringBuilder result = new StringBuilder();
+		for (int r = 0; r < recordTypes.size(); r++) {
+			if (recordTypes.get(r).equals(ScriptRecordType.Init)) {
+				result.append(recordScripts.get(r));
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @return the step script pattern.
+	 */
+	public final StepScriptPattern getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Split the content of the scripts archive into records.
+	 * @param content
+	 *            The content.
+	 * @throws IOException
+	 *             if a record is malformed.
+	 */
+	private void parseRecords(final String content) throws IOException {
+		final int fields = 3;
+		int pos = 0;
+		while (pos < content.length()) {
+			int eol = content.indexOf('\n', pos);
+			if (content.startsWith(CompactInputs.RECORD_MARK, pos) == false
+					|| eol < 0) {
+				throw new IOException("No script record at character " + pos);
+			}
+			String[] header = content.substring(
+					pos + CompactInputs.RECORD_MARK.length(), eol).split(" ");
+			if (header.length != fields && header.length != fields + 1) {
+				throw new IOException("Malformed script record header at character "
+						+ pos);
+			}
+			int row;
+			int length;
+			int steps = 0;
+			ScriptRecordType type;
+			try {
+				row = Integer.parseInt(header[0]);
+				type = ScriptRecordType.valueOf(header[1]);
+				length = Integer.parseInt(header[2]);
+				if (header.length > fields) {
+					steps = Integer.parseInt(header[fields]);
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Malformed script record header at character "
+						+ pos, e);
+			}
+			pos = eol + 1;
+			if (length < 0 || pos + length > content.length()) {
+				throw new IOException("Script record at character " + pos
+						+ " is truncated");
+			}
+			recordRows.add(row);
+			recordSteps.add(steps);
+			recordTypes.add(type);
+			recordScripts.add(content.substring(pos, pos + length));
+			pos += length;
+		}
+	}
+
+	/**
+	 * Read a whole text file.
+	 * @param file
+	 *            The file.
+	 * @return The content.
+	 * @throws IOException
+	 *             if the file cannot be read.
+	 */
+	private String read(final File file) throws IOException {
+		final int bufSize = 4096;
+		StringBuilder result = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			char[] buf = new char[bufSize];
+			int n = reader.read(buf);
+			while (n >= 0) {
+				result.append(buf, 0, n);
+				n = reader.read(buf);
+			}
+		} finally {
+			reader.close();
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Regenerate the script of a step which is stored in the Commands archive
+	 * including the commands which were sent in front of it.
+	 * @param step
+	 *            Step number.
+	 * @return The script or null if the step is not in the Commands archive or
+	 *         was part of a batch.
+	 * @throws IOException
+	 *             if the Commands archive cannot be read.
+	 */
+	public final String script(final int step) throws IOException {
+		double[] disp = commands.atStep(step);
+		if (disp == null || pattern == null) {
+			return null;
+		}
+		int previous = StepScriptPattern.NO_STEP;
+		int[] before = commands.history(0, Integer.MIN_VALUE, step - 1)
+				.getSteps();
+		if (isBatchRow(before.length)) {
+			return null;
+		}
+		if (before.length > 0) {
+			previous = before[before.length - 1];
+		}
+		StringBuilder result = new StringBuilder();
+		for (int r = 0; r < recordRows.size(); r++) {
+			if (recordRows.get(r) == before.length
+					&& recordTypes.get(r).equals(ScriptRecordType.Prefix)) {
+				result.append(recordScripts.get(r));
+			}
+		}
+		result.append(pattern.fill(previous, step, disp));
+		return result.toString();
+	}
+
+	/**
+	 * Regenerate every script in the order in which it was sent. The
+	 * displacements are read in windows of steps so the archive does not have
+	 * to fit in memory. The Commands rows of a batch are not filled into the
+	 * pattern because the batch script reads them from its data file.
+	 * @param out
+	 *            Destination of the scripts.
+	 * @throws IOException
+	 *             if the archive cannot be read or the scripts written.
+	 */
+	public final void writeAll(final Writer out) throws IOException {
+		int columns = commands.getColumns().size();
+		if (columns == 0 || pattern == null) {
+			writeRecords(Integer.MAX_VALUE, 0, out);
+			return;
+		}
+		int[] steps = commands.history(0, Integer.MIN_VALUE, Integer.MAX_VALUE)
+				.getSteps();
+		double[][] disp = new double[columns][];
+		double[] row = new double[columns];
+		int previous = StepScriptPattern.NO_STEP;
+		int next = 0;
+		int batchEnd = 0;
+		int i = 0;
+		while (i < steps.length) {
+			int end = Math.min(steps.length, i + window);
+			for (int c = 0; c < columns; c++) {
+				disp[c] = commands.history(c, steps[i], steps[end - 1])
+						.getValues();
+			}
+			if (disp[0].length != end - i) {
+				throw new IOException("Steps of the Commands archive are not in ascending order");
+			}
+			for (int k = i; k < end; k++) {
+				for (int c = 0; c < columns; c++) {
+					row[c] = disp[c][k - i];
+				}
+				int r = next;
+				next = writeRecords(k, next, out);
+				while (r < next) {
+					batchEnd = Math.max(batchEnd, recordRows.get(r)
+							+ recordSteps.get(r));
+					r++;
+				}
+				if (k >= batchEnd) {
+					out.write(pattern.fill(previous, steps[k], row));
+				}
+				previous = steps[k];
+			}
+			i = end;
+		}
+		writeRecords(Integer.MAX_VALUE, next, out);
+	}
+
+	/**
+	 * Regenerate the Inputs file.
+	 * @param out
+	 *            Path of the Inputs file.
+	 * @return True if successful.
+	 */
+	public final boolean writeAll(final File out) {
+		try {
+			Writer writer = new FileWriter(out);
+			try {
+				writeAll(writer);
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			log.error("Cannot write \"" + out + "\" because ", e);
+			return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,172 @@
+package org.nees.illinois.uisimcor.fem_executor.input;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.nees.illinois.uisimcor.fem_executor.utils.PathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the tags which an OpenSees model file defines so that models which
+ * share one interpreter can be checked for clashes. Only commands whose tag
+ * is a literal number are seen. Tags computed from variables or in loops are
+ * not. Files sourced with a literal name are scanned as well. A
+ * <em>wipe</em> command is recorded because it would destroy the models
+ * sourced before it.
+ * @author Michael Bletzinger
+ */
+public class ModelTags {
+	/**
+	 * Position of the tag in the commands which define tagged objects.
+	 */
+	private static final Map<String, Integer> TAG_POSITIONS = new HashMap<String, Integer>();
+	static {
+		TAG_POSITIONS.put("node", 1);
+		TAG_POSITIONS.put("element", 2);
+		TAG_POSITIONS.put("uniaxialMaterial", 2);
+		TAG_POSITIONS.put("nDMaterial", 2);
+		TAG_POSITIONS.put("section", 2);
+		TAG_POSITIONS.put("geomTransf", 2);
+		TAG_POSITIONS.put("pattern", 2);
+		TAG_POSITIONS.put("timeSeries", 2);
+	}
+	/**
+	 * Directory containing the model files.
+	 */
+	private final String configDir;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(ModelTags.class);
+	/**
+	 * Files which have been scanned in the order they were found.
+	 */
+	private final Set<String> scanned = new LinkedHashSet<String>();
+	/**
+	 * Defined tags as the command name followed by the tag.
+	 */
+	private final List<String> tags = new ArrayList<String>();
+	/**
+	 * Files which contain a wipe command.
+	 */
+	private final List<String> wipes = new ArrayList<String>();
+
+	/**
+	 * @param configDir
+	 *            Directory containing the model files.
+	 */
+	public ModelTags(final String configDir) {
+		this.configDir = configDir;
+	}
+
+	/**
+	 * @return the files which have been scanned including the sourced ones in
+	 *         the order they were found.
+	 */
+	public final List<String> getFiles() {
+		return new ArrayList<String>(scanned);
+	}
+
+	/**
+	 * @return the defined tags as the command name followed by the tag, for
+	 *         example <em>node 3</em>.
+	 */
+	public final List<String> getTags() {
+		return tags;
+	}
+
+	/**
+	 * @return the files which contain a wipe command.
+	 */
+	public final List<String> getWipes() {
+		return wipes;
+	}
+
+	/**
+	 * Record the tag or wipe of a command.
+	 * @param filename
+	 *            File containing the command.
+	 * @param command
+	 *            The command.
+	 * @return False if a sourced file cannot be read.
+	 */
+	private boolean parse(final String filename, final String command) {
+		String[] words = command.trim().split("\\s+");
+		if (words[0].equals("wipe")) {
+			wipes.add(filename);
+			return true;
+		}
+		if (words[0].equals("source") && words.length == 2) {
+			if (new File(PathUtils.append(configDir, words[1])).exists()) {
+				return scan(words[1]);
+			}
+			return true;
+		}
+		Integer pos = TAG_POSITIONS.get(words[0]);
+		if (pos == null || words.length <= pos) {
+			return true;
+		}
+		try {
+			Integer.parseInt(words[pos]);
+		} catch (NumberFormatException e) {
+			return true;
+		}
+		tags.add(words[0] + " " + words[pos]);
+		return true;
+	}
+
+	/**
+	 * Scan a model file. Files which have already been scanned are skipped.
+	 * @param filename
+	 *            Name of the file in the configuration directory.
+	 * @return False if the file cannot be read.
+	 */
+	public final boolean scan(final String filename) {
+		if (scanned.add(filename) == false) {
+			return true;
+		}
+		String path = PathUtils.append(configDir, filename);
+		StringBuilder command = new StringBuilder();
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(path));
+			try {
+				String line = reader.readLine();
+				while (line != null) {
+					if (line.endsWith("\\")) {
+						command.append(line, 0, line.length() - 1);
+						command.append(' ');
+						line = reader.readLine();
+						continue;
+					}
+					command.append(line);
+					String cmd = command.toString().trim();
+					command.setLength(0);
+					line = reader.readLine();
+					if (cmd.length() == 0 || cmd.startsWith("#")) {
+						continue;
+					}
+					for (String c : cmd.split(";")) {
+						if (c.trim().length() > 0 && parse(filename, c) == false) {
+							return false;
+						}
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			log.error("Cannot read model file \"" + path + "\" because ", e);
+			return false;
+		}
+		return true;
+	}
+}
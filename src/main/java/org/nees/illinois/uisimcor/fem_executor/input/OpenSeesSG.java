@@ -1,9 +1,6 @@
 package org.nees.illinois.uisimcor.fem_executor.input;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -13,6 +10,7 @@ import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.TemplateDao;
 import org.nees.illinois.uisimcor.fem_executor.config.types.DimensionType;
 import org.nees.illinois.uisimcor.fem_executor.config.types.DispDof;
+import org.nees.illinois.uisimcor.fem_executor.utils.DoubleFormatter;
 import org.nees.illinois.uisimcor.fem_executor.utils.IllegalParameterException;
 import org.nees.illinois.uisimcor.fem_executor.utils.PathUtils;
 import org.slf4j.Logger;
@@ -20,25 +18,174 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Generates OpenSees script fragments used to run a segmented simulation.
+ * Each step adds a load pattern with the displacements of the step. If the
+ * step template does not remove that pattern again, each step script starts by
+ * removing the pattern of the previous step. The OpenSees domain then holds a
+ * single step pattern instead of one per step.
+ * <p>
+ * If the substructure splits its steps into sub-increments, each step script
+ * starts with a Tcl loop which runs the step template for the intermediate
+ * targets. The targets are interpolated by the interpreter between the
+ * displacements of the control DOFs at the start of the step and the target
+ * of the step. Lines of the step template which start with <em>puts</em> are
+ * left out of the loop so the step is reported once. The last sub-increment is
+ * the normal step script.
+ * </p>
+ * <p>
+ * If the FEM program runs in several ranks under a parallel launcher, the
+ * report and recorder lines of the templates are only executed by rank 0,
+ * which is the rank that talks to the executor.
+ * </p>
+ * <p>
+ * Trial steps are supported for iterative coupling schemes. The first trial
+ * of a step saves the committed state of the domain to a file database. Every
+ * further trial restores that state before it runs the analysis so that each
+ * iteration costs one analysis instead of a process restart. Committing a
+ * trial keeps the state of the last trial and reverting restores the saved
+ * state.
+ * </p>
  * @author Michael Bletzinger
  */
 public class OpenSeesSG implements ScriptGeneratorI {
 	/**
-	 * Path to the directory containing the configuration files.
+	 * Parsed template files shared by all substructures.
 	 */
-	private final String configDir;
+	private static final TemplateCache TEMPLATES = new TemplateCache();
 
 	/**
-	 * Format for displacement commands.
+	 * Condition which is true on rank 0 of a parallel run.
 	 */
-	private DecimalFormat format = new DecimalFormat(
-			"###.00000000000000000000E000");
+	private static final String RANK_ZERO_GUARD = "if {[getPID] == 0} {";
+
+	/**
+	 * @return the parsed template files shared by all substructures.
+	 */
+	public static TemplateCache getTemplateCache() {
+		return TEMPLATES;
+	}
+
+	/**
+	 * Script for a parallel run where every rank runs its own interpreter but
+	 * only rank 0 reads STDIN. Rank 0 passes each complete command it reads
+	 * to the other ranks before running it. The other ranks run the commands
+	 * they receive until they are told to exit. The output of rank 0 is line
+	 * buffered so that the step reports reach the executor right away.
+	 * @return The script.
+	 */
+	public static String rankForwarder() {
+		final String ranks = "{set uisimcorRank 1} {$uisimcorRank < [getNP]}"
+				+ " {incr uisimcorRank}";
+		return "if {[getPID] == 0} {\n"
+				+ "fconfigure stdout -buffering line\n"
+				+ "set uisimcorCmd \"\"\n"
+				+ "while {[gets stdin uisimcorLine] >= 0} {\n"
+				+ "append uisimcorCmd $uisimcorLine \"\\n\"\n"
+				+ "if {[info complete $uisimcorCmd] == 0} {\n"
+				+ "continue\n"
+				+ "}\n"
+				+ "for " + ranks + " {\n"
+				+ "send -pid $uisimcorRank $uisimcorCmd\n"
+				+ "}\n"
+				+ "eval $uisimcorCmd\n"
+				+ "set uisimcorCmd \"\"\n"
+				+ "}\n"
+				+ "for " + ranks + " {\n"
+				+ "send -pid $uisimcorRank exit\n"
+				+ "}\n"
+				+ "} else {\n"
+				+ "while {1} {\n"
+				+ "recv -pid 0 uisimcorCmd\n"
+				+ "eval $uisimcorCmd\n"
+				+ "}\n"
+				+ "}\n";
+	}
+
+	/**
+	 * Commit tag of the saved state which trial steps start from.
+	 */
+	private static final int TRIAL_TAG = 1;
+
+	/**
+	 * Buffer for formatted displacements.
+	 */
+	private final char[] numberBuffer = new char[DoubleFormatter.MAX_CHARS];
+
+	/**
+	 * Tcl variable holding the displacements of a batch step.
+	 */
+	private final String batchDispVar = "uisimcorDisp";
+
+	/**
+	 * Tcl variable holding the batch data file channel.
+	 */
+	private final String batchFileVar = "uisimcorData";
+
+	/**
+	 * Tcl variable holding the batch step number.
+	 */
+	private final String batchStepVar = "uisimcorStep";
+
+	/**
+	 * Flag indicating that the database for the trial states has been opened.
+	 */
+	private boolean databaseOpen = false;
+
+	/**
+	 * Name of the database which holds the state trial steps start from.
+	 */
+	private final String databaseName = "uisimcor_trial";
+
+	/**
+	 * Commands which query the current displacement of each effective DOF in
+	 * displacement order. Null until first needed.
+	 */
+	private List<String> nodeDispCmds = null;
+
+	/**
+	 * Path to the init template file.
+	 */
+	private final String initFile;
+
+	/**
+	 * Init template with the substructure tokens rendered.
+	 */
+	private ScriptTemplate initTemplate = null;
+
+	/**
+	 * Parsed init template file which {@link #initTemplate} was bound from.
+	 */
+	private ScriptTemplate initSource = null;
+
+	/**
+	 * Token name of the load pattern.
+	 */
+	private final String loadToken = "LoadPattern";
 
 	/**
 	 * Logger.
 	 **/
 	private final Logger log = LoggerFactory.getLogger(OpenSeesSG.class);
 
+	/**
+	 * True if the generator removes the load pattern of the previous step
+	 * because the step template does not remove its own pattern.
+	 */
+	private final boolean managePatterns;
+
+	/**
+	 * Offset added to the step number to create unique OpenSees pattern tags.
+	 */
+	private final int openSeesUpperBound = 99000;
+
+	/**
+	 * Number of the previous step or {@link StepScriptPattern#NO_STEP}.
+	 */
+	private int previousStep = StepScriptPattern.NO_STEP;
+
+	/**
+	 * Command which removes a load pattern.
+	 */
+	private final String removePatternCmd = "remove loadPattern ";
 	/**
 	 * token name.
 	 */
@@ -48,15 +195,62 @@ public class OpenSeesSG implements ScriptGeneratorI {
 	 */
 	private final String sourcedFilesToken = "SourcedFiles";
 
+	/**
+	 * Flag indicating that reports and recorders only run on rank 0.
+	 */
+	private final boolean rankZeroOnly;
+
+	/**
+	 * Builder reused for each generated script.
+	 */
+	private final StringBuilder script = new StringBuilder();
+
+	/**
+	 * Beginning of the single point constraint commands. Null until first
+	 * needed.
+	 */
+	private List<String> spPrefixes = null;
+
 	/**
 	 * Template for the step execution script.
 	 */
-	private final String stepTemplate;
+	private final ScriptTemplate stepTemplate;
 
 	/**
-	 * Template for the run once script.
+	 * Step template without the report lines which is run for the intermediate
+	 * sub-increments. Null if steps are not split.
 	 */
-	private final String runTemplate;
+	private final ScriptTemplate substepTemplate;
+
+	/**
+	 * Tcl variable holding the displacements at the start of a step.
+	 */
+	private final String substepStartVar = "uisimcorStart";
+
+	/**
+	 * Tcl variable holding the sub-increment number.
+	 */
+	private final String substepVar = "uisimcorSub";
+
+	/**
+	 * Value of the step token. Null before the first step.
+	 */
+	private String stepToken = null;
+
+	/**
+	 * Token name of the step number.
+	 */
+	private final String stepTokenName = "Step";
+
+	/**
+	 * Token name of the OpenSees pattern tag.
+	 */
+	private final String stepNumberToken = "StepNumber";
+
+	/**
+	 * Template for the run once script with the substructure tokens rendered.
+	 */
+	private final ScriptTemplate runTemplate;
 
 	/**
 	 * Substructure configuration parameters.
@@ -64,9 +258,16 @@ public class OpenSeesSG implements ScriptGeneratorI {
 	private final SubstructureDao substructureCfg;
 
 	/**
-	 * Filenames for all of the templates used.
+	 * Flag indicating that a trial analysis has moved the domain away from
+	 * the saved state.
 	 */
-	private final TemplateDao templateFiles;
+	private boolean trialDirty = false;
+
+	/**
+	 * Number of the open trial step or {@link StepScriptPattern#NO_STEP}.
+	 */
+	private int trialStep = StepScriptPattern.NO_STEP;
+
 	/**
 	 * Map of tokens to substitute in templates.
 	 */
@@ -84,13 +285,28 @@ public class OpenSeesSG implements ScriptGeneratorI {
 	public OpenSeesSG(final String configDir,
 			final SubstructureDao substructureCfg,
 			final TemplateDao templateFiles) {
-		this.configDir = configDir;
+		this(configDir, substructureCfg, templateFiles, false);
+	}
+
+	/**
+	 * Constructor.
+	 * @param configDir
+	 *            Path to the directory containing the configuration files.
+	 * @param substructureCfg
+	 *            Substructure configuration parameters.
+	 * @param templateFiles
+	 *            Filenames for all of the templates used.
+	 * @param rankZeroOnly
+	 *            True if the report and recorder lines of the templates should
+	 *            only run on rank 0 of a parallel run.
+	 */
+	public OpenSeesSG(final String configDir,
+			final SubstructureDao substructureCfg,
+			final TemplateDao templateFiles, final boolean rankZeroOnly) {
 		this.substructureCfg = substructureCfg;
-		this.templateFiles = templateFiles;
-		this.stepTemplate = setTemplate(PathUtils.append(configDir,
-				this.templateFiles.getStepTemplateFile()));
-		this.runTemplate = setTemplate(PathUtils.append(configDir,
-				this.templateFiles.getRunTemplateFile()));
+		this.rankZeroOnly = rankZeroOnly;
+		this.initFile = PathUtils.append(configDir,
+				templateFiles.getInitTemplateFile());
 		String sourced = "";
 		for (String f : this.substructureCfg.getSourcedFilenames()) {
 			sourced += "source " + f + "\n";
@@ -110,6 +326,112 @@ public class OpenSeesSG implements ScriptGeneratorI {
 				Integer.toString(substructureCfg.getDispPort()));
 		tokenMap.put("ForcePort",
 				Integer.toString(substructureCfg.getForcePort()));
+		ScriptTemplate step = TEMPLATES.get(PathUtils.append(configDir,
+				templateFiles.getStepTemplateFile()));
+		this.stepTemplate = onRankZero(step);
+		this.managePatterns = stepTemplate != null
+				&& removesOwnPattern(stepTemplate) == false;
+		this.substepTemplate = (step != null
+				&& substructureCfg.getSubsteps() > 1 ? onRankZero(withoutReports(step))
+				: null);
+		ScriptTemplate run = onRankZero(TEMPLATES.get(PathUtils.append(
+				configDir, templateFiles.getRunTemplateFile())));
+		this.runTemplate = (run == null ? null : run.bind(tokenMap));
+	}
+
+	/**
+	 * Append the load pattern for a step.
+	 * @param out
+	 *            Builder receiving the load pattern.
+	 * @param displacements
+	 *            Displacements for the step.
+	 * @throws IllegalParameterException
+	 *             For improper effective DOFs.
+	 */
+	private void appendLoadPattern(final StringBuilder out,
+			final double[] displacements) throws IllegalParameterException {
+		int cnt = 0;
+		if (log.isDebugEnabled()) {
+			log.debug("Encoding Substructure " + substructureCfg + " with "
+					+ doubleArray2String(displacements));
+		}
+		for (String sp : spPrefixes()) {
+			if (cnt == displacements.length) {
+				log.error("Number of total effective DOFs exceeds the number of displacements available "
+						+ substructureCfg.getTotalDofs()
+						+ "  > "
+						+ displacements.length);
+			}
+			double val = displacements[cnt];
+			cnt++;
+			out.append(sp);
+			DoubleFormatter.append(val, out, numberBuffer);
+			out.append('\n');
+		}
+	}
+
+	/**
+	 * Append the loop which runs the intermediate sub-increments of a step.
+	 * Nothing is appended if steps are not split.
+	 * @param out
+	 *            Builder receiving the loop.
+	 * @param tag
+	 *            OpenSees pattern tag of the step.
+	 * @param displacements
+	 *            Target displacements of the step. Null if the targets are
+	 *            given as text.
+	 * @param targets
+	 *            Text of each target displacement if displacements is null.
+	 * @throws IllegalParameterException
+	 *             For improper effective DOFs.
+	 */
+	private void appendSubsteps(final StringBuilder out, final String tag,
+			final double[] displacements, final List<String> targets)
+			throws IllegalParameterException {
+		if (substepTemplate == null) {
+			return;
+		}
+		List<String> prefixes = spPrefixes();
+		int substeps = substructureCfg.getSubsteps();
+		out.append("set " + substepStartVar + " [list");
+		for (String cmd : nodeDispCmds) {
+			out.append(" [");
+			out.append(cmd);
+			out.append(']');
+		}
+		out.append("]\n");
+		out.append("for {set " + substepVar + " 1} {$" + substepVar + " < "
+				+ substeps + "} {incr " + substepVar + "} {\n");
+		for (int i = 0; i < substepTemplate.getSlotCount(); i++) {
+			out.append(substepTemplate.getLiteral(i));
+			String name = substepTemplate.getSlot(i);
+			if (name.equals(stepNumberToken)) {
+				out.append(tag);
+			} else if (name.equals(loadToken)) {
+				for (int d = 0; d < prefixes.size(); d++) {
+					String start = "[lindex $" + substepStartVar + " " + d + "]";
+					out.append(prefixes.get(d));
+					out.append("[expr {" + start + " + (");
+					if (displacements == null) {
+						out.append(targets.get(d));
+					} else if (d < displacements.length) {
+						DoubleFormatter.append(displacements[d], out,
+								numberBuffer);
+					}
+					out.append(" - " + start + ") * $" + substepVar + " / "
+							+ substeps + "}]\n");
+				}
+			} else {
+				substepTemplate.appendSlot(out, i);
+			}
+		}
+		out.append(substepTemplate.getLiteral(substepTemplate.getSlotCount()));
+		if (managePatterns) {
+			out.append(removePatternCmd);
+			out.append(tag);
+			out.append('\n');
+		}
+		out.append("}\n");
 	}
 
 	/**
@@ -129,125 +451,440 @@ public class OpenSeesSG implements ScriptGeneratorI {
 		return result;
 	}
 
+	@Override
+	public final String generateBatch(final int firstStep, final int steps,
+			final String dataFile) {
+		if (stepTemplate == null) {
+			log.error("No template for " + substructureCfg.getAddress());
+			return null;
+		}
+		List<String> prefixes;
+		try {
+			prefixes = spPrefixes();
+		} catch (IllegalParameterException e) {
+			log.error("Could not create displacement command for "
+					+ substructureCfg.getAddress() + " because ", e);
+			return null;
+		}
+		final String stepVar = "$" + batchStepVar;
+		int last = firstStep + steps - 1;
+		String tag = "[expr {" + stepVar + " + " + openSeesUpperBound + "}]";
+		StringBuilder result = new StringBuilder(closeTrial());
+		if (managePatterns && previousStep != StepScriptPattern.NO_STEP) {
+			result.append(removePatternCmd);
+			result.append(openSeesUpperBound + previousStep);
+			result.append('\n');
+		}
+		result.append("set " + batchFileVar + " [open {" + dataFile
+				+ "} r]\n");
+		result.append("for {set " + batchStepVar + " " + firstStep + "} {"
+				+ stepVar + " <= " + last + "} {incr " + batchStepVar + "} {\n");
+		result.append("set " + batchDispVar + " [gets $" + batchFileVar
+				+ "]\n");
+		if (managePatterns) {
+			result.append("if {" + stepVar + " > " + firstStep + "} {\n"
+					+ removePatternCmd + "[expr {" + stepVar + " + "
+					+ (openSeesUpperBound - 1) + "}]\n}\n");
+		}
+		if (substepTemplate != null) {
+			List<String> targets = new ArrayList<String>();
+			for (int d = 0; d < prefixes.size(); d++) {
+				targets.add("[lindex $" + batchDispVar + " " + d + "]");
+			}
+			try {
+				appendSubsteps(result, tag, null, targets);
+			} catch (IllegalParameterException e) {
+				log.error("Could not create displacement command for "
+						+ substructureCfg.getAddress() + " because ", e);
+				return null;
+			}
+		}
+		for (int i = 0; i < stepTemplate.getSlotCount(); i++) {
+			result.append(stepTemplate.getLiteral(i));
+			String name = stepTemplate.getSlot(i);
+			if (name.equals(stepNumberToken)) {
+				result.append(tag);
+			} else if (name.equals(loadToken)) {
+				for (int d = 0; d < prefixes.size(); d++) {
+					result.append(prefixes.get(d));
+					result.append("[lindex $" + batchDispVar + " " + d
+							+ "]\n");
+				}
+			} else {
+				stepTemplate.appendSlot(result, i);
+			}
+		}
+		result.append(stepTemplate.getLiteral(stepTemplate.getSlotCount()));
+		result.append("}\nclose $" + batchFileVar + "\n");
+		previousStep = last;
+		stepToken = Integer.toString(last);
+		if (log.isDebugEnabled()) {
+			log.debug("Generated batch for  " + substructureCfg.getAddress()
+					+ " [" + result + "]");
+		}
+		return result.toString();
+	}
+
 	@Override
 	public final String generateInit() {
-		String result = setTemplate(PathUtils.append(configDir,
-				templateFiles.getInitTemplateFile()));
-		for (String k : tokenMap.keySet()) {
-			result = result.replaceAll("\\$\\{" + k + "\\}", tokenMap.get(k));
+		ScriptTemplate source = TEMPLATES.get(initFile);
+		if (source == null) {
+			return null;
+		}
+		if (source != initSource) {
+			ScriptTemplate restricted = onRankZero(source);
+			if (restricted == null) {
+				return null;
+			}
+			initTemplate = restricted.bind(tokenMap);
+			initSource = source;
 		}
+		Map<String, String> stepMap = new HashMap<String, String>();
+		if (stepToken != null) {
+			stepMap.put(stepTokenName, stepToken);
+		}
+		String result = initTemplate.render(stepMap);
 		log.debug("Generated Init for  " + substructureCfg.getAddress() + " ["
 				+ result + "]");
 		return result;
 	}
 
+	@Override
+	public final String generateRun(final int step, final double[] displacements) {
+		String result = render(runTemplate, StepScriptPattern.NO_STEP, step,
+				displacements, true);
+		if (result != null && log.isDebugEnabled()) {
+			log.debug("Generated run step for  " + substructureCfg.getAddress()
+					+ " [" + result + "]");
+		}
+		return result;
+	}
+
+	@Override
+	public final String generateStep(final int step,
+			final double[] displacements) {
+		String restore = closeTrial();
+		int previous = (managePatterns ? previousStep
+				: StepScriptPattern.NO_STEP);
+		String result = render(stepTemplate, previous, step, displacements,
+				false);
+		if (result != null) {
+			previousStep = step;
+			result = restore + result;
+		}
+		if (result != null && log.isDebugEnabled()) {
+			log.debug("Generated step for  " + substructureCfg.getAddress()
+					+ " [" + result + "]");
+		}
+		return result;
+	}
+
+	@Override
+	public final String generateTrial(final int step,
+			final double[] displacements) {
+		StringBuilder prefix = new StringBuilder();
+		if (databaseOpen == false) {
+			prefix.append("database File " + databaseName + "\n");
+		}
+		if (trialStep == StepScriptPattern.NO_STEP) {
+			prefix.append("save " + TRIAL_TAG + "\n");
+		} else if (trialDirty) {
+			prefix.append("restore " + TRIAL_TAG + "\n");
+		}
+		int previous = (managePatterns ? previousStep
+				: StepScriptPattern.NO_STEP);
+		String result = render(stepTemplate, previous, step, displacements,
+				false);
+		if (result == null) {
+			return null;
+		}
+		databaseOpen = true;
+		trialStep = step;
+		trialDirty = true;
+		result = prefix + result;
+		if (log.isDebugEnabled()) {
+			log.debug("Generated trial for  " + substructureCfg.getAddress()
+					+ " [" + result + "]");
+		}
+		return result;
+	}
+
+	@Override
+	public final boolean commitTrial() {
+		if (trialStep == StepScriptPattern.NO_STEP || trialDirty == false) {
+			return false;
+		}
+		previousStep = trialStep;
+		trialStep = StepScriptPattern.NO_STEP;
+		trialDirty = false;
+		return true;
+	}
+
+	@Override
+	public final String generateRevert() {
+		String result = closeTrial();
+		if (result.length() == 0) {
+			return null;
+		}
+		return result;
+	}
+
 	/**
-	 * Generates the load pattern for a step.
-	 * @param displacements
-	 *            Displacements for the step.
-	 * @return Load pattern string.
-	 * @throws IllegalParameterException
-	 *             For improper effective DOFs.
+	 * Drop the open trial step.
+	 * @return The command which restores the saved state or an empty string
+	 *         if the domain is already in that state.
 	 */
-	private String generateLoadPattern(final double[] displacements)
-			throws IllegalParameterException {
+	private String closeTrial() {
 		String result = "";
-		int cnt = 0;
-		DimensionType dim = substructureCfg.getDimension();
-		DofIndexMagic magic = new DofIndexMagic(dim, true, false);
-		log.debug("Encoding Substructure " + substructureCfg + " with "
-				+ doubleArray2String(displacements));
-		for (Integer n : substructureCfg.getNodeSequence()) {
-			List<DispDof> edofs = substructureCfg.getEffectiveDofs(n);
-			for (DispDof d : edofs) {
-				if (cnt == displacements.length) {
-					log.error("Number of total effective DOFs exceeds the number of displacements available "
-							+ substructureCfg.getTotalDofs()
-							+ "  > "
-							+ displacements.length);
-				}
-				double val = displacements[cnt];
-				cnt++;
-				result += "sp " + n + " " + magic.index(d) + " "
-						+ format.format(val) + "\n";
-			}
+		if (trialStep != StepScriptPattern.NO_STEP && trialDirty) {
+			result = "restore " + TRIAL_TAG + "\n";
 		}
+		trialStep = StepScriptPattern.NO_STEP;
+		trialDirty = false;
 		return result;
 	}
 
 	@Override
-	public final String generateRun(final int step, final double[] displacements) {
-		final String stepK = "StepNumber";
-		final String loadK = "LoadPattern";
-		final int openSeesUpperBound = 99000;
-		tokenMap.put("Step", Integer.toString(step));
-		String result = runTemplate.replaceAll("\\$\\{" + stepK + "\\}",
-				Integer.toString(openSeesUpperBound + step));
-		for (String k : tokenMap.keySet()) {
-			result = result.replaceAll("\\$\\{" + k + "\\}", tokenMap.get(k));
-		}
-		String load;
+	public final StepScriptPattern getStepPattern() {
+		if (stepTemplate == null) {
+			return null;
+		}
+		StringBuilder load = new StringBuilder();
 		try {
-			load = generateLoadPattern(displacements);
+			int cnt = 0;
+			List<String> targets = new ArrayList<String>();
+			for (String sp : spPrefixes()) {
+				String slot = StepScriptPattern.DISP_SLOT + cnt + "}";
+				targets.add(slot);
+				load.append(sp);
+				load.append(slot);
+				load.append('\n');
+				cnt++;
+			}
+			StringBuilder substeps = new StringBuilder();
+			appendSubsteps(substeps, StepScriptPattern.STEP_SLOT, null,
+					targets);
+			String text = stepTemplate.getText().replace(
+					"${" + stepNumberToken + "}", StepScriptPattern.STEP_SLOT);
+			text = substeps
+					+ text.replace("${" + loadToken + "}", load.toString());
+			return new StepScriptPattern(text, openSeesUpperBound,
+					DoubleFormatter.NAME, managePatterns ? removePatternCmd
+							: null);
 		} catch (IllegalParameterException e) {
-			log.error("Could not create displacement command for "
+			log.error("Could not create step pattern for "
 					+ substructureCfg.getAddress() + " because ", e);
 			return null;
 		}
-		result = result.replaceAll("\\$\\{" + loadK + "\\}", load);
-		log.debug("Generated run step for  " + substructureCfg.getAddress()
-				+ " [" + result + "]");
-		return result;
 	}
 
-	@Override
-	public final String generateStep(final int step,
-			final double[] displacements) {
-		final String stepK = "StepNumber";
-		final String loadK = "LoadPattern";
-		final int openSeesUpperBound = 99000;
-		tokenMap.put("Step", Integer.toString(step));
-		String result = stepTemplate.replaceAll("\\$\\{" + stepK + "\\}",
-				Integer.toString(openSeesUpperBound + step));
-		String load;
+	/**
+	 * Check if a command is complete in the sense of the Tcl
+	 * <em>info complete</em> command. The braces and quotes have to be
+	 * balanced and the last line must not be continued with a backslash.
+	 * @param cmd
+	 *            The command without the final newline.
+	 * @return True if the command is complete.
+	 */
+	private static boolean isComplete(final CharSequence cmd) {
+		int braces = 0;
+		boolean quoted = false;
+		boolean escaped = false;
+		for (int i = 0; i < cmd.length(); i++) {
+			char c = cmd.charAt(i);
+			if (escaped) {
+				escaped = false;
+			} else if (c == '\\') {
+				escaped = true;
+			} else if (c == '"' && braces == 0) {
+				quoted = !quoted;
+			} else if (c == '{' && quoted == false) {
+				braces++;
+			} else if (c == '}' && quoted == false) {
+				braces--;
+			}
+		}
+		return escaped == false && quoted == false && braces <= 0;
+	}
+
+	/**
+	 * Restrict the report and recorder commands of a template to rank 0 if the
+	 * FEM program runs in several ranks. A command which is continued over
+	 * several lines is wrapped as a whole.
+	 * @param template
+	 *            The template. Can be null.
+	 * @return The restricted template or the template itself if the program
+	 *         does not run in several ranks. Null if a report or recorder
+	 *         command is not complete at the end of the template.
+	 */
+	private ScriptTemplate onRankZero(final ScriptTemplate template) {
+		if (rankZeroOnly == false || template == null) {
+			return template;
+		}
+		StringBuilder text = new StringBuilder();
+		StringBuilder guarded = null;
+		for (String line : template.getText().split("\n")) {
+			if (guarded != null) {
+				guarded.append('\n');
+				guarded.append(line);
+			} else {
+				String cmd = line.trim();
+				if (cmd.startsWith("puts") == false
+						&& cmd.startsWith("recorder") == false) {
+					text.append(line);
+					text.append('\n');
+					continue;
+				}
+				guarded = new StringBuilder(cmd);
+			}
+			if (isComplete(guarded) == false) {
+				continue;
+			}
+			text.append(RANK_ZERO_GUARD);
+			text.append(guarded);
+			if (guarded.indexOf("\n") >= 0) {
+				text.append('\n');
+			}
+			text.append("}\n");
+			guarded = null;
+		}
+		if (guarded != null) {
+			log.error("Template for " + substructureCfg.getAddress()
+					+ " ends inside the command \"" + guarded + "\"");
+			return null;
+		}
+		return new ScriptTemplate(text.toString());
+	}
+
+	/**
+	 * Check if a step template removes the load pattern it creates. Otherwise
+	 * every step would add a pattern to the OpenSees domain.
+	 * @param template
+	 *            The step template.
+	 * @return True if an uncommented line removes the step pattern.
+	 */
+	private boolean removesOwnPattern(final ScriptTemplate template) {
+		String own = "${" + stepNumberToken + "}";
+		for (String line : template.getText().split("\n")) {
+			String cmd = line.trim();
+			if (cmd.startsWith(removePatternCmd.trim()) && cmd.contains(own)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Render a step script in one pass.
+	 * @param template
+	 *            The template.
+	 * @param previous
+	 *            Step whose load pattern is removed first or
+	 *            {@link StepScriptPattern#NO_STEP}.
+	 * @param step
+	 *            Step number.
+	 * @param displacements
+	 *            Displacements for the step.
+	 * @param withStep
+	 *            True if the step token is rendered.
+	 * @return The script or null if the script could not be created. Scripts
+	 *         rendered from the step template include the sub-increments.
+	 */
+	private String render(final ScriptTemplate template, final int previous,
+			final int step, final double[] displacements,
+			final boolean withStep) {
+		stepToken = Integer.toString(step);
+		if (template == null) {
+			log.error("No template for " + substructureCfg.getAddress());
+			return null;
+		}
+		script.setLength(0);
+		if (previous != StepScriptPattern.NO_STEP) {
+			script.append(removePatternCmd);
+			script.append(openSeesUpperBound + previous);
+			script.append('\n');
+		}
 		try {
-			load = generateLoadPattern(displacements);
+			if (template == stepTemplate) {
+				appendSubsteps(script,
+						Integer.toString(openSeesUpperBound + step),
+						displacements, null);
+			}
+			for (int i = 0; i < template.getSlotCount(); i++) {
+				script.append(template.getLiteral(i));
+				String name = template.getSlot(i);
+				if (name.equals(stepNumberToken)) {
+					script.append(openSeesUpperBound + step);
+				} else if (name.equals(loadToken)) {
+					appendLoadPattern(script, displacements);
+				} else if (withStep && name.equals(stepTokenName)) {
+					script.append(stepToken);
+				} else {
+					template.appendSlot(script, i);
+				}
+			}
 		} catch (IllegalParameterException e) {
 			log.error("Could not create displacement command for "
 					+ substructureCfg.getAddress() + " because ", e);
 			return null;
 		}
-		result = result.replaceAll("\\$\\{" + loadK + "\\}", load);
-		log.debug("Generated step for  " + substructureCfg.getAddress() + " ["
-				+ result + "]");
-		return result;
+		script.append(template.getLiteral(template.getSlotCount()));
+		return script.toString();
 	}
 
 	/**
-	 * Get a string representation of a template file.
-	 * @param file
-	 *            Path to template file.
-	 * @return string representation of the template file.
+	 * Create the beginning of the single point constraint command of each
+	 * effective DOF in displacement order. The commands are created once
+	 * together with the {@link #nodeDispCmds displacement queries}.
+	 * @return The commands without the displacement values.
+	 * @throws IllegalParameterException
+	 *             For improper effective DOFs.
 	 */
-	private String setTemplate(final String file) {
-		File tfile = new File(file);
-		if (tfile.canRead() == false) {
-			log.error("Template file \"" + file + "\" cannot be read");
-			return null;
+	private List<String> spPrefixes() throws IllegalParameterException {
+		if (spPrefixes != null) {
+			return spPrefixes;
 		}
-		String result = "";
-		try {
-			BufferedReader is = new BufferedReader(new FileReader(tfile));
-			String ln;
-			while ((ln = is.readLine()) != null) {
-				result += ln + "\n";
-			}
-			is.close();
-		} catch (Exception e) {
-			log.error("Template file \"" + file + "\" cannot be read because ",
-					e);
-			return null;
+		List<String> result = new ArrayList<String>();
+		List<String> queries = new ArrayList<String>();
+		DimensionType dim = substructureCfg.getDimension();
+		DofIndexMagic magic = new DofIndexMagic(dim, true, false);
+		for (Integer n : substructureCfg.getNodeSequence()) {
+			List<DispDof> edofs = substructureCfg.getEffectiveDofs(n);
+			for (DispDof d : edofs) {
+				result.add("sp " + n + " " + magic.index(d) + " ");
+				queries.add("nodeDisp " + n + " " + magic.index(d));
+			}
 		}
+		nodeDispCmds = queries;
+		spPrefixes = result;
 		return result;
 	}
+
+	/**
+	 * Remove the <em>puts</em> commands from a template including their
+	 * continuation lines.
+	 * @param template
+	 *            The template.
+	 * @return The template without report lines.
+	 */
+	private ScriptTemplate withoutReports(final ScriptTemplate template) {
+		StringBuilder text = new StringBuilder();
+		StringBuilder report = null;
+		for (String line : template.getText().split("\n")) {
+			if (report != null) {
+				report.append('\n');
+				report.append(line);
+			} else if (line.trim().startsWith("puts")) {
+				report = new StringBuilder(line.trim());
+			} else {
+				text.append(line);
+				text.append('\n');
+				continue;
+			}
+			if (isComplete(report)) {
+				report = null;
+			}
+		}
+		return new ScriptTemplate(text.toString());
+	}
 }
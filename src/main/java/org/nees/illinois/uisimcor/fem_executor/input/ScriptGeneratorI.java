@@ -21,6 +21,32 @@ public interface ScriptGeneratorI {
 	 */
 	String generateStep(final int step, final double[] displacements);
 
+	/**
+	 * Create script commands to execute a trial of the step. The first trial
+	 * of a step saves the committed state. Further trials start from that
+	 * state again. The trial stays open until it is committed or reverted.
+	 * @param step
+	 *            Step number
+	 * @param displacements
+	 *            Displacements associated with the trial.
+	 * @return Script fragment or null if it cannot be created.
+	 */
+	String generateTrial(final int step, final double[] displacements);
+
+	/**
+	 * Accept the state of the last trial as the committed state. Nothing has
+	 * to be sent to the FEM program.
+	 * @return False if there is no trial to commit.
+	 */
+	boolean commitTrial();
+
+	/**
+	 * Create script commands which return to the committed state and drop the
+	 * open trial.
+	 * @return Script fragment or null if there is nothing to revert.
+	 */
+	String generateRevert();
+
 	/**
 	 * Create script commands to execute a one step analysis.
 	 * @param step
@@ -30,4 +56,27 @@ public interface ScriptGeneratorI {
 	 * @return Run script.
 	 */
 	String generateRun(final int step, final double[] displacements);
+
+	/**
+	 * Create script commands which execute a block of steps in one loop. The
+	 * displacements of each step are read from a data file written by
+	 * {@link BatchData}. The loop runs the same commands as
+	 * {@link #generateStep(int, double[])} for each step.
+	 * @param firstStep
+	 *            Number of the first step.
+	 * @param steps
+	 *            Number of steps.
+	 * @param dataFile
+	 *            Path to the displacements data file.
+	 * @return Script fragment or null if it cannot be created.
+	 */
+	String generateBatch(final int firstStep, final int steps,
+			final String dataFile);
+
+	/**
+	 * Create the pattern of the step scripts. Filling the pattern gives the
+	 * same script as {@link #generateStep(int, double[])}.
+	 * @return The pattern or null if it cannot be created.
+	 */
+	StepScriptPattern getStepPattern();
 }
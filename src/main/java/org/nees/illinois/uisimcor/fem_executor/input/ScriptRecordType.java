@@ -0,0 +1,35 @@
+package org.nees.illinois.uisimcor.fem_executor.input;
+
+/**
+ * Enumeration of the script records of a compact Inputs archive. Each command
+ * sent to the FEM program is stored as one record except for the steps which
+ * are stored as a row of the Commands archive.
+ * @author Michael Bletzinger
+ */
+public enum ScriptRecordType {
+	/**
+	 * Script of a batch of steps.
+	 */
+	Batch,
+	/**
+	 * Initialization script.
+	 */
+	Init,
+	/**
+	 * Commands which were sent in front of the step stored in the Commands
+	 * row with the same index, such as the restore of an open trial.
+	 */
+	Prefix,
+	/**
+	 * Script which reverts an open trial.
+	 */
+	Revert,
+	/**
+	 * Step script which is not given by the step script pattern.
+	 */
+	Step,
+	/**
+	 * Script of a trial step.
+	 */
+	Trial
+}
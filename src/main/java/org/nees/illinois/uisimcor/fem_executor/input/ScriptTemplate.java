@@ -0,0 +1,185 @@
+package org.nees.illinois.uisimcor.fem_executor.input;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Script template parsed into literal segments and <em>${Name}</em>
+ * placeholders. The template is parsed once so that rendering is a single
+ * pass which appends the segments and the placeholder values to a
+ * {@link StringBuilder}. Placeholders with values that do not change can be
+ * rendered ahead of time with {@link #bind(Map)}. Templates cannot be
+ * modified after they are created.
+ * @author Michael Bletzinger
+ */
+public class ScriptTemplate {
+	/**
+	 * Literal text before each placeholder and after the last one.
+	 */
+	private final String[] literals;
+	/**
+	 * Names of the placeholders.
+	 */
+	private final String[] slots;
+	/**
+	 * Template text.
+	 */
+	private final String text;
+
+	/**
+	 * Parse a template.
+	 * @param text
+	 *            Template text.
+	 */
+	public ScriptTemplate(final String text) {
+		this.text = text;
+		List<String> lits = new ArrayList<String>();
+		List<String> names = new ArrayList<String>();
+		int pos = 0;
+		int start = text.indexOf("${");
+		while (start >= 0) {
+			int close = text.indexOf('}', start + 2);
+			if (close < 0) {
+				break;
+			}
+			int inner = text.indexOf("${", start + 2);
+			if (inner >= 0 && inner < close) {
+				start = inner;
+				continue;
+			}
+			lits.add(text.substring(pos, start));
+			names.add(text.substring(start + 2, close));
+			pos = close + 1;
+			start = text.indexOf("${", pos);
+		}
+		lits.add(text.substring(pos));
+		this.literals = lits.toArray(new String[lits.size()]);
+		this.slots = names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * @param text
+	 *            Template text.
+	 * @param literals
+	 *            Literal segments.
+	 * @param slots
+	 *            Placeholder names.
+	 */
+	private ScriptTemplate(final String text, final String[] literals,
+			final String[] slots) {
+		this.text = text;
+		this.literals = literals;
+		this.slots = slots;
+	}
+
+	/**
+	 * Render the placeholders which have values.
+	 * @param values
+	 *            Values of the placeholders which do not change.
+	 * @return Template with the remaining placeholders.
+	 */
+	public final ScriptTemplate bind(final Map<String, String> values) {
+		List<String> lits = new ArrayList<String>();
+		List<String> names = new ArrayList<String>();
+		StringBuilder lit = new StringBuilder(literals[0]);
+		for (int i = 0; i < slots.length; i++) {
+			String value = values.get(slots[i]);
+			if (value == null) {
+				lits.add(lit.toString());
+				names.add(slots[i]);
+				lit.setLength(0);
+			} else {
+				lit.append(value);
+			}
+			lit.append(literals[i + 1]);
+		}
+		lits.add(lit.toString());
+		return new ScriptTemplate(text, lits.toArray(new String[lits.size()]),
+				names.toArray(new String[names.size()]));
+	}
+
+	/**
+	 * @param index
+	 *            Segment index. The last segment is {@link #getSlotCount()}.
+	 * @return the literal text before the placeholder or after the last
+	 *         placeholder.
+	 */
+	public final String getLiteral(final int index) {
+		return literals[index];
+	}
+
+	/**
+	 * @param index
+	 *            Placeholder index.
+	 * @return the name of the placeholder.
+	 */
+	public final String getSlot(final int index) {
+		return slots[index];
+	}
+
+	/**
+	 * @return the number of placeholders.
+	 */
+	public final int getSlotCount() {
+		return slots.length;
+	}
+
+	/**
+	 * @return the template text as it was read.
+	 */
+	public final String getText() {
+		return text;
+	}
+
+	/**
+	 * Render the template. Placeholders without a value are written
+	 * unchanged.
+	 * @param values
+	 *            Values of the placeholders.
+	 * @return The script.
+	 */
+	public final String render(final Map<String, String> values) {
+		if (slots.length == 0) {
+			return literals[0];
+		}
+		StringBuilder result = new StringBuilder(text.length());
+		render(result, values);
+		return result.toString();
+	}
+
+	/**
+	 * Render the template into a builder. Placeholders without a value are
+	 * written unchanged.
+	 * @param out
+	 *            The builder.
+	 * @param values
+	 *            Values of the placeholders.
+	 */
+	public final void render(final StringBuilder out,
+			final Map<String, String> values) {
+		for (int i = 0; i < slots.length; i++) {
+			out.append(literals[i]);
+			String value = values.get(slots[i]);
+			if (value == null) {
+				appendSlot(out, i);
+			} else {
+				out.append(value);
+			}
+		}
+		out.append(literals[slots.length]);
+	}
+
+	/**
+	 * Write a placeholder unchanged.
+	 * @param out
+	 *            The builder.
+	 * @param index
+	 *            Placeholder index.
+	 */
+	public final void appendSlot(final StringBuilder out, final int index) {
+		out.append("${");
+		out.append(slots[index]);
+		out.append('}');
+	}
+}
@@ -0,0 +1,310 @@
+package org.nees.illinois.uisimcor.fem_executor.input;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nees.illinois.uisimcor.fem_executor.utils.DoubleFormatter;
+import org.nees.illinois.uisimcor.fem_executor.utils.IllegalParameterException;
+
+/**
+ * Step script with the step number and the displacements replaced by slots.
+ * Filling the slots with the values of a step gives the script the
+ * {@link ScriptGeneratorI script generator} produces for a plain step which
+ * follows another plain step. Trial, revert and batch scripts and the restore
+ * of an open trial in front of a step are not covered. {@link CompactInputs}
+ * stores the pattern once and only the displacements of the steps whose
+ * scripts match it.
+ * <p>
+ * In the pattern text the step number slot is written as {@value #STEP_SLOT}
+ * and the slot of displacement <em>i</em> as <em>${#D</em>i<em>}</em>. The
+ * saved form of a pattern starts with the step offset and number format lines
+ * followed by an empty line and the pattern text. A pattern can also write a
+ * command with the previous step number before the script, such as the
+ * removal of the load pattern of the previous step. That command is saved as
+ * an additional header line.
+ * </p>
+ * @author Michael Bletzinger
+ */
+public class StepScriptPattern {
+	/**
+	 * Start of a displacement slot.
+	 */
+	public static final String DISP_SLOT = "${#D";
+	/**
+	 * Step number slot.
+	 */
+	public static final String STEP_SLOT = "${#Step}";
+	/**
+	 * Slot value which refers to the step number.
+	 */
+	private static final int STEP = -1;
+	/**
+	 * Label of the format line of the saved form.
+	 */
+	private static final String FORMAT_LABEL = "format=";
+	/**
+	 * Step number used when there is no previous step.
+	 */
+	public static final int NO_STEP = Integer.MIN_VALUE;
+	/**
+	 * Label of the step offset line of the saved form.
+	 */
+	private static final String OFFSET_LABEL = "stepOffset=";
+	/**
+	 * Label of the previous step line of the saved form.
+	 */
+	private static final String PREVIOUS_LABEL = "previous=";
+
+	/**
+	 * Read a pattern from its saved form.
+	 * @param saved
+	 *            Saved form from {@link #toText()}.
+	 * @return The pattern.
+	 * @throws IllegalParameterException
+	 *             if the saved form is malformed.
+	 */
+	public static StepScriptPattern parse(final String saved)
+			throws IllegalParameterException {
+		String offsetStr = null;
+		String format = null;
+		String previous = null;
+		int pos = 0;
+		int end = saved.indexOf('\n');
+		while (end > pos) {
+			String line = saved.substring(pos, end);
+			if (line.startsWith(OFFSET_LABEL)) {
+				offsetStr = line.substring(OFFSET_LABEL.length());
+			} else if (line.startsWith(FORMAT_LABEL)) {
+				format = line.substring(FORMAT_LABEL.length());
+			} else if (line.startsWith(PREVIOUS_LABEL)) {
+				previous = line.substring(PREVIOUS_LABEL.length());
+			}
+			pos = end + 1;
+			end = saved.indexOf('\n', pos);
+		}
+		if (end < 0 || offsetStr == null || format == null) {
+			throw new IllegalParameterException(
+					"Step script pattern has no header");
+		}
+		int offset;
+		try {
+			offset = Integer.parseInt(offsetStr);
+		} catch (NumberFormatException e) {
+			throw new IllegalParameterException("Step offset \"" + offsetStr
+					+ "\" is not a number", e);
+		}
+		return new StepScriptPattern(saved.substring(end + 1), offset, format,
+				previous);
+	}
+
+	/**
+	 * Buffer for formatted displacements.
+	 */
+	private final char[] buffer = new char[DoubleFormatter.MAX_CHARS];
+	/**
+	 * Formatter for the displacements. Null if the displacements are written
+	 * by {@link DoubleFormatter}.
+	 */
+	private final DecimalFormat format;
+	/**
+	 * Literal text before each slot and after the last slot.
+	 */
+	private final String[] literals;
+	/**
+	 * Number format of the displacements.
+	 */
+	private final String numberFormat;
+	/**
+	 * Command which is followed by the previous step number and written before
+	 * the script. Null if the previous step is not referenced.
+	 */
+	private final String previousPrefix;
+	/**
+	 * Displacement index of each slot. {@link #STEP} for the step number.
+	 */
+	private final int[] slots;
+	/**
+	 * Number added to the step to get the step number in the script.
+	 */
+	private final int stepOffset;
+	/**
+	 * Pattern text with slots.
+	 */
+	private final String text;
+
+	/**
+	 * @param text
+	 *            Pattern text with slots.
+	 * @param stepOffset
+	 *            Number added to the step to get the step number in the
+	 *            script.
+	 * @param numberFormat
+	 *            {@link DecimalFormat} pattern of the displacements or
+	 *            {@link DoubleFormatter#NAME} for shortest round trip text.
+	 * @throws IllegalParameterException
+	 *             if a displacement slot is malformed.
+	 */
+	public StepScriptPattern(final String text, final int stepOffset,
+			final String numberFormat) throws IllegalParameterException {
+		this(text, stepOffset, numberFormat, null);
+	}
+
+	/**
+	 * @param text
+	 *            Pattern text with slots.
+	 * @param stepOffset
+	 *            Number added to the step to get the step number in the
+	 *            script.
+	 * @param numberFormat
+	 *            {@link DecimalFormat} pattern of the displacements or
+	 *            {@link DoubleFormatter#NAME} for shortest round trip text.
+	 * @param previousPrefix
+	 *            Command which is followed by the previous step number and
+	 *            written before the script when there is a previous step. Null
+	 *            if the previous step is not referenced.
+	 * @throws IllegalParameterException
+	 *             if a displacement slot is malformed.
+	 */
+	public StepScriptPattern(final String text, final int stepOffset,
+			final String numberFormat, final String previousPrefix)
+			throws IllegalParameterException {
+		this.text = text;
+		this.previousPrefix = previousPrefix;
+		this.stepOffset = stepOffset;
+		this.numberFormat = numberFormat;
+		if (DoubleFormatter.NAME.equals(numberFormat)) {
+			this.format = null;
+		} else {
+			this.format = new DecimalFormat(numberFormat);
+		}
+		List<String> lits = new ArrayList<String>();
+		List<Integer> slts = new ArrayList<Integer>();
+		int pos = 0;
+		while (true) {
+			int s = text.indexOf(STEP_SLOT, pos);
+			int d = text.indexOf(DISP_SLOT, pos);
+			if (s < 0 && d < 0) {
+				break;
+			}
+			if (s >= 0 && (d < 0 || s < d)) {
+				lits.add(text.substring(pos, s));
+				slts.add(STEP);
+				pos = s + STEP_SLOT.length();
+				continue;
+			}
+			int close = text.indexOf('}', d);
+			if (close < 0) {
+				throw new IllegalParameterException("Unterminated slot at "
+						+ d);
+			}
+			int index;
+			try {
+				index = Integer.parseInt(text.substring(
+						d + DISP_SLOT.length(), close));
+			} catch (NumberFormatException e) {
+				throw new IllegalParameterException("Malformed slot \""
+						+ text.substring(d, close + 1) + "\"", e);
+			}
+			lits.add(text.substring(pos, d));
+			slts.add(index);
+			pos = close + 1;
+		}
+		lits.add(text.substring(pos));
+		this.literals = lits.toArray(new String[lits.size()]);
+		this.slots = new int[slts.size()];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = slts.get(i);
+		}
+	}
+
+	/**
+	 * Create the script of a step which has no previous step.
+	 * @param step
+	 *            Step number.
+	 * @param displacements
+	 *            Displacements of the step.
+	 * @return The script or null if there are fewer displacements than slots.
+	 */
+	public final String fill(final int step, final double[] displacements) {
+		return fill(NO_STEP, step, displacements);
+	}
+
+	/**
+	 * Create the script of a step.
+	 * @param previousStep
+	 *            Number of the step sent before this one or {@link #NO_STEP}.
+	 * @param step
+	 *            Step number.
+	 * @param displacements
+	 *            Displacements of the step.
+	 * @return The script or null if there are fewer displacements than slots.
+	 */
+	public final synchronized String fill(final int previousStep,
+			final int step, final double[] displacements) {
+		StringBuilder result = new StringBuilder(text.length());
+		if (previousPrefix != null && previousStep != NO_STEP) {
+			result.append(previousPrefix);
+			result.append(stepOffset + previousStep);
+			result.append('\n');
+		}
+		String stepStr = Integer.toString(stepOffset + step);
+		for (int i = 0; i < slots.length; i++) {
+			result.append(literals[i]);
+			if (slots[i] == STEP) {
+				result.append(stepStr);
+			} else if (slots[i] >= displacements.length) {
+				return null;
+			} else if (format == null) {
+				DoubleFormatter.append(displacements[slots[i]], result, buffer);
+			} else {
+				result.append(format.format(displacements[slots[i]]));
+			}
+		}
+		result.append(literals[slots.length]);
+		return result.toString();
+	}
+
+	/**
+	 * @return the {@link DecimalFormat} pattern of the displacements or
+	 *         {@link DoubleFormatter#NAME}.
+	 */
+	public final String getNumberFormat() {
+		return numberFormat;
+	}
+
+	/**
+	 * @return the command which is followed by the previous step number or
+	 *         null if the previous step is not referenced.
+	 */
+	public final String getPreviousPrefix() {
+		return previousPrefix;
+	}
+
+	/**
+	 * @return the number added to the step to get the step number in the
+	 *         script.
+	 */
+	public final int getStepOffset() {
+		return stepOffset;
+	}
+
+	/**
+	 * @return the pattern text with slots.
+	 */
+	public final String getText() {
+		return text;
+	}
+
+	/**
+	 * @return the saved form of the pattern.
+	 */
+	public final String toText() {
+		String previous = "";
+		if (previousPrefix != null) {
+			previous = PREVIOUS_LABEL + previousPrefix + "\n";
+		}
+		return OFFSET_LABEL + stepOffset + "\n" + FORMAT_LABEL + numberFormat
+				+ "\n" + previous + "\n" + text;
+	}
+}
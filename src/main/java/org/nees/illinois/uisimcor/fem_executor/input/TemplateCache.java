@@ -0,0 +1,95 @@
+package org.nees.illinois.uisimcor.fem_executor.input;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of parsed template files. Substructures which use the same template
+ * files share one parsed {@link ScriptTemplate}. A file is parsed again when
+ * its modification time or length changes.
+ * @author Michael Bletzinger
+ */
+public class TemplateCache {
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(TemplateCache.class);
+	/**
+	 * Modification time and length of each cached file when it was read.
+	 */
+	private final Map<String, long[]> stamps = new HashMap<String, long[]>();
+	/**
+	 * Parsed templates by absolute path.
+	 */
+	private final Map<String, ScriptTemplate> templates = new HashMap<String, ScriptTemplate>();
+
+	/**
+	 * Remove all cached templates.
+	 */
+	public final synchronized void clear() {
+		stamps.clear();
+		templates.clear();
+	}
+
+	/**
+	 * Get the parsed template of a file. The file is only read if it is not
+	 * cached or has changed since it was read.
+	 * @param file
+	 *            Path to template file.
+	 * @return The template or null if the file cannot be read.
+	 */
+	public final synchronized ScriptTemplate get(final String file) {
+		File tfile = new File(file);
+		String key = tfile.getAbsolutePath();
+		if (tfile.canRead() == false) {
+			log.error("Template file \"" + file + "\" cannot be read");
+			stamps.remove(key);
+			templates.remove(key);
+			return null;
+		}
+		long[] stamp = { tfile.lastModified(), tfile.length() };
+		long[] cached = stamps.get(key);
+		if (cached != null && cached[0] == stamp[0] && cached[1] == stamp[1]) {
+			return templates.get(key);
+		}
+		String text = read(tfile);
+		if (text == null) {
+			return null;
+		}
+		ScriptTemplate result = new ScriptTemplate(text);
+		stamps.put(key, stamp);
+		templates.put(key, result);
+		log.debug("Parsed template \"" + file + "\"");
+		return result;
+	}
+
+	/**
+	 * Read a template file. Each line is ended with a newline.
+	 * @param tfile
+	 *            Template file.
+	 * @return The text or null if the file cannot be read.
+	 */
+	private String read(final File tfile) {
+		StringBuilder result = new StringBuilder();
+		try {
+			BufferedReader is = new BufferedReader(new FileReader(tfile));
+			String ln;
+			while ((ln = is.readLine()) != null) {
+				result.append(ln);
+				result.append('\n');
+			}
+			is.close();
+		} catch (Exception e) {
+			log.error("Template file \"" + tfile + "\" cannot be read because ",
+					e);
+			return null;
+		}
+		return result.toString();
+	}
+}
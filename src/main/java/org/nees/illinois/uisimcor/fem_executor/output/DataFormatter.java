@@ -26,6 +26,12 @@ public class DataFormatter {
 	 **/
 	private final Logger log = LoggerFactory.getLogger(DataFormatter.class);
 
+	/**
+	 * Indexes into an FEM record for each effective DOF in node order. Calculated
+	 * once so that the step loop does not have to walk the configuration.
+	 */
+	private int[] recordIndexes;
+
 	/**
 	 * @param substructCfg
 	 *            Substructure configuration containing the nodes and effective
@@ -35,6 +41,65 @@ public class DataFormatter {
 		this.substructCfg = substructCfg;
 	}
 
+	/**
+	 * Copy the effective DOF values for all nodes from an FEM record into a
+	 * caller supplied array.
+	 * @param data
+	 *            Data from FEM.
+	 * @param out
+	 *            Array receiving the effective DOF values. Must be at least
+	 *            {@link SubstructureDao#getTotalDofs() total DOFs} long.
+	 * @return False if the substructure is misconfigured or the record is too
+	 *         short for it.
+	 */
+	public final boolean filter(final double[] data, final double[] out) {
+		int[] indexes = getRecordIndexes();
+		if (indexes == null) {
+			return false;
+		}
+		if (indexes.length > 0 && data.length <= indexes[indexes.length - 1]) {
+			log.error("Record of " + data.length + " values is too short for "
+					+ substructCfg.getAddress() + " which needs "
+					+ (indexes[indexes.length - 1] + 1));
+			return false;
+		}
+		for (int i = 0; i < indexes.length; i++) {
+			out[i] = data[indexes[i]];
+		}
+		return true;
+	}
+
+	/**
+	 * @return the record index of each effective DOF or null if the
+	 *         substructure is misconfigured.
+	 */
+	private int[] getRecordIndexes() {
+		if (recordIndexes != null) {
+			return recordIndexes;
+		}
+		int[] result = new int[substructCfg.getTotalDofs()];
+		int nodeCount = 0;
+		int i = 0;
+		final DofIndexMagic openseesMagic = new DofIndexMagic(
+				substructCfg.getDimension(), false, false);
+		for (Integer n : substructCfg.getNodeSequence()) {
+			for (DispDof d : substructCfg.getEffectiveDofs(n)) {
+				try {
+					result[i] = nodeCount * openseesMagic.numberOfDofsPerNode()
+							+ openseesMagic.index(d);
+				} catch (IllegalParameterException e) {
+					log.error("Misconfigured substructure "
+							+ substructCfg.getAddress());
+					return null;
+				}
+				i++;
+			}
+			nodeCount++;
+		}
+		recordIndexes = result;
+		return result;
+	}
+
 	/**
 	 * add filter only effective DOF for all nodes.
 	 * @param data
@@ -70,6 +135,34 @@ public class DataFormatter {
 		return result;
 	}
 
+	/**
+	 * Converts a set of tokens to numbers without boxing them.
+	 * @param strData
+	 *            The set of tokens.
+	 * @param row
+	 *            Array to reuse if it has the number of tokens. Can be null.
+	 * @return A row of doubles.
+	 */
+	public final double[] tokenString2Double(final String strData,
+			final double[] row) {
+		String[] tokens = strData.trim().split("\\s+");
+		double[] result = row;
+		if (result == null || result.length != tokens.length) {
+			result = new double[tokens.length];
+		}
+		for (int t = 0; t < tokens.length; t++) {
+			try {
+				result[t] = Double.parseDouble(tokens[t]);
+			} catch (NumberFormatException e) {
+				log.error("Token \"" + tokens[t]
+						+ "\" is not a number.  Column " + t + " for \""
+						+ strData + "\"", e);
+				result[t] = 0.0;
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Converts a set of tokens to {@link Double} numbers.
 	 * @param strData
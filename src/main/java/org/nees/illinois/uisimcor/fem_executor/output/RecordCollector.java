@@ -9,6 +9,7 @@ import java.util.concurrent.TimeUnit;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.ProgramDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
 import org.nees.illinois.uisimcor.fem_executor.execute.FemStatus;
+import org.nees.illinois.uisimcor.fem_executor.process.ResponseSignal;
 import org.nees.illinois.uisimcor.fem_executor.tcp.TcpLinkDto;
 import org.nees.illinois.uisimcor.fem_executor.tcp.TcpListener;
 import org.nees.illinois.uisimcor.fem_executor.tcp.TcpParameters;
@@ -33,6 +34,11 @@ public class RecordCollector {
 	 * Record index to use for the response.
 	 */
 	private final int stepRecordIndex;
+	/**
+	 * Number of records sent for each step. Each sub-increment of a step sends
+	 * the records of a whole step.
+	 */
+	private final int stepRecords;
 	/**
 	 * Response values.
 	 */
@@ -52,9 +58,18 @@ public class RecordCollector {
 	public RecordCollector(final SubstructureDao scfg, final ProgramDao pcfg) {
 		this.responseVals = new ResponseValues(scfg);
 		this.stepRecordIndex = pcfg.getStepRecordIndex();
-
+		this.stepRecords = scfg.getSubsteps() * (stepRecordIndex + 1);
 	}
 
+	/**
+	 * Signal raised when a record arrives. Can be null.
+	 */
+	private ResponseSignal signal;
+	/**
+	 * Status whose response flags are set by the readers. Can be null.
+	 */
+	private FemStatus statuses;
+
 	/**
 	 * Reader for the disp socket.
 	 */
@@ -72,11 +87,26 @@ public class RecordCollector {
 	/**
 	 * Displacement response records.
 	 */
-	private DoubleMatrix dispRecords;
+	private final List<double[]> dispRecords = new ArrayList<double[]>();
 	/**
 	 * Force response records.
 	 */
-	private DoubleMatrix forceRecords;
+	private final List<double[]> forceRecords = new ArrayList<double[]>();
+	/**
+	 * Displacement records of the last finished step. They are referenced by
+	 * the complete records of the response values until the next step
+	 * finishes.
+	 */
+	private double[][] heldDisp;
+	/**
+	 * Force records of the last finished step.
+	 */
+	private double[][] heldForce;
+	/**
+	 * True if the current records have been handed to the response values by
+	 * {@link #finish()}.
+	 */
+	private boolean recordsHeld = false;
 	/**
 	 * Logger.
 	 **/
@@ -153,6 +183,8 @@ public class RecordCollector {
 					+ dispListener.getParams().getLocalPort() + " because ", e1);
 			return false;
 		}
+		dispReader.setSignal(signal);
+		dispReader.setStatus(statuses, FemStatus.DISPLACEMENTS, stepRecords);
 		dispReader.start();
 		// dispListener.setQuit(true);
 		// dispListener.interrupt();
@@ -174,68 +206,163 @@ public class RecordCollector {
 					+ forceListener.getParams().getLocalPort() + " because ", e);
 			return false;
 		}
+		forceReader.setSignal(signal);
+		forceReader.setStatus(statuses, FemStatus.FORCES, stepRecords);
 		forceReader.start();
 		return true;
 	}
 
 	/**
-	 * Collect any displacement or force responses.
-	 * @param statuses
-	 *            Statuses reference.
+	 * Collect any displacement or force responses. The response flags of the
+	 * status are set by the readers when the last record of a step has been
+	 * queued so the records are all here once the flags are seen.
 	 */
-	public final void checkResponses(final FemStatus statuses) {
-		BlockingQueue<List<Double>> responses = dispReader.getDoublesQ();
-		List<Double> rawDisp = responses.poll();
+	public final void checkResponses() {
+		BlockingQueue<double[]> responses = dispReader.getDoublesQ();
+		double[] rawDisp = responses.poll();
 		while (rawDisp != null) {
-			log.debug("Raw Displacements " + MtxUtils.list2String(rawDisp));
-			if (dispRecords == null) {
-				List<List<Double>> dm = new ArrayList<List<Double>>();
-				dm.add(rawDisp);
-				dispRecords = new DoubleMatrix(dm);
-				statuses.setDisplacementsAreHere(true);
-			} else {
-				dispRecords.append(rawDisp);
+			if (log.isDebugEnabled()) {
+				log.debug("Raw Displacements " + MtxUtils.array2String(rawDisp));
 			}
+			dispRecords.add(rawDisp);
 			rawDisp = responses.poll();
 		}
 		responses = forceReader.getDoublesQ();
-		List<Double> rawForce = responses.poll();
+		double[] rawForce = responses.poll();
 		while (rawForce != null) {
-			log.debug("Raw Forces " + MtxUtils.list2String(rawForce));
-			if (forceRecords == null) {
-				List<List<Double>> dm = new ArrayList<List<Double>>();
-				dm.add(rawForce);
-				forceRecords = new DoubleMatrix(dm);
-				statuses.setForcesAreHere(true);
-			} else {
-				forceRecords.append(rawForce);
+			if (log.isDebugEnabled()) {
+				log.debug("Raw Forces " + MtxUtils.array2String(rawForce));
 			}
+			forceRecords.add(rawForce);
 			rawForce = responses.poll();
 		}
 	}
 
 	/**
-	 * Start the collection of response records.
+	 * Number of steps whose displacement and force records have all arrived
+	 * since the collection started. Used by batches where the records of many
+	 * steps arrive without a new start between them.
+	 * @return The number of complete steps.
+	 */
+	public final int completeSteps() {
+		int records = Math.min(dispRecords.size(), forceRecords.size());
+		return records / stepRecords;
+	}
+
+	/**
+	 * Copy the responses of one step of a batch into caller supplied arrays.
+	 * The records of the batch are split into groups of records per step in
+	 * arrival order and the step record of the last sub-increment is selected
+	 * the same way as {@link #finish()} does for a single step.
+	 * @param index
+	 *            Index of the step in the batch. Must be less than
+	 *            {@link #completeSteps()}.
+	 * @param disp
+	 *            Array receiving the displacements at the effective DOFs.
+	 * @param force
+	 *            Array receiving the forces at the effective DOFs.
+	 * @return False if the records do not match the substructure.
+	 */
+	public final boolean readStep(final int index, final double[] disp,
+			final double[] force) {
+		int row = (index + 1) * stepRecords - (stepRecordIndex + 1);
+		responseVals.setRawDisp(dispRecords.get(row));
+		responseVals.setRawForce(forceRecords.get(row));
+		return responseVals.readDisplacements(disp)
+				&& responseVals.readForces(force);
+	}
+
+	/**
+	 * @param signal
+	 *            Signal raised when a record arrives. Needs to be set before
+	 *            connecting.
+	 */
+	public final void setSignal(final ResponseSignal signal) {
+		this.signal = signal;
+	}
+
+	/**
+	 * @param statuses
+	 *            Status whose displacement and force flags are set by the
+	 *            readers. Needs to be set before connecting.
+	 */
+	public final void setStatuses(final FemStatus statuses) {
+		this.statuses = statuses;
+	}
+
+	/**
+	 * Start the collection of response records. Needs to be called before
+	 * the status is reset for a new step.
 	 */
 	public final void start() {
-		dispRecords = null;
-		forceRecords = null;
+		if (dispReader != null) {
+			dispReader.resetStepCount();
+			forceReader.resetStepCount();
+		}
+		// Records handed to the response values are recycled when the next
+		// step finishes.
+		if (recordsHeld == false) {
+			recycle(dispReader, dispRecords);
+			recycle(forceReader, forceRecords);
+		}
+		dispRecords.clear();
+		forceRecords.clear();
+		recordsHeld = false;
+	}
+
+	/**
+	 * Hand records back to their reader for reuse.
+	 * @param reader
+	 *            Reader which parsed the records. Can be null before the
+	 *            collector is connected.
+	 * @param records
+	 *            The records.
+	 */
+	private void recycle(final TcpReader reader, final List<double[]> records) {
+		if (reader == null) {
+			return;
+		}
+		for (double[] r : records) {
+			reader.recycle(r);
+		}
+	}
+
+	/**
+	 * Hand records back to their reader for reuse.
+	 * @param reader
+	 *            Reader which parsed the records.
+	 * @param records
+	 *            The records. Can be null.
+	 */
+	private void recycle(final TcpReader reader, final double[][] records) {
+		if (reader == null || records == null) {
+			return;
+		}
+		for (double[] r : records) {
+			reader.recycle(r);
+		}
 	}
 
 	/**
 	 * Finish up the collection and put the correct record in the
-	 * {@link ResponseValues response}.
+	 * {@link ResponseValues response}. When the step is split into
+	 * sub-increments the record is taken from the last sub-increment.
 	 */
 	public final void finish() {
-		List<List<Double>> dm = dispRecords.toList();
-		int rows = dm.size();
+		int rows = dispRecords.size();
 		log.debug("Displacement response " + rows + " index " + (rows - (stepRecordIndex + 1)));
-		responseVals.setRawDisp(dm.get(rows - (stepRecordIndex + 1)));
-		responseVals.setCompleteDisp(new DoubleMatrix(dm));
-		dm = forceRecords.toList();
-		rows = dm.size();
+		responseVals.setRawDisp(dispRecords.get(rows - (stepRecordIndex + 1)));
+		double[][] complete = dispRecords.toArray(new double[rows][]);
+		responseVals.setCompleteDisp(complete);
+		recycle(dispReader, heldDisp);
+		heldDisp = complete;
+		rows = forceRecords.size();
 		log.debug("Force response " + rows + " index " + (rows - (stepRecordIndex + 1)));
-		responseVals.setRawForce(dm.get(rows - (stepRecordIndex + 1)));
-		responseVals.setCompleteForce(new DoubleMatrix(dm));
+		responseVals.setRawForce(forceRecords.get(rows - (stepRecordIndex + 1)));
+		complete = forceRecords.toArray(new double[rows][]);
+		responseVals.setCompleteForce(complete);
+		recycle(forceReader, heldForce);
+		heldForce = complete;
+		recordsHeld = true;
 	}
 }
@@ -16,11 +16,21 @@ public class ResponseValues {
 	 * The complete set of records for a step including intermediate iterations.
 	 */
 	private DoubleMatrixI completeDisp;
+	/**
+	 * Complete displacement records which are turned into
+	 * {@link #completeDisp} when asked for.
+	 */
+	private double[][] completeDispRecords;
 
 	/**
 	 * The complete set of records for a step including intermediate iterations.
 	 */
 	private DoubleMatrixI completeForce;
+	/**
+	 * Complete force records which are turned into {@link #completeForce} when
+	 * asked for.
+	 */
+	private double[][] completeForceRecords;
 	/**
 	 * Reformat the output for UI-SimCor.
 	 */
@@ -30,14 +40,19 @@ public class ResponseValues {
 	 **/
 	private final Logger log = LoggerFactory.getLogger(ResponseValues.class);
 	/**
-	 * Results of a step command.
+	 * Results of a step command. The array is reused between steps.
 	 */
-	private List<Double> rawDisp;
+	private double[] rawDisp = new double[0];
 
 	/**
-	 * Results of a step command.
+	 * Results of a step command. The array is reused between steps.
 	 */
-	private List<Double> rawForce;
+	private double[] rawForce = new double[0];
+
+	/**
+	 * Number of effective DOFs.
+	 */
+	private final int totalDofs;
 
 	/**
 	 * @param scfg
@@ -46,12 +61,56 @@ public class ResponseValues {
 	 */
 	public ResponseValues(final SubstructureDao scfg) {
 		this.dformat = new DataFormatter(scfg);
+		this.totalDofs = scfg.getTotalDofs();
+	}
+
+	/**
+	 * Copy a response record into a reusable array.
+	 * @param record
+	 *            Response record.
+	 * @param buffer
+	 *            Current array.
+	 * @return The array containing the record. This is a new array only if
+	 *         the record size has changed.
+	 */
+	private double[] copyRecord(final List<Double> record, final double[] buffer) {
+		double[] result = buffer;
+		if (result.length != record.size()) {
+			result = new double[record.size()];
+		}
+		int i = 0;
+		for (Double d : record) {
+			result[i++] = d;
+		}
+		return result;
+	}
+
+	/**
+	 * Copy a response record into a reusable array.
+	 * @param record
+	 *            Response record.
+	 * @param buffer
+	 *            Current array.
+	 * @return The array containing the record. This is a new array only if
+	 *         the record size has changed.
+	 */
+	private double[] copyRecord(final double[] record, final double[] buffer) {
+		double[] result = buffer;
+		if (result.length != record.length) {
+			result = new double[record.length];
+		}
+		System.arraycopy(record, 0, result, 0, record.length);
+		return result;
 	}
 
 	/**
 	 * @return the completeDisp
 	 */
 	public final DoubleMatrixI getCompleteDisp() {
+		if (completeDispRecords != null) {
+			completeDisp = new DoubleMatrix(completeDispRecords);
+			completeDispRecords = null;
+		}
 		return completeDisp;
 	}
 
@@ -59,6 +118,10 @@ public class ResponseValues {
 	 * @return the completeForce
 	 */
 	public final DoubleMatrixI getCompleteForce() {
+		if (completeForceRecords != null) {
+			completeForce = new DoubleMatrix(completeForceRecords);
+			completeForceRecords = null;
+		}
 		return completeForce;
 	}
 
@@ -66,39 +129,89 @@ public class ResponseValues {
 	 * @return double array in node order of displacements at effective DOFs
 	 */
 	public final double[] getDisplacements() {
-		List<Double> result = dformat.filter(rawDisp);
-		log.debug("Filtered Displacements " + MtxUtils.list2String(result));
-		return MtxUtils.list2DoubleArray(result);
+		double[] result = new double[totalDofs];
+		readDisplacements(result);
+		return result;
 	}
 
 	/**
 	 * @return double array in node order of reaction forces at effective DOFs
 	 */
 	public final double[] getForces() {
-		List<Double> result = dformat.filter(rawForce);
-		log.debug("Filtered Forces " + MtxUtils.list2String(result));
-		return MtxUtils.list2DoubleArray(result);
+		double[] result = new double[totalDofs];
+		readForces(result);
+		return result;
 	}
 
 	/**
 	 * @return the rawDisp
 	 */
-	public final List<Double> getRawDisp() {
+	public final double[] getRawDisp() {
 		return rawDisp;
 	}
 
 	/**
 	 * @return the rawForce
 	 */
-	public final List<Double> getRawForce() {
+	public final double[] getRawForce() {
 		return rawForce;
 	}
 
+	/**
+	 * Copy the displacements into a caller supplied array.
+	 * @param out
+	 *            array in node order of displacements at effective DOFs.
+	 * @return False if the record does not match the substructure.
+	 */
+	public final boolean readDisplacements(final double[] out) {
+		if (dformat.filter(rawDisp, out) == false) {
+			log.error("Displacement record " + MtxUtils.array2String(rawDisp)
+					+ " does not match the substructure");
+			return false;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Filtered Displacements " + MtxUtils.array2String(out));
+		}
+		return true;
+	}
+
+	/**
+	 * Copy the forces into a caller supplied array.
+	 * @param out
+	 *            array in node order of reaction forces at effective DOFs.
+	 * @return False if the record does not match the substructure.
+	 */
+	public final boolean readForces(final double[] out) {
+		if (dformat.filter(rawForce, out) == false) {
+			log.error("Force record " + MtxUtils.array2String(rawForce)
+					+ " does not match the substructure");
+			return false;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Filtered Forces " + MtxUtils.array2String(out));
+		}
+		return true;
+	}
+
 	/**
 	 * @param completeDisp the completeDisp to set
 	 */
 	public final void setCompleteDisp(DoubleMatrixI completeDisp) {
 		this.completeDisp = completeDisp;
+		this.completeDispRecords = null;
+	}
+
+	/**
+	 * Set the complete displacement records without converting them. The
+	 * records are only converted into a matrix when
+	 * {@link #getCompleteDisp()} is called and must not change until the next
+	 * call of this method.
+	 * @param records
+	 *            the complete displacement records of the step.
+	 */
+	public final void setCompleteDisp(final double[][] records) {
+		this.completeDispRecords = records;
+		this.completeDisp = null;
 	}
 
 	/**
@@ -106,22 +219,51 @@ public class ResponseValues {
 	 */
 	public final void setCompleteForce(DoubleMatrixI completeForce) {
 		this.completeForce = completeForce;
+		this.completeForceRecords = null;
+	}
+
+	/**
+	 * Set the complete force records without converting them. The records are
+	 * only converted into a matrix when {@link #getCompleteForce()} is called
+	 * and must not change until the next call of this method.
+	 * @param records
+	 *            the complete force records of the step.
+	 */
+	public final void setCompleteForce(final double[][] records) {
+		this.completeForceRecords = records;
+		this.completeForce = null;
 	}
 
 	/**
 	 * @param rawDisp
-	 *            the rawDisp to set
+	 *            the rawDisp record to copy
 	 */
 	public final void setRawDisp(final List<Double> rawDisp) {
-		this.rawDisp = rawDisp;
+		this.rawDisp = copyRecord(rawDisp, this.rawDisp);
 	}
 
 	/**
 	 * @param rawForce
-	 *            the rawForce to set
+	 *            the rawForce record to copy
 	 */
 	public final void setRawForce(final List<Double> rawForce) {
-		this.rawForce = rawForce;
+		this.rawForce = copyRecord(rawForce, this.rawForce);
+	}
+
+	/**
+	 * @param rawDisp
+	 *            the rawDisp record to copy
+	 */
+	public final void setRawDisp(final double[] rawDisp) {
+		this.rawDisp = copyRecord(rawDisp, this.rawDisp);
+	}
+
+	/**
+	 * @param rawForce
+	 *            the rawForce record to copy
+	 */
+	public final void setRawForce(final double[] rawForce) {
+		this.rawForce = copyRecord(rawForce, this.rawForce);
 	}
 
 }
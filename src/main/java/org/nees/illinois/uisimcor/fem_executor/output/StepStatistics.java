@@ -0,0 +1,360 @@
+package org.nees.illinois.uisimcor.fem_executor.output;
+
+import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.config.types.DispDof;
+import org.nees.illinois.uisimcor.fem_executor.utils.DoubleFormatter;
+
+/**
+ * Running statistics for every effective DOF of a substructure. Each step is
+ * folded into the statistics in constant time so that peaks, RMS values,
+ * residual drift and dissipated energy are available without re-reading the
+ * archives.
+ * @author Michael Bletzinger
+ */
+public class StepStatistics {
+	/**
+	 * Scratch buffer for formatting the values of the statistics file.
+	 */
+	private final char[] numberBuffer = new char[DoubleFormatter.MAX_CHARS];
+	/**
+	 * Column labels in node order.
+	 */
+	private final String[] labels;
+	/**
+	 * Number of steps folded into the statistics.
+	 */
+	private int count = 0;
+	/**
+	 * Step of the first record.
+	 */
+	private int firstStep;
+	/**
+	 * Step of the last record.
+	 */
+	private int lastStep;
+	/**
+	 * Minimum displacements.
+	 */
+	private final double[] dispMin;
+	/**
+	 * Steps where the minimum displacements occurred.
+	 */
+	private final int[] dispMinStep;
+	/**
+	 * Maximum displacements.
+	 */
+	private final double[] dispMax;
+	/**
+	 * Steps where the maximum displacements occurred.
+	 */
+	private final int[] dispMaxStep;
+	/**
+	 * Minimum forces.
+	 */
+	private final double[] forceMin;
+	/**
+	 * Steps where the minimum forces occurred.
+	 */
+	private final int[] forceMinStep;
+	/**
+	 * Maximum forces.
+	 */
+	private final double[] forceMax;
+	/**
+	 * Steps where the maximum forces occurred.
+	 */
+	private final int[] forceMaxStep;
+	/**
+	 * Sum of the squared displacements.
+	 */
+	private final double[] dispSumSq;
+	/**
+	 * Sum of the squared forces.
+	 */
+	private final double[] forceSumSq;
+	/**
+	 * Cumulative force-displacement work using the trapezoidal rule.
+	 */
+	private final double[] work;
+	/**
+	 * Number of times the displacement changed sign.
+	 */
+	private final int[] zeroCrossings;
+	/**
+	 * Sign of the last non-zero displacement.
+	 */
+	private final int[] lastSign;
+	/**
+	 * Displacements of the previous step.
+	 */
+	private final double[] lastDisp;
+	/**
+	 * Forces of the previous step.
+	 */
+	private final double[] lastForce;
+
+	/**
+	 * @param scfg
+	 *            Substructure configuration which identifies the sequence of
+	 *            values.
+	 */
+	public StepStatistics(final SubstructureDao scfg) {
+		int size = scfg.getTotalDofs();
+		labels = new String[size];
+		int i = 0;
+		for (Integer n : scfg.getNodeSequence()) {
+			for (DispDof d : scfg.getEffectiveDofs(n)) {
+				labels[i] = n + "-" + d;
+				i++;
+			}
+		}
+		dispMin = new double[size];
+		dispMinStep = new int[size];
+		dispMax = new double[size];
+		dispMaxStep = new int[size];
+		forceMin = new double[size];
+		forceMinStep = new int[size];
+		forceMax = new double[size];
+		forceMaxStep = new int[size];
+		dispSumSq = new double[size];
+		forceSumSq = new double[size];
+		work = new double[size];
+		zeroCrossings = new int[size];
+		lastSign = new int[size];
+		lastDisp = new double[size];
+		lastForce = new double[size];
+	}
+
+	/**
+	 * Fold the responses of a step into the statistics.
+	 * @param step
+	 *            Step number.
+	 * @param disp
+	 *            Displacements at the effective DOFs.
+	 * @param force
+	 *            Forces at the effective DOFs.
+	 */
+	public final synchronized void update(final int step, final double[] disp,
+			final double[] force) {
+		boolean first = count == 0;
+		if (first) {
+			firstStep = step;
+		}
+		for (int i = 0; i < labels.length; i++) {
+			double d = disp[i];
+			double f = force[i];
+			if (first || d < dispMin[i]) {
+				dispMin[i] = d;
+				dispMinStep[i] = step;
+			}
+			if (first || d > dispMax[i]) {
+				dispMax[i] = d;
+				dispMaxStep[i] = step;
+			}
+			if (first || f < forceMin[i]) {
+				forceMin[i] = f;
+				forceMinStep[i] = step;
+			}
+			if (first || f > forceMax[i]) {
+				forceMax[i] = f;
+				forceMaxStep[i] = step;
+			}
+			dispSumSq[i] += d * d;
+			forceSumSq[i] += f * f;
+			if (first == false) {
+				work[i] += 0.5 * (f + lastForce[i]) * (d - lastDisp[i]);
+			}
+			int sign = (d > 0.0 ? 1 : (d < 0.0 ? -1 : 0));
+			if (sign != 0) {
+				if (lastSign[i] != 0 && sign != lastSign[i]) {
+					zeroCrossings[i]++;
+				}
+				lastSign[i] = sign;
+			}
+			lastDisp[i] = d;
+			lastForce[i] = f;
+		}
+		lastStep = step;
+		count++;
+	}
+
+	/**
+	 * @return the number of steps folded into the statistics.
+	 */
+	public final synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the column labels in node order.
+	 */
+	public final String[] getLabels() {
+		return labels.clone();
+	}
+
+	/**
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @return the minimum displacement.
+	 */
+	public final synchronized double getDispMin(final int dof) {
+		return dispMin[dof];
+	}
+
+	/**
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @return the step where the minimum displacement occurred.
+	 */
+	public final synchronized int getDispMinStep(final int dof) {
+		return dispMinStep[dof];
+	}
+
+	/**
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @return the maximum displacement.
+	 */
+	public final synchronized double getDispMax(final int dof) {
+		return dispMax[dof];
+	}
+
+	/**
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @return the step where the maximum displacement occurred.
+	 */
+	public final synchronized int getDispMaxStep(final int dof) {
+		return dispMaxStep[dof];
+	}
+
+	/**
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @return the minimum force.
+	 */
+	public final synchronized double getForceMin(final int dof) {
+		return forceMin[dof];
+	}
+
+	/**
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @return the step where the minimum force occurred.
+	 */
+	public final synchronized int getForceMinStep(final int dof) {
+		return forceMinStep[dof];
+	}
+
+	/**
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @return the maximum force.
+	 */
+	public final synchronized double getForceMax(final int dof) {
+		return forceMax[dof];
+	}
+
+	/**
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @return the step where the maximum force occurred.
+	 */
+	public final synchronized int getForceMaxStep(final int dof) {
+		return forceMaxStep[dof];
+	}
+
+	/**
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @return the RMS of the displacements.
+	 */
+	public final synchronized double getDispRms(final int dof) {
+		if (count == 0) {
+			return 0.0;
+		}
+		return Math.sqrt(dispSumSq[dof] / count);
+	}
+
+	/**
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @return the RMS of the forces.
+	 */
+	public final synchronized double getForceRms(final int dof) {
+		if (count == 0) {
+			return 0.0;
+		}
+		return Math.sqrt(forceSumSq[dof] / count);
+	}
+
+	/**
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @return the displacement of the last step.
+	 */
+	public final synchronized double getResidualDisp(final int dof) {
+		return lastDisp[dof];
+	}
+
+	/**
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @return the cumulative force-displacement work. For a cyclic history
+	 *         this is the hysteretic energy dissipated at the DOF.
+	 */
+	public final synchronized double getWork(final int dof) {
+		return work[dof];
+	}
+
+	/**
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @return the number of times the displacement changed sign.
+	 */
+	public final synchronized int getZeroCrossings(final int dof) {
+		return zeroCrossings[dof];
+	}
+
+	/**
+	 * Append a tab and a value to a row of the statistics file.
+	 * @param result
+	 *            The row.
+	 * @param value
+	 *            The value.
+	 */
+	private void append(final StringBuilder result, final double value) {
+		result.append('\t');
+		DoubleFormatter.append(value, result, numberBuffer);
+	}
+
+	/**
+	 * @return A tab separated table with one row per effective DOF.
+	 */
+	public final synchronized String toText() {
+		StringBuilder result = new StringBuilder();
+		result.append("# Steps " + firstStep + " to " + lastStep + " ("
+				+ count + " records)\n");
+		result.append("Dof\tDispMin\tDispMinStep\tDispMax\tDispMaxStep"
+				+ "\tDispRms\tResidualDisp\tForceMin\tForceMinStep"
+				+ "\tForceMax\tForceMaxStep\tForceRms\tWork\tZeroCrossings\n");
+		for (int i = 0; i < labels.length; i++) {
+			result.append(labels[i]);
+			append(result, dispMin[i]);
+			result.append('\t').append(dispMinStep[i]);
+			append(result, dispMax[i]);
+			result.append('\t').append(dispMaxStep[i]);
+			append(result, getDispRms(i));
+			append(result, lastDisp[i]);
+			append(result, forceMin[i]);
+			result.append('\t').append(forceMinStep[i]);
+			append(result, forceMax[i]);
+			result.append('\t').append(forceMaxStep[i]);
+			append(result, getForceRms(i));
+			append(result, work[i]);
+			result.append('\t').append(zeroCrossings[i]);
+			result.append("\n");
+		}
+		return result.toString();
+	}
+}
@@ -61,6 +61,10 @@ public class ProcessManagement implements ProcessManagmentI {
 	 * Environment variables for the command.
 	 */
 	private final Map<String, String> env = new HashMap<String, String>();
+	/**
+	 * Command line which wraps the command.
+	 */
+	private final List<String> launcher = new ArrayList<String>();
 	/**
 	 * Listener for error messages.
 	 */
@@ -156,9 +160,14 @@ public class ProcessManagement implements ProcessManagmentI {
 	 * @return The full command string.
 	 */
 	private String[] assemble() {
-		String[] result = new String[args.size() + 1];
-		result[0] = cmd;
-		int i = 1;
+		String[] result = new String[launcher.size() + args.size() + 1];
+		int i = 0;
+		for (String l : launcher) {
+			result[i] = l;
+			i++;
+		}
+		result[i] = cmd;
+		i++;
 		for (String a : args) {
 			result[i] = a;
 			i++;
@@ -213,6 +222,14 @@ public class ProcessManagement implements ProcessManagmentI {
 		return errPr;
 	}
 
+	/* (non-Javadoc)
+	 * @see org.nees.illinois.uisimcor.fem_executor.process.ProcessManagmentI#getLauncher()
+	 */
+	@Override
+	public final List<String> getLauncher() {
+		return launcher;
+	}
+
 	/**
 	 * @return the listenerWaitInterval
 	 */
@@ -268,6 +285,15 @@ public class ProcessManagement implements ProcessManagmentI {
 		this.cmd = checkWindowsCommand(cmd);
 	}
 
+	/* (non-Javadoc)
+	 * @see org.nees.illinois.uisimcor.fem_executor.process.ProcessManagmentI#setLauncher(java.util.List)
+	 */
+	@Override
+	public final void setLauncher(final List<String> launcher) {
+		this.launcher.clear();
+		this.launcher.addAll(launcher);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.nees.illinois.uisimcor.fem_executor.process.ProcessManagmentI#setWorkDir(java.lang.String)
 	 */
@@ -80,6 +80,11 @@ public class ProcessManagementWithStdin implements ProcessManagmentI {
 		return pm.getCmd();
 	}
 
+	@Override
+	public final List<String> getLauncher() {
+		return pm.getLauncher();
+	}
+
 	@Override
 	public final Map<String, String> getEnv() {
 		return pm.getEnv();
@@ -112,6 +117,11 @@ public class ProcessManagementWithStdin implements ProcessManagmentI {
 		return pm.hasExited();
 	}
 
+	@Override
+	public final void setLauncher(final List<String> launcher) {
+		pm.setLauncher(launcher);
+	}
+
 	@Override
 	public final void setWorkDir(final String workDir) {
 		pm.setWorkDir(workDir);
@@ -39,6 +39,12 @@ public interface ProcessManagmentI {
 	 */
 	List<String> getArgs();
 
+	/**
+	 * @return the command line which wraps the command. Empty if the command
+	 *         is run directly.
+	 */
+	List<String> getLauncher();
+
 	/**
 	 * @return the command.
 	 */
@@ -75,6 +81,13 @@ public interface ProcessManagmentI {
 	 */
 	void setWorkDir(String workDir);
 
+	/**
+	 * Wrap the command in a launcher such as mpiexec.
+	 * @param launcher
+	 *            Command line which is placed in front of the command.
+	 */
+	void setLauncher(List<String> launcher);
+
 	/**
 	 * Start the execution of the command.
 	 * @throws IOException
@@ -0,0 +1,66 @@
+package org.nees.illinois.uisimcor.fem_executor.process;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Wakes up threads that are waiting for responses from FEM processes. The
+ * response reading threads call {@link #signal()} whenever something arrives
+ * so that a coordinator can block instead of polling. A generation counter is
+ * used so that a signal that arrives between checking the responses and
+ * waiting is not lost.
+ * @author Michael Bletzinger
+ */
+public class ResponseSignal {
+	/**
+	 * Number of signals so far.
+	 */
+	private long generation = 0;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(ResponseSignal.class);
+
+	/**
+	 * Wait until a signal arrives that is newer than the given generation.
+	 * @param seen
+	 *            Generation read with {@link #getGeneration()} before the
+	 *            responses were last checked.
+	 * @param waitInMillisecs
+	 *            Maximum time to wait.
+	 * @return True if a new signal arrived. False on time out or interrupt.
+	 */
+	public final synchronized boolean awaitChange(final long seen,
+			final long waitInMillisecs) {
+		long deadline = System.currentTimeMillis() + waitInMillisecs;
+		while (generation == seen) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				log.debug("Interrupted while waiting for responses");
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the current generation.
+	 */
+	public final synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Wake up all waiting threads.
+	 */
+	public final synchronized void signal() {
+		generation++;
+		notifyAll();
+	}
+}
@@ -0,0 +1,24 @@
+package org.nees.illinois.uisimcor.fem_executor.publish;
+
+/**
+ * What a subscription does with a new snapshot when its queue is full. Only
+ * {@link #Block} lets the publisher wait for a subscriber and then only for a
+ * bounded time.
+ * @author Michael Bletzinger
+ */
+public enum OverflowPolicy {
+	/**
+	 * Discard the oldest queued snapshot to make room for the new one.
+	 */
+	DropOldest,
+	/**
+	 * Discard the new snapshot.
+	 */
+	DropNewest,
+	/**
+	 * Wait for the subscriber to make room. The wait is limited by the maximum
+	 * wait of the subscription after which the new snapshot is discarded so
+	 * that the step loop is never stalled indefinitely.
+	 */
+	Block
+}
@@ -0,0 +1,93 @@
+package org.nees.illinois.uisimcor.fem_executor.publish;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Pushes the responses of each completed substructure step to subscribers.
+ * Publishing copies the responses into pooled snapshots of each subscription.
+ * It only waits for subscriptions with the {@link OverflowPolicy#Block Block}
+ * policy and then no longer than their maximum wait so a slow subscriber
+ * cannot stall the step loop indefinitely.
+ * @author Michael Bletzinger
+ */
+public class StepPublisher {
+	/**
+	 * Current subscriptions.
+	 */
+	private final List<StepSubscription> subscriptions = new CopyOnWriteArrayList<StepSubscription>();
+
+	/**
+	 * @return True if anybody is subscribed.
+	 */
+	public final boolean hasSubscribers() {
+		return subscriptions.isEmpty() == false;
+	}
+
+	/**
+	 * Publish the responses of a substructure step.
+	 * @param step
+	 *            Step number.
+	 * @param address
+	 *            Substructure id.
+	 * @param disp
+	 *            Displacements at the effective DOFs.
+	 * @param force
+	 *            Forces at the effective DOFs.
+	 * @param started
+	 *            Time in nanoseconds when the step was started.
+	 * @param completed
+	 *            Time in nanoseconds when the responses were complete.
+	 */
+	public final void publish(final int step, final String address,
+			final double[] disp, final double[] force, final long started,
+			final long completed) {
+		for (StepSubscription s : subscriptions) {
+			s.offer(step, address, disp, force, started, completed);
+		}
+	}
+
+	/**
+	 * Add a subscriber.
+	 * @param capacity
+	 *            Maximum number of snapshots waiting for the subscriber.
+	 * @param policy
+	 *            What to do when the queue is full.
+	 * @return The subscription to read the snapshots from.
+	 */
+	public final StepSubscription subscribe(final int capacity,
+			final OverflowPolicy policy) {
+		StepSubscription result = new StepSubscription(capacity, policy);
+		subscriptions.add(result);
+		return result;
+	}
+
+	/**
+	 * Add a subscriber.
+	 * @param capacity
+	 *            Maximum number of snapshots waiting for the subscriber.
+	 * @param policy
+	 *            What to do when the queue is full.
+	 * @param maxWait
+	 *            Maximum time in milliseconds that publishing waits for room
+	 *            when the policy is {@link OverflowPolicy#Block}.
+	 * @return The subscription to read the snapshots from.
+	 */
+	public final StepSubscription subscribe(final int capacity,
+			final OverflowPolicy policy, final long maxWait) {
+		StepSubscription result = new StepSubscription(capacity, policy,
+				maxWait);
+		subscriptions.add(result);
+		return result;
+	}
+
+	/**
+	 * Remove a subscriber.
+	 * @param subscription
+	 *            The subscription returned by
+	 *            {@link #subscribe(int, OverflowPolicy)}.
+	 */
+	public final void unsubscribe(final StepSubscription subscription) {
+		subscriptions.remove(subscription);
+	}
+}
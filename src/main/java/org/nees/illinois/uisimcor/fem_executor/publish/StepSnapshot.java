@@ -0,0 +1,172 @@
+package org.nees.illinois.uisimcor.fem_executor.publish;
+
+/**
+ * Responses of one substructure at one step as delivered to a subscriber. The
+ * snapshot cannot be modified by the subscriber. Snapshots are pooled by their
+ * {@link StepSubscription} so a subscriber has to
+ * {@link StepSubscription#release(StepSnapshot) release} a snapshot when it is
+ * done with it.
+ * @author Michael Bletzinger
+ */
+public class StepSnapshot {
+	/**
+	 * Substructure id.
+	 */
+	private String address;
+	/**
+	 * Displacements at the effective DOFs. Only the first {@link #size} values
+	 * are valid.
+	 */
+	private double[] displacements = new double[0];
+	/**
+	 * Forces at the effective DOFs. Only the first {@link #size} values are
+	 * valid.
+	 */
+	private double[] forces = new double[0];
+	/**
+	 * Time in nanoseconds when the responses were published.
+	 */
+	private long publishedNanos;
+	/**
+	 * Number of valid values.
+	 */
+	private int size;
+	/**
+	 * Time in nanoseconds when the step was started.
+	 */
+	private long startedNanos;
+	/**
+	 * Step number.
+	 */
+	private int step;
+	/**
+	 * Time in nanoseconds when the responses were complete.
+	 */
+	private long completedNanos;
+
+	/**
+	 * Copy the responses of a step into this snapshot. The buffers are only
+	 * reallocated if they are too small.
+	 * @param stepNumber
+	 *            Step number.
+	 * @param addr
+	 *            Substructure id.
+	 * @param disp
+	 *            Displacements.
+	 * @param force
+	 *            Forces.
+	 * @param started
+	 *            Time in nanoseconds when the step was started.
+	 * @param completed
+	 *            Time in nanoseconds when the responses were complete.
+	 */
+	final void fill(final int stepNumber, final String addr,
+			final double[] disp, final double[] force, final long started,
+			final long completed) {
+		step = stepNumber;
+		address = addr;
+		size = disp.length;
+		if (displacements.length < size) {
+			displacements = new double[size];
+			forces = new double[size];
+		}
+		System.arraycopy(disp, 0, displacements, 0, size);
+		System.arraycopy(force, 0, forces, 0, size);
+		startedNanos = started;
+		completedNanos = completed;
+		publishedNanos = System.nanoTime();
+	}
+
+	/**
+	 * @return the substructure id.
+	 */
+	public final String getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} when the responses were complete.
+	 */
+	public final long getCompletedNanos() {
+		return completedNanos;
+	}
+
+	/**
+	 * @return time in nanoseconds between the publication and when the
+	 *         subscriber calls this function.
+	 */
+	public final long getDeliveryLatencyNanos() {
+		return System.nanoTime() - publishedNanos;
+	}
+
+	/**
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @return the displacement.
+	 */
+	public final double getDisplacement(final int dof) {
+		if (dof >= size) {
+			throw new ArrayIndexOutOfBoundsException(dof);
+		}
+		return displacements[dof];
+	}
+
+	/**
+	 * @return time in nanoseconds from the start of the step until the
+	 *         responses were complete.
+	 */
+	public final long getExecutionNanos() {
+		return completedNanos - startedNanos;
+	}
+
+	/**
+	 * @param dof
+	 *            Index of the effective DOF.
+	 * @return the force.
+	 */
+	public final double getForce(final int dof) {
+		if (dof >= size) {
+			throw new ArrayIndexOutOfBoundsException(dof);
+		}
+		return forces[dof];
+	}
+
+	/**
+	 * @return the number of effective DOFs.
+	 */
+	public final int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} when the step was started.
+	 */
+	public final long getStartedNanos() {
+		return startedNanos;
+	}
+
+	/**
+	 * @return the step number.
+	 */
+	public final int getStep() {
+		return step;
+	}
+
+	/**
+	 * Copy the displacements into a caller supplied array.
+	 * @param out
+	 *            Array of at least {@link #getSize()} values.
+	 */
+	public final void readDisplacements(final double[] out) {
+		System.arraycopy(displacements, 0, out, 0, size);
+	}
+
+	/**
+	 * Copy the forces into a caller supplied array.
+	 * @param out
+	 *            Array of at least {@link #getSize()} values.
+	 */
+	public final void readForces(final double[] out) {
+		System.arraycopy(forces, 0, out, 0, size);
+	}
+}
@@ -0,0 +1,248 @@
+package org.nees.illinois.uisimcor.fem_executor.publish;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded queue of step snapshots for one subscriber. When the queue is full
+ * the {@link OverflowPolicy} decides which snapshot is dropped and the drop is
+ * counted. Only the {@link OverflowPolicy#Block Block} policy makes the
+ * publisher wait and never longer than the maximum wait of the subscription.
+ * The subscriber can block while waiting for snapshots.
+ * @author Michael Bletzinger
+ */
+public class StepSubscription {
+	/**
+	 * Default maximum time in milliseconds that the publisher waits for a
+	 * blocking subscriber.
+	 */
+	public static final long DEFAULT_MAX_WAIT = 100;
+	/**
+	 * Snapshots that can be filled by the publisher.
+	 */
+	private final BlockingQueue<StepSnapshot> free;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(StepSubscription.class);
+	/**
+	 * What to do when the queue is full.
+	 */
+	private final OverflowPolicy policy;
+	/**
+	 * Number of snapshots that were dropped.
+	 */
+	private final AtomicLong dropped = new AtomicLong();
+	/**
+	 * Number of snapshots that were queued.
+	 */
+	private final AtomicLong delivered = new AtomicLong();
+	/**
+	 * Maximum time in milliseconds that the publisher waits for room when the
+	 * policy is {@link OverflowPolicy#Block}.
+	 */
+	private final long maxWait;
+	/**
+	 * Snapshots waiting for the subscriber.
+	 */
+	private final BlockingQueue<StepSnapshot> queue;
+
+	/**
+	 * @param capacity
+	 *            Maximum number of snapshots waiting for the subscriber.
+	 * @param policy
+	 *            What to do when the queue is full.
+	 */
+	public StepSubscription(final int capacity, final OverflowPolicy policy) {
+		this(capacity, policy, DEFAULT_MAX_WAIT);
+	}
+
+	/**
+	 * @param capacity
+	 *            Maximum number of snapshots waiting for the subscriber.
+	 * @param policy
+	 *            What to do when the queue is full.
+	 * @param maxWait
+	 *            Maximum time in milliseconds that the publisher waits for
+	 *            room when the policy is {@link OverflowPolicy#Block}.
+	 */
+	public StepSubscription(final int capacity, final OverflowPolicy policy,
+			final long maxWait) {
+		this.policy = policy;
+		this.maxWait = maxWait;
+		this.queue = new ArrayBlockingQueue<StepSnapshot>(capacity);
+		// One snapshot for the subscriber to hold while it works and one for
+		// the publisher to fill.
+		final int inFlight = 2;
+		this.free = new ArrayBlockingQueue<StepSnapshot>(capacity + inFlight);
+		for (int i = 0; i < capacity + inFlight; i++) {
+			free.add(new StepSnapshot());
+		}
+	}
+
+	/**
+	 * @return the number of snapshots that were queued for the subscriber.
+	 */
+	public final long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	/**
+	 * @return the number of snapshots that were dropped.
+	 */
+	public final long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return the number of snapshots waiting for the subscriber.
+	 */
+	public final int getQueueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * Wait for the next snapshot.
+	 * @param timeout
+	 *            Maximum time to wait.
+	 * @param unit
+	 *            Unit of the timeout.
+	 * @return The snapshot or null if the time out expired.
+	 * @throws InterruptedException
+	 *             if the wait is interrupted.
+	 */
+	public final StepSnapshot poll(final long timeout, final TimeUnit unit)
+			throws InterruptedException {
+		return queue.poll(timeout, unit);
+	}
+
+	/**
+	 * Queue a copy of step responses. Called from the publishing thread.
+	 * @param step
+	 *            Step number.
+	 * @param address
+	 *            Substructure id.
+	 * @param disp
+	 *            Displacements.
+	 * @param force
+	 *            Forces.
+	 * @param started
+	 *            Time in nanoseconds when the step was started.
+	 * @param completed
+	 *            Time in nanoseconds when the responses were complete.
+	 */
+	final void offer(final int step, final String address,
+			final double[] disp, final double[] force, final long started,
+			final long completed) {
+		if (policy.equals(OverflowPolicy.Block)) {
+			offerBlocking(step, address, disp, force, started, completed);
+			return;
+		}
+		StepSnapshot snap = free.poll();
+		if (snap == null && policy.equals(OverflowPolicy.DropOldest)) {
+			snap = queue.poll();
+			if (snap != null) {
+				dropped.incrementAndGet();
+			}
+		}
+		if (snap == null) {
+			// The subscriber is holding on to every snapshot.
+			dropped.incrementAndGet();
+			return;
+		}
+		snap.fill(step, address, disp, force, started, completed);
+		if (queue.offer(snap)) {
+			delivered.incrementAndGet();
+			return;
+		}
+		if (policy.equals(OverflowPolicy.DropOldest)) {
+			StepSnapshot oldest = queue.poll();
+			if (oldest != null) {
+				free.offer(oldest);
+			}
+			if (queue.offer(snap)) {
+				dropped.incrementAndGet();
+				delivered.incrementAndGet();
+				return;
+			}
+		}
+		free.offer(snap);
+		dropped.incrementAndGet();
+		if (log.isDebugEnabled()) {
+			log.debug("Dropped step " + step + " of " + address);
+		}
+	}
+
+	/**
+	 * Queue a copy of step responses and wait for room if the queue is full.
+	 * The whole wait is limited by the maximum wait after which the snapshot
+	 * is dropped.
+	 * @param step
+	 *            Step number.
+	 * @param address
+	 *            Substructure id.
+	 * @param disp
+	 *            Displacements.
+	 * @param force
+	 *            Forces.
+	 * @param started
+	 *            Time in nanoseconds when the step was started.
+	 * @param completed
+	 *            Time in nanoseconds when the responses were complete.
+	 */
+	private void offerBlocking(final int step, final String address,
+			final double[] disp, final double[] force, final long started,
+			final long completed) {
+		long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(maxWait);
+		StepSnapshot snap = null;
+		try {
+			snap = free.poll(maxWait, TimeUnit.MILLISECONDS);
+			if (snap != null) {
+				snap.fill(step, address, disp, force, started, completed);
+				long remaining = Math.max(0, deadline - System.nanoTime());
+				if (queue.offer(snap, remaining, TimeUnit.NANOSECONDS)) {
+					delivered.incrementAndGet();
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			log.debug("Interrupted while waiting for the subscriber");
+			Thread.currentThread().interrupt();
+		}
+		if (snap != null) {
+			free.offer(snap);
+		}
+		dropped.incrementAndGet();
+		if (log.isDebugEnabled()) {
+			log.debug("Dropped step " + step + " of " + address + " after "
+					+ maxWait + " ms");
+		}
+	}
+
+	/**
+	 * Return a snapshot to the pool once the subscriber is done with it.
+	 * @param snap
+	 *            Snapshot received from this subscription.
+	 */
+	public final void release(final StepSnapshot snap) {
+		if (free.offer(snap) == false) {
+			log.error("Snapshot was released twice or to the wrong subscription");
+		}
+	}
+
+	/**
+	 * Wait for the next snapshot.
+	 * @return The snapshot.
+	 * @throws InterruptedException
+	 *             if the wait is interrupted.
+	 */
+	public final StepSnapshot take() throws InterruptedException {
+		return queue.take();
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * Classes which push step results to live subscribers such as dashboards.
+ */
+/**
+ * @author Michael Bletzinger
+ *
+ */
+package org.nees.illinois.uisimcor.fem_executor.publish;
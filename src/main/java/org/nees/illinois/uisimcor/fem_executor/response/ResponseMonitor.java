@@ -5,6 +5,7 @@ import java.util.Observer;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
+import org.nees.illinois.uisimcor.fem_executor.process.ResponseSignal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 /**
@@ -22,6 +23,25 @@ private final Logger log = LoggerFactory.getLogger(ResponseMonitor.class);
  * Queue which transmits step strings.
  */
 	private final BlockingQueue<String> extracted = new LinkedBlockingQueue<String>();
+	/**
+	 * Signal raised whenever a step string has been queued. Can be null.
+	 */
+	private final ResponseSignal signal;
+
+	/**
+	 * Create a monitor without a signal.
+	 */
+	public ResponseMonitor() {
+		this(null);
+	}
+
+	/**
+	 * @param signal
+	 *            Signal raised whenever a step string has been queued.
+	 */
+	public ResponseMonitor(final ResponseSignal signal) {
+		this.signal = signal;
+	}
 	/**
 		 * @return the steps
 		 */
@@ -41,6 +61,9 @@ private final Logger log = LoggerFactory.getLogger(ResponseMonitor.class);
 		} catch (InterruptedException e) {
 			log.debug("Interrupted");
 		}
+		if (signal != null) {
+			signal.signal();
+		}
 	}
 
 }
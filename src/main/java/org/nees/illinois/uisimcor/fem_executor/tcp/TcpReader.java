@@ -6,24 +6,37 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.nees.illinois.uisimcor.fem_executor.execute.FemStatus;
 import org.nees.illinois.uisimcor.fem_executor.process.AbortableI;
+import org.nees.illinois.uisimcor.fem_executor.process.ResponseSignal;
+import org.nees.illinois.uisimcor.fem_executor.utils.MtxUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Class to read data from an OpenSees TCP socket.
+ * Class to read data from an OpenSees TCP socket. Each record is parsed
+ * straight into a double array. Arrays which the consumer has finished with
+ * can be handed back with {@link #recycle(double[])} and are reused for later
+ * records of the same size so that the receive path does not allocate per
+ * value. When a status is set the reader sets its status flag itself as soon
+ * as all records of a step have been queued.
  * @author Michael Bletzinger
  */
 public class TcpReader extends Thread implements AbortableI {
+	/**
+	 * Number of bytes in a double.
+	 */
+	private static final int DOUBLE_BYTES = 8;
 	/**
 	 * @return the doublesQ
 	 */
-	public final BlockingQueue<List<Double>> getDoublesQ() {
+	public final BlockingQueue<double[]> getDoublesQ() {
 		return doublesQ;
 	}
 
@@ -39,9 +52,40 @@ public class TcpReader extends Thread implements AbortableI {
 	 */
 	private volatile boolean quit = false;
 	/**
-	 * Queue to be filled with double lists.
+	 * Queue to be filled with records.
+	 */
+	private final BlockingQueue<double[]> doublesQ = new LinkedBlockingQueue<double[]>();
+	/**
+	 * Records handed back by the consumer for reuse.
+	 */
+	private final Queue<double[]> pool = new ConcurrentLinkedQueue<double[]>();
+	/**
+	 * Buffer for the bytes of one number.
+	 */
+	private final ByteBuffer numberBuf = ByteBuffer.allocate(DOUBLE_BYTES).order(
+			ByteOrder.LITTLE_ENDIAN);
+	/**
+	 * Number of records queued since the step started.
+	 */
+	private final AtomicInteger stepCount = new AtomicInteger(0);
+	/**
+	 * Status which is told when all records of a step have arrived. Can be
+	 * null.
 	 */
-	private final BlockingQueue<List<Double>> doublesQ = new LinkedBlockingQueue<List<Double>>();
+	private volatile FemStatus status;
+	/**
+	 * Flag of the status which is set when all records of a step have
+	 * arrived.
+	 */
+	private volatile int statusFlag;
+	/**
+	 * Number of records sent for each step.
+	 */
+	private volatile int stepRecords;
+	/**
+	 * Signal raised whenever a record has been queued. Can be null.
+	 */
+	private volatile ResponseSignal signal;
 	/**
 	 * Input stream for the client connection.
 	 */
@@ -153,14 +197,13 @@ public class TcpReader extends Thread implements AbortableI {
 			log.error("Size is zero");
 			return;
 		}
-		long sizei = Math.round(size);
-//		log.debug("Reading " + sizei + " numbers");
-		List<Double> list = new ArrayList<Double>();
+		int sizei = (int) Math.round(size);
+		double[] record = take(sizei);
 		for (int n = 0; n < sizei; n++) {
 			try {
-				double number = readBytesFor1Number();
-				list.add(new Double(number));
+				record[n] = readBytesFor1Number();
 			} catch (IOException e) {
+				recycle(record);
 				if (e instanceof SocketTimeoutException) {
 					log.debug("socket accept timed out");
 					return;
@@ -176,13 +219,49 @@ public class TcpReader extends Thread implements AbortableI {
 			}
 		}
 		try {
-			doublesQ.put(list);
-			log.debug("Read " + list + " record");
+			doublesQ.put(record);
+			if (log.isDebugEnabled()) {
+				log.debug("Read " + MtxUtils.array2String(record) + " record");
+			}
+			FemStatus st = status;
+			if (st != null && stepCount.incrementAndGet() == stepRecords) {
+				st.setFlags(statusFlag);
+			}
+			ResponseSignal sig = signal;
+			if (sig != null) {
+				sig.signal();
+			}
 		} catch (InterruptedException e) {
 			log.debug("Queue put was interrupted");
 		}
 	}
 
+	/**
+	 * Hand a record back for reuse once it is no longer referenced.
+	 * @param record
+	 *            Record taken from {@link #getDoublesQ()}.
+	 */
+	public final void recycle(final double[] record) {
+		pool.offer(record);
+	}
+
+	/**
+	 * Take a record array from the pool or create one.
+	 * @param size
+	 *            Number of values in the record.
+	 * @return An array of the size.
+	 */
+	private double[] take(final int size) {
+		double[] result = pool.poll();
+		while (result != null && result.length != size) {
+			result = pool.poll();
+		}
+		if (result == null) {
+			result = new double[size];
+		}
+		return result;
+	}
+
 	/**
 	 * Read a double from the client connection stream.
 	 * @return the double.
@@ -190,39 +269,47 @@ public class TcpReader extends Thread implements AbortableI {
 	 *             if the input stream is broken.
 	 */
 	private double readBytesFor1Number() throws IOException {
-		final int numberOfBytesInDouble = 8;
-		byte[] number = new byte[numberOfBytesInDouble];
+		byte[] number = numberBuf.array();
 		int total = 0;
-		// log.debug("Attempting to read");
-		while (total < numberOfBytesInDouble) {
-			byte[] buf = new byte[numberOfBytesInDouble - total];
-			int count = 0;
-			count = in.read(buf);
+		while (total < DOUBLE_BYTES) {
+			int count = in.read(number, total, DOUBLE_BYTES - total);
 			if (count < 0) {
 				// End of stream reached.
 				throw new SocketException("End of stream reached");
 			}
-			for (int b = 0; b < count; b++) {
-				number[total + b] = buf[b];
-			}
 			total += count;
 		}
-		return little2BigEndian(number);
+		return numberBuf.getDouble(0);
+	}
+
+	/**
+	 * Start counting the records of a new step.
+	 */
+	public final void resetStepCount() {
+		stepCount.set(0);
+	}
+
+	/**
+	 * @param status
+	 *            Status to tell when all records of a step have arrived.
+	 * @param flag
+	 *            Flag of the status to set.
+	 * @param records
+	 *            Number of records sent for each step.
+	 */
+	public final void setStatus(final FemStatus status, final int flag,
+			final int records) {
+		this.statusFlag = flag;
+		this.stepRecords = records;
+		this.status = status;
 	}
 
 	/**
-	 * Convert endian of a double to network order.
-	 * @param number
-	 *            bytes of the number to be converted.
-	 * @return The resulting double.
+	 * @param signal
+	 *            Signal to raise whenever a record has been queued.
 	 */
-	private double little2BigEndian(final byte[] number) {
-		final int numberOfBytesInDouble = 8;
-		ByteBuffer bnum = ByteBuffer.allocate(numberOfBytesInDouble);
-		bnum.order(ByteOrder.LITTLE_ENDIAN);
-		bnum.put(number);
-		bnum.flip();
-		return bnum.getDouble();
+	public final void setSignal(final ResponseSignal signal) {
+		this.signal = signal;
 	}
 
 	@Override
@@ -0,0 +1,414 @@
+package org.nees.illinois.uisimcor.fem_executor.utils;
+
+import java.math.BigInteger;
+
+/**
+ * Utility class which writes doubles as the shortest decimal text that parses
+ * back to the same double. The digits are found with the Schubfach algorithm
+ * of R. Giulietti, which only needs a few 64 bit multiplications per value.
+ * The text is written straight into a caller supplied char buffer so that
+ * records can be built without creating intermediate strings.
+ * <p>
+ * Values with a decimal exponent from -3 to 6 are written as plain decimals
+ * such as <em>0.00125</em> or <em>1500.0</em>. All other values are written
+ * in scientific notation such as <em>1.30203E-7</em>. Infinities and NaN are
+ * written the same way as {@link Double#toString(double)}. The methods have no
+ * state and can be called from any thread.
+ * </p>
+ * @author Michael Bletzinger
+ */
+public final class DoubleFormatter {
+	/**
+	 * Largest number of chars written for one value.
+	 */
+	public static final int MAX_CHARS = 26;
+	/**
+	 * Name used in place of a {@link java.text.DecimalFormat} pattern to
+	 * select this formatter.
+	 */
+	public static final String NAME = "shortest";
+	/**
+	 * Smallest significand of a normal double.
+	 */
+	private static final long C_MIN = 1L << 52;
+	/**
+	 * Smallest power of ten in the table.
+	 */
+	private static final int K_MIN = -324;
+	/**
+	 * Largest power of ten in the table.
+	 */
+	private static final int K_MAX = 292;
+	/**
+	 * Lower 63 bits.
+	 */
+	private static final long MASK_63 = 0x7fffffffffffffffL;
+	/**
+	 * Number of significand bits including the hidden bit.
+	 */
+	private static final int P = 53;
+	/**
+	 * Exponent of the smallest subnormal.
+	 */
+	private static final int Q_MIN = -1074;
+	/**
+	 * Upper 63 bits of the scaled powers of ten.
+	 */
+	private static final long[] G1;
+	/**
+	 * Lower 63 bits of the scaled powers of ten.
+	 */
+	private static final long[] G0;
+
+	static {
+		final int gBits = 125;
+		G1 = new long[K_MAX - K_MIN + 1];
+		G0 = new long[K_MAX - K_MIN + 1];
+		for (int k = K_MIN; k <= K_MAX; k++) {
+			int r = flog2pow10(-k) - gBits;
+			BigInteger g;
+			if (k <= 0) {
+				g = BigInteger.TEN.pow(-k);
+				g = (r >= 0 ? g.shiftRight(r) : g.shiftLeft(-r));
+			} else {
+				g = BigInteger.ONE.shiftLeft(-r).divide(BigInteger.TEN.pow(k));
+			}
+			g = g.add(BigInteger.ONE);
+			G1[k - K_MIN] = g.shiftRight(Long.SIZE - 1).longValue();
+			G0[k - K_MIN] = g.longValue() & MASK_63;
+		}
+	}
+
+	/**
+	 * Format a value.
+	 * @param value
+	 *            The value.
+	 * @return The shortest round trip text.
+	 */
+	public static String format(final double value) {
+		char[] buf = new char[MAX_CHARS];
+		int end = format(value, buf, 0);
+		return new String(buf, 0, end);
+	}
+
+	/**
+	 * Write a value into a buffer.
+	 * @param value
+	 *            The value.
+	 * @param buf
+	 *            Buffer with at least {@link #MAX_CHARS} chars after the
+	 *            offset.
+	 * @param offset
+	 *            Position of the first char.
+	 * @return Position after the last char.
+	 */
+	public static int format(final double value, final char[] buf,
+			final int offset) {
+		final int bqMask = 0x7ff;
+		long bits = Double.doubleToRawLongBits(value);
+		long t = bits & (C_MIN - 1);
+		int bq = (int) (bits >>> (P - 1)) & bqMask;
+		if (bq == bqMask) {
+			return putString(t != 0 ? "NaN" : (bits < 0 ? "-Infinity"
+					: "Infinity"), buf, offset);
+		}
+		int pos = offset;
+		if (bits < 0) {
+			buf[pos++] = '-';
+		}
+		if (bq != 0) {
+			int mq = -Q_MIN + 1 - bq;
+			long c = C_MIN | t;
+			if (0 < mq && mq < P) {
+				long f = c >> mq;
+				if (f << mq == c) {
+					return putDecimal(f, 0, buf, pos);
+				}
+			}
+			return toDecimal(-mq, c, buf, pos);
+		}
+		if (t != 0) {
+			return toDecimal(Q_MIN, t, buf, pos);
+		}
+		return putString("0.0", buf, pos);
+	}
+
+	/**
+	 * Append a value to a string builder.
+	 * @param value
+	 *            The value.
+	 * @param result
+	 *            The builder.
+	 * @param buf
+	 *            Scratch buffer of at least {@link #MAX_CHARS} chars.
+	 */
+	public static void append(final double value, final StringBuilder result,
+			final char[] buf) {
+		int end = format(value, buf, 0);
+		result.append(buf, 0, end);
+	}
+
+	/**
+	 * Floor of log10(2^e).
+	 * @param e
+	 *            Exponent between -5456721 and 5456721.
+	 * @return The floor.
+	 */
+	private static int flog10pow2(final int e) {
+		final long mult = 661971961083L;
+		final int shift = 41;
+		return (int) (e * mult >> shift);
+	}
+
+	/**
+	 * Floor of log10(3/4 2^e).
+	 * @param e
+	 *            Exponent between -2956395 and 2956395.
+	 * @return The floor.
+	 */
+	private static int flog10threeQuartersPow2(final int e) {
+		final long mult = 661971961083L;
+		final long add = -274743187321L;
+		final int shift = 41;
+		return (int) (e * mult + add >> shift);
+	}
+
+	/**
+	 * Floor of log2(10^e).
+	 * @param e
+	 *            Exponent between -1233 and 1233.
+	 * @return The floor.
+	 */
+	private static int flog2pow10(final int e) {
+		final long mult = 913124641741L;
+		final int shift = 38;
+		return (int) (e * mult >> shift);
+	}
+
+	/**
+	 * Upper 64 bits of the 128 bit product of two signed longs.
+	 * @param x
+	 *            First factor.
+	 * @param y
+	 *            Second factor.
+	 * @return The upper bits.
+	 */
+	private static long multiplyHigh(final long x, final long y) {
+		final long low = 0xffffffffL;
+		final int half = 32;
+		long x1 = x >> half;
+		long x2 = x & low;
+		long y1 = y >> half;
+		long y2 = y & low;
+		long z2 = x2 * y2;
+		long t = x1 * y2 + (z2 >>> half);
+		long z1 = t & low;
+		long z0 = t >> half;
+		z1 += x2 * y1;
+		return x1 * y1 + z0 + (z1 >> half);
+	}
+
+	/**
+	 * Number of decimal digits of a positive long.
+	 * @param f
+	 *            The long.
+	 * @return The number of digits.
+	 */
+	private static int digits(final long f) {
+		int n = 1;
+		long limit = 10;
+		final int maxDigits = 19;
+		while (n < maxDigits && f >= limit) {
+			n++;
+			limit *= 10;
+		}
+		return n;
+	}
+
+	/**
+	 * Write the decimal f 10^e.
+	 * @param significand
+	 *            Positive decimal significand.
+	 * @param exponent
+	 *            Decimal exponent.
+	 * @param buf
+	 *            Destination buffer.
+	 * @param offset
+	 *            Position of the first char.
+	 * @return Position after the last char.
+	 */
+	private static int putDecimal(final long significand, final int exponent,
+			final char[] buf, final int offset) {
+		final int plainMin = -3;
+		final int plainMax = 7;
+		long f = significand;
+		int e = exponent;
+		while (f % 10 == 0) {
+			f /= 10;
+			e++;
+		}
+		int n = digits(f);
+		int exp = e + n - 1;
+		int pos = offset;
+		if (exp >= 0 && exp < plainMax) {
+			int whole = exp + 1;
+			if (n <= whole) {
+				putDigits(f, n, buf, pos + n);
+				pos += n;
+				for (int i = n; i < whole; i++) {
+					buf[pos++] = '0';
+				}
+				buf[pos++] = '.';
+				buf[pos++] = '0';
+				return pos;
+			}
+			putDigits(f, n, buf, pos + n + 1);
+			System.arraycopy(buf, pos + 1, buf, pos, whole);
+			buf[pos + whole] = '.';
+			return pos + n + 1;
+		}
+		if (exp < 0 && exp >= plainMin) {
+			buf[pos++] = '0';
+			buf[pos++] = '.';
+			for (int i = exp + 1; i < 0; i++) {
+				buf[pos++] = '0';
+			}
+			putDigits(f, n, buf, pos + n);
+			return pos + n;
+		}
+		putDigits(f, n, buf, pos + n + 1);
+		buf[pos] = buf[pos + 1];
+		buf[pos + 1] = '.';
+		pos += n + 1;
+		if (n == 1) {
+			buf[pos++] = '0';
+		}
+		buf[pos++] = 'E';
+		int x = exp;
+		if (x < 0) {
+			buf[pos++] = '-';
+			x = -x;
+		}
+		int xn = digits(x);
+		putDigits(x, xn, buf, pos + xn);
+		return pos + xn;
+	}
+
+	/**
+	 * Write the digits of a number backwards from an end position.
+	 * @param number
+	 *            The number.
+	 * @param n
+	 *            Number of digits.
+	 * @param buf
+	 *            Destination buffer.
+	 * @param end
+	 *            Position after the last digit.
+	 */
+	private static void putDigits(final long number, final int n,
+			final char[] buf, final int end) {
+		long f = number;
+		for (int i = end - 1; i >= end - n; i--) {
+			buf[i] = (char) ('0' + (int) (f % 10));
+			f /= 10;
+		}
+	}
+
+	/**
+	 * Write a fixed string.
+	 * @param str
+	 *            The string.
+	 * @param buf
+	 *            Destination buffer.
+	 * @param offset
+	 *            Position of the first char.
+	 * @return Position after the last char.
+	 */
+	private static int putString(final String str, final char[] buf,
+			final int offset) {
+		str.getChars(0, str.length(), buf, offset);
+		return offset + str.length();
+	}
+
+	/**
+	 * Round an odd multiple of the scaled power of ten.
+	 * @param g1
+	 *            Upper bits of the power of ten.
+	 * @param g0
+	 *            Lower bits of the power of ten.
+	 * @param cp
+	 *            Scaled significand.
+	 * @return The product rounded to odd.
+	 */
+	private static long rop(final long g1, final long g0, final long cp) {
+		final int top = 63;
+		long x1 = multiplyHigh(g0, cp);
+		long y0 = g1 * cp;
+		long y1 = multiplyHigh(g1, cp);
+		long z = (y0 >>> 1) + x1;
+		long vbp = y1 + (z >>> top);
+		return vbp | (z & MASK_63) + MASK_63 >>> top;
+	}
+
+	/**
+	 * Find the shortest decimal in the rounding interval of c 2^q and write
+	 * it.
+	 * @param q
+	 *            Binary exponent.
+	 * @param c
+	 *            Binary significand.
+	 * @param buf
+	 *            Destination buffer.
+	 * @param offset
+	 *            Position of the first char.
+	 * @return Position after the last char.
+	 */
+	private static int toDecimal(final int q, final long c,
+			final char[] buf, final int offset) {
+		final int hundred = 100;
+		final long tenth = 115292150460684698L << 4;
+		int out = (int) c & 1;
+		long cb = c << 2;
+		long cbr = cb + 2;
+		long cbl;
+		int k;
+		if (c != C_MIN || q == Q_MIN) {
+			cbl = cb - 2;
+			k = flog10pow2(q);
+		} else {
+			cbl = cb - 1;
+			k = flog10threeQuartersPow2(q);
+		}
+		int h = q + flog2pow10(-k) + 2;
+		long g1 = G1[k - K_MIN];
+		long g0 = G0[k - K_MIN];
+		long vb = rop(g1, g0, cb << h);
+		long vbl = rop(g1, g0, cbl << h);
+		long vbr = rop(g1, g0, cbr << h);
+		long s = vb >> 2;
+		if (s >= hundred) {
+			long sp10 = 10 * multiplyHigh(s, tenth);
+			long tp10 = sp10 + 10;
+			boolean upin = vbl + out <= sp10 << 2;
+			boolean wpin = (tp10 << 2) + out <= vbr;
+			if (upin != wpin) {
+				return putDecimal(upin ? sp10 : tp10, k, buf, offset);
+			}
+		}
+		long t = s + 1;
+		boolean uin = vbl + out <= s << 2;
+		boolean win = (t << 2) + out <= vbr;
+		if (uin != win) {
+			return putDecimal(uin ? s : t, k, buf, offset);
+		}
+		long cmp = vb - (s + t << 1);
+		boolean lower = cmp < 0 || (cmp == 0 && (s & 1) == 0);
+		return putDecimal(lower ? s : t, k, buf, offset);
+	}
+
+	/**
+	 * Prevent class from being constructed.
+	 */
+	private DoubleFormatter() {
+	}
+}
@@ -0,0 +1,50 @@
+package org.nees.illinois.uisimcor.fem_executor.utils;
+
+/**
+ * Catchable exception for a substructure step that could not be completed.
+ * @author Michael Bletzinger
+ */
+public class StepFailedException extends Exception {
+
+	/**
+	 * Required by Eclipse.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 *
+	 */
+	public StepFailedException() {
+		super();
+	}
+
+	/**
+	 * Replicated Constructor.
+	 * @param message
+	 *            Message associated with the exception.
+	 */
+	public StepFailedException(final String message) {
+		super(message);
+	}
+
+	/**
+	 * Replicated Constructor.
+	 * @param message
+	 *            Message associated with the exception.
+	 * @param cause
+	 *            Chained exception.
+	 */
+	public StepFailedException(final String message, final Throwable cause) {
+		super(message, cause);
+	}
+
+	/**
+	 * Replicated Constructor.
+	 * @param cause
+	 *            Chained exception.
+	 */
+	public StepFailedException(final Throwable cause) {
+		super(cause);
+	}
+
+}
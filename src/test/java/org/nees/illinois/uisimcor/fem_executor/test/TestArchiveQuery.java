@@ -0,0 +1,303 @@
+package org.nees.illinois.uisimcor.fem_executor.test;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveColumns;
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveQueryFactory;
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveQueryI;
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveSeries;
+import org.nees.illinois.uisimcor.fem_executor.archiving.BinaryArchiveReader;
+import org.nees.illinois.uisimcor.fem_executor.archiving.BinaryDataArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.DataArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.HeaderArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.MappedTextArchiveReader;
+import org.nees.illinois.uisimcor.fem_executor.archiving.TextArchiveIndex;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.test.utils.CreateRefSubstructureConfig;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test the memory mapped queries on binary and text archives and the reuse of
+ * the text index.
+ * @author Michael Bletzinger
+ */
+@Test(groups = { "data" })
+public class TestArchiveQuery {
+	/**
+	 * Column labels and units.
+	 */
+	private ArchiveColumns cols;
+	/**
+	 * Temporary directory for the archives.
+	 */
+	private File dir;
+	/**
+	 * Number of steps to archive.
+	 */
+	private final int numSteps = 3000;
+	/**
+	 * Step after which only even steps are archived.
+	 */
+	private final int skipAfter = 2000;
+	/**
+	 * Number of threads for the parallel scans.
+	 */
+	private final int threads = 4;
+
+	/**
+	 * Remove the archives.
+	 */
+	@AfterMethod
+	public final void afterMethod() {
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Write the binary and text archives.
+	 * @throws IOException
+	 *             if the directory cannot be created.
+	 */
+	@BeforeMethod
+	public final void beforeMethod() throws IOException {
+		dir = File.createTempFile("ArchiveQuery", "");
+		Assert.assertTrue(dir.delete());
+		Assert.assertTrue(dir.mkdir());
+		CreateRefSubstructureConfig cfgR = new CreateRefSubstructureConfig(
+				"MDL-01");
+		SubstructureDao scfg = cfgR.getConfig();
+		cols = new ArchiveColumns(scfg, false);
+		ArchiveDao policy = new ArchiveDao();
+		final int group = 100;
+		policy.setFlushRecords(group);
+		BinaryDataArchive bin = new BinaryDataArchive(path("Displacements"),
+				cols, policy);
+		DataArchive txt = new DataArchive(path("Displacements"), policy);
+		new HeaderArchive(path("Displacements"), cols).write();
+		write(bin, txt, 1, numSteps);
+		bin.close();
+		txt.close();
+	}
+
+	/**
+	 * Check the queries of a reader.
+	 * @param q
+	 *            The reader.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	private void check(final ArchiveQueryI q) throws IOException {
+		Assert.assertEquals(q.getColumns().getLabels(), cols.getLabels());
+		Assert.assertEquals(q.getColumns().getUnits(), cols.getUnits());
+		int column = q.getColumns().indexOf(cols.getLabels()[1]);
+		Assert.assertEquals(column, 1);
+		// The whole archive is long enough to be read in parallel chunks.
+		ArchiveSeries all = q.history(column, 0, numSteps + 1);
+		Assert.assertEquals(all.size(), skipAfter + (numSteps - skipAfter) / 2);
+		for (int i = 0; i < all.size(); i++) {
+			int s = all.getSteps()[i];
+			Assert.assertEquals(all.getValues()[i], value(s, column), 1e-12);
+		}
+		final int from = 1990;
+		final int to = 2010;
+		ArchiveSeries part = q.history(column, from, to);
+		final int expected = 11 + 5;
+		Assert.assertEquals(part.size(), expected);
+		Assert.assertEquals(part.getSteps()[0], from);
+		Assert.assertEquals(part.getSteps()[expected - 1], to);
+		Assert.assertEquals(q.history(column, numSteps + 1, numSteps + 2)
+				.size(), 0);
+		final int step = 1500;
+		double[] row = q.atStep(step);
+		for (int c = 0; c < cols.size(); c++) {
+			Assert.assertEquals(row[c], value(step, c), 1e-12);
+		}
+		Assert.assertNull(q.atStep(skipAfter + 1));
+		Assert.assertNull(q.atStep(numSteps + 1));
+	}
+
+	/**
+	 * @param name
+	 *            Archive name.
+	 * @return the path of the archive in the temporary directory.
+	 */
+	private String path(final String name) {
+		return new File(dir, name).getPath();
+	}
+
+	/**
+	 * Query the binary archive.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	@Test
+	public final void testBinaryQueries() throws IOException {
+		ArchiveQueryFactory factory = new ArchiveQueryFactory(threads);
+		BinaryArchiveReader q = (BinaryArchiveReader) factory.open(new File(
+				path("Displacements") + ".bin"));
+		final int threshold = 100;
+		q.setParallelThreshold(threshold);
+		check(q);
+		q.close();
+	}
+
+	/**
+	 * Query a binary archive whose steps do not ascend because some of them
+	 * were repeated. The queries must give the same answers after the index
+	 * is rebuilt from the frames.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	@Test
+	public final void testRepeatedSteps() throws IOException {
+		ArchiveDao policy = new ArchiveDao();
+		final int group = 100;
+		policy.setFlushRecords(group);
+		BinaryDataArchive bin = new BinaryDataArchive(path("Repeated"), cols,
+				policy);
+		final int firstRun = 200;
+		final int repeatFrom = 150;
+		final int secondRun = 250;
+		final double offset = 10.0;
+		double[] v = new double[cols.size()];
+		for (int s = 1; s <= firstRun; s++) {
+			for (int c = 0; c < v.length; c++) {
+				v[c] = value(s, c);
+			}
+			bin.write(s, v);
+		}
+		for (int s = repeatFrom; s <= secondRun; s++) {
+			for (int c = 0; c < v.length; c++) {
+				v[c] = value(s, c) + offset;
+			}
+			bin.write(s, v);
+		}
+		bin.close();
+		File path = new File(path("Repeated") + ".bin");
+		File idx = new File(path("Repeated") + ".idx");
+		for (int pass = 0; pass < 2; pass++) {
+			BinaryArchiveReader q = new BinaryArchiveReader(path, threads);
+			final int step = 160;
+			double[] row = q.atStep(step);
+			for (int c = 0; c < cols.size(); c++) {
+				Assert.assertEquals(row[c], value(step, c) + offset, 1e-12);
+			}
+			Assert.assertEquals(q.findFrame(step), step - 1);
+			Assert.assertEquals(q.atStep(firstRun + 1)[0], value(firstRun + 1,
+					0) + offset, 1e-12);
+			Assert.assertEquals(q.atStep(1)[0], value(1, 0), 1e-12);
+			Assert.assertNull(q.atStep(secondRun + 1));
+			final int from = 140;
+			final int to = 160;
+			ArchiveSeries part = q.history(0, from, to);
+			final int once = to - from + 1;
+			final int twice = to - repeatFrom + 1;
+			Assert.assertEquals(part.size(), once + twice);
+			for (int i = 0; i < part.size(); i++) {
+				int s = part.getSteps()[i];
+				double expected = value(s, 0);
+				if (i >= once) {
+					expected += offset;
+				}
+				Assert.assertEquals(s, i < once ? from + i : repeatFrom + i
+						- once);
+				Assert.assertEquals(part.getValues()[i], expected, 1e-12);
+			}
+			q.close();
+			idx.delete();
+		}
+		Assert.assertFalse(idx.exists());
+	}
+
+	/**
+	 * Query the text archive, reuse its index and extend the index after more
+	 * steps are appended.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	@Test
+	public final void testTextQueries() throws IOException {
+		File txt = new File(path("Displacements") + ".txt");
+		final int minChunk = 4096;
+		TextArchiveIndex serial = TextArchiveIndex.load(txt, 1, minChunk);
+		Assert.assertTrue(serial.getIndexPath().delete());
+		TextArchiveIndex parallel = TextArchiveIndex.load(txt, threads,
+				minChunk);
+		Assert.assertEquals(parallel.getCount(), serial.getCount());
+		Assert.assertEquals(parallel.getIndexedLength(), txt.length());
+		for (int i = 0; i < serial.getCount(); i++) {
+			Assert.assertEquals(parallel.getStep(i), serial.getStep(i));
+			Assert.assertEquals(parallel.getOffset(i), serial.getOffset(i));
+		}
+		long saved = parallel.getIndexPath().lastModified();
+
+		ArchiveQueryFactory factory = new ArchiveQueryFactory(threads);
+		MappedTextArchiveReader q = (MappedTextArchiveReader) factory
+				.open(txt);
+		Assert.assertEquals(q.getIndex().getIndexPath().lastModified(), saved);
+		final int threshold = 100;
+		q.setParallelThreshold(threshold);
+		check(q);
+		q.close();
+
+		final int more = 10;
+		DataArchive append = new DataArchive(path("Displacements"));
+		write(null, append, numSteps + 1, numSteps + more);
+		append.close();
+		TextArchiveIndex extended = TextArchiveIndex.load(txt, threads,
+				minChunk);
+		Assert.assertEquals(extended.getCount(), parallel.getCount() + more
+				/ 2);
+		Assert.assertEquals(extended.getIndexedLength(), txt.length());
+		Assert.assertEquals(extended.getStep(extended.getCount() - 1),
+				numSteps + more);
+	}
+
+	/**
+	 * Value of a column at a step.
+	 * @param step
+	 *            Step number.
+	 * @param column
+	 *            Column index.
+	 * @return The value.
+	 */
+	private double value(final int step, final int column) {
+		return Math.sin(step * 0.01 + column) * (column + 1);
+	}
+
+	/**
+	 * Write a range of steps. Only even steps are written after
+	 * {@link #skipAfter}.
+	 * @param bin
+	 *            Binary archive. May be null.
+	 * @param txt
+	 *            Text archive.
+	 * @param first
+	 *            First step.
+	 * @param last
+	 *            Last step.
+	 */
+	private void write(final BinaryDataArchive bin, final DataArchive txt,
+			final int first, final int last) {
+		double[] v = new double[cols.size()];
+		for (int s = first; s <= last; s++) {
+			if (s > skipAfter && s % 2 == 1) {
+				continue;
+			}
+			for (int c = 0; c < v.length; c++) {
+				v[c] = value(s, c);
+			}
+			if (bin != null) {
+				bin.write(s, v);
+			}
+			txt.write(s, v);
+		}
+	}
+}
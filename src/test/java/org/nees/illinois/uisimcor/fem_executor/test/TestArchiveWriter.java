@@ -0,0 +1,174 @@
+package org.nees.illinois.uisimcor.fem_executor.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveWriter;
+import org.nees.illinois.uisimcor.fem_executor.archiving.AsyncDataArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.DataArchiveI;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.nees.illinois.uisimcor.fem_executor.config.types.ArchiveQueuePolicy;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the background archive writer.
+ * @author Michael Bletzinger
+ */
+@Test(groups = { "data" })
+public class TestArchiveWriter {
+	/**
+	 * Archive which takes its time and remembers the steps.
+	 */
+	private static class SlowArchive implements DataArchiveI {
+		/**
+		 * Time in milliseconds each write takes.
+		 */
+		private final int delay = 10;
+		/**
+		 * Steps written so far.
+		 */
+		private final List<Integer> steps = new ArrayList<Integer>();
+		/**
+		 * First value of each step.
+		 */
+		private final List<Double> values = new ArrayList<Double>();
+		/**
+		 * Flag indicating that the archive was closed.
+		 */
+		private boolean closed = false;
+		/**
+		 * Flag indicating that a record was written by a thread other than
+		 * the first one.
+		 */
+		private boolean otherThread = false;
+		/**
+		 * Thread which wrote the first record.
+		 */
+		private Thread writerThread = null;
+
+		@Override
+		public synchronized void close() {
+			closed = true;
+		}
+
+		@Override
+		public synchronized void write(final int step, final double[] data) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (writerThread == null) {
+				writerThread = Thread.currentThread();
+			}
+			if (writerThread != Thread.currentThread()) {
+				otherThread = true;
+			}
+			steps.add(step);
+			values.add(data[0]);
+		}
+	}
+
+	/**
+	 * Number of records written in each test.
+	 */
+	private final int numRecords = 12;
+
+	/**
+	 * Write a burst of records through the writer.
+	 * @param writer
+	 *            The writer.
+	 * @return The archive that was written to.
+	 */
+	private SlowArchive burst(final ArchiveWriter writer) {
+		SlowArchive slow = new SlowArchive();
+		DataArchiveI async = new AsyncDataArchive(slow, writer);
+		double[] data = new double[1];
+		writer.start();
+		for (int s = 1; s <= numRecords; s++) {
+			// The writer copies so the buffer can be reused at once.
+			data[0] = s;
+			async.write(s, data);
+		}
+		async.close();
+		final long timeout = 5000;
+		Assert.assertTrue(writer.stop(timeout));
+		Assert.assertTrue(slow.closed);
+		Assert.assertEquals(slow.steps.size(), numRecords);
+		for (int s = 1; s <= numRecords; s++) {
+			Assert.assertEquals(slow.steps.get(s - 1).intValue(), s);
+			Assert.assertEquals(slow.values.get(s - 1).doubleValue(), (double) s);
+		}
+		Assert.assertEquals(writer.getQueueDepth(), 0);
+		Assert.assertEquals(writer.getWrittenCount(), numRecords + 1);
+		Assert.assertTrue(writer.getMaxWriteLatencyNanos() >= writer
+				.getMeanWriteLatencyNanos());
+		return slow;
+	}
+
+	/**
+	 * A full queue makes the producer wait.
+	 */
+	@Test
+	public final void testBlock() {
+		ArchiveDao cfg = new ArchiveDao();
+		final int capacity = 2;
+		cfg.setQueueCapacity(capacity);
+		cfg.setQueuePolicy(ArchiveQueuePolicy.Block);
+		ArchiveWriter writer = new ArchiveWriter(cfg);
+		burst(writer);
+		Assert.assertTrue(writer.getBlockedCount() > 0);
+		Assert.assertTrue(writer.getMaxQueueDepth() <= capacity);
+		Assert.assertEquals(writer.getGrownCount(), 0);
+	}
+
+	/**
+	 * A full queue grows up to its maximum before the producer waits.
+	 */
+	@Test
+	public final void testGrow() {
+		ArchiveDao cfg = new ArchiveDao();
+		final int capacity = 2;
+		cfg.setQueueCapacity(capacity);
+		cfg.setQueueMaxCapacity(2 * numRecords);
+		cfg.setQueuePolicy(ArchiveQueuePolicy.Grow);
+		ArchiveWriter writer = new ArchiveWriter(cfg);
+		burst(writer);
+		Assert.assertEquals(writer.getBlockedCount(), 0);
+		Assert.assertTrue(writer.getMaxQueueDepth() > capacity);
+		Assert.assertTrue(writer.getGrownCount() > 0);
+	}
+
+	/**
+	 * An interrupted producer still queues its records in order instead of
+	 * writing them itself and keeps its interrupt.
+	 */
+	@Test
+	public final void testInterrupted() {
+		ArchiveDao cfg = new ArchiveDao();
+		final int capacity = 2;
+		cfg.setQueueCapacity(capacity);
+		cfg.setQueuePolicy(ArchiveQueuePolicy.Block);
+		ArchiveWriter writer = new ArchiveWriter(cfg);
+		SlowArchive slow = new SlowArchive();
+		DataArchiveI async = new AsyncDataArchive(slow, writer);
+		double[] data = new double[1];
+		writer.start();
+		Thread.currentThread().interrupt();
+		for (int s = 1; s <= numRecords; s++) {
+			data[0] = s;
+			async.write(s, data);
+		}
+		Assert.assertTrue(Thread.interrupted());
+		async.close();
+		final long timeout = 5000;
+		Assert.assertTrue(writer.stop(timeout));
+		Assert.assertTrue(writer.getBlockedCount() > 0);
+		Assert.assertFalse(slow.otherThread);
+		Assert.assertNotSame(slow.writerThread, Thread.currentThread());
+		for (int s = 1; s <= numRecords; s++) {
+			Assert.assertEquals(slow.steps.get(s - 1).intValue(), s);
+		}
+	}
+}
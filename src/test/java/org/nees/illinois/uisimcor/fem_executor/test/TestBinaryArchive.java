@@ -0,0 +1,144 @@
+package org.nees.illinois.uisimcor.fem_executor.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveColumns;
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveConverter;
+import org.nees.illinois.uisimcor.fem_executor.archiving.BinaryArchiveReader;
+import org.nees.illinois.uisimcor.fem_executor.archiving.BinaryDataArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.DataArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.HeaderArchive;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.test.utils.CreateRefSubstructureConfig;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the binary archive, its index and the text converter.
+ * @author Michael Bletzinger
+ */
+@Test(groups = { "data" })
+public class TestBinaryArchive {
+	/**
+	 * Number of steps to archive. Spans several index intervals.
+	 */
+	private final int numSteps = 150;
+
+	/**
+	 * Read a whole text file.
+	 * @param file
+	 *            The file.
+	 * @return The content.
+	 * @throws IOException
+	 *             if the file cannot be read.
+	 */
+	private String content(final File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		StringBuilder result = new StringBuilder();
+		try {
+			String line = reader.readLine();
+			while (line != null) {
+				result.append(line);
+				result.append('\n');
+				line = reader.readLine();
+			}
+		} finally {
+			reader.close();
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Values of a step.
+	 * @param step
+	 *            Step number.
+	 * @param size
+	 *            Number of columns.
+	 * @return The values.
+	 */
+	private double[] values(final int step, final int size) {
+		double[] result = new double[size];
+		for (int i = 0; i < size; i++) {
+			result[i] = Math.sin(step * 0.1 + i) * 1.0e-3 * (i + 1);
+		}
+		return result;
+	}
+
+	/**
+	 * Write the same steps as binary and text and compare.
+	 * @throws IOException
+	 *             if the archives cannot be read.
+	 */
+	@Test
+	public final void testWriteReadConvert() throws IOException {
+		File dir = File.createTempFile("BinaryArchive", "");
+		Assert.assertTrue(dir.delete());
+		Assert.assertTrue(dir.mkdir());
+		CreateRefSubstructureConfig cfgR = new CreateRefSubstructureConfig(
+				"MDL-01");
+		SubstructureDao scfg = cfgR.getConfig();
+		ArchiveColumns cols = new ArchiveColumns(scfg, true);
+		ArchiveDao policy = new ArchiveDao();
+		final int group = 16;
+		policy.setFlushRecords(group);
+		String binBase = new File(dir, "Forces").getPath();
+		String txtBase = new File(dir, "Reference").getPath();
+		BinaryDataArchive bin = new BinaryDataArchive(binBase, cols, policy);
+		DataArchive txt = new DataArchive(txtBase, policy);
+		new HeaderArchive(txtBase, scfg, true).write();
+		// Skip odd steps after 100 to check lookups of missing steps.
+		final int skipAfter = 100;
+		int frames = 0;
+		for (int s = 1; s <= numSteps; s++) {
+			if (s > skipAfter && s % 2 == 1) {
+				continue;
+			}
+			double[] v = values(s, cols.size());
+			bin.write(s, v);
+			txt.write(s, v);
+			frames++;
+			// The index only covers frames which are already in the file.
+			int flushed = frames / group * group;
+			Assert.assertEquals(new File(binBase + ".idx").length()
+					/ BinaryDataArchive.INDEX_ENTRY_SIZE,
+					(flushed + BinaryDataArchive.INDEX_INTERVAL - 1)
+							/ BinaryDataArchive.INDEX_INTERVAL, "Step " + s);
+		}
+		bin.close();
+		txt.close();
+
+		BinaryArchiveReader reader = new BinaryArchiveReader(bin.getPath());
+		Assert.assertEquals(reader.getFrameCount(), frames);
+		Assert.assertEquals(reader.getColumns().getLabels(), cols.getLabels());
+		Assert.assertEquals(reader.getColumns().getUnits(), cols.getUnits());
+		double[] out = new double[cols.size()];
+		final int[] lookups = { 1, 64, 65, 99, 100, 102, 148, numSteps };
+		for (int s : lookups) {
+			long f = reader.findFrame(s);
+			Assert.assertTrue(f >= 0, "Step " + s);
+			Assert.assertEquals(reader.readFrame(f, out), s);
+			Assert.assertEquals(out, values(s, cols.size()));
+		}
+		final int missing = 101;
+		Assert.assertEquals(reader.findFrame(missing), -1);
+		Assert.assertEquals(reader.findFrame(numSteps + 1), -1);
+		reader.close();
+
+		ArchiveConverter conv = new ArchiveConverter();
+		Assert.assertTrue(conv.toText(bin.getPath()));
+		Assert.assertEquals(content(new File(binBase + ".txt")),
+				content(new File(txtBase + ".txt")));
+		Assert.assertEquals(content(new File(binBase + "_hdr.txt")),
+				content(new File(txtBase + "_hdr.txt")));
+		Assert.assertTrue(bin.getPath().length() < new File(txtBase + ".txt")
+				.length());
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+}
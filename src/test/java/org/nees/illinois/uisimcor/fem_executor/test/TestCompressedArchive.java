@@ -0,0 +1,219 @@
+package org.nees.illinois.uisimcor.fem_executor.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveColumns;
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveConverter;
+import org.nees.illinois.uisimcor.fem_executor.archiving.CompressedArchiveReader;
+import org.nees.illinois.uisimcor.fem_executor.archiving.CompressedDataArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.DataArchive;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.test.utils.CreateRefSubstructureConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the compressed archive, its recovery from a truncated file and the
+ * text converter.
+ * @author Michael Bletzinger
+ */
+@Test(groups = { "data" })
+public class TestCompressedArchive {
+	/**
+	 * Number of frames per block.
+	 */
+	private final int blockFrames = 64;
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory
+			.getLogger(TestCompressedArchive.class);
+	/**
+	 * Number of steps to archive. Ends in a partial block.
+	 */
+	private final int numSteps = 1000;
+
+	/**
+	 * Values of a step. A smooth history like a real response.
+	 * @param step
+	 *            Step number.
+	 * @param size
+	 *            Number of columns.
+	 * @return The values.
+	 */
+	private double[] values(final int step, final int size) {
+		double[] result = new double[size];
+		for (int i = 0; i < size; i++) {
+			result[i] = Math.rint(Math.sin(step * 0.01 + i) * 1.0e5)
+					* 1.0e-8 * (i + 1);
+		}
+		return result;
+	}
+
+	/**
+	 * Read every frame of an archive and compare with the written values.
+	 * @param path
+	 *            Archive file.
+	 * @param size
+	 *            Number of columns.
+	 * @param truncated
+	 *            True if the archive is expected to end in a damaged block.
+	 * @return Number of frames read.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	private int verify(final File path, final int size,
+			final boolean truncated) throws IOException {
+		CompressedArchiveReader reader = new CompressedArchiveReader(path);
+		double[] out = new double[size];
+		int frames = 0;
+		while (reader.next()) {
+			frames++;
+			Assert.assertEquals(reader.getStep(), frames);
+			reader.read(out);
+			Assert.assertEquals(out, values(frames, size));
+		}
+		Assert.assertEquals(reader.isTruncated(), truncated);
+		reader.close();
+		return frames;
+	}
+
+	/**
+	 * Write the same steps as compressed and text, compare the sizes, read
+	 * them back and cut the file in the middle of a block.
+	 * @throws IOException
+	 *             if the archives cannot be read.
+	 */
+	@Test
+	public final void testWriteReadTruncate() throws IOException {
+		File dir = File.createTempFile("CompressedArchive", "");
+		Assert.assertTrue(dir.delete());
+		Assert.assertTrue(dir.mkdir());
+		CreateRefSubstructureConfig cfgR = new CreateRefSubstructureConfig(
+				"MDL-01");
+		SubstructureDao scfg = cfgR.getConfig();
+		ArchiveColumns cols = new ArchiveColumns(scfg, true);
+		ArchiveDao policy = new ArchiveDao();
+		policy.setBlockFrames(blockFrames);
+		final int group = 100;
+		policy.setFlushRecords(group);
+		String cmpBase = new File(dir, "Forces").getPath();
+		String txtBase = new File(dir, "Reference").getPath();
+		CompressedDataArchive cmp = new CompressedDataArchive(cmpBase, cols,
+				policy);
+		DataArchive txt = new DataArchive(txtBase, policy);
+		for (int s = 1; s <= numSteps; s++) {
+			double[] v = values(s, cols.size());
+			cmp.write(s, v);
+			txt.write(s, v);
+		}
+		cmp.close();
+		txt.close();
+
+		long cmpSize = cmp.getPath().length();
+		long txtSize = new File(txtBase + ".txt").length();
+		final double minRatio = 2.5;
+		log.info("Compressed " + cmpSize + " bytes versus text " + txtSize
+				+ " bytes");
+		Assert.assertTrue(cmpSize * minRatio < txtSize, "Compressed "
+				+ cmpSize + " bytes versus text " + txtSize + " bytes");
+		Assert.assertTrue(
+				cmpSize < CompressedDataArchive.rawSize(numSteps, cols.size()),
+				"Compressed " + cmpSize + " bytes is not smaller than raw");
+		Assert.assertEquals(verify(cmp.getPath(), cols.size(), false),
+				numSteps);
+
+		ArchiveConverter conv = new ArchiveConverter();
+		Assert.assertTrue(conv.toText(cmp.getPath()));
+		Assert.assertEquals(new File(cmpBase + ".txt").length(), txtSize);
+
+		// Simulate a crash while the last block was written.
+		RandomAccessFile raf = new RandomAccessFile(cmp.getPath(), "rw");
+		raf.setLength(cmpSize - 2);
+		raf.close();
+		int fullBlocks = numSteps / blockFrames;
+		Assert.assertEquals(verify(cmp.getPath(), cols.size(), true),
+				fullBlocks * blockFrames);
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Measure the size and the write time of a long smooth history against
+	 * the text archive and the raw doubles. The write time is the best of a
+	 * few runs so that class loading and compilation do not count. It is only
+	 * logged because it depends on the load of the machine.
+	 * @throws IOException
+	 *             if the directory cannot be created.
+	 */
+	@Test
+	public final void testSizeAndSpeed() throws IOException {
+		File dir = File.createTempFile("CompressedArchive", "");
+		Assert.assertTrue(dir.delete());
+		Assert.assertTrue(dir.mkdir());
+		final int steps = 20000;
+		final int size = 2;
+		double[][] history = new double[steps][size];
+		for (int s = 0; s < steps; s++) {
+			for (int i = 0; i < size; i++) {
+				history[s][i] = Math.sin(s * 0.01 + i) * 1.0e-3 * (i + 1);
+			}
+		}
+		ArchiveColumns cols = new ArchiveColumns(new String[] { "Disp",
+				"Force" }, new String[] { "in", "kip" });
+		ArchiveDao policy = new ArchiveDao();
+		final int group = 100;
+		policy.setFlushRecords(group);
+		final int runs = 3;
+		long cmpNanos = Long.MAX_VALUE;
+		long txtNanos = Long.MAX_VALUE;
+		long cmpSize = 0;
+		long txtSize = 0;
+		for (int r = 0; r < runs; r++) {
+			String cmpBase = new File(dir, "Compressed" + r).getPath();
+			String txtBase = new File(dir, "Text" + r).getPath();
+			long start = System.nanoTime();
+			CompressedDataArchive cmp = new CompressedDataArchive(cmpBase,
+					cols, policy);
+			for (int s = 0; s < steps; s++) {
+				cmp.write(s + 1, history[s]);
+			}
+			cmp.close();
+			cmpNanos = Math.min(cmpNanos, System.nanoTime() - start);
+			start = System.nanoTime();
+			DataArchive txt = new DataArchive(txtBase, policy);
+			for (int s = 0; s < steps; s++) {
+				txt.write(s + 1, history[s]);
+			}
+			txt.close();
+			txtNanos = Math.min(txtNanos, System.nanoTime() - start);
+			cmpSize = cmp.getPath().length();
+			txtSize = new File(txtBase + ".txt").length();
+		}
+		long rawSize = CompressedDataArchive.rawSize(steps, size);
+		double textRatio = (double) txtSize / cmpSize;
+		double rawRatio = (double) rawSize / cmpSize;
+		log.info("Compressed " + cmpSize + " bytes in " + cmpNanos / 1000
+				+ " us, text " + txtSize + " bytes in " + txtNanos / 1000
+				+ " us, raw " + rawSize + " bytes, " + textRatio
+				+ " times smaller than text, " + rawRatio
+				+ " times smaller than raw");
+		final double minTextRatio = 5.0;
+		final double minRawRatio = 2.2;
+		Assert.assertTrue(textRatio > minTextRatio, "Only " + textRatio
+				+ " times smaller than text");
+		Assert.assertTrue(rawRatio > minRawRatio, "Only " + rawRatio
+				+ " times smaller than raw");
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+}
@@ -0,0 +1,179 @@
+package org.nees.illinois.uisimcor.fem_executor.test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.util.Random;
+
+import org.nees.illinois.uisimcor.fem_executor.utils.DoubleFormatter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the shortest round trip double formatter.
+ * @author Michael Bletzinger
+ */
+@Test(groups = { "data" })
+public class TestDoubleFormatter {
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory
+			.getLogger(TestDoubleFormatter.class);
+
+	/**
+	 * Significant digits of a formatted value.
+	 * @param text
+	 *            The formatted value.
+	 * @return The digits without leading and trailing zeros.
+	 */
+	private String digits(final String text) {
+		String result = text.replace("-", "");
+		int e = result.indexOf('E');
+		if (e >= 0) {
+			result = result.substring(0, e);
+		}
+		result = result.replace(".", "");
+		return result.replaceAll("^0+", "").replaceAll("0+$", "");
+	}
+
+	/**
+	 * Create a random double which is not NaN or infinite.
+	 * @param rnd
+	 *            Random number generator.
+	 * @param i
+	 *            Sample number which selects the kind of value.
+	 * @return The value.
+	 */
+	private double randomDouble(final Random rnd, final int i) {
+		final int kinds = 3;
+		final int decades = 40;
+		final int binades = 2098;
+		final int qMin = -1074;
+		double v;
+		if (i % kinds == 0) {
+			do {
+				v = Double.longBitsToDouble(rnd.nextLong());
+			} while (Double.isNaN(v) || Double.isInfinite(v));
+		} else if (i % kinds == 1) {
+			v = (rnd.nextDouble() - 0.5)
+					* Math.pow(10, rnd.nextInt(decades) - decades / 2);
+		} else {
+			v = Math.scalb(1.0, rnd.nextInt(binades) + qMin);
+		}
+		return v;
+	}
+
+	/**
+	 * Shortest digits which round trip found by brute force.
+	 * @param v
+	 *            The value.
+	 * @return The digits without trailing zeros.
+	 */
+	private String shortest(final double v) {
+		final int maxDigits = 17;
+		BigDecimal exact = new BigDecimal(v);
+		RoundingMode[] modes = { RoundingMode.HALF_EVEN, RoundingMode.FLOOR,
+				RoundingMode.CEILING };
+		for (int n = 1; n <= maxDigits; n++) {
+			for (RoundingMode m : modes) {
+				BigDecimal r = exact.round(new MathContext(n, m));
+				if (Double.parseDouble(r.toString()) == v) {
+					return digits(r.unscaledValue().toString());
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Compare the formatter with {@link DecimalFormat} and
+	 * {@link Double#toString(double)}. The timings are only logged.
+	 */
+	@Test
+	public final void testBenchmark() {
+		final int count = 200000;
+		final int rounds = 3;
+		final long seed = 7;
+		Random rnd = new Random(seed);
+		double[] values = new double[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = randomDouble(rnd, i);
+		}
+		DecimalFormat format = new DecimalFormat("###.00000000000000000000E000");
+		char[] buf = new char[DoubleFormatter.MAX_CHARS];
+		final double nanosPerMilli = 1e6;
+		for (int r = 0; r < rounds; r++) {
+			long chars = 0;
+			long start = System.nanoTime();
+			for (double v : values) {
+				chars += format.format(v).length();
+			}
+			long decimal = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (double v : values) {
+				chars += Double.toString(v).length();
+			}
+			long toString = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (double v : values) {
+				chars += DoubleFormatter.format(v, buf, 0);
+			}
+			long shortest = System.nanoTime() - start;
+			log.info("Formatting " + count + " doubles took DecimalFormat "
+					+ (decimal / nanosPerMilli) + " ms, Double.toString "
+					+ (toString / nanosPerMilli) + " ms, DoubleFormatter "
+					+ (shortest / nanosPerMilli) + " ms (" + chars + " chars)");
+		}
+	}
+
+	/**
+	 * Format random doubles and parse them back.
+	 */
+	@Test
+	public final void testRoundTrip() {
+		final int count = 300000;
+		final int shortestInterval = 50;
+		final long seed = 42;
+		Random rnd = new Random(seed);
+		char[] buf = new char[DoubleFormatter.MAX_CHARS + 2];
+		for (int i = 0; i < count; i++) {
+			double v = randomDouble(rnd, i);
+			if (rnd.nextBoolean()) {
+				v = -v;
+			}
+			int end = DoubleFormatter.format(v, buf, 2);
+			String text = new String(buf, 2, end - 2);
+			Assert.assertEquals(
+					Double.doubleToLongBits(Double.parseDouble(text)),
+					Double.doubleToLongBits(v), text);
+			String dig = digits(text);
+			Assert.assertTrue(dig.length() <= digits(Double.toString(v))
+					.length(), text + " is longer than " + v);
+			if (i % shortestInterval == 0 && Math.abs(v) >= Double.MIN_NORMAL) {
+				Assert.assertEquals(dig, shortest(v), text);
+			}
+		}
+	}
+
+	/**
+	 * Check the text of special values.
+	 */
+	@Test
+	public final void testSpecialValues() {
+		final double[] values = { 0.0, -0.0, 1.0, -2.5, 0.1, 0.001, 9.999e-4,
+				1234567.0, 1.2345678e7, 1e23, 130.203e-9,
+				Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN,
+				Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		final String[] expected = { "0.0", "-0.0", "1.0", "-2.5", "0.1",
+				"0.001", "9.999E-4", "1234567.0", "1.2345678E7", "1.0E23",
+				"1.30203E-7", "5.0E-324", "1.7976931348623157E308", "NaN",
+				"Infinity", "-Infinity" };
+		for (int i = 0; i < values.length; i++) {
+			Assert.assertEquals(DoubleFormatter.format(values[i]), expected[i]);
+		}
+	}
+}
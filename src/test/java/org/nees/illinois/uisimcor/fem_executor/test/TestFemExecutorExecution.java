@@ -1,15 +1,35 @@
 package org.nees.illinois.uisimcor.fem_executor.test;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.nees.illinois.uisimcor.fem_executor.FemExecutor;
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveQueryFactory;
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveQueryI;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.LauncherDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.ProgramDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.config.types.ExecutionMode;
 import org.nees.illinois.uisimcor.fem_executor.config.types.FemProgramType;
+import org.nees.illinois.uisimcor.fem_executor.execute.FemStatus;
 import org.nees.illinois.uisimcor.fem_executor.execute.FileWithContentDelete;
+import org.nees.illinois.uisimcor.fem_executor.execute.GroupMemberExecution;
+import org.nees.illinois.uisimcor.fem_executor.execute.StepFuture;
+import org.nees.illinois.uisimcor.fem_executor.execute.StepFutureGroup;
+import org.nees.illinois.uisimcor.fem_executor.execute.SubstructureDir;
+import org.nees.illinois.uisimcor.fem_executor.execute.SubstructureExecutorI;
+import org.nees.illinois.uisimcor.fem_executor.input.BatchData;
+import org.nees.illinois.uisimcor.fem_executor.input.InputReconstructor;
+import org.nees.illinois.uisimcor.fem_executor.publish.OverflowPolicy;
+import org.nees.illinois.uisimcor.fem_executor.publish.StepSubscription;
 import org.nees.illinois.uisimcor.fem_executor.test.utils.CreateRefProgramConfig;
 import org.nees.illinois.uisimcor.fem_executor.utils.MtxUtils;
 import org.nees.illinois.uisimcor.fem_executor.utils.PathUtils;
@@ -35,6 +55,10 @@ public class TestFemExecutorExecution {
 	 * records.
 	 */
 	private ProgramDao femProgWithRecords;
+	/**
+	 * FEM program parameters for the fake static OpenSees.
+	 */
+	private ProgramDao femProgStatic;
 	/**
 	 * Directory containing the configuration files for the test.
 	 */
@@ -183,6 +207,543 @@ public class TestFemExecutorExecution {
 		fexec.finish();
 	}
 
+	/**
+	 * Run the largest test configuration through the bulk step function.
+	 */
+	@Test
+	public final void testRunFakeBulkStep() {
+		FemExecutor fexec = new FemExecutor(configDir, workDir);
+		final String c = configFiles.get(configFiles.size() - 1);
+		fexec.loadConfig(c);
+		fexec.getConfig().getFemProgramParameters()
+				.put(FemProgramType.OPENSEES, femProg);
+		Assert.assertTrue(fexec.setup());
+		Assert.assertTrue(fexec.startSimulation());
+		String[] addresses = fexec.getAddresses();
+		Assert.assertEquals(addresses.length, fexec.getConfig()
+				.getSubstructCfgs().size());
+		double[][] disps = new double[addresses.length][];
+		final int numSteps = 12;
+		final long timeout = 5000;
+		for (int s = 1; s < numSteps; s++) {
+			for (int i = 0; i < addresses.length; i++) {
+				int numberOfDofs = fexec.getConfig().getSubstructCfgs()
+						.get(addresses[i]).getTotalDofs();
+				disps[i] = new double[numberOfDofs];
+				for (int d = 0; d < numberOfDofs; d++) {
+					disps[i][d] = 0.00023e-4 * s;
+				}
+			}
+			double[][] responses = fexec.step(s, disps, timeout);
+			Assert.assertNotNull(responses, "Step " + s + " failed");
+			Assert.assertEquals(responses.length, 2 * addresses.length);
+			for (int i = 0; i < addresses.length; i++) {
+				Assert.assertEquals(responses[i].length, disps[i].length);
+				Assert.assertEquals(responses[addresses.length + i].length,
+						disps[i].length);
+			}
+		}
+		fexec.finish();
+	}
+
+	/**
+	 * Run the fake OpenSees using the asynchronous step futures.
+	 * @throws ExecutionException
+	 *             if a step fails.
+	 * @throws InterruptedException
+	 *             if the test is interrupted.
+	 * @throws TimeoutException
+	 *             if a step times out.
+	 */
+	@Test(dependsOnMethods = { "testRunFakeBulkStep" })
+	public final void testRunFakeAsyncStep() throws InterruptedException,
+			ExecutionException, TimeoutException {
+		FemExecutor fexec = new FemExecutor(configDir, workDir);
+		final String c = configFiles.get(configFiles.size() - 1);
+		fexec.loadConfig(c);
+		fexec.getConfig().getFemProgramParameters()
+				.put(FemProgramType.OPENSEES, femProg);
+		final int archiveQueue = 8;
+		fexec.getConfig().getArchiveParameters()
+				.setQueueCapacity(archiveQueue);
+		Assert.assertTrue(fexec.setup());
+		Assert.assertTrue(fexec.startSimulation());
+		String[] addresses = fexec.getAddresses();
+		double[][] disps = new double[addresses.length][];
+		final int numSteps = 12;
+		final long timeout = 5000;
+		final int monitorCapacity = 4;
+		StepSubscription monitor = fexec.getPublisher().subscribe(
+				monitorCapacity, OverflowPolicy.DropOldest);
+		for (int s = 1; s < numSteps; s++) {
+			for (int i = 0; i < addresses.length; i++) {
+				int numberOfDofs = fexec.getConfig().getSubstructCfgs()
+						.get(addresses[i]).getTotalDofs();
+				disps[i] = new double[numberOfDofs];
+				for (int d = 0; d < numberOfDofs; d++) {
+					disps[i][d] = 0.00023e-4 * s;
+				}
+			}
+			StepFutureGroup group = fexec.stepAsync(s, disps);
+			double[][] responses = group.get(timeout, TimeUnit.MILLISECONDS);
+			Assert.assertEquals(responses.length, 2 * addresses.length);
+			for (StepFuture m : group.getMembers()) {
+				Assert.assertTrue(m.isDone());
+				Assert.assertEquals(m.getStep(), s);
+			}
+			for (int i = 0; i < addresses.length; i++) {
+				Assert.assertEquals(responses[i].length, disps[i].length);
+				Assert.assertEquals(responses[addresses.length + i].length,
+						disps[i].length);
+			}
+		}
+		Assert.assertEquals(monitor.getDeliveredCount(), (numSteps - 1)
+				* addresses.length);
+		Assert.assertEquals(monitor.getQueueDepth(), monitorCapacity);
+		Assert.assertEquals(monitor.getDroppedCount(), (numSteps - 1)
+				* addresses.length - monitorCapacity);
+		StepFuture first = fexec.startStepAsync(addresses[0], numSteps,
+				disps[0]);
+		StepFuture second = fexec.startStepAsync(addresses[0], numSteps + 1,
+				disps[0]);
+		Assert.assertTrue(first.isDone());
+		Assert.assertEquals(second.get(timeout, TimeUnit.MILLISECONDS)[0].length,
+				disps[0].length);
+		StepFuture unknown = fexec.startStepAsync("NOT-THERE", numSteps,
+				disps[0]);
+		Assert.assertTrue(unknown.isDone());
+		Assert.assertNotNull(unknown.getFailure());
+		Assert.assertTrue(fexec.finish());
+		Assert.assertEquals(fexec.getArchiveWriter().getQueueDepth(), 0);
+		Assert.assertTrue(fexec.getArchiveWriter().getWrittenCount() > 2
+				* (numSteps - 1) * addresses.length);
+	}
+
+	/**
+	 * Run asynchronous steps after the fake OpenSees has printed a warning on
+	 * STDERR.
+	 * @throws ExecutionException
+	 *             if a step fails.
+	 * @throws InterruptedException
+	 *             if the test is interrupted.
+	 * @throws TimeoutException
+	 *             if a step times out.
+	 */
+	@Test(dependsOnMethods = { "testRunFakeBulkStep" })
+	public final void testRunFakeAsyncStepAfterWarning()
+			throws InterruptedException, ExecutionException, TimeoutException {
+		FemExecutor fexec = new FemExecutor(configDir, workDir);
+		fexec.loadConfig(configFiles.get(0));
+		fexec.getConfig().getFemProgramParameters()
+				.put(FemProgramType.OPENSEES, femProg);
+		Assert.assertTrue(fexec.setup());
+		Assert.assertTrue(fexec.startSimulation());
+		String address = fexec.getAddresses()[0];
+		int numberOfDofs = fexec.getConfig().getSubstructCfgs().get(address)
+				.getTotalDofs();
+		double[] disp = new double[numberOfDofs];
+		final long timeout = 5000;
+		final int numSteps = 4;
+		double[][] disps = { disp };
+		Assert.assertNotNull(fexec.step(1, disps, timeout));
+		FemStatus statuses = fexec.getExecutors().get(address).getStatuses();
+		statuses.awaitState(FemStatus.ERRORS, timeout);
+		Assert.assertTrue(statuses.isFemProcessHasErrors());
+		for (int s = 2; s < numSteps; s++) {
+			for (int d = 0; d < numberOfDofs; d++) {
+				disp[d] = 0.00023e-4 * s;
+			}
+			StepFuture future = fexec.startStepAsync(address, s, disp);
+			double[][] responses = future.get(timeout, TimeUnit.MILLISECONDS);
+			Assert.assertEquals(responses[0].length, numberOfDofs);
+			Assert.assertNull(future.getFailure());
+		}
+		Assert.assertTrue(fexec.finish());
+	}
+
+	/**
+	 * Run batches of steps between single steps through the fake OpenSees and
+	 * check that the responses and the displacements of every batch step are
+	 * archived and that the batches can be rebuilt from the compact Inputs
+	 * archive.
+	 * @throws IOException
+	 *             if the archives cannot be read.
+	 */
+	@Test(dependsOnMethods = { "testRunFakeBulkStep" })
+	public final void testRunFakeBatch() throws IOException {
+		FemExecutor fexec = new FemExecutor(configDir, workDir);
+		fexec.loadConfig(configFiles.get(0));
+		fexec.getConfig().getFemProgramParameters()
+				.put(FemProgramType.OPENSEES, femProg);
+		fexec.getConfig().getArchiveParameters().setCompactInputs(true);
+		Assert.assertTrue(fexec.setup());
+		Assert.assertTrue(fexec.startSimulation());
+		String address = fexec.getAddresses()[0];
+		SubstructureDao scfg = fexec.getConfig().getSubstructCfgs()
+				.get(address);
+		int numberOfDofs = scfg.getTotalDofs();
+		final long timeout = 5000;
+		final int[] batchSizes = { 4, 3 };
+		double[][][] batches = new double[batchSizes.length][][];
+		int step = 1;
+		double[][] disps = new double[1][numberOfDofs];
+		for (int b = 0; b < batchSizes.length; b++) {
+			fillDisplacements(disps[0], step);
+			Assert.assertNotNull(fexec.step(step, disps, timeout));
+			step++;
+			batches[b] = new double[batchSizes[b]][numberOfDofs];
+			for (int k = 0; k < batchSizes[b]; k++) {
+				fillDisplacements(batches[b][k], step + k);
+			}
+			double[][][] block = { batches[b] };
+			Assert.assertTrue(fexec.batch(step, block, timeout));
+			double[] out = new double[numberOfDofs];
+			fexec.readDisplacements(address, out);
+			fexec.readForces(address, out);
+			step += batchSizes[b];
+		}
+		int lastStep = step - 1;
+		Assert.assertEquals(fexec.getStatistics(address).getCount(), lastStep);
+		Assert.assertTrue(fexec.finish());
+
+		File logDir = new File(new SubstructureDir(workDir, scfg, "logDir")
+				.getSubstructDir());
+		ArchiveQueryFactory factory = new ArchiveQueryFactory(1);
+		ArchiveQueryI displacements = factory.open(logDir, "Displacements");
+		Assert.assertNotNull(displacements);
+		for (int s = 1; s <= lastStep; s++) {
+			Assert.assertNotNull(displacements.atStep(s), "Step " + s
+					+ " is not archived");
+		}
+		displacements.close();
+		InputReconstructor rec = new InputReconstructor(logDir);
+		Assert.assertEquals(rec.getBatchCount(), batchSizes.length);
+		StringWriter inputs = new StringWriter();
+		rec.writeAll(inputs);
+		final double tolerance = 1e-12;
+		for (int b = 0; b < batchSizes.length; b++) {
+			double[][] rebuilt = rec.batch(b);
+			Assert.assertEquals(rebuilt.length, batchSizes[b]);
+			for (int k = 0; k < batchSizes[b]; k++) {
+				for (int d = 0; d < numberOfDofs; d++) {
+					Assert.assertEquals(rebuilt[k][d], batches[b][k][d],
+							tolerance);
+				}
+			}
+			Assert.assertTrue(inputs.toString().contains(
+					BatchData.fileName(b)));
+		}
+		Assert.assertNotNull(rec.script(1));
+		Assert.assertNull(rec.script(2));
+		rec.close();
+	}
+
+	/**
+	 * Fill the displacement target of a step.
+	 * @param disp
+	 *            Array to fill.
+	 * @param step
+	 *            Step number.
+	 */
+	private void fillDisplacements(final double[] disp, final int step) {
+		for (int d = 0; d < disp.length; d++) {
+			disp[d] = 0.00023e-4 * step + 0.00001e-4 * d;
+		}
+	}
+
+	/**
+	 * Run the fake OpenSees through a fake parallel launcher.
+	 */
+	@Test
+	public final void testRunFakeLauncher() {
+		URL u = ClassLoader.getSystemResource("FakeLauncher.pl");
+		CreateRefProgramConfig crpcfg = new CreateRefProgramConfig(
+				PathUtils.cleanPath(u.getPath()), 0);
+		crpcfg.checkExecutable();
+		LauncherDao launcher = new LauncherDao(crpcfg.getConfig()
+				.getExecutablePath());
+		final int ranks = 4;
+		launcher.setRanks(ranks);
+		launcher.getArgs().add("--bind-to");
+		launcher.getArgs().add("core");
+		launcher.getEnv().put("OMP_NUM_THREADS", "2");
+		launcher.setForwardStdin(true);
+		ProgramDao launched = new ProgramDao(femProg.getExecutablePath(),
+				femProg.getProgram(), femProg.getTemplateDao(),
+				femProg.getStepRecordIndex());
+		launched.setLauncher(launcher);
+		FemExecutor fexec = new FemExecutor(configDir, workDir);
+		fexec.loadConfig(configFiles.get(0));
+		fexec.getConfig().getFemProgramParameters()
+				.put(FemProgramType.OPENSEES, launched);
+		Assert.assertTrue(fexec.setup());
+		Assert.assertTrue(fexec.startSimulation());
+		String[] addresses = fexec.getAddresses();
+		double[][] disps = new double[addresses.length][];
+		final int numSteps = 4;
+		final long timeout = 5000;
+		for (int s = 1; s < numSteps; s++) {
+			for (int i = 0; i < addresses.length; i++) {
+				int numberOfDofs = fexec.getConfig().getSubstructCfgs()
+						.get(addresses[i]).getTotalDofs();
+				disps[i] = new double[numberOfDofs];
+				for (int d = 0; d < numberOfDofs; d++) {
+					disps[i][d] = 0.00023e-4 * s;
+				}
+			}
+			double[][] responses = fexec.step(s, disps, timeout);
+			Assert.assertNotNull(responses, "Step " + s + " failed");
+			for (int i = 0; i < addresses.length; i++) {
+				Assert.assertEquals(responses[i].length, disps[i].length);
+			}
+		}
+		fexec.finish();
+	}
+
+	/**
+	 * Run two substructures in one shared fake OpenSees process next to a
+	 * substructure with a process of its own.
+	 */
+	@Test
+	public final void testRunFakeProcessGroup() {
+		FemExecutor fexec = new FemExecutor(configDir, workDir);
+		fexec.loadConfig("GroupedSubstructureTestConfig.properties");
+		fexec.getConfig().getFemProgramParameters()
+				.put(FemProgramType.OPENSEES, femProg);
+		Assert.assertTrue(fexec.setup());
+		Assert.assertTrue(fexec.startSimulation());
+		String[] addresses = fexec.getAddresses();
+		final int numberOfSubstructures = 3;
+		Assert.assertEquals(addresses.length, numberOfSubstructures);
+		Assert.assertTrue(fexec.getExecutors().get("MDL-01")
+				instanceof GroupMemberExecution);
+		Assert.assertTrue(fexec.getExecutors().get("MDL-02")
+				instanceof GroupMemberExecution);
+		Assert.assertFalse(fexec.getExecutors().get("MDL-03")
+				instanceof GroupMemberExecution);
+		double[][] disps = new double[addresses.length][];
+		final int numSteps = 6;
+		final long timeout = 5000;
+		for (int s = 1; s < numSteps; s++) {
+			for (int i = 0; i < addresses.length; i++) {
+				int numberOfDofs = fexec.getConfig().getSubstructCfgs()
+						.get(addresses[i]).getTotalDofs();
+				disps[i] = new double[numberOfDofs];
+				for (int d = 0; d < numberOfDofs; d++) {
+					disps[i][d] = 0.00023e-4 * s;
+				}
+			}
+			double[][] responses = fexec.step(s, disps, timeout);
+			Assert.assertNotNull(responses, "Step " + s + " failed");
+			for (int i = 0; i < addresses.length; i++) {
+				Assert.assertEquals(responses[i].length, disps[i].length);
+				Assert.assertEquals(responses[addresses.length + i].length,
+						disps[i].length);
+			}
+		}
+		// The fake OpenSees numbers the columns of the shared frame so each
+		// member has to receive the columns of its own nodes.
+		final double[] first = { 0.0, 0.0002 };
+		final double[] second = { 0.0003, 0.0006, 0.0008 };
+		final double tolerance = 1e-12;
+		double[] actual = fexec.getDisplacements("MDL-01");
+		Assert.assertEquals(actual.length, first.length);
+		for (int d = 0; d < first.length; d++) {
+			Assert.assertEquals(actual[d], first[d], tolerance);
+		}
+		actual = fexec.getForces("MDL-02");
+		Assert.assertEquals(actual.length, second.length);
+		for (int d = 0; d < second.length; d++) {
+			Assert.assertEquals(actual[d], second[d], tolerance);
+		}
+		for (String a : addresses) {
+			Assert.assertEquals(fexec.getStatistics(a).getCount(), numSteps - 1);
+		}
+		fexec.finish();
+	}
+
+	/**
+	 * Iterate trial steps against the fake OpenSees before committing them.
+	 * Only the committed trials count as steps.
+	 */
+	@Test
+	public final void testRunFakeTrials() {
+		FemExecutor fexec = new FemExecutor(configDir, workDir);
+		fexec.loadConfig("GroupedSubstructureTestConfig.properties");
+		fexec.getConfig().getFemProgramParameters()
+				.put(FemProgramType.OPENSEES, femProg);
+		Assert.assertTrue(fexec.setup());
+		Assert.assertTrue(fexec.startSimulation());
+		String[] addresses = fexec.getAddresses();
+		double[][] disps = new double[addresses.length][];
+		final int numSteps = 4;
+		final int iterations = 3;
+		final long timeout = 5000;
+		Assert.assertFalse(fexec.revertTrial());
+		for (int s = 1; s < numSteps; s++) {
+			for (int k = 0; k < iterations; k++) {
+				for (int i = 0; i < addresses.length; i++) {
+					int numberOfDofs = fexec.getConfig().getSubstructCfgs()
+							.get(addresses[i]).getTotalDofs();
+					disps[i] = new double[numberOfDofs];
+					for (int d = 0; d < numberOfDofs; d++) {
+						disps[i][d] = 0.00023e-4 * (s + k);
+					}
+				}
+				double[][] responses = fexec.trial(s, disps, timeout);
+				Assert.assertNotNull(responses, "Trial " + k + " of step " + s
+						+ " failed");
+				Assert.assertEquals(responses.length, 2 * addresses.length);
+			}
+			if (s == 1) {
+				Assert.assertTrue(fexec.revertTrial());
+				Assert.assertNotNull(fexec.trial(s, disps, timeout));
+			}
+			Assert.assertTrue(fexec.commitTrial());
+			Assert.assertFalse(fexec.commitTrial());
+			for (String a : addresses) {
+				Assert.assertEquals(fexec.getStatistics(a).getCount(), s);
+			}
+		}
+		fexec.finish();
+	}
+
+	/**
+	 * Run the largest test configuration statically with fewer processes than
+	 * substructures.
+	 */
+	@Test
+	public final void testRunFakeStatic() {
+		FemExecutor fexec = new FemExecutor(configDir, workDir);
+		final String c = configFiles.get(configFiles.size() - 1);
+		fexec.loadConfig(c);
+		fexec.getConfig().getFemProgramParameters()
+				.put(FemProgramType.OPENSEES, femProgStatic);
+		fexec.getConfig().getExecutionParameters()
+				.setMode(ExecutionMode.Static);
+		final int processes = 2;
+		fexec.getConfig().getExecutionParameters().setProcesses(processes);
+		Assert.assertTrue(fexec.setup());
+		Assert.assertTrue(fexec.startSimulation());
+		String[] addresses = fexec.getAddresses();
+		double[][] disps = new double[addresses.length][];
+		for (int i = 0; i < addresses.length; i++) {
+			int numberOfDofs = fexec.getConfig().getSubstructCfgs()
+					.get(addresses[i]).getTotalDofs();
+			disps[i] = new double[numberOfDofs];
+			for (int d = 0; d < numberOfDofs; d++) {
+				disps[i][d] = 0.00023e-4;
+			}
+		}
+		final long timeout = 30000;
+		double[][] responses = fexec.step(1, disps, timeout);
+		Assert.assertNotNull(responses);
+		Assert.assertEquals(responses.length, 2 * addresses.length);
+		for (int i = 0; i < addresses.length; i++) {
+			Assert.assertEquals(responses[i].length, disps[i].length);
+			Assert.assertEquals(responses[addresses.length + i].length,
+					disps[i].length);
+		}
+		Assert.assertEquals(fexec.getProcessSlots().getPeak(), processes);
+		Assert.assertEquals(fexec.getProcessSlots().getInUse(), 0);
+		fexec.finish();
+	}
+
+	/**
+	 * Start a static step while the previous one is still running. The
+	 * previous run is aborted and its process slot released and the next
+	 * step runs normally after the failure.
+	 */
+	@Test
+	public final void testRunFakeStaticOverlap() {
+		FemExecutor fexec = new FemExecutor(configDir, workDir);
+		fexec.loadConfig(configFiles.get(0));
+		fexec.getConfig().getFemProgramParameters()
+				.put(FemProgramType.OPENSEES, femProgStatic);
+		fexec.getConfig().getExecutionParameters()
+				.setMode(ExecutionMode.Static);
+		fexec.getConfig().getExecutionParameters().setProcesses(1);
+		Assert.assertTrue(fexec.setup());
+		Assert.assertTrue(fexec.startSimulation());
+		String address = fexec.getAddresses()[0];
+		int numberOfDofs = fexec.getConfig().getSubstructCfgs().get(address)
+				.getTotalDofs();
+		double[][] disps = new double[1][numberOfDofs];
+		fillDisplacements(disps[0], 1);
+		SubstructureExecutorI exe = fexec.getExecutors().get(address);
+		exe.startStep(1, disps[0]);
+		Assert.assertEquals(fexec.getProcessSlots().getInUse(), 1);
+		exe.startStep(2, disps[0]);
+		Assert.assertTrue(exe.iveGotProblems());
+		Assert.assertTrue(exe.getStatuses().isFemProcessHasDied());
+		Assert.assertEquals(fexec.getProcessSlots().getInUse(), 0);
+		final long timeout = 30000;
+		double[][] responses = fexec.step(3, disps, timeout);
+		Assert.assertNotNull(responses);
+		Assert.assertFalse(exe.iveGotProblems());
+		Assert.assertEquals(responses[1].length, numberOfDofs);
+		Assert.assertEquals(fexec.getProcessSlots().getInUse(), 0);
+		fexec.finish();
+	}
+
+	/**
+	 * Probe the initial stiffness of a substructure with two workers of the
+	 * fake static OpenSees and find it again in the stiffness cache.
+	 */
+	@Test
+	public final void testRunFakeStiffness() {
+		FemExecutor fexec = new FemExecutor(configDir, workDir);
+		fexec.loadConfig("GroupedSubstructureTestConfig.properties");
+		fexec.getConfig().getFemProgramParameters()
+				.put(FemProgramType.OPENSEES, femProgStatic);
+		fexec.getConfig().getExecutionParameters()
+				.setMode(ExecutionMode.Static);
+		final int processes = 2;
+		fexec.getConfig().getExecutionParameters().setProcesses(processes);
+		Assert.assertTrue(fexec.setup());
+		final String address = "MDL-02";
+		final double perturbation = 0.001;
+		final long timeout = 60000;
+		Assert.assertNull(fexec.extractStiffness(address, 0.0, timeout));
+		double[][] stiffness = fexec.extractStiffness(address, perturbation,
+				timeout);
+		Assert.assertNotNull(stiffness);
+		int dofs = fexec.getConfig().getSubstructCfgs().get(address)
+				.getTotalDofs();
+		Assert.assertEquals(stiffness.length, dofs);
+		// The fake OpenSees reports the same forces for every probe so the
+		// columns are equal.
+		final double tolerance = 1e-9;
+		double[] forces = new double[dofs];
+		for (int i = 0; i < dofs; i++) {
+			Assert.assertEquals(stiffness[i].length, dofs);
+			forces[i] = stiffness[i][0] * perturbation;
+			for (int j = 1; j < dofs; j++) {
+				Assert.assertEquals(stiffness[i][j], stiffness[i][0],
+						tolerance);
+			}
+		}
+		Assert.assertEquals(forces[dofs - 1], 0.0005, tolerance);
+		Assert.assertEquals(fexec.getProcessSlots().getPeak(), processes);
+		Assert.assertEquals(fexec.getProcessSlots().getInUse(), 0);
+		// A second extraction of the unchanged model is served by the cache
+		// without starting any probes.
+		fexec.getConfig().getExecutionParameters()
+				.setStiffnessCache(PathUtils.append(workDir, "StiffnessCache"));
+		Assert.assertNotNull(fexec.extractStiffness(address, perturbation,
+				timeout));
+		final long cachedTimeout = 1;
+		double[][] cached = fexec.extractStiffness(address, perturbation,
+				cachedTimeout);
+		Assert.assertNotNull(cached);
+		for (int i = 0; i < dofs; i++) {
+			for (int j = 0; j < dofs; j++) {
+				Assert.assertEquals(cached[i][j], stiffness[i][j]);
+			}
+		}
+		fexec.finish();
+	}
+
 	/**
 	 * Set up a substructure with displacements for execution.
 	 * @param fexec
@@ -223,6 +784,11 @@ public class TestFemExecutorExecution {
 		crpcfg.checkExecutable();
 		femProgWithRecords = crpcfg.windowsWrap(workDir);
 
+		command = command.replace("Dynamic", "Static").replace("2.pl", ".pl");
+		crpcfg = new CreateRefProgramConfig(command, 0);
+		crpcfg.checkExecutable();
+		femProgStatic = crpcfg.windowsWrap(workDir);
+
 		String[] configFileNames = { "OneSubstructureTestConfig",
 				"TwoSubstructureTestConfig", "ThreeSubstructureTestConfig" };
 		for (String f : configFileNames) {
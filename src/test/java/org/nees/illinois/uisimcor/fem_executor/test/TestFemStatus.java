@@ -0,0 +1,113 @@
+package org.nees.illinois.uisimcor.fem_executor.test;
+
+import org.nees.illinois.uisimcor.fem_executor.execute.FemStatus;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the FEM status state word.
+ * @author Michael Bletzinger
+ */
+@Test(groups = { "data" })
+public class TestFemStatus {
+	/**
+	 * Test setting and clearing the flags.
+	 */
+	@Test
+	public final void testFlags() {
+		FemStatus status = new FemStatus();
+		Assert.assertEquals(status.getState(), 0);
+		Assert.assertFalse(status.isChanged());
+		Assert.assertEquals(status.getStatus(), "Still Executing");
+
+		status.setCurrentStepHasExecuted(true);
+		Assert.assertTrue(status.isChanged());
+		Assert.assertFalse(status.isChanged());
+		status.setCurrentStepHasExecuted(true);
+		Assert.assertFalse(status.isChanged());
+		Assert.assertEquals(status.getStatus(),
+				"Waiting for Displacements and Forces");
+
+		status.setDisplacementsAreHere(true);
+		Assert.assertEquals(status.getStatus(), "Waiting for Forces");
+		Assert.assertFalse(status.responsesHaveArrived());
+		status.setForcesAreHere(true);
+		Assert.assertTrue(status.responsesHaveArrived());
+		Assert.assertEquals(status.getState(), FemStatus.STEP_DONE);
+		Assert.assertSame(status.getStatus(), status.getStatus());
+
+		status.isChanged();
+		status.newStep();
+		Assert.assertTrue(status.isChanged());
+		Assert.assertEquals(status.getState(), 0);
+		status.setStepFinished();
+		Assert.assertEquals(status.getState(), FemStatus.STEP_DONE);
+
+		status.setFemProcessHasErrors(true);
+		Assert.assertEquals(status.getStatus(), "Has Errors");
+		status.setFemProcessHasDied(true);
+		Assert.assertTrue(status.isFemProcessHasDied());
+		Assert.assertEquals(status.getStatus(), "No Longer Running.");
+		status.newStep();
+		Assert.assertEquals(status.getState(), FemStatus.FAILED);
+	}
+
+	/**
+	 * Test that a waiting thread is woken up by transitions from another
+	 * thread.
+	 * @throws InterruptedException
+	 *             if the test is interrupted.
+	 */
+	@Test
+	public final void testAwaitState() throws InterruptedException {
+		final FemStatus status = new FemStatus();
+		final long shortWait = 50;
+		final long longWait = 10000;
+		Assert.assertEquals(status.awaitState(FemStatus.EXECUTED, shortWait),
+				0);
+
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(shortWait);
+					status.setCurrentStepHasExecuted(true);
+					Thread.sleep(shortWait);
+					status.setFlags(FemStatus.RESPONSES);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		long start = System.currentTimeMillis();
+		reader.start();
+		int state = status.awaitState(FemStatus.STEP_DONE, longWait);
+		Assert.assertEquals(state & FemStatus.STEP_DONE, FemStatus.STEP_DONE);
+		Assert.assertTrue(System.currentTimeMillis() - start < longWait);
+		reader.join();
+
+		status.newStep();
+		reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(shortWait);
+					status.setFemProcessHasDied(true);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		start = System.currentTimeMillis();
+		reader.start();
+		state = status.awaitState(FemStatus.STEP_DONE, longWait);
+		Assert.assertEquals(state, FemStatus.DIED);
+		Assert.assertTrue(System.currentTimeMillis() - start < longWait);
+		reader.join();
+
+		FemStatus warned = new FemStatus();
+		warned.setFemProcessHasErrors(true);
+		state = warned.awaitState(FemStatus.EXECUTED, shortWait);
+		Assert.assertEquals(state, FemStatus.ERRORS);
+	}
+}
@@ -3,12 +3,36 @@ package org.nees.illinois.uisimcor.fem_executor.test;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.nees.illinois.uisimcor.fem_executor.FemExecutorConfig;
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveColumns;
+import org.nees.illinois.uisimcor.fem_executor.archiving.BinaryDataArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.DataArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.DataArchiveI;
+import org.nees.illinois.uisimcor.fem_executor.archiving.HeaderArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.TextArchive;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.TemplateDao;
 import org.nees.illinois.uisimcor.fem_executor.config.types.FemProgramType;
+import org.nees.illinois.uisimcor.fem_executor.execute.FileWithContentDelete;
+import org.nees.illinois.uisimcor.fem_executor.input.BatchData;
+import org.nees.illinois.uisimcor.fem_executor.input.CompactInputs;
+import org.nees.illinois.uisimcor.fem_executor.input.InputReconstructor;
+import org.nees.illinois.uisimcor.fem_executor.input.ModelTags;
 import org.nees.illinois.uisimcor.fem_executor.input.OpenSeesSG;
 import org.nees.illinois.uisimcor.fem_executor.input.ScriptGeneratorI;
+import org.nees.illinois.uisimcor.fem_executor.input.ScriptRecordType;
+import org.nees.illinois.uisimcor.fem_executor.input.ScriptTemplate;
+import org.nees.illinois.uisimcor.fem_executor.input.StepScriptPattern;
+import org.nees.illinois.uisimcor.fem_executor.input.TemplateCache;
 import org.nees.illinois.uisimcor.fem_executor.test.utils.CreateRefProgramConfig;
 import org.nees.illinois.uisimcor.fem_executor.test.utils.CreateRefSubstructureConfig;
 import org.nees.illinois.uisimcor.fem_executor.utils.PathUtils;
@@ -38,10 +62,10 @@ public class TestInputCommandGeneration {
 	 * Reference step.
 	 */
 	private String stepReference = "pattern Plain 99003	Constant {\n"
-			+ "sp 2 1 130.20300000000000000E-009\n"
-			+ "sp 2 3 34.000120000000000000E-012\n"
-			+ "sp 3 1 120.03450000000000000E-009\n"
-			+ "sp 4 1 150.11000000000000000E-009\n" + "\n}\n" + "analyze 1\n"
+			+ "sp 2 1 1.30203E-7\n"
+			+ "sp 2 3 3.400012E-11\n"
+			+ "sp 3 1 1.200345E-7\n"
+			+ "sp 4 1 1.5011E-7\n" + "\n}\n" + "analyze 1\n"
 			+ "remove loadPattern 99003\n"
 			+ "puts \"Current step 99003 - done #:\"\n";
 	/**
@@ -83,6 +107,468 @@ public class TestInputCommandGeneration {
 		Assert.assertEquals(actualRun, expectedRun);
 	}
 
+	/**
+	 * Test that the step pattern gives the same scripts as the generator and
+	 * that a compact Inputs archive with trials, reverts and a batch is
+	 * reconstructed exactly.
+	 * @throws Exception
+	 *             if the pattern or the archive cannot be read.
+	 */
+	@Test
+	public final void testStepPatternReconstruct() throws Exception {
+		SubstructureDao scfg = femCfg.getSubstructCfgs().get(mdl);
+		ScriptGeneratorI fif = new OpenSeesSG(configDir, scfg, femCfg
+				.getFemProgramParameters().get(FemProgramType.OPENSEES)
+				.getTemplateDao());
+		StepScriptPattern pattern = StepScriptPattern.parse(fif
+				.getStepPattern().toText());
+		final int stepNumber = 3;
+		Assert.assertEquals(pattern.fill(stepNumber, data), stepReference);
+
+		ArchiveColumns cols = new ArchiveColumns(scfg, false);
+		final int numSteps = 25;
+		final int trialEvery = 5;
+		for (int format = 0; format < 2; format++) {
+			File dir = File.createTempFile("CompactInputs", "");
+			Assert.assertTrue(dir.delete());
+			Assert.assertTrue(dir.mkdir());
+			TextArchive pat = new TextArchive(new File(dir,
+					"Inputs_pattern.txt"));
+			pat.write(fif.getStepPattern().toText());
+			pat.close();
+			String base = new File(dir, "Commands").getPath();
+			DataArchiveI commands;
+			if (format == 0) {
+				commands = new BinaryDataArchive(base, cols, new ArchiveDao());
+			} else {
+				new HeaderArchive(base, cols).write();
+				commands = new DataArchive(base);
+			}
+			TextArchive scripts = new TextArchive(new File(dir,
+					"Inputs_scripts.txt"));
+			CompactInputs compact = new CompactInputs(pattern, scripts,
+					commands);
+			String init = fif.generateInit();
+			compact.writeScript(ScriptRecordType.Init, init);
+			StringBuilder expected = new StringBuilder(init);
+			double[] disp = new double[data.length];
+			for (int s = 1; s <= numSteps; s++) {
+				for (int i = 0; i < disp.length; i++) {
+					disp[i] = data[i] * Math.sin(s * 0.3 + i) / 3.0;
+				}
+				String script;
+				if (s % trialEvery == 0) {
+					script = fif.generateTrial(s, disp);
+					compact.writeScript(ScriptRecordType.Trial, script);
+					expected.append(script);
+					script = fif.generateRevert();
+					compact.writeScript(ScriptRecordType.Revert, script);
+					expected.append(script);
+					script = fif.generateTrial(s, disp);
+					compact.writeScript(ScriptRecordType.Trial, script);
+					expected.append(script);
+					if (s % (2 * trialEvery) == 0) {
+						Assert.assertTrue(fif.commitTrial());
+						continue;
+					}
+				}
+				script = fif.generateStep(s, disp);
+				compact.writeStep(s, disp, script);
+				expected.append(script);
+			}
+			String batch = fif.generateBatch(numSteps + 1, 2, "batch.txt");
+			compact.writeScript(ScriptRecordType.Batch, batch);
+			expected.append(batch);
+			scripts.close();
+			commands.close();
+			InputReconstructor rec = new InputReconstructor(dir);
+			StringWriter out = new StringWriter();
+			rec.writeAll(out);
+			Assert.assertEquals(out.toString(), expected.toString());
+			final int someStep = 7;
+			Assert.assertTrue(expected.toString().contains(
+					rec.script(someStep)));
+			Assert.assertTrue(rec.script(trialEvery).startsWith("restore "));
+			Assert.assertNull(rec.script(2 * trialEvery));
+			Assert.assertNull(rec.script(numSteps + 1));
+			Assert.assertEquals(rec.getInit(), init);
+			rec.close();
+			FileWithContentDelete killDir = new FileWithContentDelete(
+					dir.getPath());
+			killDir.delete();
+		}
+	}
+
+	/**
+	 * Test that parsed templates are shared and reparsed when the file
+	 * changes.
+	 * @throws Exception
+	 *             if the template file cannot be written.
+	 */
+	@Test
+	public final void testTemplateCache() throws Exception {
+		ScriptTemplate st = new ScriptTemplate(
+				"a ${X} b ${Y} c ${Unknown\nd ${Z}");
+		Map<String, String> values = new HashMap<String, String>();
+		values.put("X", "1");
+		ScriptTemplate bound = st.bind(values);
+		Assert.assertEquals(bound.getSlotCount(), 2);
+		values.clear();
+		values.put("Z", "3");
+		Assert.assertEquals(bound.render(values),
+				"a 1 b ${Y} c ${Unknown\nd 3");
+
+		TemplateDao tdao = femCfg.getFemProgramParameters()
+				.get(FemProgramType.OPENSEES).getTemplateDao();
+		TemplateCache cache = OpenSeesSG.getTemplateCache();
+		String stepFile = PathUtils.append(configDir,
+				tdao.getStepTemplateFile());
+		ScriptGeneratorI fif1 = new OpenSeesSG(configDir, femCfg
+				.getSubstructCfgs().get(mdl), tdao);
+		ScriptTemplate cached = cache.get(stepFile);
+		Assert.assertSame(cache.get(stepFile), cached);
+		Assert.assertEquals(fif1.generateInit(), initReference);
+		Assert.assertEquals(fif1.generateInit(), initReference);
+
+		File tmpl = File.createTempFile("template", ".tcl");
+		final long past = 100000;
+		PrintWriter w = new PrintWriter(tmpl);
+		w.println("first ${StepNumber}");
+		w.close();
+		Assert.assertTrue(tmpl.setLastModified(tmpl.lastModified() - past));
+		ScriptTemplate t1 = cache.get(tmpl.getPath());
+		Assert.assertSame(cache.get(tmpl.getPath()), t1);
+		w = new PrintWriter(tmpl);
+		w.println("second ${StepNumber}");
+		w.close();
+		ScriptTemplate t2 = cache.get(tmpl.getPath());
+		Assert.assertNotSame(t2, t1);
+		Assert.assertEquals(t2.getText(), "second ${StepNumber}\n");
+		Assert.assertTrue(tmpl.delete());
+		Assert.assertNull(cache.get(tmpl.getPath()));
+	}
+
+	/**
+	 * Generate 10000 steps with a step template which does not remove its load
+	 * pattern. The load patterns are tracked like the OpenSees domain does and
+	 * only one may be active after each step. The generation time of each
+	 * block of steps is logged to show that the per step cost stays flat.
+	 * @throws Exception
+	 *             if the step pattern cannot be parsed.
+	 */
+	@Test
+	public final void testPatternLifecycle() throws Exception {
+		URL u = ClassLoader.getSystemResource("openseescfg/step_template.tcl");
+		String osDir = PathUtils.parent(PathUtils.cleanPath(u.getPath()));
+		TemplateDao tdao = new TemplateDao("step_template.tcl",
+				"init_template.tcl", "run_template.tcl");
+		SubstructureDao scfg = femCfg.getSubstructCfgs().get(mdl);
+		ScriptGeneratorI fif = new OpenSeesSG(osDir, scfg, tdao);
+		StepScriptPattern pattern = StepScriptPattern.parse(fif
+				.getStepPattern().toText());
+		Assert.assertNotNull(pattern.getPreviousPrefix());
+		final int numSteps = 10000;
+		final int block = 1000;
+		final int checkInterval = 97;
+		final double nanosPerMicro = 1000.0;
+		Set<Integer> domain = new HashSet<Integer>();
+		double[] disp = new double[data.length];
+		long start = System.nanoTime();
+		for (int s = 1; s <= numSteps; s++) {
+			for (int i = 0; i < disp.length; i++) {
+				disp[i] = data[i] * s;
+			}
+			String script = fif.generateStep(s, disp);
+			for (String line : script.split("\n")) {
+				String[] words = line.trim().split("\\s+");
+				if (line.startsWith("pattern Plain ")) {
+					Assert.assertTrue(domain.add(Integer.valueOf(words[2])),
+							line);
+				} else if (line.startsWith("remove loadPattern ")) {
+					Assert.assertTrue(
+							domain.remove(Integer.valueOf(words[2])), line);
+				}
+			}
+			Assert.assertEquals(domain.size(), 1, "Active load patterns");
+			if (s % checkInterval == 0) {
+				Assert.assertEquals(pattern.fill(s - 1, s, disp), script);
+			}
+			if (s % block == 0) {
+				long now = System.nanoTime();
+				log.info("Steps " + (s - block + 1) + " to " + s + " took "
+						+ ((now - start) / nanosPerMicro / block)
+						+ " us per step with " + domain.size()
+						+ " active load patterns");
+				start = now;
+			}
+		}
+		Assert.assertTrue(pattern.fill(1, disp).startsWith("pattern Plain"));
+	}
+
+	/**
+	 * Test the batch script and its data file. The batch has to replace the
+	 * pattern of the previous step and each pass of the loop has to replace
+	 * the pattern of the pass before.
+	 * @throws Exception
+	 *             if the data file cannot be read.
+	 */
+	@Test
+	public final void testBatch() throws Exception {
+		URL u = ClassLoader.getSystemResource("openseescfg/step_template.tcl");
+		String osDir = PathUtils.parent(PathUtils.cleanPath(u.getPath()));
+		TemplateDao tdao = new TemplateDao("step_template.tcl",
+				"init_template.tcl", "run_template.tcl");
+		SubstructureDao scfg = femCfg.getSubstructCfgs().get(mdl);
+		ScriptGeneratorI fif = new OpenSeesSG(osDir, scfg, tdao);
+		final int firstStep = 4;
+		final int steps = 50;
+		double[][] disps = new double[steps][data.length];
+		for (int s = 0; s < steps; s++) {
+			for (int i = 0; i < data.length; i++) {
+				disps[s][i] = data[i] * (s + firstStep);
+			}
+		}
+		File dir = new FileWithContentDelete(
+				System.getProperty("java.io.tmpdir"), "uisimcorBatchTest");
+		dir.mkdirs();
+		BatchData bdata = new BatchData(new File(dir, "Batch.txt"));
+		Assert.assertTrue(bdata.write(disps));
+		BufferedReader reader = new BufferedReader(new FileReader(
+				bdata.getFile()));
+		for (int s = 0; s < steps; s++) {
+			String[] words = reader.readLine().split(" ");
+			Assert.assertEquals(words.length, data.length);
+			for (int i = 0; i < data.length; i++) {
+				Assert.assertEquals(Double.parseDouble(words[i]), disps[s][i]);
+			}
+		}
+		Assert.assertNull(reader.readLine());
+		reader.close();
+
+		fif.generateStep(firstStep - 1, disps[0]);
+		String script = fif.generateBatch(firstStep, steps, "/tmp/Batch.txt");
+		log.debug("Batch script " + script);
+		Assert.assertTrue(script.startsWith("remove loadPattern 99003\n"),
+				script);
+		Assert.assertTrue(script.contains("set uisimcorData [open {/tmp/Batch.txt} r]\n"));
+		Assert.assertTrue(script.contains("for {set uisimcorStep 4} {$uisimcorStep <= 53} {incr uisimcorStep} {\n"));
+		Assert.assertTrue(script.contains("remove loadPattern [expr {$uisimcorStep + 98999}]"));
+		Assert.assertTrue(script.contains("pattern Plain [expr {$uisimcorStep + 99000}]"));
+		for (int i = 0; i < data.length; i++) {
+			Assert.assertTrue(script.contains("[lindex $uisimcorDisp " + i
+					+ "]"), script);
+		}
+		Assert.assertFalse(script.contains("${"), script);
+		Assert.assertTrue(script.endsWith("}\nclose $uisimcorData\n"), script);
+		int opens = script.length() - script.replace("{", "").length();
+		int closes = script.length() - script.replace("}", "").length();
+		Assert.assertEquals(opens, closes, "Unbalanced braces");
+		String next = fif.generateStep(firstStep + steps, disps[0]);
+		Assert.assertTrue(next.startsWith("remove loadPattern 99053\n"), next);
+		dir.delete();
+	}
+
+	/**
+	 * Test steps which are split into sub-increments. The intermediate
+	 * targets have to be interpolated from the displacements at the start of
+	 * the step and the step has to be reported once.
+	 * @throws Exception
+	 *             if the step pattern cannot be parsed.
+	 */
+	@Test
+	public final void testSubsteps() throws Exception {
+		URL u = ClassLoader.getSystemResource("openseescfg/step_template.tcl");
+		String osDir = PathUtils.parent(PathUtils.cleanPath(u.getPath()));
+		TemplateDao tdao = new TemplateDao("step_template.tcl",
+				"init_template.tcl", "run_template.tcl");
+		final int substeps = 4;
+		SubstructureDao scfg = new CreateRefSubstructureConfig(mdl)
+				.getConfig();
+		scfg.setSubsteps(substeps);
+		ScriptGeneratorI fif = new OpenSeesSG(osDir, scfg, tdao);
+		ScriptGeneratorI plain = new OpenSeesSG(osDir, new CreateRefSubstructureConfig(
+				mdl).getConfig(), tdao);
+		StepScriptPattern pattern = StepScriptPattern.parse(fif
+				.getStepPattern().toText());
+		final int step = 3;
+		fif.generateStep(step - 1, data);
+		String script = fif.generateStep(step, data);
+		log.debug("Sub-stepped script " + script);
+		Assert.assertTrue(script.startsWith("remove loadPattern 99002\n"
+				+ "set uisimcorStart [list [nodeDisp 2 1] [nodeDisp 2 3]"
+				+ " [nodeDisp 3 1] [nodeDisp 4 1]]\n"
+				+ "for {set uisimcorSub 1} {$uisimcorSub < 4}"
+				+ " {incr uisimcorSub} {\n"), script);
+		Assert.assertTrue(script.contains("sp 2 1 [expr {[lindex $uisimcorStart 0]"
+				+ " + (1.30203E-7 - [lindex $uisimcorStart 0])"
+				+ " * $uisimcorSub / 4}]\n"), script);
+		Assert.assertTrue(script.contains("\nremove loadPattern 99003\n}\n"),
+				script);
+		Assert.assertTrue(script.endsWith(plain.generateStep(step, data)),
+				script);
+		Assert.assertEquals(script.split("analyze 1", -1).length - 1, 2);
+		Assert.assertEquals(script.split("puts ", -1).length - 1, 1);
+		Assert.assertEquals(pattern.fill(step - 1, step, data), script);
+
+		String batch = fif.generateBatch(step + 1, 2, "/tmp/Batch.txt");
+		Assert.assertTrue(batch.contains("sp 4 1 [expr {[lindex $uisimcorStart 3]"
+				+ " + ([lindex $uisimcorDisp 3] - [lindex $uisimcorStart 3])"
+				+ " * $uisimcorSub / 4}]\n"), batch);
+		Assert.assertTrue(batch.contains("\nremove loadPattern"
+				+ " [expr {$uisimcorStep + 99000}]\n}\n"), batch);
+		Assert.assertEquals(batch.split("puts ", -1).length - 1, 1);
+	}
+
+	/**
+	 * Test the scripts of a program which runs in several ranks. Only rank 0
+	 * may report steps and send records.
+	 * @throws Exception
+	 *             if the step pattern cannot be parsed.
+	 */
+	@Test
+	public final void testRankZero() throws Exception {
+		URL u = ClassLoader.getSystemResource("openseescfg/step_template.tcl");
+		String osDir = PathUtils.parent(PathUtils.cleanPath(u.getPath()));
+		TemplateDao tdao = new TemplateDao("step_template.tcl",
+				"init_template.tcl", "run_template.tcl");
+		SubstructureDao scfg = femCfg.getSubstructCfgs().get(mdl);
+		ScriptGeneratorI fif = new OpenSeesSG(osDir, scfg, tdao, true);
+		ScriptGeneratorI plain = new OpenSeesSG(osDir, scfg, tdao);
+		String init = fif.generateInit();
+		log.debug("Rank 0 init " + init);
+		Assert.assertEquals(init.split("\nif \\{\\[getPID\\] == 0\\} \\{recorder ",
+				-1).length - 1, 2, init);
+		Assert.assertEquals(init.replace("if {[getPID] == 0} {", "")
+				.replace("reaction}", "reaction").replace("disp}", "disp"),
+				plain.generateInit());
+		final int step = 1;
+		String script = fif.generateStep(step, data);
+		final String report = "puts \"Current step 99001 - done #:\"";
+		Assert.assertTrue(script.contains("\nif {[getPID] == 0} {" + report
+				+ "}\n"), script);
+		Assert.assertEquals(script.replace("if {[getPID] == 0} {" + report
+				+ "}", report), plain.generateStep(step, data));
+		StepScriptPattern pattern = StepScriptPattern.parse(fif
+				.getStepPattern().toText());
+		Assert.assertEquals(pattern.fill(step, data), script);
+
+		File init2 = new File(osDir, "multiline_init_template.tcl");
+		PrintWriter w = new PrintWriter(init2);
+		w.println("recorder Node -tcp 127.0.0.1 ${DispPort} \\");
+		w.println("    -node ${NodeList} -dof ${ResponseDofs} disp");
+		w.println("puts \"first {\"");
+		w.println("puts {a");
+		w.println("b}");
+		w.close();
+		TemplateDao multi = new TemplateDao("step_template.tcl",
+				"multiline_init_template.tcl", "run_template.tcl");
+		String ml = new OpenSeesSG(osDir, scfg, multi, true).generateInit();
+		Assert.assertTrue(ml.startsWith("if {[getPID] == 0} {recorder Node"
+				+ " -tcp 127.0.0.1 " + scfg.getDispPort() + " \\\n    -node "),
+				ml);
+		Assert.assertTrue(ml.contains(" disp\n}\n"), ml);
+		Assert.assertTrue(ml.contains("\nif {[getPID] == 0} {puts \"first {\"}\n"),
+				ml);
+		Assert.assertTrue(ml.endsWith("\nif {[getPID] == 0} {puts {a\nb}\n}\n"),
+				ml);
+		w = new PrintWriter(init2);
+		w.println("recorder Node -tcp 127.0.0.1 ${DispPort} \\");
+		w.close();
+		Assert.assertTrue(init2.setLastModified(init2.lastModified() + 2000));
+		Assert.assertNull(new OpenSeesSG(osDir, scfg, multi, true)
+				.generateInit());
+		Assert.assertTrue(init2.delete());
+		String forwarder = OpenSeesSG.rankForwarder();
+		Assert.assertEquals(forwarder.split("\\{", -1).length,
+				forwarder.split("\\}", -1).length, forwarder);
+		Assert.assertTrue(forwarder.contains("gets stdin "), forwarder);
+		Assert.assertTrue(forwarder.contains("recv -pid 0 "), forwarder);
+	}
+
+	/**
+	 * Test the scripts of trial steps. Every trial starts from the committed
+	 * state and a committed trial becomes the previous step.
+	 */
+	@Test
+	public final void testTrialScripts() {
+		ScriptGeneratorI fif = new OpenSeesSG(configDir, femCfg
+				.getSubstructCfgs().get(mdl), femCfg.getFemProgramParameters()
+				.get(FemProgramType.OPENSEES).getTemplateDao());
+		final int stepNumber = 3;
+		Assert.assertNull(fif.generateRevert());
+		Assert.assertFalse(fif.commitTrial());
+		Assert.assertEquals(fif.generateTrial(stepNumber, data),
+				"database File uisimcor_trial\nsave 1\n" + stepReference);
+		Assert.assertEquals(fif.generateTrial(stepNumber, data), "restore 1\n"
+				+ stepReference);
+		Assert.assertEquals(fif.generateRevert(), "restore 1\n");
+		Assert.assertNull(fif.generateRevert());
+		Assert.assertEquals(fif.generateTrial(stepNumber, data), "save 1\n"
+				+ stepReference);
+		Assert.assertTrue(fif.commitTrial());
+		Assert.assertFalse(fif.commitTrial());
+		Assert.assertFalse(fif.generateStep(stepNumber + 1, data).contains(
+				"restore"));
+		fif.generateTrial(stepNumber + 2, data);
+		Assert.assertTrue(fif.generateStep(stepNumber + 2, data).startsWith(
+				"restore 1\n"));
+
+		URL u = ClassLoader.getSystemResource("openseescfg/step_template.tcl");
+		String osDir = PathUtils.parent(PathUtils.cleanPath(u.getPath()));
+		TemplateDao tdao = new TemplateDao("step_template.tcl",
+				"init_template.tcl", "run_template.tcl");
+		ScriptGeneratorI managed = new OpenSeesSG(osDir, femCfg
+				.getSubstructCfgs().get(mdl), tdao);
+		managed.generateStep(1, data);
+		Assert.assertTrue(managed.generateTrial(2, data).contains(
+				"save 1\nremove loadPattern 99001\n"));
+		Assert.assertTrue(managed.generateTrial(2, data).startsWith(
+				"restore 1\nremove loadPattern 99001\n"));
+		Assert.assertTrue(managed.commitTrial());
+		String next = managed.generateStep(stepNumber, data);
+		Assert.assertTrue(next.startsWith("remove loadPattern 99002\n"), next);
+	}
+
+	/**
+	 * Test that the literal tags of the model files are collected so that
+	 * clashing models in a process group can be found.
+	 * @throws Exception
+	 *             if the model file cannot be written.
+	 */
+	@Test
+	public final void testModelTags() throws Exception {
+		ModelTags left = new ModelTags(configDir);
+		Assert.assertTrue(left.scan("LeftCol.tcl"));
+		Assert.assertTrue(left.getTags().contains("node 3"));
+		Assert.assertTrue(left.getTags().contains("element 2"));
+		Assert.assertTrue(left.getTags().contains("uniaxialMaterial 1"));
+		Assert.assertTrue(left.getTags().contains("geomTransf 1"));
+		Assert.assertTrue(left.getWipes().isEmpty());
+		ModelTags middle = new ModelTags(configDir);
+		Assert.assertTrue(middle.scan("Middle.tcl"));
+		Assert.assertTrue(middle.getTags().contains("node 3"));
+		ModelTags group = new ModelTags(configDir);
+		Assert.assertTrue(group.scan("GroupMiddle.tcl"));
+		Assert.assertTrue(group.getTags().contains("node 103"));
+		for (String tag : group.getTags()) {
+			Assert.assertFalse(left.getTags().contains(tag), tag);
+		}
+
+		File model = File.createTempFile("model", ".tcl");
+		PrintWriter w = new PrintWriter(model);
+		w.println("wipe; node 7 0.0 \\");
+		w.println("  1.0");
+		w.println("element truss $tag 1 2 1.0 1");
+		w.close();
+		ModelTags temp = new ModelTags(model.getParent());
+		Assert.assertTrue(temp.scan(model.getName()));
+		Assert.assertEquals(temp.getWipes().size(), 1);
+		Assert.assertEquals(temp.getTags().size(), 1);
+		Assert.assertEquals(temp.getTags().get(0), "node 7");
+		Assert.assertTrue(model.delete());
+		Assert.assertFalse(temp.scan("missing.tcl"));
+	}
+
 	/**
 	 * Set up the reference configuration.
 	 */
@@ -7,8 +7,14 @@ import java.util.List;
 
 import org.nees.illinois.uisimcor.fem_executor.FemExecutorConfig;
 import org.nees.illinois.uisimcor.fem_executor.config.LoadSaveConfig;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ExecutionDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.LauncherDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.ProgramDao;
 import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.config.types.ArchiveFormat;
+import org.nees.illinois.uisimcor.fem_executor.config.types.ArchiveQueuePolicy;
+import org.nees.illinois.uisimcor.fem_executor.config.types.ExecutionMode;
 import org.nees.illinois.uisimcor.fem_executor.config.types.DispDof;
 import org.nees.illinois.uisimcor.fem_executor.config.types.FemProgramType;
 import org.nees.illinois.uisimcor.fem_executor.test.utils.CreateRefProgramConfig;
@@ -83,6 +89,45 @@ public class TestLoadSaveConfig {
 		lscfg.setConfigFilePath(configFilename);
 		lscfg.load(workDir);
 		compareConfigs(lscfg.getFemConfig(), femCfg);
+		ArchiveDao eArch = femCfg.getArchiveParameters();
+		ArchiveDao aArch = lscfg.getFemConfig().getArchiveParameters();
+		Assert.assertEquals(aArch.getFlushRecords(), eArch.getFlushRecords());
+		Assert.assertEquals(aArch.getFlushMillis(), eArch.getFlushMillis());
+		Assert.assertEquals(aArch.isFsync(), eArch.isFsync());
+		Assert.assertEquals(aArch.getFormat(), eArch.getFormat());
+		Assert.assertEquals(aArch.getQueueCapacity(), eArch.getQueueCapacity());
+		Assert.assertEquals(aArch.getQueueMaxCapacity(),
+				eArch.getQueueMaxCapacity());
+		Assert.assertEquals(aArch.getQueuePolicy(), eArch.getQueuePolicy());
+		Assert.assertEquals(aArch.getBlockFrames(), eArch.getBlockFrames());
+		Assert.assertEquals(aArch.isMatExport(), eArch.isMatExport());
+		Assert.assertEquals(aArch.isCompactInputs(), eArch.isCompactInputs());
+		ExecutionDao eExec = femCfg.getExecutionParameters();
+		ExecutionDao aExec = lscfg.getFemConfig().getExecutionParameters();
+		Assert.assertEquals(aExec.getMode(), eExec.getMode());
+		Assert.assertEquals(aExec.getProcesses(), eExec.getProcesses());
+		Assert.assertEquals(aExec.getDispatchThreads(),
+				eExec.getDispatchThreads());
+		Assert.assertEquals(aExec.getStiffnessCache(),
+				eExec.getStiffnessCache());
+		Assert.assertEquals(aExec.getStiffnessCacheEntries(),
+				eExec.getStiffnessCacheEntries());
+		LauncherDao eLaunch = femCfg.getFemProgramParameters()
+				.get(FemProgramType.OPENSEES).getLauncher();
+		LauncherDao aLaunch = lscfg.getFemConfig().getFemProgramParameters()
+				.get(FemProgramType.OPENSEES).getLauncher();
+		Assert.assertNotNull(aLaunch);
+		Assert.assertEquals(aLaunch.getCommandLine(), eLaunch.getCommandLine());
+		Assert.assertEquals(aLaunch.getEnv(), eLaunch.getEnv());
+		Assert.assertEquals(aLaunch.isForwardStdin(), eLaunch.isForwardStdin());
+		for (String n : femCfg.getSubstructCfgs().keySet()) {
+			Assert.assertEquals(lscfg.getFemConfig().getSubstructCfgs().get(n)
+					.getSubsteps(), femCfg.getSubstructCfgs().get(n)
+					.getSubsteps(), "Checking substructure \"" + n + "\"");
+			Assert.assertEquals(lscfg.getFemConfig().getSubstructCfgs().get(n)
+					.getProcessGroup(), femCfg.getSubstructCfgs().get(n)
+					.getProcessGroup(), "Checking substructure \"" + n + "\"");
+		}
 	}
 
 	/**
@@ -100,11 +145,47 @@ public class TestLoadSaveConfig {
 		configRefFolder = pathF.getParent();
 		final int noSubstructures = 3;
 		femCfg = new FemExecutorConfig("/home/mbletzin/Tmp");
+		final int flushRecords = 8;
+		final int flushMillis = 500;
+		femCfg.getArchiveParameters().setFlushRecords(flushRecords);
+		femCfg.getArchiveParameters().setFlushMillis(flushMillis);
+		femCfg.getArchiveParameters().setFsync(true);
+		femCfg.getArchiveParameters().setFormat(ArchiveFormat.Binary);
+		final int queueCapacity = 16;
+		femCfg.getArchiveParameters().setQueueCapacity(queueCapacity);
+		femCfg.getArchiveParameters().setQueueMaxCapacity(4 * queueCapacity);
+		femCfg.getArchiveParameters().setQueuePolicy(ArchiveQueuePolicy.Grow);
+		final int blockFrames = 128;
+		femCfg.getArchiveParameters().setBlockFrames(blockFrames);
+		femCfg.getArchiveParameters().setMatExport(true);
+		femCfg.getArchiveParameters().setCompactInputs(true);
+		femCfg.getExecutionParameters().setMode(ExecutionMode.Static);
+		final int processes = 6;
+		femCfg.getExecutionParameters().setProcesses(processes);
+		final int dispatchThreads = 3;
+		femCfg.getExecutionParameters().setDispatchThreads(dispatchThreads);
+		femCfg.getExecutionParameters().setStiffnessCache("/tmp/stiffness");
+		final int cacheEntries = 12;
+		femCfg.getExecutionParameters().setStiffnessCacheEntries(
+				cacheEntries);
 		CreateRefProgramConfig crpcfg = new CreateRefProgramConfig("C:/Tcl/bin/OpenSees", 0);
+		LauncherDao launcher = new LauncherDao("/usr/bin/mpiexec");
+		final int ranks = 8;
+		launcher.setRanks(ranks);
+		launcher.getArgs().add("--bind-to");
+		launcher.getArgs().add("socket");
+		launcher.getEnv().put("OMP_NUM_THREADS", "1");
+		launcher.getEnv().put("MKL_NUM_THREADS", "1");
+		launcher.setForwardStdin(true);
+		crpcfg.getConfig().setLauncher(launcher);
 		femCfg.getFemProgramParameters().put(FemProgramType.OPENSEES, crpcfg.getConfig());
 		for (int i = 1; i < noSubstructures + 1; i++) {
 			String address = "MDL-0" + i;
 			CreateRefSubstructureConfig cfgR = new CreateRefSubstructureConfig(address);
+			cfgR.getConfig().setSubsteps(i);
+			if (i > 1) {
+				cfgR.getConfig().setProcessGroup("SIDES");
+			}
 			femCfg.getSubstructCfgs().put(address, cfgR.getConfig());
 		}
 	}
@@ -0,0 +1,264 @@
+package org.nees.illinois.uisimcor.fem_executor.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.nees.illinois.uisimcor.fem_executor.archiving.ArchiveColumns;
+import org.nees.illinois.uisimcor.fem_executor.archiving.BinaryDataArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.CompressedDataArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.DataArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.HeaderArchive;
+import org.nees.illinois.uisimcor.fem_executor.archiving.MatExporter;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.execute.FileWithContentDelete;
+import org.nees.illinois.uisimcor.fem_executor.test.utils.CreateRefSubstructureConfig;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the export of a log directory into a MAT file. The file is parsed back
+ * element by element.
+ * @author Michael Bletzinger
+ */
+@Test(groups = { "data" })
+public class TestMatExport {
+	/**
+	 * Number of steps to archive.
+	 */
+	private final int numSteps = 40;
+
+	/**
+	 * Parse the variables of a MAT file.
+	 * @param mat
+	 *            The file.
+	 * @return The values of each double matrix and the strings of each cell
+	 *         row. Matrices are returned column by column.
+	 * @throws IOException
+	 *             if the file cannot be read.
+	 */
+	private Map<String, Object> parse(final File mat) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(mat, "r");
+		byte[] bytes = new byte[(int) raf.length()];
+		raf.readFully(bytes);
+		raf.close();
+		ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		final int headerSize = 128;
+		final int endian = 126;
+		Assert.assertEquals(new String(bytes, 0, "MATLAB 5.0".length(),
+				"US-ASCII"), "MATLAB 5.0");
+		Assert.assertEquals(bytes[endian], 'I');
+		Assert.assertEquals(bytes[endian + 1], 'M');
+		buf.position(headerSize);
+		Map<String, Object> result = new HashMap<String, Object>();
+		while (buf.hasRemaining()) {
+			final int miMatrix = 14;
+			Assert.assertEquals(buf.getInt(), miMatrix);
+			int size = buf.getInt();
+			int end = buf.position() + size;
+			Object[] nameAndValue = parseArray(buf);
+			Assert.assertEquals(buf.position(), end);
+			result.put((String) nameAndValue[0], nameAndValue[1]);
+		}
+		return result;
+	}
+
+	/**
+	 * Parse the contents of a matrix element.
+	 * @param buf
+	 *            Buffer positioned after the matrix tag.
+	 * @return The name and the value of the array.
+	 */
+	private Object[] parseArray(final ByteBuffer buf) {
+		final int miUint32 = 6;
+		final int miInt32 = 5;
+		final int miInt8 = 1;
+		final int miDouble = 9;
+		final int miUint16 = 4;
+		final int miMatrix = 14;
+		final int cellClass = 1;
+		final int charClass = 4;
+		final int doubleClass = 6;
+		final int flagsSize = 8;
+		Assert.assertEquals(buf.getInt(), miUint32);
+		Assert.assertEquals(buf.getInt(), flagsSize);
+		int mxClass = buf.getInt() & 0xff;
+		buf.getInt();
+		Assert.assertEquals(buf.getInt(), miInt32);
+		Assert.assertEquals(buf.getInt(), 2 * 4);
+		int rows = buf.getInt();
+		int cols = buf.getInt();
+		Assert.assertEquals(buf.getInt(), miInt8);
+		int nlen = buf.getInt();
+		byte[] name = new byte[nlen];
+		buf.get(name);
+		skipPadding(buf, nlen);
+		if (mxClass == doubleClass) {
+			Assert.assertEquals(buf.getInt(), miDouble);
+			Assert.assertEquals(buf.getInt(), rows * cols * 8);
+			double[] values = new double[rows * cols];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = buf.getDouble();
+			}
+			return new Object[] { new String(name), values };
+		}
+		if (mxClass == charClass) {
+			Assert.assertEquals(buf.getInt(), miUint16);
+			int n = buf.getInt();
+			Assert.assertEquals(n, 2 * cols);
+			StringBuilder str = new StringBuilder();
+			for (int i = 0; i < cols; i++) {
+				str.append(buf.getChar());
+			}
+			skipPadding(buf, n);
+			return new Object[] { new String(name), str.toString() };
+		}
+		Assert.assertEquals(mxClass, cellClass);
+		Assert.assertEquals(rows, 1);
+		String[] cells = new String[cols];
+		for (int i = 0; i < cols; i++) {
+			Assert.assertEquals(buf.getInt(), miMatrix);
+			int size = buf.getInt();
+			int end = buf.position() + size;
+			Object[] cell = parseArray(buf);
+			Assert.assertEquals(cell[0], "");
+			Assert.assertEquals(buf.position(), end);
+			cells[i] = (String) cell[1];
+		}
+		return new Object[] { new String(name), cells };
+	}
+
+	/**
+	 * Skip the padding after an element.
+	 * @param buf
+	 *            Buffer positioned after the element data.
+	 * @param n
+	 *            Number of data bytes.
+	 */
+	private void skipPadding(final ByteBuffer buf, final int n) {
+		final int align = 8;
+		int padded = (n + align - 1) / align * align;
+		buf.position(buf.position() + padded - n);
+	}
+
+	/**
+	 * Value of a column at a step.
+	 * @param step
+	 *            Step number.
+	 * @param column
+	 *            Column index.
+	 * @return The value.
+	 */
+	private double value(final int step, final int column) {
+		return step * 0.25 + column;
+	}
+
+	/**
+	 * Check an exported matrix.
+	 * @param vars
+	 *            Parsed variables.
+	 * @param name
+	 *            Matrix name.
+	 * @param cols
+	 *            Archive columns.
+	 */
+	private void check(final Map<String, Object> vars, final String name,
+			final ArchiveColumns cols) {
+		double[] m = (double[]) vars.get(name);
+		Assert.assertNotNull(m, name);
+		Assert.assertEquals(m.length, numSteps * (cols.size() + 1));
+		for (int r = 0; r < numSteps; r++) {
+			Assert.assertEquals(m[r], r + 1.0);
+			for (int c = 0; c < cols.size(); c++) {
+				Assert.assertEquals(m[(c + 1) * numSteps + r],
+						value(r + 1, c), 1e-12);
+			}
+		}
+		String[] labels = (String[]) vars.get(name + "Labels");
+		Assert.assertEquals(labels[0], "Step");
+		for (int c = 0; c < cols.size(); c++) {
+			Assert.assertEquals(labels[c + 1], cols.getLabels()[c]);
+		}
+		String[] units = (String[]) vars.get(name + "Units");
+		Assert.assertEquals(units.length, cols.size() + 1);
+	}
+
+	/**
+	 * Export a log directory with one binary, one text and one compressed
+	 * substructure.
+	 * @throws IOException
+	 *             if the MAT file cannot be read.
+	 */
+	@Test
+	public final void testExport() throws IOException {
+		File logDir = File.createTempFile("MatExport", "");
+		Assert.assertTrue(logDir.delete());
+		CreateRefSubstructureConfig cfgR = new CreateRefSubstructureConfig(
+				"MDL-01");
+		SubstructureDao scfg = cfgR.getConfig();
+		ArchiveColumns dcols = new ArchiveColumns(scfg, false);
+		ArchiveColumns fcols = new ArchiveColumns(scfg, true);
+		ArchiveDao policy = new ArchiveDao();
+		final int blockFrames = 16;
+		policy.setBlockFrames(blockFrames);
+		String[] subs = { "MDL-01", "MDL-02", "MDL-03" };
+		for (String s : subs) {
+			File d = new File(logDir, s);
+			Assert.assertTrue(d.mkdirs());
+		}
+		String b = new File(new File(logDir, subs[0]), "").getPath();
+		String t = new File(new File(logDir, subs[1]), "").getPath();
+		String z = new File(new File(logDir, subs[2]), "").getPath();
+		BinaryDataArchive bd = new BinaryDataArchive(b + "/Displacements",
+				dcols, policy);
+		BinaryDataArchive bf = new BinaryDataArchive(b + "/Forces", fcols,
+				policy);
+		DataArchive td = new DataArchive(t + "/Displacements", policy);
+		DataArchive tf = new DataArchive(t + "/Forces", policy);
+		new HeaderArchive(t + "/Displacements", dcols).write();
+		new HeaderArchive(t + "/Forces", fcols).write();
+		CompressedDataArchive zd = new CompressedDataArchive(z
+				+ "/Displacements", dcols, policy);
+		CompressedDataArchive zf = new CompressedDataArchive(z + "/Forces",
+				fcols, policy);
+		double[] v = new double[dcols.size()];
+		for (int s = 1; s <= numSteps; s++) {
+			for (int c = 0; c < v.length; c++) {
+				v[c] = value(s, c);
+			}
+			bd.write(s, v);
+			bf.write(s, v);
+			td.write(s, v);
+			tf.write(s, v);
+			zd.write(s, v);
+			zf.write(s, v);
+		}
+		bd.close();
+		bf.close();
+		td.close();
+		tf.close();
+		zd.close();
+		zf.close();
+
+		File mat = new File(logDir, "Archives.mat");
+		MatExporter exporter = new MatExporter();
+		Assert.assertTrue(exporter.export(logDir, mat));
+		Map<String, Object> vars = parse(mat);
+		final int variables = 3 * 2 * 3;
+		Assert.assertEquals(vars.size(), variables);
+		for (String s : subs) {
+			String prefix = MatExporter.variableName(s);
+			Assert.assertEquals(prefix, s.replace('-', '_'));
+			check(vars, prefix + "_Displacements", dcols);
+			check(vars, prefix + "_Forces", fcols);
+		}
+		FileWithContentDelete killDir = new FileWithContentDelete(
+				logDir.getPath());
+		killDir.delete();
+	}
+}
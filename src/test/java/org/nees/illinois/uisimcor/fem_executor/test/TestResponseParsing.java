@@ -1,8 +1,10 @@
 package org.nees.illinois.uisimcor.fem_executor.test;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.nees.illinois.uisimcor.fem_executor.output.DataFormatter;
+import org.nees.illinois.uisimcor.fem_executor.output.ResponseValues;
 import org.nees.illinois.uisimcor.fem_executor.test.utils.CreateRefSubstructureConfig;
 import org.nees.illinois.uisimcor.fem_executor.utils.MtxUtils;
 import org.slf4j.Logger;
@@ -107,6 +109,38 @@ public class TestResponseParsing {
 		fresult = df.filter(result);
 		log.info("Filtered FORCE:\n" + fresult);
 		compareData(fresult, expectedFilteredForce);
+
+		double[] out = new double[cfgR.getConfig().getTotalDofs()];
+		Assert.assertTrue(df.filter(
+				MtxUtils.list2DoubleArray(df.tokenString2Double(dataStrs[0])),
+				out));
+		compareData(array2List(out), expectedFilteredDisp);
+		Assert.assertTrue(df.filter(
+				MtxUtils.list2DoubleArray(df.tokenString2Double(dataStrs[1])),
+				out));
+		compareData(array2List(out), expectedFilteredForce);
+
+		double[] record = df.tokenString2Double(dataStrs[0], null);
+		ResponseValues rv = new ResponseValues(cfgR.getConfig());
+		rv.setRawDisp(record);
+		Assert.assertTrue(rv.readDisplacements(out));
+		compareData(array2List(out), expectedFilteredDisp);
+		rv.setRawForce(new double[2]);
+		Assert.assertFalse(rv.readForces(out));
+	}
+
+	/**
+	 * Converts a double array into a list.
+	 * @param array
+	 *            The array.
+	 * @return The list.
+	 */
+	private List<Double> array2List(final double[] array) {
+		List<Double> result = new ArrayList<Double>();
+		for (double d : array) {
+			result.add(d);
+		}
+		return result;
 	}
 
 	/**
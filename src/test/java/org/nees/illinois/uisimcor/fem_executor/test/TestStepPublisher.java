@@ -0,0 +1,116 @@
+package org.nees.illinois.uisimcor.fem_executor.test;
+
+import java.util.concurrent.TimeUnit;
+
+import org.nees.illinois.uisimcor.fem_executor.publish.OverflowPolicy;
+import org.nees.illinois.uisimcor.fem_executor.publish.StepPublisher;
+import org.nees.illinois.uisimcor.fem_executor.publish.StepSnapshot;
+import org.nees.illinois.uisimcor.fem_executor.publish.StepSubscription;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the live step publisher.
+ * @author Michael Bletzinger
+ */
+@Test(groups = { "data" })
+public class TestStepPublisher {
+	/**
+	 * Maximum time to wait for a snapshot.
+	 */
+	private final long waitTime = 100;
+
+	/**
+	 * Publish more steps than a slow subscriber can hold.
+	 * @throws InterruptedException
+	 *             if the test is interrupted.
+	 */
+	@Test
+	public final void testOverflow() throws InterruptedException {
+		StepPublisher pub = new StepPublisher();
+		Assert.assertFalse(pub.hasSubscribers());
+		final int capacity = 3;
+		final int numSteps = 10;
+		StepSubscription oldest = pub.subscribe(capacity,
+				OverflowPolicy.DropOldest);
+		StepSubscription newest = pub.subscribe(capacity,
+				OverflowPolicy.DropNewest);
+		Assert.assertTrue(pub.hasSubscribers());
+		double[] disp = new double[2];
+		double[] force = new double[2];
+		for (int s = 1; s <= numSteps; s++) {
+			disp[0] = s;
+			force[1] = -s;
+			pub.publish(s, "MDL-01", disp, force, 0, s);
+		}
+		Assert.assertEquals(oldest.getQueueDepth(), capacity);
+		Assert.assertEquals(oldest.getDroppedCount(), numSteps - capacity);
+		Assert.assertEquals(newest.getDroppedCount(), numSteps - capacity);
+		for (int s = numSteps - capacity + 1; s <= numSteps; s++) {
+			StepSnapshot snap = oldest.poll(waitTime, TimeUnit.MILLISECONDS);
+			Assert.assertEquals(snap.getStep(), s);
+			Assert.assertEquals(snap.getDisplacement(0), (double) s);
+			Assert.assertEquals(snap.getForce(1), (double) -s);
+			Assert.assertEquals(snap.getAddress(), "MDL-01");
+			Assert.assertEquals(snap.getExecutionNanos(), s);
+			oldest.release(snap);
+		}
+		for (int s = 1; s <= capacity; s++) {
+			StepSnapshot snap = newest.take();
+			Assert.assertEquals(snap.getStep(), s);
+			newest.release(snap);
+		}
+		Assert.assertNull(newest.poll(1, TimeUnit.MILLISECONDS));
+		pub.unsubscribe(newest);
+		pub.publish(numSteps + 1, "MDL-01", disp, force, 0, 1);
+		Assert.assertEquals(newest.getQueueDepth(), 0);
+		Assert.assertEquals(oldest.getQueueDepth(), 1);
+	}
+
+	/**
+	 * Publish to a blocking subscriber which makes room while the publisher
+	 * waits and then stops reading.
+	 * @throws InterruptedException
+	 *             if the test is interrupted.
+	 */
+	@Test
+	public final void testBlock() throws InterruptedException {
+		StepPublisher pub = new StepPublisher();
+		final int capacity = 2;
+		final long maxWait = 200;
+		final StepSubscription blocking = pub.subscribe(capacity,
+				OverflowPolicy.Block, maxWait);
+		double[] disp = new double[1];
+		double[] force = new double[1];
+		for (int s = 1; s <= capacity; s++) {
+			pub.publish(s, "MDL-01", disp, force, 0, s);
+		}
+		Assert.assertEquals(blocking.getQueueDepth(), capacity);
+
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(waitTime / 2);
+					blocking.release(blocking.take());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		reader.start();
+		pub.publish(capacity + 1, "MDL-01", disp, force, 0, 1);
+		reader.join();
+		Assert.assertEquals(blocking.getDroppedCount(), 0);
+		Assert.assertEquals(blocking.getDeliveredCount(), capacity + 1);
+
+		long start = System.currentTimeMillis();
+		pub.publish(capacity + 2, "MDL-01", disp, force, 0, 1);
+		long waited = System.currentTimeMillis() - start;
+		Assert.assertTrue(waited >= maxWait / 2);
+		Assert.assertTrue(waited < 2 * waitTime + maxWait);
+		Assert.assertEquals(blocking.getDroppedCount(), 1);
+		Assert.assertEquals(blocking.getQueueDepth(), capacity);
+		Assert.assertEquals(blocking.take().getStep(), 2);
+	}
+}
@@ -0,0 +1,80 @@
+package org.nees.illinois.uisimcor.fem_executor.test;
+
+import org.nees.illinois.uisimcor.fem_executor.output.StepStatistics;
+import org.nees.illinois.uisimcor.fem_executor.test.utils.CreateRefSubstructureConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the running response statistics.
+ * @author Michael Bletzinger
+ */
+@Test(groups = { "data" })
+public class TestStepStatistics {
+	/**
+	 * Tolerance for double comparisons.
+	 */
+	private final double compareTolerance = 1e-12;
+	/**
+	 * Triangular displacement history for the first DOF.
+	 */
+	private final double[] history = { 1, 2, 3, 2, 1, -1, -2, -3, -2, -1, 1 };
+	/**
+	 * Logger.
+	 **/
+	private final Logger log = LoggerFactory.getLogger(TestStepStatistics.class);
+
+	/**
+	 * Feed an elastic cycle and a monotonic ramp through the statistics.
+	 */
+	@Test
+	public final void testAggregates() {
+		CreateRefSubstructureConfig cfgR = new CreateRefSubstructureConfig(
+				"MDL-01");
+		StepStatistics stats = new StepStatistics(cfgR.getConfig());
+		final double stiffness = 2.0;
+		final double rampRate = 0.5;
+		final double rampForce = 4.0;
+		double sumSq = 0.0;
+		for (int s = 0; s < history.length; s++) {
+			double[] disp = { history[s], rampRate * (s + 1) };
+			double[] force = { stiffness * history[s], rampForce };
+			stats.update(s + 1, disp, force);
+			sumSq += history[s] * history[s];
+		}
+		String text = stats.toText();
+		log.debug("Statistics\n" + text);
+		// The values of the table read back exactly.
+		String[] row = text.split("\n")[2].split("\t");
+		Assert.assertEquals(row[0], "2-DX");
+		Assert.assertEquals(Double.parseDouble(row[1]), stats.getDispMin(0));
+		Assert.assertEquals(Integer.parseInt(row[2]), stats.getDispMinStep(0));
+		Assert.assertEquals(Double.parseDouble(row[5]), stats.getDispRms(0));
+		Assert.assertEquals(stats.getCount(), history.length);
+		Assert.assertEquals(stats.getLabels()[0], "2-DX");
+		Assert.assertEquals(stats.getLabels()[1], "2-RZ");
+		final double peak = 3.0;
+		final int peakStep = 3;
+		final int valleyStep = 8;
+		Assert.assertEquals(stats.getDispMax(0), peak);
+		Assert.assertEquals(stats.getDispMaxStep(0), peakStep);
+		Assert.assertEquals(stats.getDispMin(0), -peak);
+		Assert.assertEquals(stats.getDispMinStep(0), valleyStep);
+		Assert.assertEquals(stats.getForceMax(0), stiffness * peak);
+		Assert.assertEquals(stats.getForceMinStep(0), valleyStep);
+		Assert.assertEquals(stats.getDispRms(0),
+				Math.sqrt(sumSq / history.length), compareTolerance);
+		Assert.assertEquals(stats.getResidualDisp(0), 1.0);
+		Assert.assertEquals(stats.getZeroCrossings(0), 2);
+		// Elastic loop dissipates nothing.
+		Assert.assertEquals(stats.getWork(0), 0.0, compareTolerance);
+		// Constant force along a ramp.
+		Assert.assertEquals(stats.getWork(1), rampForce * rampRate
+				* (history.length - 1), compareTolerance);
+		Assert.assertEquals(stats.getZeroCrossings(1), 0);
+		Assert.assertEquals(stats.getForceRms(1), rampForce,
+				compareTolerance);
+	}
+}
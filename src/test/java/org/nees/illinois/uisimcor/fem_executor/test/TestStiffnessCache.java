@@ -0,0 +1,229 @@
+package org.nees.illinois.uisimcor.fem_executor.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ProgramDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.SubstructureDao;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.TemplateDao;
+import org.nees.illinois.uisimcor.fem_executor.config.types.FemProgramType;
+import org.nees.illinois.uisimcor.fem_executor.execute.FileWithContentDelete;
+import org.nees.illinois.uisimcor.fem_executor.execute.StiffnessCache;
+import org.nees.illinois.uisimcor.fem_executor.test.utils.CreateRefProgramConfig;
+import org.nees.illinois.uisimcor.fem_executor.test.utils.CreateRefSubstructureConfig;
+import org.nees.illinois.uisimcor.fem_executor.utils.PathUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test the stiffness cache.
+ * @author Michael Bletzinger
+ */
+@Test(groups = { "data" })
+public class TestStiffnessCache {
+	/**
+	 * Cache directory of the current test.
+	 */
+	private File cacheDir;
+	/**
+	 * Directory containing the model files.
+	 */
+	private String configDir;
+	/**
+	 * Perturbation used for the keys.
+	 */
+	private final double perturbation = 0.001;
+	/**
+	 * Reference FEM program.
+	 */
+	private final ProgramDao progCfg = new CreateRefProgramConfig(
+			"/usr/bin/OpenSees", 0).getConfig();
+	/**
+	 * Reference substructure.
+	 */
+	private SubstructureDao scfg;
+
+	/**
+	 * Test that the key depends on the model files, the templates, the FEM
+	 * program and the probe parameters.
+	 * @throws IOException
+	 *             if the copy of the model cannot be written.
+	 */
+	@Test
+	public final void testKey() throws IOException {
+		String key = StiffnessCache.key(scfg, configDir, progCfg, perturbation);
+		Assert.assertNotNull(key);
+		final int sha256Hex = 64;
+		Assert.assertEquals(key.length(), sha256Hex);
+		Assert.assertEquals(StiffnessCache.key(scfg, configDir, progCfg,
+				perturbation), key);
+		Assert.assertFalse(StiffnessCache.key(scfg, configDir, progCfg,
+				2 * perturbation).equals(key));
+		TemplateDao missing = new TemplateDao("step_template.tcl",
+				"init_template.tcl", "missing_template.tcl");
+		Assert.assertNull(StiffnessCache.key(scfg, configDir, new ProgramDao(
+				progCfg.getExecutablePath(), FemProgramType.OPENSEES, missing,
+				0), perturbation));
+		Assert.assertFalse(StiffnessCache.key(scfg, configDir,
+				new CreateRefProgramConfig(progCfg.getExecutablePath(), 1)
+						.getConfig(), perturbation).equals(key));
+
+		Assert.assertTrue(cacheDir.mkdirs());
+		File exe = new File(cacheDir, "OpenSees");
+		Writer writer = new FileWriter(exe);
+		writer.write("version 1\n");
+		writer.close();
+		ProgramDao local = new CreateRefProgramConfig(exe.getPath(), 0)
+				.getConfig();
+		String before = StiffnessCache.key(scfg, configDir, local,
+				perturbation);
+		Assert.assertFalse(before.equals(key));
+		writer = new FileWriter(exe, true);
+		writer.write("version 2\n");
+		writer.close();
+		String upgraded = StiffnessCache.key(scfg, configDir, local,
+				perturbation);
+		Assert.assertFalse(upgraded.equals(before));
+		final long aMinute = 60000;
+		Assert.assertTrue(exe.setLastModified(exe.lastModified() - aMinute));
+		Assert.assertEquals(StiffnessCache.key(scfg, configDir, local,
+				perturbation), upgraded);
+
+		String copyDir = PathUtils.append(cacheDir.getPath(), "model");
+		Assert.assertTrue(new File(copyDir).mkdirs());
+		for (String f : scfg.getSourcedFilenames()) {
+			PathUtils.cp(f, configDir, copyDir);
+		}
+		for (String f : scfg.getWorkFiles()) {
+			PathUtils.cp(f, configDir, copyDir);
+		}
+		TemplateDao tdao = progCfg.getTemplateDao();
+		PathUtils.cp(tdao.getInitTemplateFile(), configDir, copyDir);
+		PathUtils.cp(tdao.getStepTemplateFile(), configDir, copyDir);
+		PathUtils.cp(tdao.getRunTemplateFile(), configDir, copyDir);
+		Assert.assertEquals(StiffnessCache.key(scfg, copyDir, progCfg,
+				perturbation), key);
+		writer = new FileWriter(new File(copyDir,
+				tdao.getInitTemplateFile()), true);
+		writer.write("recorder Node -file extra.txt -node 1 -dof 1 disp\n");
+		writer.close();
+		String recorder = StiffnessCache.key(scfg, copyDir, progCfg,
+				perturbation);
+		Assert.assertFalse(recorder.equals(key));
+		String changed = scfg.getWorkFiles().get(0);
+		writer = new FileWriter(new File(copyDir, changed), true);
+		writer.write("# changed\n");
+		writer.close();
+		String workChanged = StiffnessCache.key(scfg, copyDir, progCfg,
+				perturbation);
+		Assert.assertFalse(workChanged.equals(recorder));
+
+		String nested = "nested.tcl";
+		writer = new FileWriter(new File(copyDir, nested));
+		writer.write("set nested 1\n");
+		writer.close();
+		writer = new FileWriter(new File(copyDir, scfg.getSourcedFilenames()
+				.get(0)), true);
+		writer.write("source " + nested + "\n");
+		writer.close();
+		String sourcing = StiffnessCache.key(scfg, copyDir, progCfg,
+				perturbation);
+		Assert.assertFalse(sourcing.equals(workChanged));
+		writer = new FileWriter(new File(copyDir, nested));
+		writer.write("set nested 2\n");
+		writer.close();
+		Assert.assertFalse(StiffnessCache.key(scfg, copyDir, progCfg,
+				perturbation).equals(sourcing));
+	}
+
+	/**
+	 * Test storing, finding and validating entries.
+	 * @throws IOException
+	 *             if an entry cannot be corrupted.
+	 */
+	@Test
+	public final void testPutGet() throws IOException {
+		final int maxEntries = 4;
+		StiffnessCache cache = new StiffnessCache(cacheDir, maxEntries);
+		String key = StiffnessCache.key(scfg, configDir, progCfg, perturbation);
+		int dofs = scfg.getTotalDofs();
+		double[][] stiffness = new double[dofs][dofs];
+		for (int i = 0; i < dofs; i++) {
+			for (int j = 0; j < dofs; j++) {
+				stiffness[i][j] = (i + 1) * 1.0e3 / (j + 3) - j;
+			}
+		}
+		Assert.assertNull(cache.get(key, dofs));
+		Assert.assertTrue(cache.put(key, stiffness));
+		double[][] found = cache.get(key, dofs);
+		Assert.assertNotNull(found);
+		for (int i = 0; i < dofs; i++) {
+			for (int j = 0; j < dofs; j++) {
+				Assert.assertEquals(found[i][j], stiffness[i][j]);
+			}
+		}
+		Assert.assertNull(cache.get(key, dofs + 1));
+		Assert.assertTrue(cache.listEntries().isEmpty());
+
+		Assert.assertTrue(cache.put(key, stiffness));
+		File entry = new File(cacheDir, cache.listEntries().get(0));
+		Writer writer = new FileWriter(entry);
+		writer.write("key 0123\n");
+		writer.close();
+		Assert.assertNull(cache.get(key, dofs));
+		Assert.assertFalse(entry.exists());
+	}
+
+	/**
+	 * Test that the least recently used entries are removed.
+	 */
+	@Test
+	public final void testLeastRecentlyUsed() {
+		final int maxEntries = 2;
+		StiffnessCache cache = new StiffnessCache(cacheDir, maxEntries);
+		double[][] stiffness = { { 1.0 } };
+		Assert.assertTrue(cache.put("a", stiffness));
+		Assert.assertTrue(cache.put("b", stiffness));
+		final long second = 1000;
+		long now = System.currentTimeMillis();
+		Assert.assertTrue(new File(cacheDir, "a.stiffness")
+				.setLastModified(now - 3 * second));
+		Assert.assertTrue(new File(cacheDir, "b.stiffness")
+				.setLastModified(now - 2 * second));
+		Assert.assertNotNull(cache.get("a", 1));
+		Assert.assertTrue(cache.put("c", stiffness));
+		Assert.assertEquals(cache.listEntries().size(), maxEntries);
+		Assert.assertNotNull(cache.get("a", 1));
+		Assert.assertNull(cache.get("b", 1));
+		Assert.assertNotNull(cache.get("c", 1));
+	}
+
+	/**
+	 * Create the cache directory and the reference substructure.
+	 * @throws IOException
+	 *             if the directory cannot be created.
+	 */
+	@BeforeMethod
+	public final void beforeMethod() throws IOException {
+		URL u = ClassLoader.getSystemResource("config/run_template.tcl");
+		configDir = PathUtils.parent(PathUtils.cleanPath(u.getPath()));
+		scfg = new CreateRefSubstructureConfig("MDL-02").getConfig();
+		cacheDir = File.createTempFile("StiffnessCache", "");
+		Assert.assertTrue(cacheDir.delete());
+	}
+
+	/**
+	 * Remove the cache directory.
+	 */
+	@AfterMethod
+	public final void afterMethod() {
+		FileWithContentDelete dir = new FileWithContentDelete(
+				cacheDir.getPath());
+		dir.delete();
+	}
+}
@@ -0,0 +1,104 @@
+package org.nees.illinois.uisimcor.fem_executor.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nees.illinois.uisimcor.fem_executor.execute.DispatchTaskI;
+import org.nees.illinois.uisimcor.fem_executor.execute.SubstructureDispatcher;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the parallel dispatch of substructure work.
+ * @author Michael Bletzinger
+ */
+@Test(groups = { "data" })
+public class TestSubstructureDispatcher {
+	/**
+	 * Test that the work runs at the same time and that the results are in
+	 * substructure order even when the work finishes in reverse order.
+	 */
+	@Test
+	public final void testParallelOrder() {
+		final int count = 4;
+		SubstructureDispatcher dispatcher = new SubstructureDispatcher(count);
+		final CountDownLatch allStarted = new CountDownLatch(count);
+		final AtomicInteger finishOrder = new AtomicInteger(0);
+		final int[] finished = new int[count];
+		final CountDownLatch[] done = new CountDownLatch[count];
+		for (int i = 0; i < count; i++) {
+			done[i] = new CountDownLatch(1);
+		}
+		boolean[] result = dispatcher.run(count, new DispatchTaskI() {
+			@Override
+			public boolean run(final int index) {
+				allStarted.countDown();
+				final long waitSecs = 5;
+				try {
+					if (allStarted.await(waitSecs, TimeUnit.SECONDS) == false) {
+						return false;
+					}
+					// Finish after the next substructure.
+					if (index + 1 < count
+							&& done[index + 1].await(waitSecs,
+									TimeUnit.SECONDS) == false) {
+						return false;
+					}
+				} catch (InterruptedException e) {
+					return false;
+				}
+				finished[index] = finishOrder.getAndIncrement();
+				done[index].countDown();
+				return index % 2 == 0;
+			}
+		});
+		dispatcher.shutdown();
+		Assert.assertEquals(result.length, count);
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals(result[i], i % 2 == 0, "Substructure " + i);
+			Assert.assertEquals(finished[i], count - 1 - i, "Substructure "
+					+ i);
+		}
+	}
+
+	/**
+	 * Test that a single thread runs the work on the calling thread in order
+	 * and that runtime exceptions reach the caller.
+	 */
+	@Test
+	public final void testSequential() {
+		SubstructureDispatcher dispatcher = new SubstructureDispatcher(1);
+		final Thread caller = Thread.currentThread();
+		final int count = 3;
+		final StringBuilder order = new StringBuilder();
+		boolean[] result = dispatcher.run(count, new DispatchTaskI() {
+			@Override
+			public boolean run(final int index) {
+				order.append(index);
+				return Thread.currentThread() == caller;
+			}
+		});
+		Assert.assertEquals(order.toString(), "012");
+		for (boolean r : result) {
+			Assert.assertTrue(r);
+		}
+		SubstructureDispatcher parallel = new SubstructureDispatcher(2);
+		try {
+			parallel.run(count, new DispatchTaskI() {
+				@Override
+				public boolean run(final int index) {
+					if (index == 1) {
+						throw new IllegalStateException("broken " + index);
+					}
+					return true;
+				}
+			});
+			Assert.fail("Exception was not passed on");
+		} catch (IllegalStateException e) {
+			Assert.assertEquals(e.getMessage(), "broken 1");
+		} finally {
+			parallel.shutdown();
+		}
+	}
+}
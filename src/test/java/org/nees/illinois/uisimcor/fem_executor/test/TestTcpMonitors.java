@@ -3,7 +3,6 @@ package org.nees.illinois.uisimcor.fem_executor.test;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -91,8 +90,8 @@ public class TestTcpMonitors {
 				50000, 3000, 14, 103, 13, 200, 20, 35, 14, 20000 };
 		for (int v : values) {
 			Process p = runCmd(v);
-			List<Double> disps = null;
-			List<Double> forces = null;
+			double[] disps = null;
+			double[] forces = null;
 			TcpReader dispReader = startMonitoring(
 					dispListener.getConnections(), port);
 			TcpReader forceReader = startMonitoring(
@@ -118,8 +117,8 @@ public class TestTcpMonitors {
 			forceReader.interrupt();
 			Assert.assertNotNull(disps);
 			Assert.assertNotNull(forces);
-			Assert.assertEquals(v, disps.size());
-			Assert.assertEquals(v, forces.size());
+			Assert.assertEquals(v, disps.length);
+			Assert.assertEquals(v, forces.length);
 
 		}
 	}
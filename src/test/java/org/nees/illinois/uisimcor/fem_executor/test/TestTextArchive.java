@@ -0,0 +1,102 @@
+package org.nees.illinois.uisimcor.fem_executor.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import org.nees.illinois.uisimcor.fem_executor.archiving.TextArchive;
+import org.nees.illinois.uisimcor.fem_executor.config.dao.ArchiveDao;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the buffering of the text archive.
+ * @author Michael Bletzinger
+ */
+@Test(groups = { "data" })
+public class TestTextArchive {
+
+	/**
+	 * Count the lines in a file.
+	 * @param file
+	 *            The file.
+	 * @return Number of lines. Zero if the file does not exist.
+	 * @throws IOException
+	 *             if the file cannot be read.
+	 */
+	private int countLines(final File file) throws IOException {
+		if (file.exists() == false) {
+			return 0;
+		}
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		int result = 0;
+		try {
+			while (reader.readLine() != null) {
+				result++;
+			}
+		} finally {
+			reader.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Check that records are written in groups and on close.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 */
+	@Test
+	public final void testGroupCommit() throws IOException {
+		File file = File.createTempFile("TextArchive", ".txt");
+		file.deleteOnExit();
+		ArchiveDao policy = new ArchiveDao();
+		final int groupSize = 3;
+		policy.setFlushRecords(groupSize);
+		TextArchive archive = new TextArchive(file, policy);
+		archive.write("1\n");
+		archive.write("2\n");
+		Assert.assertEquals(countLines(file), 0);
+		archive.write("3\n");
+		Assert.assertEquals(countLines(file), groupSize);
+		archive.write("4\n");
+		archive.close();
+		final int afterClose = 4;
+		Assert.assertEquals(countLines(file), afterClose);
+		// Writing after a close reopens the file in append mode.
+		archive.write("5\n");
+		archive.close();
+		Assert.assertEquals(countLines(file), afterClose + 1);
+	}
+
+	/**
+	 * Check that a buffered record is written after the flush interval even if
+	 * no more records arrive.
+	 * @throws IOException
+	 *             if the archive cannot be read.
+	 * @throws InterruptedException
+	 *             if the test is interrupted.
+	 */
+	@Test
+	public final void testTimedFlush() throws IOException,
+			InterruptedException {
+		File file = File.createTempFile("TextArchive", ".txt");
+		file.deleteOnExit();
+		ArchiveDao policy = new ArchiveDao();
+		final int groupSize = 100;
+		final int flushMillis = 50;
+		policy.setFlushRecords(groupSize);
+		policy.setFlushMillis(flushMillis);
+		TextArchive archive = new TextArchive(file, policy);
+		archive.write("1\n");
+		Assert.assertEquals(countLines(file), 0);
+		final int patience = 40;
+		int count = 0;
+		while (countLines(file) == 0 && count < patience) {
+			Thread.sleep(flushMillis);
+			count++;
+		}
+		Assert.assertEquals(countLines(file), 1);
+		archive.close();
+	}
+}
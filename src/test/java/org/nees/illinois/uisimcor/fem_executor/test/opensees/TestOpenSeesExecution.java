@@ -429,11 +429,15 @@ public class TestOpenSeesExecution {
 	 */
 	private void readTcp(final boolean isDisp) {
 		TcpReader reader = isDisp ? dispTcpReader : forceTcpReader;
-		List<Double> list = reader.getDoublesQ().poll();
-		if (list == null) {
+		double[] record = reader.getDoublesQ().poll();
+		if (record == null) {
 			log.debug("Nothing to read from tcp");
 			return;
 		}
+		List<Double> list = new ArrayList<Double>();
+		for (double d : record) {
+			list.add(d);
+		}
 		List<List<Double>> accum = isDisp ? tcpDisplacements : tcpForces;
 		log.debug("Read " + list);
 		accum.add(list);
@@ -0,0 +1,25 @@
+#!/usr/bin/perl -w
+use strict;
+
+# Stands in for mpiexec. Checks the launcher profile and runs the program as
+# rank 0 which is the only rank that talks to the executor.
+my $ranks;
+my %options;
+while ( @ARGV && $ARGV[0] =~ m!^-! ) {
+	my $opt = shift @ARGV;
+	my $val = shift @ARGV;
+	if ( $opt eq "-n" ) {
+		$ranks = $val;
+		next;
+	}
+	$options{$opt} = $val;
+}
+die "No rank count\n" unless defined $ranks;
+die "No process binding\n" unless defined $options{"--bind-to"};
+die "OMP_NUM_THREADS is not set\n" unless defined $ENV{OMP_NUM_THREADS};
+my $forwarder = $ARGV[-1];
+die "Forwarding script \"$forwarder\" is missing\n" unless -f $forwarder;
+print STDOUT "Launching $ranks ranks bound to "
+  . $options{"--bind-to"}
+  . " with $ENV{OMP_NUM_THREADS} threads\n";
+exec @ARGV or die "Cannot run @ARGV\n";
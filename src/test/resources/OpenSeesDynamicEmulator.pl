@@ -8,6 +8,7 @@ our $cwd = getcwd();
 print STDOUT "Current directory is \"$cwd\"\n";
 our ( $file1, $file2 ) = ( "tmp_disp.out", "tmp_forc.out" );
 our $count = 0;
+our $batch = 1;
 our %nodes;
 
 print STDOUT "Starting to read STDIN\n";
@@ -45,15 +46,28 @@ while ( my $line = <STDIN> ) {
 		$nodes{$node} = 1;
 		print STDOUT "Found node $node\n";
 	}
+	my ( $first, $last ) =
+	  $line =~ m!^for\s+\{set\s+uisimcorStep\s+(\d+)\}\s+\{\$uisimcorStep\s+<=\s+(\d+)\}!;
+	if ( defined $last ) {
+		$batch = $last - $first + 1;
+		print STDOUT "Found batch of $batch steps\n";
+	}
 	if ( $line =~ m!done\s+#:! ) {
+		for my $b ( 1 .. $batch ) {
+			print STDOUT "Writing $count values\n";
+			outAFile( $dsock, $count );
 
-		print STDOUT "Writing $count values\n";
-		outAFile( $dsock, $count );
+			#	print STDOUT "Writing to file force\n";
+			outAFile( $fsock, $count );
+			$count++;
+			print STDOUT "\"Current step $count - done #:\"\n";
+			if ( $count == 1 ) {
 
-		#	print STDOUT "Writing to file force\n";
-		outAFile( $fsock, $count );
-		$count++;
-		print STDOUT "\"Current step $count - done #:\"\n";
+				# OpenSees reports warnings on STDERR and keeps running.
+				print STDERR "WARNING fake analysis warning\n";
+			}
+		}
+		$batch = 1;
 	}
 
 	# print STDOUT "Waiting for input\n";